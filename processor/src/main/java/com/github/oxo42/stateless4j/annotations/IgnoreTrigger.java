@@ -0,0 +1,31 @@
+package com.github.oxo42.stateless4j.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Ignore the trigger in a state, the counterpart of {@code StateConfiguration.ignoreIf}
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@Repeatable(IgnoreTriggers.class)
+public @interface IgnoreTrigger {
+
+    /**
+     * @return The name of the state the trigger is ignored in
+     */
+    String state();
+
+    /**
+     * @return The name of the ignored trigger
+     */
+    String trigger();
+
+    /**
+     * @return The name of a method of the definition returning {@code boolean}, or empty if unguarded
+     */
+    String guard() default "";
+}
@@ -0,0 +1,16 @@
+package com.github.oxo42.stateless4j.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Container of repeated {@link IgnoreTrigger} annotations
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface IgnoreTriggers {
+
+    IgnoreTrigger[] value();
+}
@@ -0,0 +1,20 @@
+package com.github.oxo42.stateless4j.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Calls the annotated method without arguments when one of the states is left. Exit actions of a state run in
+ * declaration order, before those of its superstates.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.METHOD)
+public @interface OnExit {
+
+    /**
+     * @return The names of the states
+     */
+    String[] value();
+}
@@ -0,0 +1,46 @@
+package com.github.oxo42.stateless4j.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Accept the trigger in a state and transition to the destination state, the counterpart of
+ * {@code StateConfiguration.permitIf}. A transition to the same state is a reentry.
+ * <p>
+ * If several permits for a state and trigger have guards, the first one whose guard is met is taken, in
+ * declaration order. Permits declared on a superstate apply to its substates if no permit of the substate
+ * is taken.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@Repeatable(Permits.class)
+public @interface Permit {
+
+    /**
+     * @return The name of the state the trigger is accepted in
+     */
+    String from();
+
+    /**
+     * @return The name of the accepted trigger
+     */
+    String trigger();
+
+    /**
+     * @return The name of the destination state
+     */
+    String to();
+
+    /**
+     * @return The name of a method of the definition returning {@code boolean}, or empty if unguarded
+     */
+    String guard() default "";
+
+    /**
+     * @return The name of a method of the definition run between the exit and entry actions, or empty
+     */
+    String action() default "";
+}
@@ -0,0 +1,50 @@
+package com.github.oxo42.stateless4j.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a state machine whose dispatch code is generated at build time.
+ * <p>
+ * The annotated interface or abstract class provides the guards and actions, and carries the {@link Permit},
+ * {@link IgnoreTrigger} and {@link SubstateOf} declarations. Its methods annotated with {@link OnEntry} and
+ * {@link OnExit} are called when the named states are entered and left. States and triggers are referenced by
+ * the names of their enum constants and checked by the processor.
+ * <p>
+ * The generated class is named after the definition with a {@code StateMachine} suffix unless
+ * {@link #className()} is given, and is placed in the same package.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface StateMachineDefinition {
+
+    /**
+     * The enum type used to represent the states
+     *
+     * @return The state type
+     */
+    Class<? extends Enum<?>> states();
+
+    /**
+     * The enum type used to represent the triggers
+     *
+     * @return The trigger type
+     */
+    Class<? extends Enum<?>> triggers();
+
+    /**
+     * The state new machines start in
+     *
+     * @return The name of the initial state, or empty if it must be passed to the constructor
+     */
+    String initialState() default "";
+
+    /**
+     * The simple name of the generated class
+     *
+     * @return The class name, or empty for the definition name followed by {@code StateMachine}
+     */
+    String className() default "";
+}
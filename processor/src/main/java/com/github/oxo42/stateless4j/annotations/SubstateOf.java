@@ -0,0 +1,26 @@
+package com.github.oxo42.stateless4j.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Sets the superstate of a state, the counterpart of {@code StateConfiguration.substateOf}
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@Repeatable(Substates.class)
+public @interface SubstateOf {
+
+    /**
+     * @return The name of the substate
+     */
+    String state();
+
+    /**
+     * @return The name of its superstate
+     */
+    String superstate();
+}
@@ -0,0 +1,206 @@
+package com.github.oxo42.stateless4j.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A validated state machine definition, with states, triggers and handler methods referenced by name
+ */
+final class MachineModel {
+
+    private final String packageName;
+    private final String className;
+    private final String definitionType;
+    private final String stateType;
+    private final String triggerType;
+    private final List<String> states;
+    private final String initialState; // null
+    private final Map<String, String> superstates = new HashMap<>();
+    private final Map<String, Map<String, List<Behaviour>>> behaviours = new HashMap<>();
+    private final Map<String, List<String>> entryActions = new HashMap<>();
+    private final Map<String, List<String>> exitActions = new HashMap<>();
+
+    MachineModel(String packageName, String className, String definitionType, String stateType, String triggerType,
+                 List<String> states, String initialState) {
+        this.packageName = packageName;
+        this.className = className;
+        this.definitionType = definitionType;
+        this.stateType = stateType;
+        this.triggerType = triggerType;
+        this.states = states;
+        this.initialState = initialState;
+    }
+
+    /**
+     * How a trigger is handled in a state
+     */
+    static final class Behaviour {
+
+        private final String destination; // null for ignored triggers
+        private final String guard; // null
+        private final String action; // null
+
+        Behaviour(String destination, String guard, String action) {
+            this.destination = destination;
+            this.guard = guard;
+            this.action = action;
+        }
+
+        String getDestination() {
+            return destination;
+        }
+
+        String getGuard() {
+            return guard;
+        }
+
+        String getAction() {
+            return action;
+        }
+
+        boolean isGuarded() {
+            return guard != null;
+        }
+    }
+
+    String getPackageName() {
+        return packageName;
+    }
+
+    String getClassName() {
+        return className;
+    }
+
+    String getDefinitionType() {
+        return definitionType;
+    }
+
+    String getStateType() {
+        return stateType;
+    }
+
+    String getTriggerType() {
+        return triggerType;
+    }
+
+    List<String> getStates() {
+        return states;
+    }
+
+    String getInitialState() {
+        return initialState;
+    }
+
+    void setSuperstate(String state, String superstate) {
+        superstates.put(state, superstate);
+    }
+
+    String getSuperstate(String state) {
+        return superstates.get(state);
+    }
+
+    void addBehaviour(String state, String trigger, Behaviour behaviour) {
+        Map<String, List<Behaviour>> byTrigger = behaviours.get(state);
+        if (byTrigger == null) {
+            byTrigger = new LinkedHashMap<>();
+            behaviours.put(state, byTrigger);
+        }
+        List<Behaviour> list = byTrigger.get(trigger);
+        if (list == null) {
+            list = new ArrayList<>();
+            byTrigger.put(trigger, list);
+        }
+        list.add(behaviour);
+    }
+
+    /**
+     * The behaviours configured directly on the state
+     *
+     * @return The behaviours by trigger, in declaration order
+     */
+    Map<String, List<Behaviour>> getBehaviours(String state) {
+        Map<String, List<Behaviour>> byTrigger = behaviours.get(state);
+        return byTrigger == null ? Collections.<String, List<Behaviour>>emptyMap() : byTrigger;
+    }
+
+    void addEntryAction(String state, String method) {
+        add(entryActions, state, method);
+    }
+
+    void addExitAction(String state, String method) {
+        add(exitActions, state, method);
+    }
+
+    List<String> getEntryActions(String state) {
+        List<String> actions = entryActions.get(state);
+        return actions == null ? Collections.<String>emptyList() : actions;
+    }
+
+    List<String> getExitActions(String state) {
+        List<String> actions = exitActions.get(state);
+        return actions == null ? Collections.<String>emptyList() : actions;
+    }
+
+    private static void add(Map<String, List<String>> map, String key, String value) {
+        List<String> values = map.get(key);
+        if (values == null) {
+            values = new ArrayList<>();
+            map.put(key, values);
+        }
+        values.add(value);
+    }
+
+    /**
+     * The state followed by its superstates
+     *
+     * @return The states from the given one up to the root of its hierarchy
+     */
+    List<String> getAncestry(String state) {
+        List<String> ancestry = new ArrayList<>();
+        for (String current = state; current != null; current = superstates.get(current)) {
+            ancestry.add(current);
+        }
+        return ancestry;
+    }
+
+    /**
+     * Whether the state is equal to, or a substate of, the other state
+     */
+    boolean isIncludedIn(String state, String other) {
+        return getAncestry(state).contains(other);
+    }
+
+    /**
+     * The states whose exit actions run when leaving the source for the destination, innermost first
+     */
+    List<String> getExitedStates(String source, String destination) {
+        List<String> exited = new ArrayList<>();
+        if (source.equals(destination)) {
+            exited.add(source);
+            return exited;
+        }
+        for (String current = source; current != null && !isIncludedIn(destination, current); current = superstates.get(current)) {
+            exited.add(current);
+        }
+        return exited;
+    }
+
+    /**
+     * The states whose entry actions run when entering the destination from the source, outermost first
+     */
+    List<String> getEnteredStates(String source, String destination) {
+        List<String> entered = new ArrayList<>();
+        if (source.equals(destination)) {
+            entered.add(destination);
+            return entered;
+        }
+        for (String current = destination; current != null && !isIncludedIn(source, current); current = superstates.get(current)) {
+            entered.add(0, current);
+        }
+        return entered;
+    }
+}
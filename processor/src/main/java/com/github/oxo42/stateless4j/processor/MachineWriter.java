@@ -0,0 +1,301 @@
+package com.github.oxo42.stateless4j.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the source of the state machine class for a {@link MachineModel}.
+ * <p>
+ * For every state the handled triggers, including those inherited from superstates, are listed with their
+ * candidate behaviours in lookup order: the behaviours of the state in declaration order, then those of its
+ * superstate and so on. Exit and entry actions of each transition are resolved here, so the generated code
+ * only contains calls in the order a {@code StateMachine} would make them. Guards are evaluated like a
+ * {@code StateMachine} does, so overlapping guards of one state throw instead of picking the first behaviour.
+ */
+final class MachineWriter {
+
+    private final MachineModel model;
+    private final Writer out;
+    private final String state;
+    private final String handler;
+
+    MachineWriter(MachineModel model, Writer out) {
+        this.model = model;
+        this.out = out;
+        this.state = model.getStateType();
+        this.handler = model.getDefinitionType();
+    }
+
+    void write() throws IOException {
+        if (!model.getPackageName().isEmpty()) {
+            line(0, "package " + model.getPackageName() + ";");
+            line(0, "");
+        }
+        line(0, "/**");
+        line(0, " * State machine generated from {@link " + handler + "}, do not edit.");
+        line(0, " */");
+        line(0, "public final class " + model.getClassName() + " implements "
+                + "com.github.oxo42.stateless4j.Machine<" + state + ", " + model.getTriggerType() + "> {");
+        line(0, "");
+        line(1, "private final " + handler + " handler;");
+        line(1, "private " + state + " state;");
+        line(0, "");
+        writeConstructors();
+        writeGetState();
+        writeIsInState();
+        writeCanFire();
+        writeFire();
+        writeToString();
+        line(0, "}");
+    }
+
+    private void writeConstructors() throws IOException {
+        String initial = model.getInitialState();
+        if (initial != null) {
+            line(1, "public " + model.getClassName() + "(final " + handler + " handler) {");
+            line(2, "this(handler, " + state + "." + initial + ");");
+            line(1, "}");
+            line(0, "");
+        }
+        line(1, "public " + model.getClassName() + "(final " + handler + " handler, final " + state + " initialState) {");
+        line(2, "this.handler = java.util.Objects.requireNonNull(handler, \"handler is null\");");
+        line(2, "this.state = java.util.Objects.requireNonNull(initialState, \"initialState is null\");");
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeGetState() throws IOException {
+        line(1, "@Override");
+        line(1, "public " + state + " getState() {");
+        line(2, "return state;");
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeIsInState() throws IOException {
+        line(1, "@Override");
+        line(1, "public boolean isInState(final " + state + " state) {");
+        line(2, "switch (this.state) {");
+        for (String current : model.getStates()) {
+            List<String> ancestry = model.getAncestry(current);
+            if (ancestry.size() == 1) {
+                continue;
+            }
+            line(3, "case " + current + ":");
+            StringBuilder condition = new StringBuilder();
+            for (String ancestor : ancestry) {
+                if (condition.length() > 0) {
+                    condition.append(" || ");
+                }
+                condition.append("state == ").append(state).append('.').append(ancestor);
+            }
+            line(4, "return " + condition + ";");
+        }
+        line(3, "default:");
+        line(4, "return state == this.state;");
+        line(2, "}");
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeCanFire() throws IOException {
+        line(1, "@Override");
+        line(1, "public boolean canFire(final " + model.getTriggerType() + " trigger) {");
+        line(2, "switch (state) {");
+        for (String current : model.getStates()) {
+            Map<String, List<MachineModel.Behaviour>> handled = handledTriggers(current);
+            if (handled.isEmpty()) {
+                continue;
+            }
+            line(3, "case " + current + ":");
+            line(4, "switch (trigger) {");
+            for (String trigger : handled.keySet()) {
+                if (isUnconditional(current, trigger)) {
+                    line(5, "case " + trigger + ":");
+                    line(6, "return true;");
+                } else {
+                    line(5, "case " + trigger + ": {");
+                    writeSelection(6, current, trigger);
+                    line(6, "return selected >= 0;");
+                    line(5, "}");
+                }
+            }
+            line(5, "default:");
+            line(6, "return false;");
+            line(4, "}");
+        }
+        line(3, "default:");
+        line(4, "return false;");
+        line(2, "}");
+        line(1, "}");
+        line(0, "");
+    }
+
+    private void writeFire() throws IOException {
+        line(1, "@Override");
+        line(1, "public void fire(final " + model.getTriggerType() + " trigger) {");
+        line(2, "switch (state) {");
+        for (String current : model.getStates()) {
+            Map<String, List<MachineModel.Behaviour>> handled = handledTriggers(current);
+            if (handled.isEmpty()) {
+                continue;
+            }
+            line(3, "case " + current + ":");
+            line(4, "switch (trigger) {");
+            for (Map.Entry<String, List<MachineModel.Behaviour>> entry : handled.entrySet()) {
+                String trigger = entry.getKey();
+                if (isUnconditional(current, trigger)) {
+                    line(5, "case " + trigger + ":");
+                    writeBehaviour(6, current, entry.getValue().get(0));
+                    line(6, "return;");
+                    continue;
+                }
+                line(5, "case " + trigger + ": {");
+                writeSelection(6, current, trigger);
+                line(6, "switch (selected) {");
+                List<MachineModel.Behaviour> candidates = entry.getValue();
+                for (int i = 0; i < candidates.size(); i++) {
+                    line(7, "case " + i + ":");
+                    writeBehaviour(8, current, candidates.get(i));
+                    line(8, "return;");
+                }
+                line(6, "}");
+                line(6, "break;");
+                line(5, "}");
+            }
+            line(5, "default:");
+            line(6, "break;");
+            line(4, "}");
+            line(4, "break;");
+        }
+        line(3, "default:");
+        line(4, "break;");
+        line(2, "}");
+        line(2, "throw new IllegalStateException(String.format(");
+        line(4, "\"No valid leaving transitions are permitted from state '%s' for trigger '%s'. Consider ignoring the trigger.\",");
+        line(4, "state, trigger));");
+        line(1, "}");
+        line(0, "");
+    }
+
+    /**
+     * Whether the first state in the ancestry handling the trigger does so with a single unguarded behaviour,
+     * which is then always taken
+     */
+    private boolean isUnconditional(String current, String trigger) {
+        for (String ancestor : model.getAncestry(current)) {
+            List<MachineModel.Behaviour> behaviours = model.getBehaviours(ancestor).get(trigger);
+            if (behaviours != null) {
+                return behaviours.size() == 1 && !behaviours.get(0).isGuarded();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Declares {@code selected} as the index of the behaviour taken among the candidates of the trigger, or -1.
+     * Like a {@code StateMachine}, all guards of a state are evaluated and the superstate is only consulted if
+     * none is met; more than one met guard in the same state is an error.
+     */
+    private void writeSelection(int indent, String current, String trigger) throws IOException {
+        line(indent, "int selected = -1;");
+        int index = 0;
+        for (String ancestor : model.getAncestry(current)) {
+            List<MachineModel.Behaviour> behaviours = model.getBehaviours(ancestor).get(trigger);
+            if (behaviours == null) {
+                continue;
+            }
+            boolean nested = index > 0;
+            int inner = indent;
+            if (nested) {
+                line(indent, "if (selected < 0) {");
+                inner++;
+            }
+            for (int i = 0; i < behaviours.size(); i++, index++) {
+                MachineModel.Behaviour behaviour = behaviours.get(i);
+                int body = inner;
+                if (behaviour.isGuarded()) {
+                    line(inner, "if (handler." + behaviour.getGuard() + "()) {");
+                    body++;
+                }
+                if (i > 0) {
+                    line(body, "if (selected >= 0) {");
+                    line(body + 1, "throw new IllegalStateException(\"Multiple permitted exit transitions are configured from state '"
+                            + ancestor + "' for trigger '" + trigger + "'. Guard clauses must be mutually exclusive.\");");
+                    line(body, "}");
+                }
+                line(body, "selected = " + index + ";");
+                if (behaviour.isGuarded()) {
+                    line(inner, "}");
+                }
+            }
+            if (nested) {
+                line(indent, "}");
+            }
+        }
+    }
+
+    private void writeBehaviour(int indent, String source, MachineModel.Behaviour behaviour) throws IOException {
+        String destination = behaviour.getDestination();
+        if (destination == null) {
+            return;
+        }
+        for (String exited : model.getExitedStates(source, destination)) {
+            for (String action : model.getExitActions(exited)) {
+                line(indent, "handler." + action + "();");
+            }
+        }
+        if (behaviour.getAction() != null) {
+            line(indent, "handler." + behaviour.getAction() + "();");
+        }
+        line(indent, "state = " + state + "." + destination + ";");
+        for (String entered : model.getEnteredStates(source, destination)) {
+            for (String action : model.getEntryActions(entered)) {
+                line(indent, "handler." + action + "();");
+            }
+        }
+    }
+
+    private void writeToString() throws IOException {
+        line(1, "@Override");
+        line(1, "public String toString() {");
+        line(2, "return \"" + model.getClassName() + " {{ State = \" + state + \" }}\";");
+        line(1, "}");
+    }
+
+    /**
+     * The triggers handled in the state or its superstates, each with its behaviours in lookup order
+     */
+    private Map<String, List<MachineModel.Behaviour>> handledTriggers(String current) {
+        Set<String> triggers = new LinkedHashSet<>();
+        for (String ancestor : model.getAncestry(current)) {
+            triggers.addAll(model.getBehaviours(ancestor).keySet());
+        }
+        Map<String, List<MachineModel.Behaviour>> handled = new LinkedHashMap<>();
+        for (String trigger : triggers) {
+            List<MachineModel.Behaviour> candidates = new ArrayList<>();
+            for (String ancestor : model.getAncestry(current)) {
+                List<MachineModel.Behaviour> behaviours = model.getBehaviours(ancestor).get(trigger);
+                if (behaviours != null) {
+                    candidates.addAll(behaviours);
+                }
+            }
+            handled.put(trigger, candidates);
+        }
+        return handled;
+    }
+
+    private void line(int indent, String text) throws IOException {
+        for (int i = 0; i < indent; i++) {
+            out.write("    ");
+        }
+        out.write(text);
+        out.write('\n');
+    }
+}
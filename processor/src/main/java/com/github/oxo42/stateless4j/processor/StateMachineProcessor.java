@@ -0,0 +1,343 @@
+package com.github.oxo42.stateless4j.processor;
+
+import com.github.oxo42.stateless4j.annotations.IgnoreTrigger;
+import com.github.oxo42.stateless4j.annotations.OnEntry;
+import com.github.oxo42.stateless4j.annotations.OnExit;
+import com.github.oxo42.stateless4j.annotations.Permit;
+import com.github.oxo42.stateless4j.annotations.StateMachineDefinition;
+import com.github.oxo42.stateless4j.annotations.SubstateOf;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates a state machine class for every type annotated with {@link StateMachineDefinition}.
+ * <p>
+ * The generated class dispatches with nested {@code switch} statements over the state and trigger enums and calls
+ * the guards and actions of the definition directly, so building a machine costs a single allocation and no
+ * configuration is built at runtime. Invalid definitions are reported as compile errors on the definition.
+ */
+public class StateMachineProcessor extends AbstractProcessor {
+
+    private static final String SUFFIX = "StateMachine";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(StateMachineDefinition.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(StateMachineDefinition.class)) {
+            if (element.getKind() != ElementKind.INTERFACE
+                    && !(element.getKind() == ElementKind.CLASS && element.getModifiers().contains(Modifier.ABSTRACT))) {
+                error(element, "@StateMachineDefinition must annotate an interface or an abstract class");
+                continue;
+            }
+            TypeElement definition = (TypeElement) element;
+            MachineModel model = new ModelReader(definition).read();
+            if (model != null) {
+                write(definition, model);
+            }
+        }
+        return true;
+    }
+
+    private void write(TypeElement definition, MachineModel model) {
+        String name = model.getPackageName().isEmpty()
+                ? model.getClassName()
+                : model.getPackageName() + "." + model.getClassName();
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(name, definition);
+            try (Writer writer = file.openWriter()) {
+                new MachineWriter(model, writer).write();
+            }
+        } catch (IOException e) {
+            error(definition, "Cannot write " + name + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Reads one definition, reporting every problem found before giving up
+     */
+    private final class ModelReader {
+
+        private final TypeElement definition;
+        private final List<ExecutableElement> methods;
+        private boolean valid = true;
+        private TypeElement stateType;
+        private TypeElement triggerType;
+        private List<String> states;
+        private List<String> triggers;
+
+        ModelReader(TypeElement definition) {
+            this.definition = definition;
+            this.methods = ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(definition));
+        }
+
+        MachineModel read() {
+            AnnotationMirror mirror = findDefinitionMirror();
+            stateType = enumType(mirror, "states");
+            triggerType = enumType(mirror, "triggers");
+            if (stateType == null || triggerType == null) {
+                return null;
+            }
+            states = constantsOf(stateType);
+            triggers = constantsOf(triggerType);
+
+            StateMachineDefinition annotation = definition.getAnnotation(StateMachineDefinition.class);
+            String initialState = annotation.initialState().isEmpty() ? null : annotation.initialState();
+            if (initialState != null) {
+                checkState(initialState, "initialState");
+            }
+            String className = annotation.className().isEmpty()
+                    ? definition.getSimpleName() + SUFFIX
+                    : annotation.className();
+            PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(definition);
+
+            MachineModel model = new MachineModel(
+                    packageElement.getQualifiedName().toString(),
+                    className,
+                    definition.getQualifiedName().toString(),
+                    stateType.getQualifiedName().toString(),
+                    triggerType.getQualifiedName().toString(),
+                    states,
+                    initialState);
+
+            readSubstates(model);
+            readBehaviours(model);
+            readActions(model);
+            return valid ? model : null;
+        }
+
+        private AnnotationMirror findDefinitionMirror() {
+            for (AnnotationMirror mirror : definition.getAnnotationMirrors()) {
+                TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+                if (type.getQualifiedName().contentEquals(StateMachineDefinition.class.getCanonicalName())) {
+                    return mirror;
+                }
+            }
+            throw new IllegalStateException("@StateMachineDefinition not found on " + definition);
+        }
+
+        private TypeElement enumType(AnnotationMirror mirror, String member) {
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals(member)) {
+                    TypeMirror type = (TypeMirror) entry.getValue().getValue();
+                    if (type.getKind() == TypeKind.DECLARED) {
+                        Element element = ((DeclaredType) type).asElement();
+                        if (element.getKind() == ElementKind.ENUM) {
+                            return (TypeElement) element;
+                        }
+                    }
+                    fail(member + " must be an enum, but is " + type);
+                    return null;
+                }
+            }
+            fail(member + " is missing");
+            return null;
+        }
+
+        private List<String> constantsOf(TypeElement type) {
+            List<String> constants = new ArrayList<>();
+            for (Element member : type.getEnclosedElements()) {
+                if (member.getKind() == ElementKind.ENUM_CONSTANT) {
+                    constants.add(member.getSimpleName().toString());
+                }
+            }
+            return constants;
+        }
+
+        private void readSubstates(MachineModel model) {
+            for (SubstateOf substate : definition.getAnnotationsByType(SubstateOf.class)) {
+                if (!checkState(substate.state(), "@SubstateOf") || !checkState(substate.superstate(), "@SubstateOf")) {
+                    continue;
+                }
+                if (model.getSuperstate(substate.state()) != null) {
+                    fail("State '" + substate.state() + "' has more than one superstate");
+                    continue;
+                }
+                if (model.isIncludedIn(substate.superstate(), substate.state())) {
+                    fail("@SubstateOf(state = \"" + substate.state() + "\", superstate = \"" + substate.superstate()
+                            + "\") creates a cycle in the state hierarchy");
+                    continue;
+                }
+                model.setSuperstate(substate.state(), substate.superstate());
+            }
+        }
+
+        private void readBehaviours(MachineModel model) {
+            for (Permit permit : definition.getAnnotationsByType(Permit.class)) {
+                boolean valid = checkState(permit.from(), "@Permit")
+                        & checkTrigger(permit.trigger(), "@Permit")
+                        & checkState(permit.to(), "@Permit")
+                        & checkGuard(permit.guard())
+                        & checkAction(permit.action(), "Action");
+                if (valid) {
+                    addBehaviour(model, permit.from(), permit.trigger(),
+                            new MachineModel.Behaviour(permit.to(), emptyToNull(permit.guard()), emptyToNull(permit.action())));
+                }
+            }
+            for (IgnoreTrigger ignore : definition.getAnnotationsByType(IgnoreTrigger.class)) {
+                boolean valid = checkState(ignore.state(), "@IgnoreTrigger")
+                        & checkTrigger(ignore.trigger(), "@IgnoreTrigger")
+                        & checkGuard(ignore.guard());
+                if (valid) {
+                    addBehaviour(model, ignore.state(), ignore.trigger(),
+                            new MachineModel.Behaviour(null, emptyToNull(ignore.guard()), null));
+                }
+            }
+        }
+
+        private void addBehaviour(MachineModel model, String state, String trigger, MachineModel.Behaviour behaviour) {
+            List<MachineModel.Behaviour> existing = model.getBehaviours(state).get(trigger);
+            if (existing != null) {
+                for (MachineModel.Behaviour other : existing) {
+                    if (!other.isGuarded()) {
+                        fail("Trigger '" + trigger + "' is already handled without a guard in state '" + state
+                                + "', so later behaviours are never used");
+                        return;
+                    }
+                }
+            }
+            model.addBehaviour(state, trigger, behaviour);
+        }
+
+        private void readActions(MachineModel model) {
+            for (ExecutableElement method : methods) {
+                OnEntry onEntry = method.getAnnotation(OnEntry.class);
+                OnExit onExit = method.getAnnotation(OnExit.class);
+                if (onEntry == null && onExit == null) {
+                    continue;
+                }
+                String name = method.getSimpleName().toString();
+                if (!isCallable(method)) {
+                    fail(method, "Entry and exit actions must not be private or static and must not take parameters");
+                    continue;
+                }
+                if (!methodsNamed(name).equals(Collections.singletonList(method))) {
+                    fail(method, "Entry and exit actions must not be overloaded");
+                    continue;
+                }
+                if (onEntry != null) {
+                    for (String state : onEntry.value()) {
+                        if (checkState(state, "@OnEntry")) {
+                            model.addEntryAction(state, name);
+                        }
+                    }
+                }
+                if (onExit != null) {
+                    for (String state : onExit.value()) {
+                        if (checkState(state, "@OnExit")) {
+                            model.addExitAction(state, name);
+                        }
+                    }
+                }
+            }
+        }
+
+        private boolean checkState(String name, String where) {
+            if (!states.contains(name)) {
+                fail(where + " refers to unknown state '" + name + "' of " + stateType.getQualifiedName());
+                return false;
+            }
+            return true;
+        }
+
+        private boolean checkTrigger(String name, String where) {
+            if (!triggers.contains(name)) {
+                fail(where + " refers to unknown trigger '" + name + "' of " + triggerType.getQualifiedName());
+                return false;
+            }
+            return true;
+        }
+
+        private boolean checkGuard(String name) {
+            if (name.isEmpty()) {
+                return true;
+            }
+            ExecutableElement method = findCallable(name, "Guard");
+            if (method != null && method.getReturnType().getKind() != TypeKind.BOOLEAN) {
+                fail(method, "Guard '" + name + "' must return boolean");
+                return false;
+            }
+            return method != null;
+        }
+
+        private boolean checkAction(String name, String where) {
+            return name.isEmpty() || findCallable(name, where) != null;
+        }
+
+        private ExecutableElement findCallable(String name, String where) {
+            for (ExecutableElement method : methodsNamed(name)) {
+                if (isCallable(method)) {
+                    return method;
+                }
+            }
+            fail(where + " '" + name + "' must be a non-private, non-static method of "
+                    + definition.getSimpleName() + " without parameters");
+            return null;
+        }
+
+        private List<ExecutableElement> methodsNamed(String name) {
+            List<ExecutableElement> result = new ArrayList<>();
+            for (ExecutableElement method : methods) {
+                if (method.getSimpleName().contentEquals(name)) {
+                    result.add(method);
+                }
+            }
+            return result;
+        }
+
+        private boolean isCallable(ExecutableElement method) {
+            Set<Modifier> modifiers = method.getModifiers();
+            return method.getParameters().isEmpty()
+                    && !modifiers.contains(Modifier.PRIVATE)
+                    && !modifiers.contains(Modifier.STATIC);
+        }
+
+        private void fail(String message) {
+            fail(definition, message);
+        }
+
+        private void fail(Element element, String message) {
+            error(element, message);
+            valid = false;
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
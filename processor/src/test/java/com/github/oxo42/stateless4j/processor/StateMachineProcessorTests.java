@@ -0,0 +1,312 @@
+package com.github.oxo42.stateless4j.processor;
+
+import com.github.oxo42.stateless4j.Machine;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StateMachineProcessorTests {
+
+    private static final String PHONE_CALL = String.join("\n",
+            "package phone;",
+            "",
+            "import com.github.oxo42.stateless4j.annotations.*;",
+            "",
+            "@StateMachineDefinition(states = State.class, triggers = Trigger.class, initialState = \"OffHook\")",
+            "@Permit(from = \"OffHook\", trigger = \"CallDialed\", to = \"Ringing\")",
+            "@Permit(from = \"Ringing\", trigger = \"CallConnected\", to = \"Connected\")",
+            "@Permit(from = \"Connected\", trigger = \"LeftMessage\", to = \"OffHook\", action = \"messageHasBeenLeft\")",
+            "@Permit(from = \"Connected\", trigger = \"HungUp\", to = \"OffHook\")",
+            "@Permit(from = \"Connected\", trigger = \"PlacedOnHold\", to = \"OnHold\")",
+            "@Permit(from = \"OnHold\", trigger = \"TakenOffHold\", to = \"Connected\")",
+            "@Permit(from = \"OnHold\", trigger = \"HungUp\", to = \"OffHook\", guard = \"isAngry\")",
+            "@IgnoreTrigger(state = \"OnHold\", trigger = \"HungUp\", guard = \"isCalm\")",
+            "@IgnoreTrigger(state = \"Connected\", trigger = \"CallDialed\", guard = \"isBusy\")",
+            "@SubstateOf(state = \"OnHold\", superstate = \"Connected\")",
+            "public interface PhoneCall {",
+            "    boolean isAngry();",
+            "    boolean isCalm();",
+            "    boolean isBusy();",
+            "    void messageHasBeenLeft();",
+            "    @OnEntry(\"Connected\") void startCallTimer();",
+            "    @OnExit(\"Connected\") void stopCallTimer();",
+            "    @OnEntry({\"OnHold\", \"Ringing\"}) void playMusic();",
+            "    @OnExit(\"OnHold\") void stopMusic();",
+            "}",
+            "",
+            "enum State { OffHook, Ringing, Connected, OnHold }",
+            "",
+            "enum Trigger { CallDialed, CallConnected, LeftMessage, HungUp, PlacedOnHold, TakenOffHold }",
+            "");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> calls = new ArrayList<>();
+    private boolean angry;
+    private boolean busy;
+    private Class<?> stateType;
+    private Class<?> triggerType;
+    private Object machine;
+
+    private static final class Compilation {
+        final boolean success;
+        final List<String> errors = new ArrayList<>();
+        final File output;
+
+        Compilation(boolean success, File output) {
+            this.success = success;
+            this.output = output;
+        }
+    }
+
+    private Compilation compile(String fileName, String source) throws Exception {
+        File sources = folder.newFolder();
+        File output = folder.newFolder();
+        File file = new File(sources, fileName);
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        try (StandardJavaFileManager files = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            List<String> options = Arrays.asList(
+                    "-classpath", System.getProperty("java.class.path"),
+                    "-processor", StateMachineProcessor.class.getName(),
+                    "-s", output.getPath(),
+                    "-d", output.getPath());
+            boolean success = compiler.getTask(null, files, diagnostics, options, null,
+                    files.getJavaFileObjects(file)).call();
+            Compilation compilation = new Compilation(success, output);
+            for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                    compilation.errors.add(diagnostic.getMessage(null));
+                }
+            }
+            return compilation;
+        }
+    }
+
+    private void createPhoneCall() throws Exception {
+        createPhoneCall(PHONE_CALL);
+    }
+
+    private void createPhoneCall(String source) throws Exception {
+        Compilation compilation = compile("PhoneCall.java", source);
+        assertTrue(compilation.errors.toString(), compilation.success);
+
+        ClassLoader loader = new URLClassLoader(new URL[]{compilation.output.toURI().toURL()}, getClass().getClassLoader());
+        Class<?> definition = loader.loadClass("phone.PhoneCall");
+        stateType = loader.loadClass("phone.State");
+        triggerType = loader.loadClass("phone.Trigger");
+        Object handler = Proxy.newProxyInstance(loader, new Class<?>[]{definition}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "isAngry":
+                    return angry;
+                case "isCalm":
+                    return !angry;
+                case "isBusy":
+                    return busy;
+                default:
+                    calls.add(method.getName());
+                    return null;
+            }
+        });
+        machine = loader.loadClass("phone.PhoneCallStateMachine").getConstructor(definition).newInstance(handler);
+    }
+
+    private Object call(String name, Object... args) throws Exception {
+        for (Method method : machine.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterCount() == args.length) {
+                try {
+                    return method.invoke(machine, args);
+                } catch (InvocationTargetException e) {
+                    throw (Exception) e.getCause();
+                }
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object state(String name) {
+        return Enum.valueOf((Class) stateType, name);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void fire(String trigger) throws Exception {
+        call("fire", Enum.valueOf((Class) triggerType, trigger));
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private boolean canFire(String trigger) throws Exception {
+        return (Boolean) call("canFire", Enum.valueOf((Class) triggerType, trigger));
+    }
+
+    @Test
+    public void GeneratedMachineTransitionsAndRunsActions() throws Exception {
+        createPhoneCall();
+        assertEquals(state("OffHook"), call("getState"));
+
+        fire("CallDialed");
+        fire("CallConnected");
+        fire("LeftMessage");
+
+        assertEquals(state("OffHook"), call("getState"));
+        assertEquals(Arrays.asList("playMusic", "startCallTimer", "stopCallTimer", "messageHasBeenLeft"), calls);
+    }
+
+    @Test
+    public void SubstateKeepsSuperstateAndInheritsTransitions() throws Exception {
+        createPhoneCall();
+        fire("CallDialed");
+        fire("CallConnected");
+        fire("PlacedOnHold");
+
+        assertTrue((Boolean) call("isInState", state("Connected")));
+        assertTrue((Boolean) call("isInState", state("OnHold")));
+        assertFalse((Boolean) call("isInState", state("Ringing")));
+
+        fire("TakenOffHold");
+        fire("PlacedOnHold");
+        angry = true;
+        fire("HungUp");
+
+        assertEquals(state("OffHook"), call("getState"));
+        assertEquals(Arrays.asList("playMusic", "startCallTimer", "playMusic", "stopMusic", "playMusic",
+                "stopMusic", "stopCallTimer"), calls);
+    }
+
+    @Test
+    public void GuardsSelectBetweenBehaviours() throws Exception {
+        createPhoneCall();
+        fire("CallDialed");
+        fire("CallConnected");
+        fire("PlacedOnHold");
+        calls.clear();
+
+        fire("HungUp");
+        assertEquals(state("OnHold"), call("getState"));
+        assertTrue(calls.isEmpty());
+
+        fire("TakenOffHold");
+        assertFalse(canFire("CallDialed"));
+        busy = true;
+        assertTrue(canFire("CallDialed"));
+        fire("CallDialed");
+        assertEquals(state("Connected"), call("getState"));
+    }
+
+    @Test
+    public void OverlappingGuardsThrowLikeStateMachine() throws Exception {
+        createPhoneCall(PHONE_CALL.replace(", guard = \"isCalm\")", ")"));
+        fire("CallDialed");
+        fire("CallConnected");
+        fire("PlacedOnHold");
+
+        fire("HungUp");
+        assertEquals(state("OnHold"), call("getState"));
+
+        angry = true;
+        try {
+            canFire("HungUp");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Guard clauses must be mutually exclusive"));
+        }
+        try {
+            fire("HungUp");
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("Multiple permitted exit transitions are configured from state 'OnHold' for trigger "
+                    + "'HungUp'. Guard clauses must be mutually exclusive.", e.getMessage());
+        }
+        assertEquals(state("OnHold"), call("getState"));
+    }
+
+    @Test
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void GeneratedMachineIsAMachine() throws Exception {
+        createPhoneCall();
+        Machine generated = (Machine) machine;
+
+        assertTrue(generated.canFire(Enum.valueOf((Class) triggerType, "CallDialed")));
+        generated.fire(Enum.valueOf((Class) triggerType, "CallDialed"));
+        assertEquals(state("Ringing"), generated.getState());
+        assertTrue(generated.isInState(state("Ringing")));
+    }
+
+    @Test
+    public void UnhandledTriggerThrows() throws Exception {
+        createPhoneCall();
+        assertFalse(canFire("HungUp"));
+        try {
+            fire("HungUp");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().contains("'OffHook'"));
+        }
+    }
+
+    @Test
+    public void GeneratedSourceHasNoMapsLambdasOrReflection() throws Exception {
+        Compilation compilation = compile("PhoneCall.java", PHONE_CALL);
+        String source = new String(Files.readAllBytes(
+                new File(compilation.output, "phone/PhoneCallStateMachine.java").toPath()), StandardCharsets.UTF_8);
+
+        assertFalse(source.contains("Map"));
+        assertFalse(source.contains("->"));
+        assertFalse(source.contains("reflect"));
+        assertTrue(source.contains("switch (trigger)"));
+    }
+
+    @Test
+    public void UnknownNamesAreCompileErrors() throws Exception {
+        String source = PHONE_CALL
+                .replace("to = \"Ringing\")", "to = \"Ringin\")")
+                .replace("trigger = \"HungUp\", to = \"OffHook\")", "trigger = \"HangUp\", to = \"OffHook\")")
+                .replace("guard = \"isAngry\"", "guard = \"messageHasBeenLeft\"");
+        Compilation compilation = compile("PhoneCall.java", source);
+
+        assertFalse(compilation.success);
+        assertTrue(compilation.errors.toString(), compilation.errors.contains(
+                "@Permit refers to unknown state 'Ringin' of phone.State"));
+        assertTrue(compilation.errors.toString(), compilation.errors.contains(
+                "@Permit refers to unknown trigger 'HangUp' of phone.Trigger"));
+        assertTrue(compilation.errors.toString(), compilation.errors.contains(
+                "Guard 'messageHasBeenLeft' must return boolean"));
+    }
+
+    @Test
+    public void SubstateCyclesAreCompileErrors() throws Exception {
+        String source = PHONE_CALL.replace("public interface PhoneCall {",
+                "@SubstateOf(state = \"Connected\", superstate = \"OnHold\")\npublic interface PhoneCall {");
+        Compilation compilation = compile("PhoneCall.java", source);
+
+        assertFalse(compilation.success);
+        assertEquals(1, compilation.errors.size());
+        assertTrue(compilation.errors.get(0), compilation.errors.get(0).contains("creates a cycle"));
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.transitions.Transition;
+
+/**
+ * Runs a plain {@link Action} where an action receiving the transition or the trigger arguments is expected.
+ * Unlike a lambda the adapter keeps the action reachable, so {@link ConfigSnapshot} can find its binding id.
+ */
+abstract class ActionAdapter {
+
+    private final Action action;
+
+    ActionAdapter(Action action) {
+        this.action = action;
+    }
+
+    Action getAction() {
+        return action;
+    }
+
+    /**
+     * Entry or exit action ignoring the transition
+     */
+    static final class ForTransition<S, T> extends ActionAdapter
+            implements Action1<Transition<S, T>>, Action2<Transition<S, T>, Object[]> {
+
+        ForTransition(Action action) {
+            super(action);
+        }
+
+        @Override
+        public void doIt(Transition<S, T> transition) {
+            getAction().doIt();
+        }
+
+        @Override
+        public void doIt(Transition<S, T> transition, Object[] args) {
+            getAction().doIt();
+        }
+    }
+
+    /**
+     * Internal transition action ignoring the trigger arguments
+     */
+    static final class ForArguments extends ActionAdapter implements Action1<Object[]> {
+
+        ForArguments(Action action) {
+            super(action);
+        }
+
+        @Override
+        public void doIt(Object[] args) {
+            getAction().doIt();
+        }
+    }
+}
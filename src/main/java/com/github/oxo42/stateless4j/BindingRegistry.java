@@ -0,0 +1,85 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Guards and actions registered under stable ids, so a {@link ConfigSnapshot} can refer to them by id.
+ * <p>
+ * Register each guard and action before passing it to a {@link StateConfiguration}; the registry returns the same
+ * instance, so configurations built with it run exactly as without it. Loading a snapshot requires a registry
+ * holding the same ids.
+ */
+public class BindingRegistry {
+
+    private final Map<String, Object> bindings = new HashMap<>();
+    private final Map<Object, String> ids = new IdentityHashMap<>();
+
+    /**
+     * Register a guard condition
+     *
+     * @param id    The id of the guard, unique within the registry
+     * @param guard The guard condition
+     * @return The guard condition
+     */
+    public FuncBoolean guard(final String id, final FuncBoolean guard) {
+        return bind(id, guard);
+    }
+
+    /**
+     * Register an entry, exit, transition or internal transition action
+     *
+     * @param id     The id of the action, unique within the registry
+     * @param action The action
+     * @return The action
+     */
+    public Action action(final String id, final Action action) {
+        return bind(id, action);
+    }
+
+    private <D> D bind(final String id, final D delegate) {
+        requireNonNull(id, "id is null");
+        requireNonNull(delegate, "delegate is null");
+        if (bindings.containsKey(id)) {
+            throw new IllegalArgumentException("Binding id '" + id + "' is already registered");
+        }
+        String existing = ids.get(delegate);
+        if (existing != null) {
+            throw new IllegalArgumentException("Delegate is already registered as '" + existing + "'");
+        }
+        bindings.put(id, delegate);
+        ids.put(delegate, id);
+        return delegate;
+    }
+
+    /**
+     * The id a guard or action was registered under
+     *
+     * @return The id, or null if the delegate is not registered
+     */
+    String getId(final Object delegate) {
+        return ids.get(delegate);
+    }
+
+    FuncBoolean getGuard(final String id) {
+        return get(id, FuncBoolean.class, "guard");
+    }
+
+    Action getAction(final String id) {
+        return get(id, Action.class, "action");
+    }
+
+    private <D> D get(final String id, final Class<D> type, final String kind) {
+        Object delegate = bindings.get(id);
+        if (!type.isInstance(delegate)) {
+            throw new IllegalStateException("No " + kind + " is registered as '" + id + "'");
+        }
+        return type.cast(delegate);
+    }
+}
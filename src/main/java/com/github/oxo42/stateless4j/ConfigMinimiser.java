@@ -0,0 +1,296 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.DynamicTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.IgnoredTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.InternalTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Merges equivalent states of a configuration, such as the many identical states of generated configurations.
+ * <p>
+ * Only the static part of a configuration is minimised. A state can be merged with other states if it has no
+ * substates, no entry or exit actions for specific triggers and, per trigger, a single unguarded transition,
+ * ignore or internal transition. States can be merged if, in addition, they have the same superstate, the same
+ * entry and exit actions, the same transition and internal actions per trigger, and their transitions lead to
+ * states that can be merged in turn. Equivalence is found by partition refinement, so the states of a group need
+ * not be identical but must only behave identically from then on.
+ * <p>
+ * Actions are compared by identity. Plain {@link com.github.oxo42.stateless4j.delegates.Action}s passed to
+ * {@code onEntry}, {@code onExit} and {@code permit} compare equal when the same instance is used for several
+ * states; other actions are wrapped on configuration and keep their states apart.
+ * <p>
+ * Each group is replaced by its smallest state if the states are comparable, and otherwise by the state found
+ * first. Guarded and dynamic transitions of the remaining states are kept, with their destinations mapped to
+ * the replacing states. Use {@link Result#getState(Object)} to map states of existing machines, for example
+ * persisted ones, before using them with the minimised configuration.
+ */
+public final class ConfigMinimiser {
+
+    private ConfigMinimiser() {
+    }
+
+    /**
+     * Builds a configuration in which equivalent states are merged. The configuration must not change while it
+     * is minimised.
+     *
+     * @param config The configuration
+     * @param <S>    The type used to represent the states
+     * @param <T>    The type used to represent the triggers
+     * @return The minimised configuration, frozen if the original one is, and the mapping of the states
+     */
+    public static <S, T> Result<S, T> minimise(final StateMachineConfig<S, T> config) {
+        requireNonNull(config, "config is null");
+        List<S> states = collectStates(config);
+        Map<S, Integer> indices = new HashMap<>();
+        for (int i = 0; i < states.size(); i++) {
+            indices.put(states.get(i), i);
+        }
+        Map<T, Integer> symbols = new HashMap<>();
+        for (StateRepresentation<S, T> representation : config.getRepresentations()) {
+            for (T trigger : representation.getTriggerBehaviours().keySet()) {
+                if (!symbols.containsKey(trigger)) {
+                    symbols.put(trigger, symbols.size());
+                }
+            }
+        }
+
+        int[][] transitions = new int[states.size()][symbols.size()];
+        int[] labels = new int[states.size()];
+        Map<List<Object>, Integer> signatures = new HashMap<>();
+        for (int s = 0; s < states.size(); s++) {
+            Arrays.fill(transitions[s], -1);
+            List<Object> signature = signature(config.getRepresentation(states.get(s)), transitions[s], symbols, indices);
+            if (signature == null) {
+                labels[s] = -1 - s;
+                continue;
+            }
+            Integer label = signatures.get(signature);
+            if (label == null) {
+                label = signatures.size();
+                signatures.put(signature, label);
+            }
+            labels[s] = label;
+        }
+
+        int[] blocks = PartitionRefinement.refine(transitions, symbols.size(), labels);
+        List<S> representatives = new ArrayList<>();
+        Map<S, S> mapping = new LinkedHashMap<>();
+        for (int s = 0; s < states.size(); s++) {
+            if (blocks[s] == representatives.size()) {
+                representatives.add(states.get(s));
+            }
+            mapping.put(states.get(s), representatives.get(blocks[s]));
+        }
+        return new Result<>(build(config, representatives, mapping), mapping, representatives.size());
+    }
+
+    /**
+     * The configured states and the destinations of their transitions, sorted if they are comparable
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static <S, T> List<S> collectStates(StateMachineConfig<S, T> config) {
+        Set<S> found = new LinkedHashSet<>();
+        boolean comparable = true;
+        for (StateRepresentation<S, T> representation : config.getRepresentations()) {
+            found.add(representation.getUnderlyingState());
+            for (List<TriggerBehaviour<S, T>> behaviours : representation.getTriggerBehaviours().values()) {
+                for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                    if (behaviour instanceof TransitioningTriggerBehaviour) {
+                        found.add(((TransitioningTriggerBehaviour<S, T>) behaviour).getDestination());
+                    }
+                }
+            }
+        }
+        List<S> states = new ArrayList<>(found);
+        for (S state : states) {
+            comparable &= state instanceof Comparable;
+        }
+        if (comparable) {
+            try {
+                Collections.sort((List) states);
+            } catch (ClassCastException e) {
+                return new ArrayList<>(found);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * The properties a state must share with the states it is merged with, filling in the destinations of its
+     * transitions
+     *
+     * @return The signature, or null if the state cannot be merged
+     */
+    private static <S, T> List<Object> signature(StateRepresentation<S, T> representation, int[] transitions,
+                                                 Map<T, Integer> symbols, Map<S, Integer> indices) {
+        if (representation == null) {
+            return Arrays.asList(null, Collections.emptyList(), Collections.emptyList(), Collections.emptyMap());
+        }
+        if (!representation.getSubstates().isEmpty() || representation.hasTriggerSpecificActions()
+                || !representation.getFirstMatchGuards().isEmpty()) {
+            return null;
+        }
+        Map<T, Object> handled = new HashMap<>();
+        Map<Integer, Integer> destinations = new HashMap<>();
+        for (Map.Entry<T, List<TriggerBehaviour<S, T>>> entry : representation.getTriggerBehaviours().entrySet()) {
+            List<TriggerBehaviour<S, T>> behaviours = entry.getValue();
+            if (behaviours.size() != 1 || behaviours.get(0).isGuarded()) {
+                return null;
+            }
+            TriggerBehaviour<S, T> behaviour = behaviours.get(0);
+            if (behaviour instanceof TransitioningTriggerBehaviour) {
+                S destination = ((TransitioningTriggerBehaviour<S, T>) behaviour).getDestination();
+                destinations.put(symbols.get(entry.getKey()), indices.get(destination));
+                handled.put(entry.getKey(), Arrays.asList("permit",
+                        actionKey(((TransitioningTriggerBehaviour<S, T>) behaviour).getAction())));
+            } else if (behaviour instanceof InternalTriggerBehaviour) {
+                handled.put(entry.getKey(), Arrays.asList("internal",
+                        actionKey(((InternalTriggerBehaviour<S, T>) behaviour).getAction())));
+            } else if (behaviour instanceof IgnoredTriggerBehaviour) {
+                handled.put(entry.getKey(), "ignore");
+            } else {
+                return null;
+            }
+        }
+        for (Map.Entry<Integer, Integer> destination : destinations.entrySet()) {
+            transitions[destination.getKey()] = destination.getValue();
+        }
+        StateRepresentation<S, T> superstate = representation.getSuperstate();
+        return Arrays.asList(superstate == null ? null : superstate.getUnderlyingState(),
+                actionKeys(representation.getEntryActions()), actionKeys(representation.getExitActions()), handled);
+    }
+
+    private static List<Object> actionKeys(List<?> actions) {
+        List<Object> keys = new ArrayList<>(actions.size());
+        for (Object action : actions) {
+            keys.add(actionKey(action));
+        }
+        return keys;
+    }
+
+    private static Object actionKey(Object action) {
+        return action instanceof ActionAdapter ? ((ActionAdapter) action).getAction() : action;
+    }
+
+    private static <S, T> StateMachineConfig<S, T> build(StateMachineConfig<S, T> config, List<S> representatives,
+                                                       Map<S, S> mapping) {
+        StateMachineConfig<S, T> minimised = new StateMachineConfig<>();
+        minimised.copySettingsFrom(config);
+        for (S state : representatives) {
+            StateRepresentation<S, T> original = config.getRepresentation(state);
+            if (original == null) {
+                continue;
+            }
+            StateRepresentation<S, T> copy = minimised.getOrCreateRepresentation(state);
+            copy.copyActionsFrom(original);
+            for (List<TriggerBehaviour<S, T>> behaviours : original.getTriggerBehaviours().values()) {
+                for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                    copy.addTriggerBehaviour(remap(behaviour, mapping));
+                }
+            }
+            for (Map.Entry<T, FirstMatchGuards<S, T>> entry : original.getFirstMatchGuards().entrySet()) {
+                copy.setGuardsMutuallyExclusive(entry.getKey(), entry.getValue().isAdaptive());
+            }
+            if (original.getSuperstate() != null) {
+                StateRepresentation<S, T> superstate =
+                        minimised.getOrCreateRepresentation(original.getSuperstate().getUnderlyingState());
+                copy.setSuperstate(superstate);
+                superstate.addSubstate(copy);
+            }
+        }
+        if (config.isFrozen()) {
+            minimised.freeze();
+        }
+        return minimised;
+    }
+
+    private static <S, T> TriggerBehaviour<S, T> remap(final TriggerBehaviour<S, T> behaviour, final Map<S, S> mapping) {
+        if (behaviour instanceof TransitioningTriggerBehaviour) {
+            TransitioningTriggerBehaviour<S, T> transition = (TransitioningTriggerBehaviour<S, T>) behaviour;
+            S destination = mapping.get(transition.getDestination());
+            if (destination.equals(transition.getDestination())) {
+                return behaviour;
+            }
+            return new TransitioningTriggerBehaviour<>(transition.getTrigger(), destination, transition.getGuard(),
+                    transition.getAction());
+        }
+        if (behaviour instanceof DynamicTriggerBehaviour) {
+            return new DynamicTriggerBehaviour<>(behaviour.getTrigger(), args -> {
+                OutVar<S> destination = new OutVar<>();
+                behaviour.resultsInTransitionFrom(null, args, destination);
+                S mapped = mapping.get(destination.get());
+                return mapped == null ? destination.get() : mapped;
+            }, behaviour.getGuard(), behaviour::performAction);
+        }
+        return behaviour;
+    }
+
+    /**
+     * A minimised configuration and the state each original state was replaced by
+     *
+     * @param <S> The type used to represent the states
+     * @param <T> The type used to represent the triggers
+     */
+    public static final class Result<S, T> {
+
+        private final StateMachineConfig<S, T> config;
+        private final Map<S, S> mapping;
+        private final int stateCount;
+
+        Result(StateMachineConfig<S, T> config, Map<S, S> mapping, int stateCount) {
+            this.config = config;
+            this.mapping = Collections.unmodifiableMap(mapping);
+            this.stateCount = stateCount;
+        }
+
+        public StateMachineConfig<S, T> getConfig() {
+            return config;
+        }
+
+        /**
+         * @return The replacing state of every configured state and transition destination of the original
+         * configuration
+         */
+        public Map<S, S> getMapping() {
+            return mapping;
+        }
+
+        /**
+         * The state replacing a state of the original configuration
+         *
+         * @param state The original state
+         * @return The replacing state, or the state itself if it was not part of the original configuration
+         */
+        public S getState(final S state) {
+            S mapped = mapping.get(state);
+            return mapped == null ? state : mapped;
+        }
+
+        /**
+         * @return The number of states of the minimised configuration, including transition destinations
+         */
+        public int getStateCount() {
+            return stateCount;
+        }
+
+        /**
+         * @return The number of states merged into other states
+         */
+        public int getMergedCount() {
+            return mapping.size() - stateCount;
+        }
+    }
+}
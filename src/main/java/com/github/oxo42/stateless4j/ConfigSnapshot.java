@@ -0,0 +1,429 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.IgnoredTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.InternalTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compact binary form of a frozen configuration with enum states and triggers, loaded without running the
+ * configuration code again.
+ * <p>
+ * A snapshot holds the state hierarchy, static, reentry, ignored and internal transitions, entry and exit
+ * actions and mutually exclusive guard declarations. Guards and actions are stored as the ids they were
+ * registered under in a {@link BindingRegistry} and bound again from a registry when the snapshot is loaded.
+ * States and triggers are stored by name, so reordering enum constants does not invalidate a snapshot.
+ * <p>
+ * Dynamic transitions, trigger parameters, trigger specific entry and exit actions and actions wrapped by an
+ * {@link com.github.oxo42.stateless4j.metrics.ActionProfiler} cannot be written.
+ */
+public final class ConfigSnapshot {
+
+    static final int MAGIC = 0x53344A43; // "S4JC"
+    static final short VERSION = 1;
+
+    private static final byte TRANSITION = 0;
+    private static final byte IGNORED = 1;
+    private static final byte INTERNAL = 2;
+    private static final int NONE = -1;
+    private static final byte ENTRY_ACTION_OF_INITIAL_STATE = 1;
+
+    private ConfigSnapshot() {
+    }
+
+    /**
+     * Writes the snapshot of a frozen configuration to a file
+     *
+     * @param config      The frozen configuration
+     * @param stateType   The type used to represent the states
+     * @param triggerType The type used to represent the triggers
+     * @param bindings    The registry every guard and action of the configuration was registered in
+     * @param file        The file to write
+     * @param <S>         The type used to represent the states
+     * @param <T>         The type used to represent the triggers
+     * @throws IOException If the file cannot be written
+     */
+    public static <S extends Enum<S>, T extends Enum<T>> void write(
+            final StateMachineConfig<S, T> config,
+            final Class<S> stateType,
+            final Class<T> triggerType,
+            final BindingRegistry bindings,
+            final Path file) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            write(config, stateType, triggerType, bindings, out);
+        }
+    }
+
+    /**
+     * Writes the snapshot of a frozen configuration to a stream, which is flushed but not closed
+     *
+     * @param config      The frozen configuration
+     * @param stateType   The type used to represent the states
+     * @param triggerType The type used to represent the triggers
+     * @param bindings    The registry every guard and action of the configuration was registered in
+     * @param stream      The stream to write to
+     * @param <S>         The type used to represent the states
+     * @param <T>         The type used to represent the triggers
+     * @throws IOException If the stream fails
+     */
+    public static <S extends Enum<S>, T extends Enum<T>> void write(
+            final StateMachineConfig<S, T> config,
+            final Class<S> stateType,
+            final Class<T> triggerType,
+            final BindingRegistry bindings,
+            final OutputStream stream) throws IOException {
+        requireNonNull(config, "config is null");
+        requireNonNull(stateType, "stateType is null");
+        requireNonNull(triggerType, "triggerType is null");
+        requireNonNull(bindings, "bindings is null");
+        requireNonNull(stream, "stream is null");
+        if (!config.isFrozen()) {
+            throw new IllegalStateException("Only frozen configurations can be written to a snapshot");
+        }
+        if (config.hasTriggerParameters()) {
+            throw new IllegalStateException("Trigger parameters cannot be written to a snapshot");
+        }
+
+        List<String> ids = new ArrayList<>();
+        Map<String, Integer> idIndexes = new HashMap<>();
+        List<StateRepresentation<S, T>> representations = new ArrayList<>(config.getRepresentations());
+        List<int[]> encoded = new ArrayList<>();
+        for (StateRepresentation<S, T> representation : representations) {
+            encoded.add(encode(representation, bindings, ids, idIndexes));
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeByte(config.isEntryActionOfInitialStateEnabled() ? ENTRY_ACTION_OF_INITIAL_STATE : 0);
+        writeString(out, stateType.getName());
+        writeString(out, triggerType.getName());
+        writeNames(out, stateType.getEnumConstants());
+        writeNames(out, triggerType.getEnumConstants());
+        out.writeInt(ids.size());
+        for (String id : ids) {
+            writeString(out, id);
+        }
+        out.writeInt(representations.size());
+        for (int i = 0; i < representations.size(); i++) {
+            StateRepresentation<S, T> representation = representations.get(i);
+            out.writeInt(ordinalOf(representation.getUnderlyingState()));
+            out.writeInt(representation.getSuperstate() == null
+                    ? NONE
+                    : ordinalOf(representation.getSuperstate().getUnderlyingState()));
+            for (int value : encoded.get(i)) {
+                out.writeInt(value);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Encodes entry and exit actions, behaviours and mutually exclusive guards of a state as a list of ints:
+     * counts followed by binding indexes, (kind, trigger, destination, guard, action) per behaviour and
+     * (trigger, adaptive) per mutually exclusive guard declaration
+     */
+    private static <S, T> int[] encode(StateRepresentation<S, T> representation, BindingRegistry bindings,
+                                       List<String> ids, Map<String, Integer> idIndexes) {
+        S state = representation.getUnderlyingState();
+        if (representation.hasTriggerSpecificActions()) {
+            throw new IllegalStateException("Trigger specific entry or exit actions of state '" + state
+                    + "' cannot be written to a snapshot");
+        }
+        List<Integer> values = new ArrayList<>();
+
+        List<Action2<Transition<S, T>, Object[]>> entryActions = representation.getEntryActions();
+        values.add(entryActions.size());
+        for (int i = 0; i < entryActions.size(); i++) {
+            values.add(bindingIndex(adapted(entryActions.get(i)), bindings, ids, idIndexes,
+                    "Entry action #" + (i + 1) + " of state '" + state + "'"));
+        }
+        List<Action1<Transition<S, T>>> exitActions = representation.getExitActions();
+        values.add(exitActions.size());
+        for (int i = 0; i < exitActions.size(); i++) {
+            values.add(bindingIndex(adapted(exitActions.get(i)), bindings, ids, idIndexes,
+                    "Exit action #" + (i + 1) + " of state '" + state + "'"));
+        }
+
+        int countIndex = values.size();
+        values.add(0);
+        for (List<TriggerBehaviour<S, T>> behaviours : representation.getTriggerBehaviours().values()) {
+            for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                String description = "'" + state + "' --" + behaviour.getTrigger() + "-->";
+                int kind;
+                int destination = NONE;
+                Object action = null;
+                if (behaviour instanceof TransitioningTriggerBehaviour) {
+                    TransitioningTriggerBehaviour<S, T> transition = (TransitioningTriggerBehaviour<S, T>) behaviour;
+                    kind = TRANSITION;
+                    destination = ordinalOf(transition.getDestination());
+                    action = transition.getAction() == StateConfiguration.NO_ACTION ? null : transition.getAction();
+                } else if (behaviour instanceof IgnoredTriggerBehaviour) {
+                    kind = IGNORED;
+                } else if (behaviour instanceof InternalTriggerBehaviour) {
+                    kind = INTERNAL;
+                    Action1<Object[]> internal = ((InternalTriggerBehaviour<S, T>) behaviour).getAction();
+                    action = internal == StateConfiguration.NO_ACTION_N ? null : adapted(internal);
+                } else {
+                    throw new IllegalStateException("Transition " + description + " cannot be written to a snapshot, "
+                            + "only static, reentry, ignored and internal transitions are supported");
+                }
+                values.add(kind);
+                values.add(ordinalOf(behaviour.getTrigger()));
+                values.add(destination);
+                values.add(behaviour.getGuard() == TriggerBehaviour.NO_GUARD
+                        ? NONE
+                        : bindingIndex(behaviour.getGuard(), bindings, ids, idIndexes, "Guard of " + description));
+                values.add(action == null
+                        ? NONE
+                        : bindingIndex(action, bindings, ids, idIndexes, "Action of " + description));
+                values.set(countIndex, values.get(countIndex) + 1);
+            }
+        }
+
+        Map<T, FirstMatchGuards<S, T>> firstMatchGuards = representation.getFirstMatchGuards();
+        values.add(firstMatchGuards.size());
+        for (Map.Entry<T, FirstMatchGuards<S, T>> entry : firstMatchGuards.entrySet()) {
+            values.add(ordinalOf(entry.getKey()));
+            values.add(entry.getValue().isAdaptive() ? 1 : 0);
+        }
+
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    private static Object adapted(Object action) {
+        return action instanceof ActionAdapter ? ((ActionAdapter) action).getAction() : action;
+    }
+
+    private static int bindingIndex(Object delegate, BindingRegistry bindings, List<String> ids,
+                                    Map<String, Integer> idIndexes, String description) {
+        String id = bindings.getId(delegate);
+        if (id == null) {
+            throw new IllegalStateException(description + " is not registered in the binding registry");
+        }
+        Integer index = idIndexes.get(id);
+        if (index == null) {
+            index = ids.size();
+            ids.add(id);
+            idIndexes.put(id, index);
+        }
+        return index;
+    }
+
+    private static int ordinalOf(Object constant) {
+        return ((Enum<?>) constant).ordinal();
+    }
+
+    private static void writeNames(DataOutputStream out, Enum<?>[] constants) throws IOException {
+        out.writeInt(constants.length);
+        for (Enum<?> constant : constants) {
+            writeString(out, constant.name());
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Loads a snapshot into a new, frozen configuration. The file is mapped into memory and states, triggers,
+     * guards and actions are resolved by name and id.
+     *
+     * @param file        The snapshot file
+     * @param stateType   The type used to represent the states
+     * @param triggerType The type used to represent the triggers
+     * @param bindings    The registry holding the guards and actions the snapshot refers to
+     * @param <S>         The type used to represent the states
+     * @param <T>         The type used to represent the triggers
+     * @return The frozen configuration
+     * @throws IOException If the file cannot be read or is not a snapshot of the given types, including a
+     *                     snapshot naming constants the types no longer have
+     */
+    public static <S extends Enum<S>, T extends Enum<T>> StateMachineConfig<S, T> load(
+            final Path file,
+            final Class<S> stateType,
+            final Class<T> triggerType,
+            final BindingRegistry bindings) throws IOException {
+        requireNonNull(file, "file is null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), stateType, triggerType, bindings);
+        }
+    }
+
+    /**
+     * Loads a snapshot from a buffer into a new, frozen configuration
+     *
+     * @param buffer      The buffer positioned at the start of the snapshot
+     * @param stateType   The type used to represent the states
+     * @param triggerType The type used to represent the triggers
+     * @param bindings    The registry holding the guards and actions the snapshot refers to
+     * @param <S>         The type used to represent the states
+     * @param <T>         The type used to represent the triggers
+     * @return The frozen configuration
+     * @throws IOException If the buffer does not hold a snapshot of the given types, including a snapshot
+     *                     naming constants the types no longer have
+     * @see #load(Path, Class, Class, BindingRegistry)
+     */
+    public static <S extends Enum<S>, T extends Enum<T>> StateMachineConfig<S, T> load(
+            final ByteBuffer buffer,
+            final Class<S> stateType,
+            final Class<T> triggerType,
+            final BindingRegistry bindings) throws IOException {
+        requireNonNull(buffer, "buffer is null");
+        requireNonNull(stateType, "stateType is null");
+        requireNonNull(triggerType, "triggerType is null");
+        requireNonNull(bindings, "bindings is null");
+        try {
+            return read(buffer, stateType, triggerType, bindings);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt state machine snapshot", e);
+        }
+    }
+
+    private static <S extends Enum<S>, T extends Enum<T>> StateMachineConfig<S, T> read(
+            ByteBuffer buffer, Class<S> stateType, Class<T> triggerType, BindingRegistry bindings) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a state machine snapshot");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        byte flags = buffer.get();
+        checkType(readString(buffer), stateType);
+        checkType(readString(buffer), triggerType);
+        List<S> states = readConstants(buffer, stateType);
+        List<T> triggers = readConstants(buffer, triggerType);
+        String[] ids = new String[readCount(buffer, Integer.BYTES)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = readString(buffer);
+        }
+
+        StateMachineConfig<S, T> config = new StateMachineConfig<>();
+        if ((flags & ENTRY_ACTION_OF_INITIAL_STATE) != 0) {
+            config.enableEntryActionOfInitialState();
+        }
+        int representationCount = buffer.getInt();
+        for (int i = 0; i < representationCount; i++) {
+            StateRepresentation<S, T> representation = config.getOrCreateRepresentation(states.get(buffer.getInt()));
+            int superstate = buffer.getInt();
+            if (superstate != NONE) {
+                StateRepresentation<S, T> superRepresentation = config.getOrCreateRepresentation(states.get(superstate));
+                representation.setSuperstate(superRepresentation);
+                superRepresentation.addSubstate(representation);
+            }
+            for (int entryCount = buffer.getInt(); entryCount > 0; entryCount--) {
+                representation.addEntryAction(new ActionAdapter.ForTransition<S, T>(bindings.getAction(ids[buffer.getInt()])));
+            }
+            for (int exitCount = buffer.getInt(); exitCount > 0; exitCount--) {
+                representation.addExitAction(new ActionAdapter.ForTransition<S, T>(bindings.getAction(ids[buffer.getInt()])));
+            }
+            for (int behaviourCount = buffer.getInt(); behaviourCount > 0; behaviourCount--) {
+                representation.addTriggerBehaviour(readBehaviour(buffer, states, triggers, ids, bindings));
+            }
+            for (int exclusiveCount = buffer.getInt(); exclusiveCount > 0; exclusiveCount--) {
+                representation.setGuardsMutuallyExclusive(triggers.get(buffer.getInt()), buffer.getInt() != 0);
+            }
+        }
+        config.freeze();
+        return config;
+    }
+
+    private static <S, T> TriggerBehaviour<S, T> readBehaviour(ByteBuffer buffer, List<S> states, List<T> triggers,
+                                                               String[] ids, BindingRegistry bindings) throws IOException {
+        int kind = buffer.getInt();
+        T trigger = triggers.get(buffer.getInt());
+        int destination = buffer.getInt();
+        int guardIndex = buffer.getInt();
+        int actionIndex = buffer.getInt();
+        FuncBoolean guard = guardIndex == NONE ? TriggerBehaviour.NO_GUARD : bindings.getGuard(ids[guardIndex]);
+        Action action = actionIndex == NONE ? null : bindings.getAction(ids[actionIndex]);
+        switch (kind) {
+            case TRANSITION:
+                return new TransitioningTriggerBehaviour<>(trigger, states.get(destination), guard,
+                        action == null ? StateConfiguration.NO_ACTION : action);
+            case IGNORED:
+                return new IgnoredTriggerBehaviour<>(trigger, guard);
+            case INTERNAL:
+                return new InternalTriggerBehaviour<>(trigger, guard,
+                        action == null ? StateConfiguration.NO_ACTION_N : new ActionAdapter.ForArguments(action));
+            default:
+                throw new IOException("Unknown transition kind " + kind);
+        }
+    }
+
+    private static void checkType(String name, Class<?> type) throws IOException {
+        if (!name.equals(type.getName())) {
+            throw new IOException("Snapshot was written for " + name + ", not " + type.getName());
+        }
+    }
+
+    /**
+     * Resolves the constant names of the snapshot, all of which must still exist in the enum
+     */
+    private static <E extends Enum<E>> List<E> readConstants(ByteBuffer buffer, Class<E> type) throws IOException {
+        int count = readCount(buffer, Integer.BYTES);
+        Map<String, E> byName = new HashMap<>();
+        for (E constant : type.getEnumConstants()) {
+            byName.put(constant.name(), constant);
+        }
+        List<E> constants = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String name = readString(buffer);
+            E constant = byName.get(name);
+            if (constant == null) {
+                throw new IOException("Snapshot refers to constant '" + name + "' of " + type.getName()
+                        + ", which no longer exists");
+            }
+            constants.add(constant);
+        }
+        return constants;
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        byte[] bytes = new byte[readCount(buffer, 1)];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the number of elements that follow, checked against the remaining bytes before anything is allocated
+     */
+    private static int readCount(ByteBuffer buffer, int minimumElementSize) throws IOException {
+        int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / minimumElementSize) {
+            throw new IOException("Corrupt state machine snapshot, " + count + " elements do not fit in the remaining "
+                    + buffer.remaining() + " bytes");
+        }
+        return count;
+    }
+}
@@ -0,0 +1,204 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.jfr.FlightRecorderEvents;
+import com.github.oxo42.stateless4j.jfr.GuardEvaluationEvent;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Handler lookup for a frozen configuration whose triggers are enums and whose states are enums or densely
+ * numbered integers, such as the states of a compiled {@link TriggerPattern}.
+ * <p>
+ * Representations are indexed by state ordinal, or by the value of integer states, and every (state, trigger)
+ * pair is resolved once into a cell of a dense array, so a fire costs two array loads instead of a hash lookup per
+ * state in the superstate chain. A cell is null if the trigger is not configured in the state or its superstates,
+ * the behaviour itself if the nearest configured state has a single unguarded behaviour for it, and otherwise the
+ * states configuring the trigger, nearest first, which are asked in turn as
+ * {@link StateRepresentation#tryFindHandler(Object)} would. Cells holding a single behaviour evaluate no guard and
+ * emit no guard evaluation event.
+ * <p>
+ * States or triggers of another type fall back to the representations, so behaviour never differs from an
+ * unfrozen configuration.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class DispatchTable<S, T> {
+
+    private final Class<?> stateClass;
+    private final Class<?> triggerClass;
+    private final int triggerCount;
+    private final StateRepresentation<S, T>[] representations;
+    private final Object[] cells;
+
+    @SuppressWarnings("unchecked")
+    private DispatchTable(Class<?> stateClass, int stateCount, Class<?> triggerClass,
+                          Collection<StateRepresentation<S, T>> states) {
+        this.stateClass = stateClass;
+        this.triggerClass = triggerClass;
+        Object[] triggerConstants = triggerClass.getEnumConstants();
+        triggerCount = triggerConstants.length;
+        representations = newRepresentations(stateCount);
+        cells = new Object[stateCount * triggerCount];
+
+        for (StateRepresentation<S, T> representation : states) {
+            int stateOrdinal = ordinal(representation.getUnderlyingState());
+            representations[stateOrdinal] = representation;
+            for (Object trigger : triggerConstants) {
+                cells[stateOrdinal * triggerCount + ((Enum<?>) trigger).ordinal()] = resolve(representation, (T) trigger);
+            }
+        }
+    }
+
+    /**
+     * Builds the table if all configured triggers are constants of one enum type, and all configured states are
+     * either constants of one enum type or non-negative integers below twice the number of states
+     *
+     * @return The table, or null if the configuration does not qualify
+     */
+    static <S, T> DispatchTable<S, T> tryCreate(Map<S, StateRepresentation<S, T>> states) {
+        Class<?> stateClass = null;
+        Class<?> triggerClass = null;
+        int stateCount = 0;
+        for (StateRepresentation<S, T> representation : states.values()) {
+            S state = representation.getUnderlyingState();
+            if (state instanceof Integer && (stateClass == null || stateClass == Integer.class)) {
+                int value = (Integer) state;
+                if (value < 0 || value >= 2 * states.size()) {
+                    return null;
+                }
+                stateClass = Integer.class;
+                stateCount = Math.max(stateCount, value + 1);
+            } else {
+                stateClass = commonEnumClass(stateClass, state);
+                if (stateClass == null) {
+                    return null;
+                }
+                stateCount = stateClass.getEnumConstants().length;
+            }
+            for (T trigger : representation.getTriggerBehaviours().keySet()) {
+                triggerClass = commonEnumClass(triggerClass, trigger);
+                if (triggerClass == null) {
+                    return null;
+                }
+            }
+        }
+        if (stateClass == null || triggerClass == null) {
+            return null;
+        }
+        return new DispatchTable<>(stateClass, stateCount, triggerClass, states.values());
+    }
+
+    private static int ordinal(Object state) {
+        return state instanceof Enum ? ((Enum<?>) state).ordinal() : (Integer) state;
+    }
+
+    /**
+     * The index of a state into the representations
+     *
+     * @return The index, or -1 if the state is of another type or out of range
+     */
+    private int stateIndex(Object state) {
+        if (!stateClass.isInstance(state)) {
+            return -1;
+        }
+        int index = ordinal(state);
+        return index >= 0 && index < representations.length ? index : -1;
+    }
+
+    private static Class<?> commonEnumClass(Class<?> known, Object value) {
+        if (!(value instanceof Enum)) {
+            return null;
+        }
+        Class<?> type = ((Enum<?>) value).getDeclaringClass();
+        return known == null || known == type ? type : null;
+    }
+
+    /**
+     * Resolves the handler lookup of a trigger in a state as far as possible without evaluating guards
+     *
+     * @return Null if the trigger is not configured, the behaviour if it is the single unguarded behaviour of the
+     * nearest configured state, and otherwise the states configuring the trigger, nearest first
+     */
+    static <S, T> Object resolve(StateRepresentation<S, T> representation, T trigger) {
+        List<StateRepresentation<S, T>> owners = new ArrayList<>();
+        for (StateRepresentation<S, T> current = representation; current != null; current = current.getSuperstate()) {
+            if (current.getTriggerBehaviours().containsKey(trigger)) {
+                owners.add(current);
+            }
+        }
+        if (owners.isEmpty()) {
+            return null;
+        }
+        StateRepresentation<S, T> nearest = owners.get(0);
+        List<TriggerBehaviour<S, T>> behaviours = nearest.getTriggerBehaviours().get(trigger);
+        if (behaviours.size() == 1 && !behaviours.get(0).isGuarded() && !nearest.hasMutuallyExclusiveGuards(trigger)) {
+            return behaviours.get(0);
+        }
+        return owners.toArray(new StateRepresentation<?, ?>[owners.size()]);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S, T> StateRepresentation<S, T>[] newRepresentations(int count) {
+        return (StateRepresentation<S, T>[]) new StateRepresentation<?, ?>[count];
+    }
+
+    /**
+     * The representation of a configured state
+     *
+     * @return The representation, or null if the state is not configured
+     */
+    StateRepresentation<S, T> getRepresentation(S state) {
+        int index = stateIndex(state);
+        return index < 0 ? null : representations[index];
+    }
+
+    /**
+     * Finds the handler for the trigger like {@link StateRepresentation#tryFindHandler(Object)}
+     */
+    @SuppressWarnings("unchecked")
+    TriggerBehaviour<S, T> tryFindHandler(StateRepresentation<S, T> representation, T trigger) {
+        int index = indexOf(representation, trigger);
+        if (index < 0) {
+            return representation.tryFindHandler(trigger);
+        }
+        Object cell = cells[index];
+        if (cell instanceof TriggerBehaviour) {
+            return (TriggerBehaviour<S, T>) cell;
+        }
+
+        GuardEvaluationEvent event = FlightRecorderEvents.beginGuardEvaluation();
+        TriggerBehaviour<S, T> result = null;
+        if (cell != null) {
+            StateRepresentation<S, T>[] owners = (StateRepresentation<S, T>[]) cell;
+            for (int i = 0; result == null && i < owners.length; i++) {
+                result = owners[i].tryFindLocalHandler(trigger);
+            }
+        }
+        FlightRecorderEvents.commitGuardEvaluation(event, representation.getUnderlyingState(), trigger, result != null);
+        return result;
+    }
+
+    /**
+     * Checks like {@link StateRepresentation#isTriggerConfigured(Object)}
+     */
+    boolean isTriggerConfigured(StateRepresentation<S, T> representation, T trigger) {
+        int index = indexOf(representation, trigger);
+        return index < 0 ? representation.isTriggerConfigured(trigger) : cells[index] != null;
+    }
+
+    private int indexOf(StateRepresentation<S, T> representation, T trigger) {
+        int stateOrdinal = stateIndex(representation.getUnderlyingState());
+        if (stateOrdinal < 0 || !triggerClass.isInstance(trigger)) {
+            return -1;
+        }
+        if (representations[stateOrdinal] != representation) {
+            return -1;
+        }
+        return stateOrdinal * triggerCount + ((Enum<?>) trigger).ordinal();
+    }
+}
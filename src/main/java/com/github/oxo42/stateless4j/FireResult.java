@@ -0,0 +1,89 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * Outcome of {@link StateMachine#tryFire(Object)}
+ * <p>
+ * Outcomes that leave the machine in its state are shared between fires, so results must not be compared
+ * by identity.
+ *
+ * @param <S> The type used to represent the states
+ */
+public final class FireResult<S> {
+
+    /**
+     * How a fired trigger was handled
+     */
+    public enum Status {
+        /**
+         * The machine left the source state and entered the destination state
+         */
+        TRANSITIONED,
+        /**
+         * An internal transition ran its action, the state did not change
+         */
+        INTERNAL,
+        /**
+         * The trigger is ignored in the current state
+         */
+        IGNORED,
+        /**
+         * The trigger is not configured for the current state or its superstates
+         */
+        UNHANDLED,
+        /**
+         * The trigger is configured for the current state, but no guard condition is met
+         */
+        GUARD_REJECTED
+    }
+
+    private final Status status;
+    private final S source;
+    private final S destination;
+
+    FireResult(Status status, S source, S destination) {
+        this.status = status;
+        this.source = source;
+        this.destination = destination;
+    }
+
+    /**
+     * How the trigger was handled
+     *
+     * @return How the trigger was handled
+     */
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * The state the trigger was fired in
+     *
+     * @return The state the trigger was fired in
+     */
+    public S getSource() {
+        return source;
+    }
+
+    /**
+     * The state the machine is in after firing
+     *
+     * @return The state the machine is in after firing, equal to the source unless transitioned
+     */
+    public S getDestination() {
+        return destination;
+    }
+
+    /**
+     * True if the trigger was accepted in the source state
+     *
+     * @return False for {@link Status#UNHANDLED} and {@link Status#GUARD_REJECTED}, true otherwise
+     */
+    public boolean isHandled() {
+        return status != Status.UNHANDLED && status != Status.GUARD_REJECTED;
+    }
+
+    @Override
+    public String toString() {
+        return "FireResult { Status = " + status + ", Source = " + source + ", Destination = " + destination + " }";
+    }
+}
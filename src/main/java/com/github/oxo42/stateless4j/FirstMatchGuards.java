@@ -0,0 +1,86 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Handler selection for a trigger whose guards are declared mutually exclusive. Guards are evaluated
+ * until the first one is met.
+ * <p>
+ * With adaptive ordering the candidates are periodically re-sorted by how often their guard was met, so
+ * the most likely guard is evaluated first. Hit counters are updated without synchronization and are
+ * therefore approximate when the configuration is shared between threads. The candidate array itself is
+ * replaced atomically, so concurrent selections always see a complete candidate list.
+ */
+final class FirstMatchGuards<S, T> {
+
+    static final int REORDER_INTERVAL = 1024;
+
+    private static final Comparator<Candidate<?, ?>> BY_HITS_DESCENDING =
+            (left, right) -> Long.compare(right.hits, left.hits);
+
+    private final boolean adaptive;
+    private volatile Candidate<S, T>[] candidates;
+    private int selections;
+
+    FirstMatchGuards(final boolean adaptive) {
+        this.adaptive = adaptive;
+        this.candidates = newCandidates(0);
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    void add(final TriggerBehaviour<S, T> triggerBehaviour) {
+        Candidate<S, T>[] current = candidates;
+        Candidate<S, T>[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = new Candidate<>(triggerBehaviour);
+        candidates = extended;
+    }
+
+    TriggerBehaviour<S, T> select() {
+        Candidate<S, T>[] current = candidates;
+        for (int i = 0; i < current.length; i++) {
+            Candidate<S, T> candidate = current[i];
+            if (candidate.triggerBehaviour.isGuardConditionMet()) {
+                if (adaptive) {
+                    candidate.hits++;
+                    if (++selections >= REORDER_INTERVAL) {
+                        selections = 0;
+                        reorder(current);
+                    }
+                }
+                return candidate.triggerBehaviour;
+            }
+        }
+        return null;
+    }
+
+    private void reorder(final Candidate<S, T>[] current) {
+        Candidate<S, T>[] sorted = current.clone();
+        Arrays.sort(sorted, BY_HITS_DESCENDING);
+        for (Candidate<S, T> candidate : sorted) {
+            // age the counters, so the order follows changes in the distribution
+            candidate.hits >>>= 1;
+        }
+        candidates = sorted;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S, T> Candidate<S, T>[] newCandidates(int count) {
+        return (Candidate<S, T>[]) new Candidate<?, ?>[count];
+    }
+
+    private static final class Candidate<S, T> {
+
+        private final TriggerBehaviour<S, T> triggerBehaviour;
+        private long hits;
+
+        Candidate(final TriggerBehaviour<S, T> triggerBehaviour) {
+            this.triggerBehaviour = triggerBehaviour;
+        }
+    }
+}
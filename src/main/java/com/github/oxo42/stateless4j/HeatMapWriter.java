@@ -0,0 +1,192 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.metrics.StateMachineMetrics;
+import com.github.oxo42.stateless4j.metrics.TriggerMetrics;
+import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.DynamicTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the transitions of a configuration as a Graphviz DOT graph, coloured by the observed transition counts
+ * and latencies. Lines are written as they are produced, so memory use does not grow with the number of states.
+ * <p>
+ * Edge width grows with the number of observed transitions, edge colour goes from blue to red with the mean time
+ * spent in exit, transition and entry actions. Unobserved static transitions are grey, dynamic transitions are
+ * dashed and drawn to each observed destination. Superstates become clusters containing their substates.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+final class HeatMapWriter<S, T> {
+
+    private static final double MAX_PEN_WIDTH = 8.0;
+
+    private final Collection<StateRepresentation<S, T>> states;
+    private final StateMachineMetrics<S, T> metrics;
+    private final Writer out;
+    private long maxCount;
+    private double maxLatency;
+
+    HeatMapWriter(Collection<StateRepresentation<S, T>> states, StateMachineMetrics<S, T> metrics, Writer out) {
+        this.states = states;
+        this.metrics = metrics;
+        this.out = out;
+    }
+
+    void write() throws IOException {
+        computeScale();
+        out.write("digraph G {\n");
+        out.write("\tcompound=true;\n");
+        out.write("\tnode [shape=box, style=rounded];\n");
+
+        for (StateRepresentation<S, T> state : states) {
+            if (state.getSuperstate() == null && !state.getSubstates().isEmpty()) {
+                writeCluster(state, "\t");
+            }
+        }
+        for (StateRepresentation<S, T> state : states) {
+            writeConfiguredEdges(state);
+        }
+        writeInheritedEdges();
+
+        out.write("}\n");
+        out.flush();
+    }
+
+    private void computeScale() {
+        if (metrics == null) {
+            return;
+        }
+        metrics.forEach((state, trigger, m) -> {
+            for (Long count : m.getDestinationCounts().values()) {
+                maxCount = Math.max(maxCount, count);
+            }
+            maxLatency = Math.max(maxLatency, meanLatency(m));
+        });
+    }
+
+    private void writeCluster(StateRepresentation<S, T> superstate, String indent) throws IOException {
+        out.write(indent + "subgraph " + quote("cluster_" + superstate.getUnderlyingState()) + " {\n");
+        out.write(indent + "\tlabel=" + quote(String.valueOf(superstate.getUnderlyingState())) + ";\n");
+        out.write(indent + "\t" + quote(superstate.getUnderlyingState()) + ";\n");
+        for (StateRepresentation<S, T> substate : superstate.getSubstates()) {
+            if (substate.getSubstates().isEmpty()) {
+                out.write(indent + "\t" + quote(substate.getUnderlyingState()) + ";\n");
+            } else {
+                writeCluster(substate, indent + "\t");
+            }
+        }
+        out.write(indent + "}\n");
+    }
+
+    private void writeConfiguredEdges(StateRepresentation<S, T> state) throws IOException {
+        S source = state.getUnderlyingState();
+        for (Map.Entry<T, List<TriggerBehaviour<S, T>>> entry : state.getTriggerBehaviours().entrySet()) {
+            T trigger = entry.getKey();
+            TriggerMetrics<S> observed = metrics == null ? null : metrics.getTriggerMetrics(source, trigger);
+            for (TriggerBehaviour<S, T> behaviour : entry.getValue()) {
+                if (behaviour instanceof TransitioningTriggerBehaviour) {
+                    S destination = ((TransitioningTriggerBehaviour<S, T>) behaviour).getDestination();
+                    Long count = observed == null ? null : observed.getDestinationCounts().get(destination);
+                    writeEdge(source, destination, trigger, observed, count == null ? 0 : count, false);
+                } else if (behaviour instanceof DynamicTriggerBehaviour) {
+                    writeObservedEdges(source, trigger, observed, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Transitions configured on a superstate are recorded under the substate they were fired in
+     */
+    private void writeInheritedEdges() throws IOException {
+        if (metrics == null) {
+            return;
+        }
+        for (StateRepresentation<S, T> state : states) {
+            if (state.getSuperstate() == null) {
+                continue;
+            }
+            S source = state.getUnderlyingState();
+            for (StateRepresentation<S, T> ancestor = state.getSuperstate(); ancestor != null; ancestor = ancestor.getSuperstate()) {
+                for (Map.Entry<T, List<TriggerBehaviour<S, T>>> entry : ancestor.getTriggerBehaviours().entrySet()) {
+                    T trigger = entry.getKey();
+                    if (isConfiguredBelow(state, ancestor, trigger)) {
+                        continue;
+                    }
+                    boolean dynamic = false;
+                    for (TriggerBehaviour<S, T> behaviour : entry.getValue()) {
+                        dynamic |= behaviour instanceof DynamicTriggerBehaviour;
+                    }
+                    writeObservedEdges(source, trigger, metrics.getTriggerMetrics(source, trigger), dynamic);
+                }
+            }
+        }
+    }
+
+    private boolean isConfiguredBelow(StateRepresentation<S, T> state, StateRepresentation<S, T> ancestor, T trigger) {
+        for (StateRepresentation<S, T> current = state; current != ancestor; current = current.getSuperstate()) {
+            if (current.getTriggerBehaviours().containsKey(trigger)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeObservedEdges(S source, T trigger, TriggerMetrics<S> observed, boolean dynamic) throws IOException {
+        if (observed == null) {
+            return;
+        }
+        for (Map.Entry<S, Long> destination : observed.getDestinationCounts().entrySet()) {
+            writeEdge(source, destination.getKey(), trigger, observed, destination.getValue(), dynamic);
+        }
+    }
+
+    private void writeEdge(S source, S destination, T trigger, TriggerMetrics<S> observed, long count, boolean dynamic)
+            throws IOException {
+        StringBuilder attributes = new StringBuilder();
+        if (count == 0) {
+            attributes.append("label=").append(quote(String.valueOf(trigger))).append(", color=gray");
+        } else {
+            double latency = meanLatency(observed);
+            attributes.append("label=").append(quote(trigger + " (" + count + ", " + Math.round(latency / 1000) + "us)"))
+                    .append(", penwidth=").append(String.format(Locale.ROOT, "%.2f", 1.0 + (MAX_PEN_WIDTH - 1.0) * count / maxCount))
+                    .append(", weight=").append(count)
+                    .append(", color=").append(quote(heatColour(latency)));
+        }
+        if (dynamic) {
+            attributes.append(", style=dashed");
+        }
+        out.write("\t" + quote(source) + " -> " + quote(destination) + " [" + attributes + "];\n");
+    }
+
+    /**
+     * HSV colour from blue (fastest) to red (slowest observed)
+     */
+    private String heatColour(double latency) {
+        double heat = maxLatency == 0 ? 0.0 : latency / maxLatency;
+        return String.format(Locale.ROOT, "%.3f 1.000 0.900", 0.667 * (1.0 - heat));
+    }
+
+    private static double meanLatency(TriggerMetrics<?> m) {
+        long samples = m.getActionLatency().getCount();
+        if (samples == 0) {
+            return 0.0;
+        }
+        long total = m.getExitLatency().getTotalNanos()
+                + m.getActionLatency().getTotalNanos()
+                + m.getEntryLatency().getTotalNanos();
+        return (double) total / samples;
+    }
+
+    private static String quote(Object id) {
+        return "\"" + String.valueOf(id).replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
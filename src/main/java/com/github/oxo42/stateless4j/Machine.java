@@ -0,0 +1,41 @@
+package com.github.oxo42.stateless4j;
+
+/**
+ * The operations shared by {@link StateMachine} and the state machines generated at build time by the
+ * stateless4j processor, so code driving a machine does not depend on how it is implemented
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public interface Machine<S, T> {
+
+    /**
+     * The current state
+     *
+     * @return The current state
+     */
+    S getState();
+
+    /**
+     * Determine if the state machine is in the supplied state
+     *
+     * @param state The state to test for
+     * @return True if the current state is equal to, or a substate of, the supplied state
+     */
+    boolean isInState(S state);
+
+    /**
+     * Returns true if {@code trigger} can be fired in the current state
+     *
+     * @param trigger Trigger to test
+     * @return True if the trigger can be fired, false otherwise
+     */
+    boolean canFire(T trigger);
+
+    /**
+     * Transition from the current state via the specified trigger
+     *
+     * @param trigger The trigger to fire
+     */
+    void fire(T trigger);
+}
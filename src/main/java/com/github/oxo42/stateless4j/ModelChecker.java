@@ -0,0 +1,573 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.DynamicTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Checks a configuration for unreachable states, dead ends and triggers whose guards can hold at the same
+ * time, without running any guard or action.
+ * <p>
+ * Guards are treated as independent boolean variables that may take any value whenever a trigger is fired.
+ * Starting from the initial states, every handled trigger of every reachable state is looked up under every
+ * valuation of the guards involved, the way {@link StateRepresentation#tryFindHandler(Object)} would, to find
+ * the successor states. Guards that can never hold together, such as {@code x > 0} and {@code x < 0}, can be
+ * declared with {@link #assumeExclusive(FuncBoolean...)}; valuations contradicting these assumptions are skipped.
+ * <p>
+ * The search proceeds breadth first, one level of newly discovered states at a time. Each level is split
+ * into fork/join tasks over chunks of states, and further if a trigger has many guard valuations, so the
+ * depth of the tasks does not grow with the length of paths. States are deduplicated in a concurrent map that
+ * also records how each state was first reached. Violations carry such a path of triggers from an initial state as a counterexample.
+ * <p>
+ * Reported violations:
+ * <ul>
+ * <li>{@link Violation.Kind#AMBIGUOUS_GUARDS}: a state and trigger for which the guards of more than one
+ * behaviour can hold, which makes firing the trigger throw. Triggers whose guards were declared mutually
+ * exclusive in the configuration are not reported; all their matching behaviours are explored instead.</li>
+ * <li>{@link Violation.Kind#DEAD_END}: a reachable state that no trigger can leave and that is not declared
+ * {@link #addFinalState(Object) final}.</li>
+ * <li>{@link Violation.Kind#UNREACHABLE_STATE}: a state of the configuration that is not reachable. A
+ * superstate is reachable if one of its substates is.</li>
+ * </ul>
+ * Destinations of dynamic transitions are not known, so they are not explored, see
+ * {@link Result#hasDynamicTransitions()}.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers
+ */
+public class ModelChecker<S, T> {
+
+    private static final int SPLIT_THRESHOLD = 1024;
+    private static final int CHUNK_SIZE = 64;
+
+    private final StateMachineConfig<S, T> config;
+    private final Map<FuncBoolean, List<Integer>> exclusiveGroups = new IdentityHashMap<>();
+    private final Set<S> finalStates = new HashSet<>();
+    private int groupCount;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private int maxGuardsPerTrigger = 20;
+
+    /**
+     * Creates a checker for a configuration, which must not change while it is checked
+     *
+     * @param config The configuration
+     */
+    public ModelChecker(final StateMachineConfig<S, T> config) {
+        this.config = requireNonNull(config, "config is null");
+    }
+
+    /**
+     * Declares that at most one of the guards holds at any time
+     *
+     * @param guards The guards
+     */
+    public void assumeExclusive(final FuncBoolean... guards) {
+        requireNonNull(guards, "guards is null");
+        int group = groupCount++;
+        for (FuncBoolean guard : guards) {
+            exclusiveGroups.computeIfAbsent(requireNonNull(guard, "guard is null"), g -> new ArrayList<>()).add(group);
+        }
+    }
+
+    /**
+     * Declares a state in which the machine may stop, so it is not reported as a dead end
+     *
+     * @param state The state
+     */
+    public void addFinalState(final S state) {
+        finalStates.add(requireNonNull(state, "state is null"));
+    }
+
+    /**
+     * Sets the pool running the search, the common pool by default. The pool is not shut down by the checker.
+     *
+     * @param pool The pool
+     */
+    public void setPool(final ForkJoinPool pool) {
+        this.pool = requireNonNull(pool, "pool is null");
+    }
+
+    /**
+     * Sets the maximum number of distinct guards involved in the lookup of a single trigger, 20 by default.
+     * The number of valuations checked grows with 2 to the power of this number.
+     *
+     * @param maxGuardsPerTrigger The maximum number of guards, at most 62
+     */
+    public void setMaxGuardsPerTrigger(final int maxGuardsPerTrigger) {
+        if (maxGuardsPerTrigger <= 0 || maxGuardsPerTrigger > 62) {
+            throw new IllegalArgumentException("maxGuardsPerTrigger must be between 1 and 62");
+        }
+        this.maxGuardsPerTrigger = maxGuardsPerTrigger;
+    }
+
+    /**
+     * Explores the states reachable from the initial states and reports the violations found
+     *
+     * @param initialStates The states machines start in
+     * @return The reachable states and the violations
+     * @throws IllegalStateException If a trigger involves more guards than the configured maximum
+     */
+    @SafeVarargs
+    public final Result<S, T> check(final S... initialStates) {
+        requireNonNull(initialStates, "initialStates is null");
+        if (initialStates.length == 0) {
+            throw new IllegalArgumentException("At least one initial state is required");
+        }
+        Search search = new Search();
+        List<S> frontier = new ArrayList<>();
+        for (S initial : initialStates) {
+            if (search.parents.putIfAbsent(requireNonNull(initial, "initial state is null"), Step.ROOT) == null) {
+                frontier.add(initial);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            ConcurrentLinkedQueue<S> next = new ConcurrentLinkedQueue<>();
+            pool.invoke(new FrontierTask(search, frontier, 0, frontier.size(), next));
+            frontier = new ArrayList<>(next);
+        }
+        return search.result();
+    }
+
+    /**
+     * How a state was first reached
+     */
+    private static final class Step {
+
+        static final Step ROOT = new Step(null, null);
+
+        final Object parent;
+        final Object trigger;
+
+        Step(Object parent, Object trigger) {
+            this.parent = parent;
+            this.trigger = trigger;
+        }
+    }
+
+    /**
+     * Shared state of one check
+     */
+    private final class Search {
+
+        final ConcurrentHashMap<S, Step> parents = new ConcurrentHashMap<>();
+        final Set<S> leavable = ConcurrentHashMap.newKeySet();
+        final Set<List<Object>> reported = ConcurrentHashMap.newKeySet();
+        final ConcurrentLinkedQueue<Violation<S, T>> violations = new ConcurrentLinkedQueue<>();
+        final LongAdder combinations = new LongAdder();
+        volatile boolean dynamic;
+
+        /**
+         * Records a newly discovered state
+         *
+         * @return True if the state was not discovered before
+         */
+        boolean discover(S state, S parent, T trigger) {
+            return parents.putIfAbsent(state, new Step(parent, trigger)) == null;
+        }
+
+        @SuppressWarnings("unchecked")
+        List<T> pathTo(S state) {
+            List<T> path = new ArrayList<>();
+            for (Step step = parents.get(state); step != Step.ROOT; step = parents.get((S) step.parent)) {
+                path.add((T) step.trigger);
+            }
+            Collections.reverse(path);
+            return path;
+        }
+
+        void reportAmbiguity(S state, S declaringState, T trigger, List<S> destinations) {
+            if (reported.add(Arrays.asList(state, declaringState, trigger))) {
+                violations.add(new Violation<>(Violation.Kind.AMBIGUOUS_GUARDS, state, trigger, pathTo(state),
+                        "Guards of more than one transition from state '" + declaringState + "' for trigger '"
+                                + trigger + "' can hold at the same time, e.g. those to " + destinations));
+            }
+        }
+
+        Result<S, T> result() {
+            Set<S> reachable = new HashSet<>(parents.keySet());
+            List<Violation<S, T>> found = new ArrayList<>(violations);
+            for (S state : parents.keySet()) {
+                if (!leavable.contains(state) && !finalStates.contains(state)) {
+                    found.add(new Violation<>(Violation.Kind.DEAD_END, state, null, pathTo(state),
+                            "State '" + state + "' cannot be left"));
+                }
+                StateRepresentation<S, T> representation = config.getRepresentation(state);
+                for (StateRepresentation<S, T> r = representation == null ? null : representation.getSuperstate();
+                     r != null; r = r.getSuperstate()) {
+                    reachable.add(r.getUnderlyingState());
+                }
+            }
+            Set<S> known = new LinkedHashSet<>();
+            for (StateRepresentation<S, T> representation : config.getRepresentations()) {
+                known.add(representation.getUnderlyingState());
+                for (List<TriggerBehaviour<S, T>> behaviours : representation.getTriggerBehaviours().values()) {
+                    for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                        if (behaviour instanceof TransitioningTriggerBehaviour) {
+                            known.add(((TransitioningTriggerBehaviour<S, T>) behaviour).getDestination());
+                        }
+                    }
+                }
+            }
+            for (S state : known) {
+                if (!reachable.contains(state)) {
+                    found.add(new Violation<>(Violation.Kind.UNREACHABLE_STATE, state, null,
+                            Collections.<T>emptyList(), "State '" + state + "' is not reachable"));
+                }
+            }
+            return new Result<>(reachable, found, combinations.sum(), dynamic);
+        }
+    }
+
+    /**
+     * Explores the triggers handled in a range of states of one level, collecting the states of the next level
+     */
+    @SuppressWarnings("serial")
+    private final class FrontierTask extends RecursiveAction {
+
+        private final Search search;
+        private final List<S> frontier;
+        private final int from;
+        private final int to;
+        private final Collection<S> next;
+
+        FrontierTask(Search search, List<S> frontier, int from, int to, Collection<S> next) {
+            this.search = search;
+            this.frontier = frontier;
+            this.from = from;
+            this.to = to;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new FrontierTask(search, frontier, from, middle, next),
+                        new FrontierTask(search, frontier, middle, to, next));
+                return;
+            }
+            List<ValuationTask> tasks = new ArrayList<>();
+            for (int i = from; i < to; i++) {
+                StateRepresentation<S, T> representation = config.getRepresentation(frontier.get(i));
+                if (representation == null) {
+                    continue;
+                }
+                Set<T> triggers = new LinkedHashSet<>();
+                for (StateRepresentation<S, T> r = representation; r != null; r = r.getSuperstate()) {
+                    triggers.addAll(r.getTriggerBehaviours().keySet());
+                }
+                for (T trigger : triggers) {
+                    TriggerLookup lookup = new TriggerLookup(search, representation, trigger);
+                    if (lookup.valuations() > SPLIT_THRESHOLD) {
+                        tasks.add(new ValuationTask(lookup, 0, lookup.valuations(), next));
+                    } else {
+                        lookup.explore(0, lookup.valuations(), next);
+                    }
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Explores a range of guard valuations of one trigger, splitting large ranges
+     */
+    @SuppressWarnings("serial")
+    private final class ValuationTask extends RecursiveAction {
+
+        private final TriggerLookup lookup;
+        private final long from;
+        private final long to;
+        private final Collection<S> next;
+
+        ValuationTask(TriggerLookup lookup, long from, long to, Collection<S> next) {
+            this.lookup = lookup;
+            this.from = from;
+            this.to = to;
+            this.next = next;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > SPLIT_THRESHOLD) {
+                long middle = (from + to) >>> 1;
+                invokeAll(new ValuationTask(lookup, from, middle, next), new ValuationTask(lookup, middle, to, next));
+            } else {
+                lookup.explore(from, to, next);
+            }
+        }
+    }
+
+    /**
+     * The lookup of one trigger in one state, with the guards involved numbered as bits of a valuation
+     */
+    private final class TriggerLookup {
+
+        private final Search search;
+        private final StateRepresentation<S, T> representation;
+        private final T trigger;
+        private final Map<FuncBoolean, Integer> bits = new IdentityHashMap<>();
+        private final long[] exclusiveMasks;
+
+        TriggerLookup(Search search, StateRepresentation<S, T> representation, T trigger) {
+            this.search = search;
+            this.representation = representation;
+            this.trigger = trigger;
+            Map<Integer, Long> masks = new HashMap<>();
+            for (StateRepresentation<S, T> r = representation; r != null; r = r.getSuperstate()) {
+                List<TriggerBehaviour<S, T>> behaviours = r.getTriggerBehaviours().get(trigger);
+                if (behaviours == null) {
+                    continue;
+                }
+                for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                    FuncBoolean guard = behaviour.getGuard();
+                    if (!behaviour.isGuarded() || bits.containsKey(guard)) {
+                        continue;
+                    }
+                    if (bits.size() == maxGuardsPerTrigger) {
+                        throw new IllegalStateException("More than " + maxGuardsPerTrigger + " guards are involved in "
+                                + "firing trigger '" + trigger + "' in state '" + representation.getUnderlyingState() + "'");
+                    }
+                    int bit = bits.size();
+                    bits.put(guard, bit);
+                    List<Integer> groups = exclusiveGroups.get(guard);
+                    if (groups != null) {
+                        for (Integer group : groups) {
+                            masks.merge(group, 1L << bit, (a, b) -> a | b);
+                        }
+                    }
+                }
+            }
+            exclusiveMasks = new long[masks.size()];
+            int i = 0;
+            for (Long mask : masks.values()) {
+                exclusiveMasks[i++] = mask;
+            }
+        }
+
+        long valuations() {
+            return 1L << bits.size();
+        }
+
+        /**
+         * Explores a range of valuations, adding newly discovered destinations to the next level
+         */
+        void explore(long from, long to, Collection<S> next) {
+            S state = representation.getUnderlyingState();
+            List<TriggerBehaviour<S, T>> matches = new ArrayList<>();
+            for (long valuation = from; valuation < to; valuation++) {
+                if (!isPossible(valuation)) {
+                    continue;
+                }
+                search.combinations.increment();
+                StateRepresentation<S, T> handler = findHandlers(valuation, matches);
+                if (handler == null) {
+                    continue;
+                }
+                if (matches.size() > 1 && !handler.hasMutuallyExclusiveGuards(trigger)) {
+                    search.reportAmbiguity(state, handler.getUnderlyingState(), trigger, destinations(matches));
+                    continue;
+                }
+                for (TriggerBehaviour<S, T> behaviour : matches) {
+                    if (behaviour instanceof TransitioningTriggerBehaviour) {
+                        S destination = ((TransitioningTriggerBehaviour<S, T>) behaviour).getDestination();
+                        if (!destination.equals(state)) {
+                            search.leavable.add(state);
+                        }
+                        if (search.discover(destination, state, trigger)) {
+                            next.add(destination);
+                        }
+                    } else if (behaviour instanceof DynamicTriggerBehaviour) {
+                        search.dynamic = true;
+                        search.leavable.add(state);
+                    }
+                }
+            }
+        }
+
+        private boolean isPossible(long valuation) {
+            for (long mask : exclusiveMasks) {
+                if (Long.bitCount(valuation & mask) > 1) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Collects the behaviours whose guards hold in the first state of the hierarchy that has any
+         *
+         * @return The state the behaviours are configured in, or null if the trigger is not handled
+         */
+        private StateRepresentation<S, T> findHandlers(long valuation, List<TriggerBehaviour<S, T>> matches) {
+            for (StateRepresentation<S, T> r = representation; r != null; r = r.getSuperstate()) {
+                List<TriggerBehaviour<S, T>> behaviours = r.getTriggerBehaviours().get(trigger);
+                if (behaviours == null) {
+                    continue;
+                }
+                matches.clear();
+                for (TriggerBehaviour<S, T> behaviour : behaviours) {
+                    if (!behaviour.isGuarded() || (valuation & (1L << bits.get(behaviour.getGuard()))) != 0) {
+                        matches.add(behaviour);
+                    }
+                }
+                if (!matches.isEmpty()) {
+                    return r;
+                }
+            }
+            return null;
+        }
+
+        private List<S> destinations(List<TriggerBehaviour<S, T>> matches) {
+            List<S> destinations = new ArrayList<>();
+            for (TriggerBehaviour<S, T> behaviour : matches) {
+                if (behaviour instanceof TransitioningTriggerBehaviour) {
+                    destinations.add(((TransitioningTriggerBehaviour<S, T>) behaviour).getDestination());
+                } else {
+                    destinations.add(representation.getUnderlyingState());
+                }
+            }
+            return destinations;
+        }
+    }
+
+    /**
+     * A problem found by the checker
+     *
+     * @param <S> The type used to represent the states
+     * @param <T> The type used to represent the triggers
+     */
+    public static final class Violation<S, T> {
+
+        /**
+         * The kind of problem
+         */
+        public enum Kind {
+            UNREACHABLE_STATE,
+            DEAD_END,
+            AMBIGUOUS_GUARDS
+        }
+
+        private final Kind kind;
+        private final S state;
+        private final T trigger;
+        private final List<T> path;
+        private final String message;
+
+        Violation(Kind kind, S state, T trigger, List<T> path, String message) {
+            this.kind = kind;
+            this.state = state;
+            this.trigger = trigger;
+            this.path = Collections.unmodifiableList(path);
+            this.message = message;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * @return The state the problem was found in
+         */
+        public S getState() {
+            return state;
+        }
+
+        /**
+         * @return The trigger with ambiguous guards, or null for other kinds
+         */
+        public T getTrigger() {
+            return trigger;
+        }
+
+        /**
+         * @return Triggers leading from an initial state to the state, empty for unreachable states
+         */
+        public List<T> getPath() {
+            return path;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return kind + ": " + message + (path.isEmpty() ? "" : ", reached by " + path);
+        }
+    }
+
+    /**
+     * The outcome of a check
+     *
+     * @param <S> The type used to represent the states
+     * @param <T> The type used to represent the triggers
+     */
+    public static final class Result<S, T> {
+
+        private final Set<S> reachableStates;
+        private final List<Violation<S, T>> violations;
+        private final long combinationCount;
+        private final boolean dynamicTransitions;
+
+        Result(Set<S> reachableStates, List<Violation<S, T>> violations, long combinationCount,
+               boolean dynamicTransitions) {
+            this.reachableStates = Collections.unmodifiableSet(reachableStates);
+            this.violations = Collections.unmodifiableList(violations);
+            this.combinationCount = combinationCount;
+            this.dynamicTransitions = dynamicTransitions;
+        }
+
+        /**
+         * @return The reachable states, including superstates of reachable states
+         */
+        public Set<S> getReachableStates() {
+            return reachableStates;
+        }
+
+        public List<Violation<S, T>> getViolations() {
+            return violations;
+        }
+
+        /**
+         * @return The number of (state, trigger, guard valuation) combinations checked
+         */
+        public long getCombinationCount() {
+            return combinationCount;
+        }
+
+        /**
+         * @return True if a reachable state has dynamic transitions, whose destinations were not explored
+         */
+        public boolean hasDynamicTransitions() {
+            return dynamicTransitions;
+        }
+
+        /**
+         * @return True if no violation was found
+         */
+        public boolean isValid() {
+            return violations.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hopcroft's partition refinement, finding the coarsest partition of the states of a deterministic automaton that
+ * is compatible with an initial partition and with the transitions.
+ * <p>
+ * Missing transitions lead to an implicit sink state, which is in a block of its own, so states are only merged if
+ * they have transitions for the same symbols.
+ */
+final class PartitionRefinement {
+
+    private PartitionRefinement() {
+    }
+
+    /**
+     * Refines an initial partition
+     *
+     * @param transitions   The destination per state and symbol, or -1 if the state has no transition for the symbol
+     * @param symbolCount   The number of symbols
+     * @param initialBlocks A label per state; states with different labels are never merged
+     * @return The block of every state. Blocks are numbered from 0 in the order of their first state.
+     */
+    static int[] refine(int[][] transitions, int symbolCount, int[] initialBlocks) {
+        int n = transitions.length + 1;
+        int sink = n - 1;
+
+        // predecessors per (destination, symbol) as compressed sparse rows
+        int[] predecessorOffsets = new int[n * symbolCount + 1];
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < symbolCount; a++) {
+                predecessorOffsets[destination(transitions, sink, s, a) * symbolCount + a + 1]++;
+            }
+        }
+        for (int i = 0; i < n * symbolCount; i++) {
+            predecessorOffsets[i + 1] += predecessorOffsets[i];
+        }
+        int[] predecessors = new int[n * symbolCount];
+        int[] fill = new int[n * symbolCount];
+        for (int s = 0; s < n; s++) {
+            for (int a = 0; a < symbolCount; a++) {
+                int index = destination(transitions, sink, s, a) * symbolCount + a;
+                predecessors[predecessorOffsets[index] + fill[index]++] = s;
+            }
+        }
+
+        // blocks are ranges of the elements array
+        int[] elements = new int[n];
+        int[] location = new int[n];
+        int[] blockOf = new int[n];
+        int[] blockStart = new int[n];
+        int[] blockEnd = new int[n];
+        int[] marked = new int[n];
+        int blockCount = 0;
+        Map<Integer, Integer> labels = new HashMap<>();
+        for (int s = 0; s < sink; s++) {
+            Integer block = labels.get(initialBlocks[s]);
+            if (block == null) {
+                block = blockCount++;
+                labels.put(initialBlocks[s], block);
+            }
+            blockOf[s] = block;
+            blockEnd[block]++;
+        }
+        blockOf[sink] = blockCount;
+        blockEnd[blockCount++] = 1;
+        for (int b = 0, start = 0; b < blockCount; b++) {
+            int size = blockEnd[b];
+            blockStart[b] = start;
+            blockEnd[b] = start;
+            start += size;
+        }
+        for (int s = 0; s < n; s++) {
+            int position = blockEnd[blockOf[s]]++;
+            elements[position] = s;
+            location[s] = position;
+        }
+
+        boolean[] waiting = new boolean[n * symbolCount];
+        int[] worklist = new int[n * symbolCount];
+        int worklistSize = 0;
+        for (int b = 0; b < blockCount; b++) {
+            for (int a = 0; a < symbolCount; a++) {
+                waiting[b * symbolCount + a] = true;
+                worklist[worklistSize++] = b * symbolCount + a;
+            }
+        }
+
+        int[] splitters = new int[n];
+        int[] touched = new int[n];
+        while (worklistSize > 0) {
+            int entry = worklist[--worklistSize];
+            waiting[entry] = false;
+            int splitter = entry / symbolCount;
+            int symbol = entry % symbolCount;
+
+            // copy the splitter first, marking may reorder its elements
+            int splitterSize = blockEnd[splitter] - blockStart[splitter];
+            System.arraycopy(elements, blockStart[splitter], splitters, 0, splitterSize);
+            int touchedCount = 0;
+            for (int i = 0; i < splitterSize; i++) {
+                int index = splitters[i] * symbolCount + symbol;
+                for (int p = predecessorOffsets[index]; p < predecessorOffsets[index + 1]; p++) {
+                    int state = predecessors[p];
+                    int block = blockOf[state];
+                    int boundary = blockStart[block] + marked[block];
+                    if (location[state] < boundary) {
+                        continue;
+                    }
+                    int other = elements[boundary];
+                    elements[boundary] = state;
+                    elements[location[state]] = other;
+                    location[other] = location[state];
+                    location[state] = boundary;
+                    if (marked[block]++ == 0) {
+                        touched[touchedCount++] = block;
+                    }
+                }
+            }
+
+            for (int t = 0; t < touchedCount; t++) {
+                int block = touched[t];
+                int count = marked[block];
+                marked[block] = 0;
+                if (count == blockEnd[block] - blockStart[block]) {
+                    continue;
+                }
+                int split = blockCount++;
+                blockStart[split] = blockStart[block];
+                blockEnd[split] = blockStart[block] + count;
+                blockStart[block] = blockEnd[split];
+                for (int i = blockStart[split]; i < blockEnd[split]; i++) {
+                    blockOf[elements[i]] = split;
+                }
+                boolean splitIsSmaller = count <= blockEnd[block] - blockStart[block];
+                for (int a = 0; a < symbolCount; a++) {
+                    int added = waiting[block * symbolCount + a] || splitIsSmaller ? split : block;
+                    if (!waiting[added * symbolCount + a]) {
+                        waiting[added * symbolCount + a] = true;
+                        worklist[worklistSize++] = added * symbolCount + a;
+                    }
+                }
+            }
+        }
+
+        int[] numbers = new int[blockCount];
+        Arrays.fill(numbers, -1);
+        int[] result = new int[sink];
+        int next = 0;
+        for (int s = 0; s < sink; s++) {
+            int block = blockOf[s];
+            if (numbers[block] == -1) {
+                numbers[block] = next++;
+            }
+            result[s] = numbers[block];
+        }
+        return result;
+    }
+
+    private static int destination(int[][] transitions, int sink, int state, int symbol) {
+        if (state == sink) {
+            return sink;
+        }
+        int destination = transitions[state][symbol];
+        return destination < 0 ? sink : destination;
+    }
+}
@@ -0,0 +1,252 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.IgnoredTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.InternalTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The product of several frozen configurations reacting to the same triggers, for {@link ProductMachine}s that
+ * advance one state machine per configuration with a single lookup.
+ * <p>
+ * A state of the product is a tuple of one state per component. Tuples are materialised lazily, when a
+ * machine first reaches them, and for each tuple and trigger the handlers of all components are resolved once
+ * and cached together with the resulting tuple. Handlers that depend on guards are left to the component to
+ * look up on every fire, and tuples reached through guarded or dynamic transitions are found after the fire.
+ * <p>
+ * At most {@link #setMaxStates(int)} tuples are materialised. Machines in other tuples fire each component
+ * the usual way. Steps for triggers that are not constants of one enum are cached up to
+ * {@link #setMaxSteps(int)} and resolved on every fire beyond that. A product configuration can be shared
+ * between threads.
+ *
+ * @param <T> The type used to represent the triggers
+ */
+public final class ProductConfig<T> {
+
+    /**
+     * Marks a component handler that must be looked up by the component on every fire
+     */
+    static final Object LOOKUP = new Object();
+
+    private final List<StateMachineConfig<?, T>> components;
+    private final Class<?> triggerClass; // null unless all configured triggers are constants of one enum
+    private final int triggerCount;
+    private final ConcurrentMap<List<Object>, Node<T>> nodes = new ConcurrentHashMap<>();
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private volatile int maxStates = 100_000;
+    private final AtomicInteger stepCount = new AtomicInteger();
+    private volatile int maxSteps = 100_000;
+
+    /**
+     * Creates the product of configurations
+     *
+     * @param components The frozen configurations, in the order their machines are fired
+     */
+    @SafeVarargs
+    @SuppressWarnings("varargs") // the array is only read, the list constructor copies it
+    public ProductConfig(final StateMachineConfig<?, T>... components) {
+        this(Arrays.asList(requireNonNull(components, "components is null")));
+    }
+
+    /**
+     * Creates the product of configurations
+     *
+     * @param components The frozen configurations, in the order their machines are fired
+     */
+    public ProductConfig(final List<? extends StateMachineConfig<?, T>> components) {
+        requireNonNull(components, "components is null");
+        if (components.isEmpty()) {
+            throw new IllegalArgumentException("A product needs at least one configuration.");
+        }
+        this.components = Collections.unmodifiableList(new ArrayList<StateMachineConfig<?, T>>(components));
+        Class<?> commonClass = null;
+        boolean enumTriggers = true;
+        for (int i = 0; i < this.components.size(); i++) {
+            StateMachineConfig<?, T> component = requireNonNull(this.components.get(i), "component is null");
+            if (!component.isFrozen()) {
+                throw new IllegalArgumentException("The configuration of component " + i + " is not frozen.");
+            }
+            for (StateRepresentation<?, T> representation : component.getRepresentations()) {
+                for (T trigger : representation.getTriggerBehaviours().keySet()) {
+                    if (!(trigger instanceof Enum)) {
+                        enumTriggers = false;
+                    } else if (commonClass == null) {
+                        commonClass = ((Enum<?>) trigger).getDeclaringClass();
+                    } else if (commonClass != ((Enum<?>) trigger).getDeclaringClass()) {
+                        enumTriggers = false;
+                    }
+                }
+            }
+        }
+        triggerClass = enumTriggers ? commonClass : null;
+        triggerCount = triggerClass == null ? 0 : triggerClass.getEnumConstants().length;
+    }
+
+    /**
+     * Limits the number of materialised tuples, 100000 by default. Tuples already materialised are kept.
+     *
+     * @param maxStates The maximum number of tuples
+     */
+    public void setMaxStates(final int maxStates) {
+        if (maxStates < 0) {
+            throw new IllegalArgumentException("maxStates must not be negative");
+        }
+        this.maxStates = maxStates;
+    }
+
+    /**
+     * Limits the number of cached steps for triggers that are not enum constants, 100000 by default.
+     * Steps already cached are kept.
+     *
+     * @param maxSteps The maximum number of steps
+     */
+    public void setMaxSteps(final int maxSteps) {
+        if (maxSteps < 0) {
+            throw new IllegalArgumentException("maxSteps must not be negative");
+        }
+        this.maxSteps = maxSteps;
+    }
+
+    public List<StateMachineConfig<?, T>> getComponents() {
+        return components;
+    }
+
+    /**
+     * @return The number of tuples reached by machines so far
+     */
+    public int getMaterialisedStateCount() {
+        return nodeCount.get();
+    }
+
+    /**
+     * @return The number of cached steps for triggers that are not enum constants
+     */
+    public int getCachedStepCount() {
+        return stepCount.get();
+    }
+
+    /**
+     * The materialised tuple of component states
+     *
+     * @param states One state per component, not modified
+     * @return The tuple, or null if it is not materialised and the limit is reached
+     */
+    Node<T> intern(final Object[] states) {
+        List<Object> key = Arrays.asList(states);
+        Node<T> node = nodes.get(key);
+        if (node != null || nodeCount.get() >= maxStates) {
+            return node;
+        }
+        final Object[] copy = states.clone();
+        return nodes.computeIfAbsent(Arrays.asList(copy), k -> {
+            nodeCount.incrementAndGet();
+            return new Node<>(copy, triggerCount);
+        });
+    }
+
+    /**
+     * Resolves the handlers of all components for a trigger in a tuple
+     */
+    @SuppressWarnings("unchecked")
+    private Step<T> resolve(final Node<T> node, final T trigger) {
+        Object[] handlers = new Object[components.size()];
+        Object[] next = new Object[components.size()];
+        boolean known = true;
+        for (int i = 0; i < handlers.length; i++) {
+            StateMachineConfig<Object, T> component = (StateMachineConfig<Object, T>) components.get(i);
+            Object state = node.states[i];
+            DispatchTable<Object, T> dispatchTable = component.getDispatchTable();
+            StateRepresentation<Object, T> representation = dispatchTable != null
+                    ? dispatchTable.getRepresentation(state)
+                    : component.getRepresentation(state);
+            Object handler = representation == null ? null : DispatchTable.resolve(representation, trigger);
+            next[i] = state;
+            if (handler == null || handler instanceof TriggerBehaviour) {
+                handlers[i] = handler;
+                if (handler instanceof TransitioningTriggerBehaviour) {
+                    next[i] = ((TransitioningTriggerBehaviour<Object, T>) handler).getDestination();
+                } else if (handler != null && !(handler instanceof IgnoredTriggerBehaviour)
+                        && !(handler instanceof InternalTriggerBehaviour)) {
+                    known = false;
+                }
+            } else {
+                handlers[i] = LOOKUP;
+                known = false;
+            }
+        }
+        return new Step<>(handlers, known ? intern(next) : null);
+    }
+
+    /**
+     * A materialised tuple of component states and the steps resolved from it so far
+     */
+    static final class Node<T> {
+
+        final Object[] states;
+        private final AtomicReferenceArray<Step<T>> indexedSteps; // by trigger ordinal, null unless enum triggers
+        private final ConcurrentMap<T, Step<T>> steps = new ConcurrentHashMap<>();
+
+        Node(Object[] states, int triggerCount) {
+            this.states = states;
+            this.indexedSteps = triggerCount == 0 ? null : new AtomicReferenceArray<Step<T>>(triggerCount);
+        }
+
+        Step<T> getStep(final ProductConfig<T> config, final T trigger) {
+            if (indexedSteps != null && config.triggerClass.isInstance(trigger)) {
+                int index = ((Enum<?>) trigger).ordinal();
+                Step<T> step = indexedSteps.get(index);
+                if (step == null) {
+                    step = config.resolve(this, trigger);
+                    indexedSteps.set(index, step);
+                }
+                return step;
+            }
+            Step<T> step = steps.get(trigger);
+            if (step == null) {
+                step = config.resolve(this, trigger);
+                if (config.stepCount.get() < config.maxSteps && steps.putIfAbsent(trigger, step) == null) {
+                    config.stepCount.incrementAndGet();
+                }
+            }
+            return step;
+        }
+
+        /**
+         * Whether the machines are in the states of this tuple
+         */
+        boolean matches(final StateMachine<Object, T>[] machines) {
+            for (int i = 0; i < machines.length; i++) {
+                if (!Objects.equals(machines[i].getState(), states[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The handlers of all components for a trigger in a tuple, and the resulting tuple
+     */
+    static final class Step<T> {
+
+        final Object[] handlers; // a TriggerBehaviour, null if unhandled, or LOOKUP
+        final Node<T> next; // null if the resulting tuple depends on guards or dynamic transitions
+
+        Step(Object[] handlers, Node<T> next) {
+            this.handlers = handlers;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Runs one state machine per component of a {@link ProductConfig}, firing every trigger into all of them.
+ * <p>
+ * Firing a trigger is equivalent to firing it into each component machine in the order of the configurations,
+ * so exit, transition and entry actions of the first component run before those of the second one, and so on.
+ * The handlers of all components are found with a single lookup of the current tuple of states and the
+ * trigger, and only handlers that depend on guards are looked up by the component itself.
+ * <p>
+ * A trigger that a component does not handle in its state invokes the unhandled trigger action of that
+ * component, which throws by default, after the components before it have been fired. Triggers with parameters
+ * are not supported. Like {@link StateMachine}, a product machine must not be used by several threads at once,
+ * and its actions must not fire it again.
+ *
+ * @param <T> The type used to represent the triggers
+ */
+public class ProductMachine<T> {
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final ProductConfig<T> config;
+    private final StateMachine<Object, T>[] machines;
+    private final Object[] states;
+    private ProductConfig.Node<T> node; // null if the current tuple is not materialised
+
+    /**
+     * Construct a product machine
+     *
+     * @param config        The product configuration
+     * @param initialStates The initial state of each component, in the order of the configurations
+     */
+    @SuppressWarnings("unchecked")
+    public ProductMachine(final ProductConfig<T> config, final Object... initialStates) {
+        this.config = requireNonNull(config, "config is null");
+        requireNonNull(initialStates, "initialStates is null");
+        List<StateMachineConfig<?, T>> components = config.getComponents();
+        if (initialStates.length != components.size()) {
+            throw new IllegalArgumentException("Expected " + components.size() + " initial states, got "
+                    + initialStates.length + ".");
+        }
+        machines = newMachines(components.size());
+        for (int i = 0; i < machines.length; i++) {
+            machines[i] = new StateMachine<>(initialStates[i], (StateMachineConfig<Object, T>) components.get(i));
+        }
+        states = new Object[machines.length];
+        node = config.intern(currentStates());
+    }
+
+    /**
+     * Fires the trigger into all components
+     *
+     * @param trigger The trigger to fire
+     */
+    @SuppressWarnings("unchecked")
+    public void fire(final T trigger) {
+        ProductConfig.Node<T> current = node;
+        if (current == null) {
+            try {
+                for (StateMachine<Object, T> machine : machines) {
+                    machine.fire(trigger);
+                }
+            } finally {
+                node = config.intern(currentStates());
+            }
+            return;
+        }
+
+        ProductConfig.Step<T> step = current.getStep(config, trigger);
+        boolean completed = false;
+        try {
+            for (int i = 0; i < machines.length; i++) {
+                Object handler = step.handlers[i];
+                if (handler == ProductConfig.LOOKUP) {
+                    machines[i].fire(trigger);
+                } else {
+                    machines[i].fireResolved(trigger, (TriggerBehaviour<Object, T>) handler, NO_ARGUMENTS);
+                }
+            }
+            completed = true;
+        } finally {
+            ProductConfig.Node<T> next = step.next;
+            node = completed && next != null && next.matches(machines) ? next : config.intern(currentStates());
+        }
+    }
+
+    private Object[] currentStates() {
+        for (int i = 0; i < machines.length; i++) {
+            states[i] = machines[i].getState();
+        }
+        return states;
+    }
+
+    /**
+     * @return The current state of each component, in the order of the configurations
+     */
+    public List<Object> getStates() {
+        List<Object> result = new ArrayList<>(machines.length);
+        for (StateMachine<Object, T> machine : machines) {
+            result.add(machine.getState());
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * The current state of a component
+     *
+     * @param component The configuration of the component
+     * @param <S>       The type used to represent the states of the component
+     * @return The current state
+     */
+    @SuppressWarnings("unchecked")
+    public <S> S getState(final StateMachineConfig<S, T> component) {
+        return (S) getMachine(component).getState();
+    }
+
+    /**
+     * Determine if a component is in the supplied state, or one of its substates
+     *
+     * @param component The configuration of the component
+     * @param state     The state to test for
+     * @param <S>       The type used to represent the states of the component
+     * @return True if the component is in the state
+     */
+    public <S> boolean isInState(final StateMachineConfig<S, T> component, final S state) {
+        return getMachine(component).isInState(state);
+    }
+
+    private StateMachine<Object, T> getMachine(StateMachineConfig<?, T> component) {
+        List<StateMachineConfig<?, T>> components = config.getComponents();
+        for (int i = 0; i < components.size(); i++) {
+            if (components.get(i) == component) {
+                return machines[i];
+            }
+        }
+        throw new IllegalArgumentException("The configuration is not a component of this product.");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> StateMachine<Object, T>[] newMachines(int count) {
+        return (StateMachine<Object, T>[]) new StateMachine<?, ?>[count];
+    }
+
+    /**
+     * Override the default behaviour of throwing an exception when a component does not handle a trigger
+     *
+     * @param unhandledTriggerAction An action to call with the state of the component and the trigger instead
+     */
+    public void onUnhandledTrigger(final Action2<Object, T> unhandledTriggerAction) {
+        requireNonNull(unhandledTriggerAction, "unhandledTriggerAction is null");
+        for (StateMachine<Object, T> machine : machines) {
+            machine.onUnhandledTrigger(unhandledTriggerAction);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ProductMachine { States = " + getStates() + " }";
+    }
+}
@@ -0,0 +1,107 @@
+package com.github.oxo42.stateless4j;
+
+import java.time.Instant;
+
+/**
+ * A fire kept by a {@link TransitionRecorder}
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public final class RecordedTransition<S, T> {
+
+    private static final int MAX_ARGUMENT_LENGTH = 40;
+
+    private final long timestamp;
+    private final S source;
+    private final T trigger;
+    private final S destination;
+    private final FireResult.Status outcome;
+    private final int argumentCount;
+    private final Object[] arguments;
+
+    RecordedTransition(long timestamp, S source, T trigger, S destination, FireResult.Status outcome,
+                       int argumentCount, Object[] arguments) {
+        this.timestamp = timestamp;
+        this.source = source;
+        this.trigger = trigger;
+        this.destination = destination;
+        this.outcome = outcome;
+        this.argumentCount = argumentCount;
+        this.arguments = arguments;
+    }
+
+    /**
+     * Wall clock time of the fire
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public S getSource() {
+        return source;
+    }
+
+    public T getTrigger() {
+        return trigger;
+    }
+
+    /**
+     * The state after the fire, equal to the source unless the machine transitioned
+     *
+     * @return The destination state
+     */
+    public S getDestination() {
+        return destination;
+    }
+
+    public FireResult.Status getOutcome() {
+        return outcome;
+    }
+
+    /**
+     * Number of arguments the trigger was fired with
+     *
+     * @return The number of arguments, also if they were not recorded
+     */
+    public int getArgumentCount() {
+        return argumentCount;
+    }
+
+    /**
+     * The recorded trigger arguments
+     *
+     * @return A copy of the arguments, empty if arguments were not recorded
+     */
+    public Object[] getArguments() {
+        return arguments.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder()
+                .append(Instant.ofEpochMilli(timestamp))
+                .append(' ').append(source)
+                .append(" --").append(trigger);
+        if (argumentCount > 0) {
+            builder.append('(');
+            for (int i = 0; i < argumentCount; i++) {
+                if (i > 0) {
+                    builder.append(", ");
+                }
+                builder.append(i < arguments.length ? summarize(arguments[i]) : "?");
+            }
+            builder.append(')');
+        }
+        return builder.append("--> ").append(destination)
+                .append(' ').append(outcome)
+                .toString();
+    }
+
+    private static String summarize(Object argument) {
+        String value = String.valueOf(argument);
+        return value.length() <= MAX_ARGUMENT_LENGTH ? value : value.substring(0, MAX_ARGUMENT_LENGTH - 3) + "...";
+    }
+}
@@ -1,6 +1,8 @@
 package com.github.oxo42.stateless4j;
 
 import com.github.oxo42.stateless4j.delegates.*;
+import com.github.oxo42.stateless4j.metrics.ActionProfile;
+import com.github.oxo42.stateless4j.metrics.ActionProfiler;
 import com.github.oxo42.stateless4j.transitions.Transition;
 import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
 import com.github.oxo42.stateless4j.triggers.*;
@@ -9,15 +11,39 @@ import static java.util.Objects.requireNonNull;
 
 public class StateConfiguration<S, T> {
 
-    private static final FuncBoolean NO_GUARD = () -> true;
-    private static final Action NO_ACTION = () -> { };
-    private static final Action1<Object[]> NO_ACTION_N = args -> { };
+    private static final FuncBoolean NO_GUARD = TriggerBehaviour.NO_GUARD;
+    static final Action NO_ACTION = () -> { };
+    static final Action1<Object[]> NO_ACTION_N = args -> { };
     private final StateRepresentation<S, T> representation;
     private final Func2<S, StateRepresentation<S, T>> lookup;
+    private final ActionProfiler profiler; // null
+    private String nextActionLabel; // null
 
     public StateConfiguration(final StateRepresentation<S, T> representation, final Func2<S, StateRepresentation<S, T>> lookup) {
+        this(representation, lookup, null);
+    }
+
+    StateConfiguration(
+            final StateRepresentation<S, T> representation,
+            final Func2<S, StateRepresentation<S, T>> lookup,
+            final ActionProfiler profiler) {
         this.representation = requireNonNull(representation, "representation is null");
         this.lookup = requireNonNull(lookup,  "lookup is null");
+        this.profiler = profiler;
+    }
+
+    /**
+     * Name the next action registered through this configuration in the action profiler.
+     * Without a label the action is identified by state, kind and index. The label is used up by the next
+     * action even if no profiler is set.
+     *
+     * @param label The label of the next entry, exit or transition action
+     * @return The receiver
+     * @see StateMachineConfig#setActionProfiler(ActionProfiler)
+     */
+    public StateConfiguration<S, T> label(final String label) {
+        this.nextActionLabel = requireNonNull(label, "label is null");
+        return this;
     }
 
     /**
@@ -173,6 +199,188 @@ public class StateConfiguration<S, T> {
         return this;
     }
 
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state
+     * <p>
+     * Unlike {@link #permitReentry(Object, Action)} no exit or entry actions are executed and the
+     * current state is not written.
+     *
+     * @param trigger The accepted trigger
+     * @param action  The action to be performed
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> internalTransition(final T trigger, final Action action) {
+        return internalTransitionIf(trigger, NO_GUARD, action);
+    }
+
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state,
+     * if the guard returns true
+     * <p>
+     * Unlike {@link #permitReentryIf(Object, FuncBoolean, Action)} no exit or entry actions are executed and the
+     * current state is not written.
+     *
+     * @param trigger The accepted trigger
+     * @param guard   Function that must return true in order for the trigger to be accepted
+     * @param action  The action to be performed
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> internalTransitionIf(final T trigger, final FuncBoolean guard, final Action action) {
+        requireNonNull(action, "action is null");
+        return publicInternalTransitionIf(trigger, guard, new ActionAdapter.ForArguments(action));
+    }
+
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state
+     *
+     * @param trigger The accepted trigger
+     * @param action  The action to be performed, the trigger parameter is given to this action
+     * @param <TArg0> Type of the first trigger argument
+     * @return The receiver
+     */
+    public <TArg0> StateConfiguration<S, T> internalTransition(
+            final TriggerWithParameters1<TArg0, S, T> trigger,
+            final Action1<TArg0> action) {
+        return internalTransitionIf(trigger, NO_GUARD, action);
+    }
+
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state,
+     * if the guard returns true
+     *
+     * @param trigger The accepted trigger
+     * @param guard   Function that must return true in order for the trigger to be accepted
+     * @param action  The action to be performed, the trigger parameter is given to this action
+     * @param <TArg0> Type of the first trigger argument
+     * @return The receiver
+     */
+    @SuppressWarnings("unchecked")
+    public <TArg0> StateConfiguration<S, T> internalTransitionIf(
+            final TriggerWithParameters1<TArg0, S, T> trigger,
+            final FuncBoolean guard,
+            final Action1<TArg0> action) {
+        requireNonNull(trigger, "trigger is null");
+        requireNonNull(action, "action is null");
+        return publicInternalTransitionIf(
+                trigger.getTrigger(),
+                guard,
+                args -> action.doIt((TArg0) args[0]));
+    }
+
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state
+     *
+     * @param trigger The accepted trigger
+     * @param action  The action to be performed, the trigger parameters are given to this action
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @return The receiver
+     */
+    public <TArg0, TArg1> StateConfiguration<S, T> internalTransition(
+            final TriggerWithParameters2<TArg0, TArg1, S, T> trigger,
+            final Action2<TArg0, TArg1> action) {
+        return internalTransitionIf(trigger, NO_GUARD, action);
+    }
+
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state,
+     * if the guard returns true
+     *
+     * @param trigger The accepted trigger
+     * @param guard   Function that must return true in order for the trigger to be accepted
+     * @param action  The action to be performed, the trigger parameters are given to this action
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @return The receiver
+     */
+    @SuppressWarnings("unchecked")
+    public <TArg0, TArg1> StateConfiguration<S, T> internalTransitionIf(
+            final TriggerWithParameters2<TArg0, TArg1, S, T> trigger,
+            final FuncBoolean guard,
+            final Action2<TArg0, TArg1> action) {
+        requireNonNull(trigger, "trigger is null");
+        requireNonNull(action, "action is null");
+        return publicInternalTransitionIf(
+                trigger.getTrigger(),
+                guard,
+                args -> action.doIt(
+                        (TArg0) args[0],
+                        (TArg1) args[1]));
+    }
+
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state
+     *
+     * @param trigger The accepted trigger
+     * @param action  The action to be performed, the trigger parameters are given to this action
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @param <TArg2> Type of the third trigger argument
+     * @return The receiver
+     */
+    public <TArg0, TArg1, TArg2> StateConfiguration<S, T> internalTransition(
+            final TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger,
+            final Action3<TArg0, TArg1, TArg2> action) {
+        return internalTransitionIf(trigger, NO_GUARD, action);
+    }
+
+    /**
+     * Accept the specified trigger and execute the given action without leaving the configured state,
+     * if the guard returns true
+     *
+     * @param trigger The accepted trigger
+     * @param guard   Function that must return true in order for the trigger to be accepted
+     * @param action  The action to be performed, the trigger parameters are given to this action
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @param <TArg2> Type of the third trigger argument
+     * @return The receiver
+     */
+    @SuppressWarnings("unchecked")
+    public <TArg0, TArg1, TArg2> StateConfiguration<S, T> internalTransitionIf(
+            final TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger,
+            final FuncBoolean guard,
+            final Action3<TArg0, TArg1, TArg2> action) {
+        requireNonNull(trigger, "trigger is null");
+        requireNonNull(action, "action is null");
+        return publicInternalTransitionIf(
+                trigger.getTrigger(),
+                guard,
+                args -> action.doIt(
+                        (TArg0) args[0],
+                        (TArg1) args[1],
+                        (TArg2) args[2]));
+    }
+
+    /**
+     * Declare the guards of the specified trigger in the configured state as mutually exclusive
+     * <p>
+     * Firing the trigger then evaluates guards only until the first one is met. Overlapping guards are no
+     * longer detected, the first behaviour whose guard is met is taken.
+     *
+     * @param trigger The trigger whose guards are mutually exclusive
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> mutuallyExclusiveGuards(final T trigger) {
+        return mutuallyExclusiveGuards(trigger, false);
+    }
+
+    /**
+     * Declare the guards of the specified trigger in the configured state as mutually exclusive
+     * <p>
+     * Firing the trigger then evaluates guards only until the first one is met. Overlapping guards are no
+     * longer detected, the first behaviour whose guard is met is taken. With adaptive ordering the guards are
+     * periodically reordered by how often they were met, so the most likely guard is evaluated first.
+     *
+     * @param trigger          The trigger whose guards are mutually exclusive
+     * @param adaptiveOrdering True to evaluate the most frequently met guards first
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> mutuallyExclusiveGuards(final T trigger, final boolean adaptiveOrdering) {
+        representation.setGuardsMutuallyExclusive(trigger, adaptiveOrdering);
+        return this;
+    }
+
     /**
      * Specify an action that will execute when transitioning into the configured state
      *
@@ -181,7 +389,7 @@ public class StateConfiguration<S, T> {
      */
     public StateConfiguration<S, T> onEntry(final Action entryAction) {
         requireNonNull(entryAction, "entryAction is null");
-        return onEntry(t -> entryAction.doIt());
+        return onEntry(new ActionAdapter.ForTransition<S, T>(entryAction));
     }
 
     /**
@@ -192,7 +400,9 @@ public class StateConfiguration<S, T> {
      */
     public StateConfiguration<S, T> onEntry(final Action1<Transition<S, T>> entryAction) {
         requireNonNull(entryAction, "entryAction is null");
-        representation.addEntryAction((transition, args) -> entryAction.doIt(transition));
+        representation.addEntryAction(profileEntry(entryAction instanceof ActionAdapter.ForTransition
+                ? (ActionAdapter.ForTransition<S, T>) entryAction
+                : (transition, args) -> entryAction.doIt(transition)));
         return this;
     }
 
@@ -217,7 +427,7 @@ public class StateConfiguration<S, T> {
      */
     public StateConfiguration<S, T> onEntryFrom(final T trigger, final Action1<Transition<S, T>> entryAction) {
         requireNonNull(entryAction, "entryAction is null");
-        representation.addEntryAction(trigger, (transition, args) -> entryAction.doIt(transition));
+        representation.addEntryAction(trigger, profileEntry((transition, args) -> entryAction.doIt(transition)));
         return this;
     }
 
@@ -256,7 +466,7 @@ public class StateConfiguration<S, T> {
         requireNonNull(entryAction, "entryAction is null");
         representation.addEntryAction(
                 trigger.getTrigger(),
-                (transition, args) -> entryAction.doIt((TArg0) args[0], transition));
+                profileEntry((transition, args) -> entryAction.doIt((TArg0) args[0], transition)));
         return this;
     }
 
@@ -299,9 +509,9 @@ public class StateConfiguration<S, T> {
             final Class<TArg1> classe1) {
         requireNonNull(trigger, "trigger is null");
         requireNonNull(entryAction, "entryAction is null");
-        representation.addEntryAction(trigger.getTrigger(), (t, args) -> entryAction.doIt(
+        representation.addEntryAction(trigger.getTrigger(), profileEntry((t, args) -> entryAction.doIt(
                 (TArg0) args[0],
-                (TArg1) args[1], t));
+                (TArg1) args[1], t)));
         return this;
     }
 
@@ -357,11 +567,11 @@ public class StateConfiguration<S, T> {
         requireNonNull(entryAction, "entryAction is null");
         representation.addEntryAction(
                 trigger.getTrigger(),
-                (transition, args) -> entryAction.doIt(
+                profileEntry((transition, args) -> entryAction.doIt(
                         (TArg0) args[0],
                         (TArg1) args[1],
                         (TArg2) args[2],
-                        transition));
+                        transition)));
         return this;
     }
 
@@ -373,7 +583,7 @@ public class StateConfiguration<S, T> {
      */
     public StateConfiguration<S, T> onExit(final Action exitAction) {
         requireNonNull(exitAction, "exitAction is null");
-        return onExit(transition -> exitAction.doIt());
+        return onExit(new ActionAdapter.ForTransition<S, T>(exitAction));
     }
 
     /**
@@ -384,7 +594,32 @@ public class StateConfiguration<S, T> {
      */
     public StateConfiguration<S, T> onExit(final Action1<Transition<S, T>> exitAction) {
         requireNonNull(exitAction, "exitAction is null");
-        representation.addExitAction(exitAction);
+        representation.addExitAction(profileExit(exitAction));
+        return this;
+    }
+
+    /**
+     * Specify an action that will execute when transitioning from the configured state
+     *
+     * @param trigger    The trigger by which the state must be left in order for the action to execute
+     * @param exitAction Action to execute
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> onExitWith(final T trigger, final Action exitAction) {
+        requireNonNull(exitAction, "exitAction is null");
+        return onExitWith(trigger, transition -> exitAction.doIt());
+    }
+
+    /**
+     * Specify an action that will execute when transitioning from the configured state
+     *
+     * @param trigger    The trigger by which the state must be left in order for the action to execute
+     * @param exitAction Action to execute, providing details of the transition
+     * @return The receiver
+     */
+    public StateConfiguration<S, T> onExitWith(final T trigger, final Action1<Transition<S, T>> exitAction) {
+        requireNonNull(exitAction, "exitAction is null");
+        representation.addExitAction(trigger, profileExit(exitAction));
         return this;
     }
 
@@ -785,6 +1020,86 @@ public class StateConfiguration<S, T> {
                         (TArg2) args[2]));
     }
 
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically by the supplied
+     * function. Destinations are memoised per trigger argument in the given cache, so the selector must be a
+     * pure function of the trigger argument.
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function to calculate the state that the trigger will cause a transition to
+     * @param cache                    Cache holding the calculated destinations, used for this transition only
+     * @param <TArg0>                  Type of the first trigger argument
+     * @return The receiver
+     */
+    @SuppressWarnings("unchecked")
+    public <TArg0> StateConfiguration<S, T> permitDynamicCached(
+            final TriggerWithParameters1<TArg0, S, T> trigger,
+            final Func2<TArg0, S> destinationStateSelector,
+            final DestinationCache<S> cache) {
+        requireNonNull(trigger, "trigger is null");
+        requireNonNull(destinationStateSelector, "destinationStateSelector is null");
+        return publicPermitDynamicCached(
+                trigger.getTrigger(),
+                args -> destinationStateSelector.call((TArg0) args[0]),
+                cache);
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically by the supplied
+     * function. Destinations are memoised per trigger arguments in the given cache, so the selector must be a
+     * pure function of the trigger arguments.
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function to calculate the state that the trigger will cause a transition to
+     * @param cache                    Cache holding the calculated destinations, used for this transition only
+     * @param <TArg0>                  Type of the first trigger argument
+     * @param <TArg1>                  Type of the second trigger argument
+     * @return The receiver
+     */
+    @SuppressWarnings("unchecked")
+    public <TArg0, TArg1> StateConfiguration<S, T> permitDynamicCached(
+            final TriggerWithParameters2<TArg0, TArg1, S, T> trigger,
+            final Func3<TArg0, TArg1, S> destinationStateSelector,
+            final DestinationCache<S> cache) {
+        requireNonNull(trigger, "trigger is null");
+        requireNonNull(destinationStateSelector, "destinationStateSelector is null");
+        return publicPermitDynamicCached(
+                trigger.getTrigger(),
+                args -> destinationStateSelector.call(
+                        (TArg0) args[0],
+                        (TArg1) args[1]),
+                cache);
+    }
+
+    /**
+     * Accept the specified trigger and transition to the destination state, calculated dynamically by the supplied
+     * function. Destinations are memoised per trigger arguments in the given cache, so the selector must be a
+     * pure function of the trigger arguments.
+     *
+     * @param trigger                  The accepted trigger
+     * @param destinationStateSelector Function to calculate the state that the trigger will cause a transition to
+     * @param cache                    Cache holding the calculated destinations, used for this transition only
+     * @param <TArg0>                  Type of the first trigger argument
+     * @param <TArg1>                  Type of the second trigger argument
+     * @param <TArg2>                  Type of the third trigger argument
+     * @return The receiver
+     */
+    @SuppressWarnings("unchecked")
+    public <TArg0, TArg1, TArg2> StateConfiguration<S, T> permitDynamicCached(
+            final TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger,
+            final Func4<TArg0, TArg1, TArg2, S> destinationStateSelector,
+            final DestinationCache<S> cache) {
+        requireNonNull(trigger, "trigger is null");
+        requireNonNull(destinationStateSelector, "destinationStateSelector is null");
+        return publicPermitDynamicCached(
+                trigger.getTrigger(),
+                args -> destinationStateSelector.call(
+                        (TArg0) args[0],
+                        (TArg1) args[1],
+                        (TArg2) args[2]),
+                cache);
+    }
+
     void enforceNotIdentityTransition(final S destination) {
         if (destination.equals(representation.getUnderlyingState())) {
             throw new IllegalStateException("Permit() (and PermitIf()) require that the destination state is not equal to the source state. "
@@ -807,7 +1122,7 @@ public class StateConfiguration<S, T> {
     StateConfiguration<S, T> publicPermitIf(T trigger, S destinationState, FuncBoolean guard, Action action) {
         requireNonNull(guard, "guard is null");
         requireNonNull(action, "action is null");
-        representation.addTriggerBehaviour(new TransitioningTriggerBehaviour<>(trigger, destinationState, guard, action));
+        representation.addTriggerBehaviour(new TransitioningTriggerBehaviour<>(trigger, destinationState, guard, profileAction(action)));
         return this;
     }
 
@@ -822,7 +1137,109 @@ public class StateConfiguration<S, T> {
             final Action1<Object[]> action) {
         requireNonNull(destinationStateSelector, "destinationStateSelector is null");
         requireNonNull(guard, "guard is null");
-        representation.addTriggerBehaviour(new DynamicTriggerBehaviour<>(trigger, destinationStateSelector, guard, action));
+        representation.addTriggerBehaviour(new DynamicTriggerBehaviour<>(
+                trigger, destinationStateSelector, guard, profileAction(action, "transition")));
+        return this;
+    }
+
+    StateConfiguration<S, T> publicPermitDynamicCached(
+            final T trigger,
+            final Func2<Object[], S> destinationStateSelector,
+            final DestinationCache<S> cache) {
+        requireNonNull(cache, "cache is null");
+        return publicPermitDynamicIf(
+                trigger,
+                args -> cache.get(args, destinationStateSelector),
+                NO_GUARD,
+                NO_ACTION_N);
+    }
+
+    StateConfiguration<S, T> publicInternalTransitionIf(
+            final T trigger,
+            final FuncBoolean guard,
+            final Action1<Object[]> action) {
+        requireNonNull(guard, "guard is null");
+        requireNonNull(action, "action is null");
+        representation.addTriggerBehaviour(new InternalTriggerBehaviour<>(trigger, guard, profileAction(action, "internal")));
         return this;
     }
+
+    /**
+     * Takes the pending label, so it never outlives the action it was given for
+     */
+    private String takeLabel() {
+        String label = nextActionLabel;
+        nextActionLabel = null;
+        return label;
+    }
+
+    private Action2<Transition<S, T>, Object[]> profileEntry(final Action2<Transition<S, T>, Object[]> action) {
+        String label = takeLabel();
+        if (profiler == null) {
+            return action;
+        }
+        ActionProfile profile = profiler.register(representation.getUnderlyingState(), "entry", label);
+        return (transition, args) -> {
+            long start = System.nanoTime();
+            try {
+                action.doIt(transition, args);
+            } finally {
+                profile.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private Action1<Transition<S, T>> profileExit(final Action1<Transition<S, T>> action) {
+        String label = takeLabel();
+        if (profiler == null) {
+            return action;
+        }
+        ActionProfile profile = profiler.register(representation.getUnderlyingState(), "exit", label);
+        return transition -> {
+            long start = System.nanoTime();
+            try {
+                action.doIt(transition);
+            } finally {
+                profile.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private Action profileAction(final Action action) {
+        if (action == NO_ACTION) {
+            return action;
+        }
+        String label = takeLabel();
+        if (profiler == null) {
+            return action;
+        }
+        ActionProfile profile = profiler.register(representation.getUnderlyingState(), "transition", label);
+        return () -> {
+            long start = System.nanoTime();
+            try {
+                action.doIt();
+            } finally {
+                profile.record(System.nanoTime() - start);
+            }
+        };
+    }
+
+    private Action1<Object[]> profileAction(final Action1<Object[]> action, final String kind) {
+        if (action == NO_ACTION_N) {
+            return action;
+        }
+        String label = takeLabel();
+        if (profiler == null) {
+            return action;
+        }
+        ActionProfile profile = profiler.register(representation.getUnderlyingState(), kind, label);
+        return args -> {
+            long start = System.nanoTime();
+            try {
+                action.doIt(args);
+            } finally {
+                profile.record(System.nanoTime() - start);
+            }
+        };
+    }
 }
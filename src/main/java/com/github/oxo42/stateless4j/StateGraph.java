@@ -0,0 +1,436 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.DynamicTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Transition graph of a configuration, for reachability and shortest path queries.
+ * <p>
+ * States are numbered densely and the transitions stored as compressed sparse row arrays in both directions.
+ * A state has an edge for every static transition it handles, including transitions inherited from its
+ * superstates unless the state handles the trigger itself without a guard. Guards are assumed to be
+ * satisfiable, so a state that is reachable in the graph may not be reachable at runtime. Ignored and internal
+ * transitions do not change the state and have no edges; dynamic transitions have no edges either, see
+ * {@link #hasDynamicTransitions()}.
+ * <p>
+ * Strongly connected components are computed when the graph is built. Reachability is computed once per
+ * component on first use and then answered from a bit set, so the graph of a frozen configuration, which is
+ * built once and shared, answers repeated queries in constant time. Instances are thread safe.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers
+ * @see StateMachineConfig#getGraph()
+ */
+public class StateGraph<S, T> {
+
+    private final List<S> states;
+    private final Map<S, Integer> ids;
+    private final int[] offsets;
+    private final int[] targets;
+    private final Object[] triggers;
+    private final int[] reverseOffsets;
+    private final int[] reverseSources;
+    private final int[] components;
+    private final int componentCount;
+    private final boolean dynamicTransitions;
+    private final AtomicReferenceArray<BitSet> reachableFrom;
+    private final AtomicReferenceArray<BitSet> reaching;
+
+    StateGraph(Iterable<StateRepresentation<S, T>> representations) {
+        states = new ArrayList<>();
+        ids = new HashMap<>();
+        Map<S, StateRepresentation<S, T>> byState = new HashMap<>();
+        for (StateRepresentation<S, T> representation : representations) {
+            byState.put(representation.getUnderlyingState(), representation);
+            idOf(representation.getUnderlyingState());
+        }
+
+        List<int[]> edges = new ArrayList<>();
+        List<T> edgeTriggers = new ArrayList<>();
+        boolean dynamic = false;
+        Set<T> handled = new HashSet<>();
+        // states are added while destinations are numbered, so the loop bound moves
+        for (int source = 0; source < states.size(); source++) {
+            handled.clear();
+            for (StateRepresentation<S, T> r = byState.get(states.get(source)); r != null; r = r.getSuperstate()) {
+                for (Map.Entry<T, List<TriggerBehaviour<S, T>>> entry : r.getTriggerBehaviours().entrySet()) {
+                    if (handled.contains(entry.getKey())) {
+                        continue;
+                    }
+                    boolean unguarded = false;
+                    for (TriggerBehaviour<S, T> behaviour : entry.getValue()) {
+                        if (behaviour instanceof TransitioningTriggerBehaviour) {
+                            S destination = ((TransitioningTriggerBehaviour<S, T>) behaviour).getDestination();
+                            edges.add(new int[]{source, idOf(destination)});
+                            edgeTriggers.add(entry.getKey());
+                        } else if (behaviour instanceof DynamicTriggerBehaviour) {
+                            dynamic = true;
+                        }
+                        unguarded |= !behaviour.isGuarded();
+                    }
+                    if (unguarded) {
+                        handled.add(entry.getKey());
+                    }
+                }
+            }
+        }
+        dynamicTransitions = dynamic;
+
+        int n = states.size();
+        int m = edges.size();
+        offsets = new int[n + 1];
+        reverseOffsets = new int[n + 1];
+        for (int[] edge : edges) {
+            offsets[edge[0] + 1]++;
+            reverseOffsets[edge[1] + 1]++;
+        }
+        for (int i = 0; i < n; i++) {
+            offsets[i + 1] += offsets[i];
+            reverseOffsets[i + 1] += reverseOffsets[i];
+        }
+        targets = new int[m];
+        triggers = new Object[m];
+        reverseSources = new int[m];
+        int[] next = new int[n];
+        int[] reverseNext = new int[n];
+        for (int e = 0; e < m; e++) {
+            int[] edge = edges.get(e);
+            int position = offsets[edge[0]] + next[edge[0]]++;
+            targets[position] = edge[1];
+            triggers[position] = edgeTriggers.get(e);
+            reverseSources[reverseOffsets[edge[1]] + reverseNext[edge[1]]++] = edge[0];
+        }
+
+        components = new int[n];
+        componentCount = findComponents();
+        reachableFrom = new AtomicReferenceArray<>(componentCount);
+        reaching = new AtomicReferenceArray<>(componentCount);
+    }
+
+    private int idOf(S state) {
+        Integer id = ids.get(state);
+        if (id == null) {
+            id = states.size();
+            states.add(state);
+            ids.put(state, id);
+        }
+        return id;
+    }
+
+    /**
+     * Tarjan's algorithm without recursion, so deep graphs cannot overflow the stack. Components are numbered
+     * in the order they are completed, i.e. in reverse topological order.
+     *
+     * @return The number of components
+     */
+    private int findComponents() {
+        int n = states.size();
+        int[] index = new int[n];
+        int[] lowLink = new int[n];
+        int[] edgePosition = new int[n];
+        int[] callStack = new int[n];
+        int[] componentStack = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        int nextIndex = 0;
+        int componentStackSize = 0;
+        int count = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int depth = 0;
+            callStack[0] = root;
+            index[root] = lowLink[root] = nextIndex++;
+            edgePosition[root] = offsets[root];
+            componentStack[componentStackSize++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int v = callStack[depth];
+                if (edgePosition[v] < offsets[v + 1]) {
+                    int w = targets[edgePosition[v]++];
+                    if (index[w] == -1) {
+                        index[w] = lowLink[w] = nextIndex++;
+                        edgePosition[w] = offsets[w];
+                        componentStack[componentStackSize++] = w;
+                        onStack[w] = true;
+                        callStack[++depth] = w;
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+                if (lowLink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = componentStack[--componentStackSize];
+                        onStack[w] = false;
+                        components[w] = count;
+                    } while (w != v);
+                    count++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callStack[depth];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return All states of the configuration, including destinations that are not configured themselves
+     */
+    public Set<S> getStates() {
+        return Collections.unmodifiableSet(ids.keySet());
+    }
+
+    /**
+     * @return The number of transitions in the graph
+     */
+    public int getTransitionCount() {
+        return targets.length;
+    }
+
+    /**
+     * Whether the configuration has dynamic transitions, whose destinations are not known before they are taken
+     * and are missing from the graph
+     *
+     * @return True if reachability and paths may be incomplete
+     */
+    public boolean hasDynamicTransitions() {
+        return dynamicTransitions;
+    }
+
+    /**
+     * The states a state can get to by firing triggers, including the state itself
+     *
+     * @param state The state to start from
+     * @return The reachable states, empty if the state is unknown
+     */
+    public Set<S> getReachableFrom(final S state) {
+        Integer id = ids.get(requireNonNull(state, "state is null"));
+        return id == null ? Collections.<S>emptySet() : new StateSet(reachableFrom(id));
+    }
+
+    /**
+     * The states that can get to a state by firing triggers, including the state itself
+     *
+     * @param state The state to get to
+     * @return The states that can reach it, empty if the state is unknown
+     */
+    public Set<S> getStatesReaching(final S state) {
+        Integer id = ids.get(requireNonNull(state, "state is null"));
+        return id == null ? Collections.<S>emptySet() : new StateSet(reaching(id));
+    }
+
+    /**
+     * Whether a state can get to another by firing triggers
+     *
+     * @param source      The state to start from
+     * @param destination The state to get to
+     * @return True if the destination is reachable; every known state can reach itself
+     */
+    public boolean isReachable(final S source, final S destination) {
+        Integer from = ids.get(requireNonNull(source, "source is null"));
+        Integer to = ids.get(requireNonNull(destination, "destination is null"));
+        return from != null && to != null && reachableFrom(from).get(to);
+    }
+
+    /**
+     * The shortest sequence of triggers leading from one state to another
+     *
+     * @param source      The state to start from
+     * @param destination The state to get to
+     * @return The triggers to fire, empty if the states are equal, or null if the destination is not reachable
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getShortestPath(final S source, final S destination) {
+        if (!isReachable(source, destination)) {
+            return null;
+        }
+        int from = ids.get(source);
+        int to = ids.get(destination);
+        int[] parent = new int[states.size()];
+        int[] parentEdge = new int[states.size()];
+        Arrays.fill(parentEdge, -1);
+        int[] queue = new int[states.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = from;
+        boolean found = from == to;
+        while (!found && head < tail) {
+            int v = queue[head++];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (w != from && parentEdge[w] == -1) {
+                    parent[w] = v;
+                    parentEdge[w] = e;
+                    if (w == to) {
+                        found = true;
+                        break;
+                    }
+                    queue[tail++] = w;
+                }
+            }
+        }
+        List<T> path = new ArrayList<>();
+        for (int v = to; v != from; v = parent[v]) {
+            path.add((T) triggers[parentEdge[v]]);
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * The strongly connected components: sets of states that can all reach each other. States outside any cycle
+     * form a component of their own.
+     *
+     * @return The components in reverse topological order, i.e. no component can reach a later one
+     */
+    public List<Set<S>> getStronglyConnectedComponents() {
+        List<Set<S>> result = new ArrayList<>(componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            result.add(new HashSet<S>());
+        }
+        for (int v = 0; v < states.size(); v++) {
+            result.get(components[v]).add(states.get(v));
+        }
+        for (int c = 0; c < componentCount; c++) {
+            result.set(c, Collections.unmodifiableSet(result.get(c)));
+        }
+        return result;
+    }
+
+    /**
+     * Whether two states belong to the same strongly connected component, i.e. each can reach the other
+     *
+     * @param state The one state
+     * @param other The other state
+     * @return True if both states are known and reach each other
+     */
+    public boolean isSameComponent(final S state, final S other) {
+        Integer a = ids.get(requireNonNull(state, "state is null"));
+        Integer b = ids.get(requireNonNull(other, "other is null"));
+        return a != null && b != null && components[a] == components[b];
+    }
+
+    /**
+     * @return The states without transitions to other states
+     */
+    public Set<S> getTerminalStates() {
+        Set<S> result = new HashSet<>();
+        for (int v = 0; v < states.size(); v++) {
+            boolean terminal = true;
+            for (int e = offsets[v]; e < offsets[v + 1] && terminal; e++) {
+                terminal = targets[e] == v;
+            }
+            if (terminal) {
+                result.add(states.get(v));
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    private BitSet reachableFrom(int state) {
+        return search(state, reachableFrom, offsets, targets);
+    }
+
+    private BitSet reaching(int state) {
+        return search(state, reaching, reverseOffsets, reverseSources);
+    }
+
+    /**
+     * Breadth first search, cached per component as all states of a component reach the same states
+     */
+    private BitSet search(int state, AtomicReferenceArray<BitSet> cache, int[] offsets, int[] targets) {
+        int component = components[state];
+        BitSet result = cache.get(component);
+        if (result != null) {
+            return result;
+        }
+        result = new BitSet(states.size());
+        int[] queue = new int[states.size()];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = state;
+        result.set(state);
+        while (head < tail) {
+            int v = queue[head++];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                int w = targets[e];
+                if (!result.get(w)) {
+                    result.set(w);
+                    queue[tail++] = w;
+                }
+            }
+        }
+        cache.compareAndSet(component, null, result);
+        return cache.get(component);
+    }
+
+    /**
+     * Read only view of a bit set of state ids
+     */
+    private final class StateSet extends AbstractSet<S> {
+
+        private final BitSet bits;
+        private final int size;
+
+        StateSet(BitSet bits) {
+            this.bits = bits;
+            this.size = bits.cardinality();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            Integer id = ids.get(o);
+            return id != null && bits.get(id);
+        }
+
+        @Override
+        public Iterator<S> iterator() {
+            return new Iterator<S>() {
+                private int next = bits.nextSetBit(0);
+
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+
+                @Override
+                public S next() {
+                    if (next < 0) {
+                        throw new NoSuchElementException();
+                    }
+                    S state = states.get(next);
+                    next = bits.nextSetBit(next + 1);
+                    return state;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -3,13 +3,20 @@ package com.github.oxo42.stateless4j;
 import com.github.oxo42.stateless4j.delegates.Action1;
 import com.github.oxo42.stateless4j.delegates.Action2;
 import com.github.oxo42.stateless4j.delegates.Func;
+import com.github.oxo42.stateless4j.jfr.FlightRecorderEvents;
+import com.github.oxo42.stateless4j.jfr.StateMachineFireEvent;
+import com.github.oxo42.stateless4j.metrics.DwellTimeMetrics;
+import com.github.oxo42.stateless4j.metrics.StateMachineMetrics;
+import com.github.oxo42.stateless4j.metrics.TriggerMetrics;
 import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.transitions.TransitionListener;
 import com.github.oxo42.stateless4j.triggers.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.Objects.requireNonNull;
 
@@ -19,12 +26,17 @@ import static java.util.Objects.requireNonNull;
  * @param <S> The type used to represent the states
  * @param <T> The type used to represent the triggers that cause state transitions
  */
-public class StateMachine<S, T> {
+public class StateMachine<S, T> implements Machine<S, T> {
 
     protected final StateMachineConfig<S, T> config;
     protected final Func<S> stateAccessor;
     protected final Action1<S> stateMutator;
+    private static final Object[] NO_ARGUMENTS = new Object[0];
     private final Logger logger = LoggerFactory.getLogger(getClass());
+    private final OutVar<S> destinationHolder = new OutVar<>(); // only read right after resultsInTransitionFrom
+    private TransitionRecorder<S, T> transitionRecorder; // null
+    private final DwellTimeMetrics<S, T> dwellTimeMetrics; // null unless enabled in the configuration
+    private long stateEnteredNanos;
     protected Action2<S, T> unhandledTriggerAction = (state, trigger) -> {
         throw new IllegalStateException(
                 String.format(
@@ -50,10 +62,12 @@ public class StateMachine<S, T> {
      */
     public StateMachine(final S initialState, final StateMachineConfig<S, T> config) {
         this.config = config;
+        this.dwellTimeMetrics = config.getDwellTimeMetrics();
         final StateReference<S, T> reference = new StateReference<>();
         reference.setState(initialState);
         stateAccessor = reference::getState;
         stateMutator = reference::setState;
+        startDwellTimeTracking();
 
         if (config.isEntryActionOfInitialStateEnabled()) {
             Transition<S,T> initialTransition = new Transition<>(initialState, initialState, null);
@@ -73,7 +87,16 @@ public class StateMachine<S, T> {
         this.config = config;
         this.stateAccessor = stateAccessor;
         this.stateMutator = stateMutator;
+        this.dwellTimeMetrics = config.getDwellTimeMetrics();
         stateMutator.doIt(initialState);
+        startDwellTimeTracking();
+    }
+
+    private void startDwellTimeTracking() {
+        if (dwellTimeMetrics != null) {
+            stateEnteredNanos = System.nanoTime();
+            dwellTimeMetrics.register(this);
+        }
     }
 
     public StateConfiguration<S, T> configure(final S state) {
@@ -97,18 +120,65 @@ public class StateMachine<S, T> {
         stateMutator.doIt(value);
     }
 
+    /**
+     * The {@link System#nanoTime()} at which the current state was entered
+     *
+     * @return The time stamp, 0 if dwell time tracking is disabled
+     * @see StateMachineConfig#setDwellTimeMetrics(DwellTimeMetrics)
+     */
+    public long getStateEnteredNanos() {
+        return stateEnteredNanos;
+    }
+
+    /**
+     * How long the machine has been in the current state
+     *
+     * @param unit The unit of the returned duration
+     * @return The time since the current state was entered
+     * @throws IllegalStateException If dwell time tracking is disabled
+     * @see StateMachineConfig#setDwellTimeMetrics(DwellTimeMetrics)
+     */
+    public long getTimeInState(final TimeUnit unit) {
+        if (dwellTimeMetrics == null) {
+            throw new IllegalStateException("Dwell time tracking is not enabled in the configuration");
+        }
+        return unit.convert(System.nanoTime() - stateEnteredNanos, TimeUnit.NANOSECONDS);
+    }
+
     /**
      * The currently-permissible trigger values
      *
-     * @return The currently-permissible trigger values
+     * @return A new list of the currently-permissible trigger values
      */
     public List<T> getPermittedTriggers() {
         return getCurrentRepresentation().getPermittedTriggers();
     }
 
+    /**
+     * Passes each currently-permissible trigger value to the action without allocating a collection.
+     * Guard conditions are only evaluated for triggers that depend on them.
+     *
+     * @param action Action receiving the currently-permissible trigger values
+     */
+    public void forEachPermittedTrigger(final Action1<T> action) {
+        requireNonNull(action, "action is null");
+        getCurrentRepresentation().forEachPermittedTrigger(action);
+    }
+
     StateRepresentation<S, T> getCurrentRepresentation() {
-        StateRepresentation<S, T> representation = config.getRepresentation(getState());
-        return representation == null ? new StateRepresentation<>(getState()) : representation;
+        S state = getState();
+        DispatchTable<S, T> dispatchTable = config.getDispatchTable();
+        StateRepresentation<S, T> representation = dispatchTable != null
+                ? dispatchTable.getRepresentation(state)
+                : config.getRepresentation(state);
+        return representation == null ? new StateRepresentation<>(state) : representation;
+    }
+
+    private boolean isTriggerConfigured(final StateRepresentation<S, T> representation, final T trigger) {
+        DispatchTable<S, T> dispatchTable = config.getDispatchTable();
+        return dispatchTable != null
+                ? dispatchTable.isTriggerConfigured(representation, trigger)
+                : representation.isTriggerConfigured(trigger);
     }
 
     /**
@@ -120,7 +190,7 @@ public class StateMachine<S, T> {
      * @param trigger The trigger to fire
      */
     public void fire(T trigger) {
-        publicFire(trigger);
+        publicFire(trigger, NO_ARGUMENTS);
     }
 
     /**
@@ -184,30 +254,330 @@ public class StateMachine<S, T> {
     }
 
     protected void publicFire(final T trigger, final Object... args) {
-        logger.debug("Firing {}");
+        logger.debug("Firing {}", trigger);
+        validateParameters(trigger, args);
+
+        StateMachineFireEvent fireEvent = FlightRecorderEvents.beginFire();
+        StateRepresentation<S, T> representation = getCurrentRepresentation();
+        S source = representation.getUnderlyingState();
+        TriggerMetrics<S> metrics = findMetrics(source, trigger);
+        boolean timed = metrics != null && metrics.isSampled();
+
+        TriggerBehaviour<S, T> triggerBehaviour = findHandler(representation, trigger, metrics, timed);
+        fireHandler(fireEvent, representation, trigger, triggerBehaviour, args, metrics, timed);
+    }
+
+    /**
+     * Fires a trigger whose handler in the current state was looked up by the caller, as {@link ProductMachine}
+     * does with the handlers cached by {@link ProductConfig}
+     *
+     * @param trigger          The trigger to fire
+     * @param triggerBehaviour The handler, or null if the trigger is not handled in the current state
+     * @param args             The trigger arguments
+     */
+    void fireResolved(final T trigger, final TriggerBehaviour<S, T> triggerBehaviour, final Object[] args) {
+        logger.debug("Firing {}", trigger);
+        validateParameters(trigger, args);
+
+        StateMachineFireEvent fireEvent = FlightRecorderEvents.beginFire();
+        StateRepresentation<S, T> representation = getCurrentRepresentation();
+        TriggerMetrics<S> metrics = findMetrics(representation.getUnderlyingState(), trigger);
+        if (metrics != null && triggerBehaviour == null) {
+            metrics.recordUnhandled();
+        }
+        fireHandler(fireEvent, representation, trigger, triggerBehaviour, args, metrics,
+                metrics != null && metrics.isSampled());
+    }
+
+    private void fireHandler(
+            final StateMachineFireEvent fireEvent,
+            final StateRepresentation<S, T> representation,
+            final T trigger,
+            final TriggerBehaviour<S, T> triggerBehaviour,
+            final Object[] args,
+            final TriggerMetrics<S> metrics,
+            final boolean timed) {
+        S source = representation.getUnderlyingState();
+        if (triggerBehaviour == null) {
+            FireResult.Status status = isTriggerConfigured(representation, trigger)
+                    ? FireResult.Status.GUARD_REJECTED
+                    : FireResult.Status.UNHANDLED;
+            FlightRecorderEvents.commitFire(fireEvent, source, trigger, source, status);
+            notifyUnhandled(source, trigger);
+            TransitionRecorder<S, T> recorder = transitionRecorder;
+            if (recorder != null) {
+                recorder.record(source, trigger, source, status, args);
+                if (recorder.isDumpOnUnhandled()) {
+                    logger.warn("No transition from state '{}' for trigger '{}', recent fires:{}{}",
+                            source, trigger, System.lineSeparator(), recorder.dump());
+                }
+            }
+            unhandledTriggerAction.doIt(source, trigger);
+            return;
+        }
+
+        Transition<S, T> transition = performTransition(triggerBehaviour, trigger, args, metrics, timed);
+        TransitionRecorder<S, T> recorder = transitionRecorder;
+        if (fireEvent != null || recorder != null) {
+            S result = transition != null ? transition.getDestination() : source;
+            FireResult.Status status = outcomeOf(triggerBehaviour, transition != null);
+            FlightRecorderEvents.commitFire(fireEvent, source, trigger, result, status);
+            if (recorder != null) {
+                recorder.record(source, trigger, result, status, args);
+            }
+        }
+    }
+
+    /**
+     * Try to transition from the current state via the specified trigger.
+     * <p>
+     * Behaves like {@link #fire(Object)}, but reports how the trigger was handled instead of invoking
+     * the unhandled trigger action. Guard conditions are evaluated only once and no exception is
+     * created if the trigger is not permitted in the current state.
+     *
+     * @param trigger The trigger to fire
+     * @return The outcome of firing the trigger
+     */
+    public FireResult<S> tryFire(T trigger) {
+        return publicTryFire(trigger, NO_ARGUMENTS);
+    }
+
+    /**
+     * Try to transition from the current state via the specified trigger.
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param <TArg0> Type of the first trigger argument
+     * @return The outcome of firing the trigger
+     * @see #tryFire(Object)
+     */
+    public <TArg0> FireResult<S> tryFire(
+            final TriggerWithParameters1<TArg0, S, T> trigger,
+            final TArg0 arg0) {
+        requireNonNull(trigger, "trigger is null");
+        return publicTryFire(trigger.getTrigger(), arg0);
+    }
+
+    /**
+     * Try to transition from the current state via the specified trigger.
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param arg1    The second argument
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @return The outcome of firing the trigger
+     * @see #tryFire(Object)
+     */
+    public <TArg0, TArg1> FireResult<S> tryFire(
+            final TriggerWithParameters2<TArg0, TArg1, S, T> trigger,
+            final TArg0 arg0,
+            final TArg1 arg1) {
+        requireNonNull(trigger, "trigger is null");
+        return publicTryFire(trigger.getTrigger(), arg0, arg1);
+    }
+
+    /**
+     * Try to transition from the current state via the specified trigger.
+     *
+     * @param trigger The trigger to fire
+     * @param arg0    The first argument
+     * @param arg1    The second argument
+     * @param arg2    The third argument
+     * @param <TArg0> Type of the first trigger argument
+     * @param <TArg1> Type of the second trigger argument
+     * @param <TArg2> Type of the third trigger argument
+     * @return The outcome of firing the trigger
+     * @see #tryFire(Object)
+     */
+    public <TArg0, TArg1, TArg2> FireResult<S> tryFire(
+            final TriggerWithParameters3<TArg0, TArg1, TArg2, S, T> trigger,
+            final TArg0 arg0,
+            final TArg1 arg1,
+            final TArg2 arg2) {
+        requireNonNull(trigger, "trigger is null");
+        return publicTryFire(trigger.getTrigger(), arg0, arg1, arg2);
+    }
+
+    protected FireResult<S> publicTryFire(final T trigger, final Object... args) {
+        validateParameters(trigger, args);
+
+        StateMachineFireEvent fireEvent = FlightRecorderEvents.beginFire();
+        StateRepresentation<S, T> representation = getCurrentRepresentation();
+        S source = representation.getUnderlyingState();
+        TriggerMetrics<S> metrics = findMetrics(source, trigger);
+        boolean timed = metrics != null && metrics.isSampled();
+
+        TriggerBehaviour<S, T> triggerBehaviour = findHandler(representation, trigger, metrics, timed);
+        if (triggerBehaviour == null) {
+            FireResult.Status status = isTriggerConfigured(representation, trigger)
+                    ? FireResult.Status.GUARD_REJECTED
+                    : FireResult.Status.UNHANDLED;
+            FlightRecorderEvents.commitFire(fireEvent, source, trigger, source, status);
+            notifyUnhandled(source, trigger);
+            recordFire(source, trigger, source, status, args);
+            return representation.getUnchangedResult(status);
+        }
+
+        Transition<S, T> transition = performTransition(triggerBehaviour, trigger, args, metrics, timed);
+        S result = transition != null ? transition.getDestination() : source;
+        FireResult.Status status = outcomeOf(triggerBehaviour, transition != null);
+        FlightRecorderEvents.commitFire(fireEvent, source, trigger, result, status);
+        recordFire(source, trigger, result, status, args);
+        return transition != null
+                ? new FireResult<>(status, source, result)
+                : representation.getUnchangedResult(status);
+    }
+
+    private void recordFire(final S source, final T trigger, final S destination, final FireResult.Status status,
+                            final Object[] args) {
+        TransitionRecorder<S, T> recorder = transitionRecorder;
+        if (recorder != null) {
+            recorder.record(source, trigger, destination, status, args);
+        }
+    }
+
+    private static FireResult.Status outcomeOf(final TriggerBehaviour<?, ?> triggerBehaviour, final boolean transitioned) {
+        if (transitioned) {
+            return FireResult.Status.TRANSITIONED;
+        }
+        return triggerBehaviour instanceof InternalTriggerBehaviour
+                ? FireResult.Status.INTERNAL
+                : FireResult.Status.IGNORED;
+    }
+
+    private void validateParameters(final T trigger, final Object[] args) {
         TriggerWithParameters<S, T> configuration = config.getTriggerConfiguration(trigger);
         if (configuration != null) {
             configuration.validateParameters(args);
         }
+    }
 
-        TriggerBehaviour<S, T> triggerBehaviour = getCurrentRepresentation().tryFindHandler(trigger);
-        if (triggerBehaviour == null) {
-            unhandledTriggerAction.doIt(getCurrentRepresentation().getUnderlyingState(), trigger);
-            return;
+    private TriggerMetrics<S> findMetrics(final S state, final T trigger) {
+        StateMachineMetrics<S, T> metrics = config.getMetrics();
+        return metrics == null ? null : metrics.forTrigger(state, trigger);
+    }
+
+    /**
+     * Looks up the handler for the trigger, recording unhandled fires and the guard evaluation time
+     */
+    private TriggerBehaviour<S, T> findHandler(
+            final StateRepresentation<S, T> representation,
+            final T trigger,
+            final TriggerMetrics<S> metrics,
+            final boolean timed) {
+        long start = timed ? System.nanoTime() : 0L;
+        DispatchTable<S, T> dispatchTable = config.getDispatchTable();
+        TriggerBehaviour<S, T> triggerBehaviour = dispatchTable != null
+                ? dispatchTable.tryFindHandler(representation, trigger)
+                : representation.tryFindHandler(trigger);
+        if (metrics != null) {
+            if (timed) {
+                metrics.recordGuardLatency(System.nanoTime() - start);
+            }
+            if (triggerBehaviour == null) {
+                metrics.recordUnhandled();
+            }
         }
+        return triggerBehaviour;
+    }
 
+    /**
+     * Executes the handler found for the trigger
+     *
+     * @return The transition, or null if the machine stayed in its state
+     */
+    private Transition<S, T> performTransition(
+            final TriggerBehaviour<S, T> triggerBehaviour,
+            final T trigger,
+            final Object[] args,
+            final TriggerMetrics<S> metrics,
+            final boolean timed) {
         S source = getState();
-        OutVar<S> destination = new OutVar<>();
-        if (triggerBehaviour.resultsInTransitionFrom(source, args, destination)) {
-            Transition<S, T> transition = new Transition<>(source, destination.get(), trigger);
+        if (triggerBehaviour.resultsInTransitionFrom(source, args, destinationHolder)) {
+            // actions may fire this machine again and reuse the holder
+            S destination = destinationHolder.get();
+            Transition<S, T> transition = new Transition<>(source, destination, trigger);
+            if (dwellTimeMetrics != null) {
+                long now = System.nanoTime();
+                dwellTimeMetrics.recordDwellTime(source, now - stateEnteredNanos);
+                stateEnteredNanos = now;
+            }
 
+            long exitStart = timed ? System.nanoTime() : 0L;
             getCurrentRepresentation().exit(transition);
+            long actionStart = timed ? System.nanoTime() : 0L;
             triggerBehaviour.performAction(args);
-            setState(destination.get());
+            long entryStart = timed ? System.nanoTime() : 0L;
+            setState(destination);
             getCurrentRepresentation().enter(transition, args);
+
+            if (metrics != null) {
+                if (timed) {
+                    long end = System.nanoTime();
+                    metrics.recordExitLatency(actionStart - exitStart);
+                    metrics.recordActionLatency(entryStart - actionStart);
+                    metrics.recordEntryLatency(end - entryStart);
+                }
+                metrics.recordTransition(destination);
+            }
+
+            TransitionListener<S, T>[] listeners = config.getTransitionListeners();
+            for (int i = 0; i < listeners.length; i++) {
+                listeners[i].onTransitioned(transition, args);
+            }
+            return transition;
+        }
+
+        // ignored or internal transition, the state is left untouched
+        long actionStart = timed ? System.nanoTime() : 0L;
+        triggerBehaviour.performAction(args);
+        if (metrics != null) {
+            if (timed) {
+                metrics.recordActionLatency(System.nanoTime() - actionStart);
+            }
+            metrics.recordHandled();
+        }
+
+        TransitionListener<S, T>[] listeners = config.getTransitionListeners();
+        if (listeners.length != 0) {
+            boolean internal = triggerBehaviour instanceof InternalTriggerBehaviour;
+            for (int i = 0; i < listeners.length; i++) {
+                if (internal) {
+                    listeners[i].onInternalTransition(source, trigger, args);
+                } else {
+                    listeners[i].onIgnored(source, trigger);
+                }
+            }
+        }
+        return null;
+    }
+
+    private void notifyUnhandled(final S state, final T trigger) {
+        TransitionListener<S, T>[] listeners = config.getTransitionListeners();
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].onUnhandled(state, trigger);
         }
     }
 
+    /**
+     * Keep the most recent fires of this state machine in a ring buffer
+     *
+     * @param transitionRecorder The recorder to write to, or null to stop recording
+     */
+    public void setTransitionRecorder(final TransitionRecorder<S, T> transitionRecorder) {
+        this.transitionRecorder = transitionRecorder;
+    }
+
+    /**
+     * The recorder keeping the most recent fires of this state machine
+     *
+     * @return The recorder, or null if fires are not recorded
+     */
+    public TransitionRecorder<S, T> getTransitionRecorder() {
+        return transitionRecorder;
+    }
+
     /**
      * Override the default behaviour of throwing an exception when an unhandled trigger is fired
      *
@@ -237,7 +607,11 @@ public class StateMachine<S, T> {
      * @return True if the trigger can be fired, false otherwise
      */
     public boolean canFire(final T trigger) {
-        return getCurrentRepresentation().canHandle(trigger);
+        StateRepresentation<S, T> representation = getCurrentRepresentation();
+        DispatchTable<S, T> dispatchTable = config.getDispatchTable();
+        return dispatchTable != null
+                ? dispatchTable.tryFindHandler(representation, trigger) != null
+                : representation.canHandle(trigger);
     }
 
     /**
@@ -1,5 +1,9 @@
 package com.github.oxo42.stateless4j;
 
+import com.github.oxo42.stateless4j.metrics.ActionProfiler;
+import com.github.oxo42.stateless4j.metrics.DwellTimeMetrics;
+import com.github.oxo42.stateless4j.metrics.StateMachineMetrics;
+import com.github.oxo42.stateless4j.transitions.TransitionListener;
 import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
 import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
 import com.github.oxo42.stateless4j.triggers.TriggerWithParameters;
@@ -7,19 +11,28 @@ import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
 import com.github.oxo42.stateless4j.triggers.TriggerWithParameters2;
 import com.github.oxo42.stateless4j.triggers.TriggerWithParameters3;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * The state machine configuration. Reusable.
  */
 public class StateMachineConfig<TState,TTrigger> {
 
+    private static final TransitionListener<?, ?>[] NO_LISTENERS = new TransitionListener<?, ?>[0];
+
     private final Map<TState, StateRepresentation<TState, TTrigger>> stateConfiguration = new HashMap<>();
     private final Map<TTrigger, TriggerWithParameters<TState, TTrigger>> triggerConfiguration = new HashMap<>();
     /**
@@ -28,6 +41,13 @@ public class StateMachineConfig<TState,TTrigger> {
      * entering the initial state never fires its entry action.
      */
     private boolean entryActionOfInitialStateEnabled = false;
+    private TransitionListener<TState, TTrigger>[] transitionListeners = newListeners(0);
+    private StateMachineMetrics<TState, TTrigger> metrics; // null
+    private ActionProfiler actionProfiler; // null
+    private DwellTimeMetrics<TState, TTrigger> dwellTimeMetrics; // null
+    private boolean frozen;
+    private DispatchTable<TState, TTrigger> dispatchTable; // null unless frozen with enum triggers and enum or integer states
+    private volatile StateGraph<TState, TTrigger> graph; // built on first use once frozen
 
     /**
      * Gets whether the entry action of the initial state of the state machine
@@ -61,6 +81,170 @@ public class StateMachineConfig<TState,TTrigger> {
         this.entryActionOfInitialStateEnabled = false;
     }
     
+    /**
+     * Registers a listener that is notified about the triggers handled by every state machine
+     * using this configuration
+     *
+     * @param listener The listener to add
+     */
+    public void addTransitionListener(final TransitionListener<TState, TTrigger> listener) {
+        requireNonNull(listener, "listener is null");
+        TransitionListener<TState, TTrigger>[] listeners = Arrays.copyOf(transitionListeners, transitionListeners.length + 1);
+        listeners[transitionListeners.length] = listener;
+        transitionListeners = listeners;
+    }
+
+    /**
+     * Removes a previously registered listener
+     *
+     * @param listener The listener to remove
+     * @return True if the listener was registered
+     */
+    public boolean removeTransitionListener(final TransitionListener<TState, TTrigger> listener) {
+        for (int i = 0; i < transitionListeners.length; i++) {
+            if (transitionListeners[i] == listener) {
+                TransitionListener<TState, TTrigger>[] listeners = newListeners(transitionListeners.length - 1);
+                System.arraycopy(transitionListeners, 0, listeners, 0, i);
+                System.arraycopy(transitionListeners, i + 1, listeners, i, transitionListeners.length - i - 1);
+                transitionListeners = listeners;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S, T> TransitionListener<S, T>[] newListeners(int count) {
+        return (TransitionListener<S, T>[]) (count == 0 ? NO_LISTENERS : new TransitionListener<?, ?>[count]);
+    }
+
+    /**
+     * The registered listeners. The array is replaced, never modified, when listeners change
+     * and is empty if no listener is registered.
+     *
+     * @return The registered listeners, must not be modified
+     */
+    TransitionListener<TState, TTrigger>[] getTransitionListeners() {
+        return transitionListeners;
+    }
+
+    /**
+     * Collect fire counts and phase latencies of every state machine using this configuration
+     *
+     * @param metrics The metrics to update, or null to disable metrics
+     */
+    public void setMetrics(final StateMachineMetrics<TState, TTrigger> metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * The metrics updated by state machines using this configuration
+     *
+     * @return The metrics, or null if disabled
+     */
+    public StateMachineMetrics<TState, TTrigger> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Time the entry, exit and transition actions registered after this call
+     *
+     * @param actionProfiler The profiler wrapping newly registered actions, or null to stop profiling
+     */
+    public void setActionProfiler(final ActionProfiler actionProfiler) {
+        this.actionProfiler = actionProfiler;
+    }
+
+    /**
+     * The profiler wrapping newly registered actions
+     *
+     * @return The profiler, or null if actions are not profiled
+     */
+    public ActionProfiler getActionProfiler() {
+        return actionProfiler;
+    }
+
+    /**
+     * Measure how long the state machines created after this call stay in each state
+     *
+     * @param dwellTimeMetrics The metrics to record the dwell times in, or null to disable dwell time tracking
+     */
+    public void setDwellTimeMetrics(final DwellTimeMetrics<TState, TTrigger> dwellTimeMetrics) {
+        this.dwellTimeMetrics = dwellTimeMetrics;
+    }
+
+    /**
+     * The metrics newly created state machines record their dwell times in
+     *
+     * @return The dwell time metrics, or null if disabled
+     */
+    public DwellTimeMetrics<TState, TTrigger> getDwellTimeMetrics() {
+        return dwellTimeMetrics;
+    }
+
+    /**
+     * Rejects further changes to states and trigger parameters, and lets state machines using this configuration
+     * look up handlers without walking the state hierarchy.
+     * <p>
+     * If the triggers are enums and the states are enums or densely numbered integers, every (state, trigger) pair
+     * is resolved into a table indexed by their ordinals. Listeners, metrics and the other runtime settings can
+     * still be changed. Freeze the configuration before sharing it with other threads.
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        for (StateRepresentation<TState, TTrigger> representation : stateConfiguration.values()) {
+            representation.freeze();
+        }
+        dispatchTable = DispatchTable.tryCreate(stateConfiguration);
+        frozen = true;
+    }
+
+    /**
+     * Whether {@link #freeze()} has been called
+     *
+     * @return True if the configuration can no longer be changed
+     */
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * The handler lookup table built by {@link #freeze()}
+     *
+     * @return The table, or null if the configuration is not frozen or its states or triggers are not enums
+     */
+    DispatchTable<TState, TTrigger> getDispatchTable() {
+        return dispatchTable;
+    }
+
+    /**
+     * The transition graph of this configuration, for reachability and shortest path queries.
+     * <p>
+     * The graph of a frozen configuration is built on first use and shared by later calls. Otherwise a new
+     * graph of the current transitions is built on every call.
+     *
+     * @return The transition graph
+     */
+    public StateGraph<TState, TTrigger> getGraph() {
+        if (!frozen) {
+            return new StateGraph<>(stateConfiguration.values());
+        }
+        StateGraph<TState, TTrigger> result = graph;
+        if (result == null) {
+            result = new StateGraph<>(stateConfiguration.values());
+            graph = result;
+        }
+        return result;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The configuration is frozen.");
+        }
+    }
+
     /**
      * Return StateRepresentation for the specified state. May return null.
      *
@@ -77,9 +261,10 @@ public class StateMachineConfig<TState,TTrigger> {
      * @param state The state
      * @return StateRepresentation for the specified state.
      */
-    private StateRepresentation<TState, TTrigger> getOrCreateRepresentation(final TState state) {
+    StateRepresentation<TState, TTrigger> getOrCreateRepresentation(final TState state) {
         StateRepresentation<TState, TTrigger> result = stateConfiguration.get(state);
         if (result == null) {
+            checkNotFrozen();
             result = new StateRepresentation<>(state);
             stateConfiguration.put(state, result);
         }
@@ -87,6 +272,27 @@ public class StateMachineConfig<TState,TTrigger> {
         return result;
     }
 
+    Collection<StateRepresentation<TState, TTrigger>> getRepresentations() {
+        return stateConfiguration.values();
+    }
+
+    /**
+     * Copies the trigger parameters, listeners, metrics and the other settings of another configuration
+     */
+    void copySettingsFrom(final StateMachineConfig<TState, TTrigger> other) {
+        checkNotFrozen();
+        triggerConfiguration.putAll(other.triggerConfiguration);
+        entryActionOfInitialStateEnabled = other.entryActionOfInitialStateEnabled;
+        transitionListeners = other.transitionListeners;
+        metrics = other.metrics;
+        actionProfiler = other.actionProfiler;
+        dwellTimeMetrics = other.dwellTimeMetrics;
+    }
+
+    boolean hasTriggerParameters() {
+        return !triggerConfiguration.isEmpty();
+    }
+
     public TriggerWithParameters<TState, TTrigger> getTriggerConfiguration(final TTrigger trigger) {
         return triggerConfiguration.get(trigger);
     }
@@ -99,12 +305,15 @@ public class StateMachineConfig<TState,TTrigger> {
      * @return A configuration object through which the state can be configured
      */
     public StateConfiguration<TState, TTrigger> configure(final TState state) {
+        checkNotFrozen();
         return new StateConfiguration<>(
                 getOrCreateRepresentation(state),
-                this::getOrCreateRepresentation);
+                this::getOrCreateRepresentation,
+                actionProfiler);
     }
 
     private void saveTriggerConfiguration(final TriggerWithParameters<TState, TTrigger> trigger) {
+        checkNotFrozen();
         if (triggerConfiguration.containsKey(trigger.getTrigger())) {
             throw new IllegalStateException("Parameters for the trigger '" + trigger + "' have already been configured.");
         }
@@ -189,4 +398,31 @@ public class StateMachineConfig<TState,TTrigger> {
             writer.write("}");
         }
     }
+
+    /**
+     * Writes a DOT graph of the configured transitions, weighted and coloured by the transitions observed by the
+     * metrics. Superstates are drawn as clusters and dynamic transitions as dashed edges to observed destinations.
+     * The graph is streamed to the writer, which is flushed but not closed.
+     *
+     * @param writer  The writer to write the graph to
+     * @param metrics The metrics collected for this configuration, or null for a graph without runtime information
+     * @throws IOException If the writer fails
+     */
+    public void generateHeatMapInto(final Writer writer, final StateMachineMetrics<TState, TTrigger> metrics) throws IOException {
+        requireNonNull(writer, "writer is null");
+        new HeatMapWriter<>(stateConfiguration.values(), metrics, writer).write();
+    }
+
+    /**
+     * Writes a UTF-8 encoded DOT graph of the configured transitions, weighted and coloured by the observed
+     * transitions. The stream is flushed but not closed.
+     *
+     * @param dotFile The stream to write the graph to
+     * @param metrics The metrics collected for this configuration, or null for a graph without runtime information
+     * @throws IOException If the stream fails
+     * @see #generateHeatMapInto(Writer, StateMachineMetrics)
+     */
+    public void generateHeatMapInto(final OutputStream dotFile, final StateMachineMetrics<TState, TTrigger> metrics) throws IOException {
+        generateHeatMapInto(new BufferedWriter(new OutputStreamWriter(dotFile, StandardCharsets.UTF_8)), metrics);
+    }
 }
@@ -2,11 +2,17 @@ package com.github.oxo42.stateless4j;
 
 import com.github.oxo42.stateless4j.delegates.Action1;
 import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.jfr.EntryActionEvent;
+import com.github.oxo42.stateless4j.jfr.ExitActionEvent;
+import com.github.oxo42.stateless4j.jfr.FlightRecorderEvents;
+import com.github.oxo42.stateless4j.jfr.GuardEvaluationEvent;
 import com.github.oxo42.stateless4j.transitions.Transition;
 import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -16,78 +22,201 @@ public class StateRepresentation<S, T> {
     private final S state;
 
     private final Map<T, List<TriggerBehaviour<S, T>>> triggerBehaviours = new HashMap<>();
+    private final Map<T, FirstMatchGuards<S, T>> firstMatchGuards = new HashMap<>();
+    // actions without a trigger condition are kept in entryActions/exitActions. Every trigger that has
+    // trigger specific actions gets its own list holding the unconditional and the specific actions in
+    // registration order, so entering or leaving runs exactly one list without filtering.
     private final List<Action2<Transition<S, T>, Object[]>> entryActions = new ArrayList<>();
+    private final Map<T, List<Action2<Transition<S, T>, Object[]>>> entryActionsByTrigger = new HashMap<>();
     private final List<Action1<Transition<S, T>>> exitActions = new ArrayList<>();
+    private final Map<T, List<Action1<Transition<S, T>>>> exitActionsByTrigger = new HashMap<>();
     private final List<StateRepresentation<S, T>> substates = new ArrayList<>();
     private StateRepresentation<S, T> superstate; // null
+    private PermittedTriggers<T> permittedTriggers; // computed on demand, reset when the hierarchy changes
+    private final FireResult<S>[] unchangedResults; // by ordinal, filled in the constructor and never written again
+    private boolean frozen;
 
     public StateRepresentation(S state) {
         this.state = state;
+        FireResult.Status[] statuses = FireResult.Status.values();
+        unchangedResults = newResults(statuses.length);
+        for (FireResult.Status status : statuses) {
+            unchangedResults[status.ordinal()] = new FireResult<>(status, state, state);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> FireResult<S>[] newResults(int count) {
+        return (FireResult<S>[]) new FireResult<?>[count];
     }
 
     protected Map<T, List<TriggerBehaviour<S, T>>> getTriggerBehaviours() {
         return triggerBehaviours;
     }
 
+    /**
+     * The outcome of a fire that left the machine in this state, shared by all such fires with the same status
+     */
+    FireResult<S> getUnchangedResult(FireResult.Status status) {
+        return unchangedResults[status.ordinal()];
+    }
+
     public Boolean canHandle(T trigger) {
         return tryFindHandler(trigger) != null;
     }
 
     public TriggerBehaviour<S, T> tryFindHandler(T trigger) {
-        TriggerBehaviour<S, T> result = tryFindLocalHandler(trigger);
-        if (result == null && superstate != null) {
-            result = superstate.tryFindHandler(trigger);
+        GuardEvaluationEvent event = FlightRecorderEvents.beginGuardEvaluation();
+        TriggerBehaviour<S, T> result = null;
+        for (StateRepresentation<S, T> current = this; result == null && current != null; current = current.superstate) {
+            result = current.tryFindLocalHandler(trigger);
         }
+        FlightRecorderEvents.commitGuardEvaluation(event, state, trigger, result != null);
         return result;
     }
 
+    /**
+     * Checks whether any behaviour is configured for the trigger in this state or its superstates,
+     * regardless of guard conditions. No guard is evaluated.
+     *
+     * @param trigger The trigger to check
+     * @return True if the trigger is configured
+     */
+    public boolean isTriggerConfigured(T trigger) {
+        return triggerBehaviours.containsKey(trigger)
+                || (superstate != null && superstate.isTriggerConfigured(trigger));
+    }
+
     TriggerBehaviour<S, T> tryFindLocalHandler(T trigger/*, out TriggerBehaviour handler*/) {
         List<TriggerBehaviour<S, T>> possible = triggerBehaviours.get(trigger);
         if (possible == null) {
             return null;
         }
 
-        List<TriggerBehaviour<S, T>> actual = new ArrayList<>();
-        for (TriggerBehaviour<S, T> triggerBehaviour : possible) {
+        if (!firstMatchGuards.isEmpty()) {
+            FirstMatchGuards<S, T> guards = firstMatchGuards.get(trigger);
+            if (guards != null) {
+                return guards.select();
+            }
+        }
+
+        TriggerBehaviour<S, T> actual = null;
+        for (int i = 0; i < possible.size(); i++) {
+            TriggerBehaviour<S, T> triggerBehaviour = possible.get(i);
             if (triggerBehaviour.isGuardConditionMet()) {
-                actual.add(triggerBehaviour);
+                if (actual != null) {
+                    throw new IllegalStateException("Multiple permitted exit transitions are configured from state '" + state + "' for trigger '" + trigger + "'. Guard clauses must be mutually exclusive.");
+                }
+                actual = triggerBehaviour;
             }
         }
 
-        if (actual.size() > 1) {
-            throw new IllegalStateException("Multiple permitted exit transitions are configured from state '" + state + "' for trigger '" + trigger + "'. Guard clauses must be mutually exclusive.");
+        return actual;
+    }
+
+    List<Action2<Transition<S, T>, Object[]>> getEntryActions() {
+        return entryActions;
+    }
+
+    List<Action1<Transition<S, T>>> getExitActions() {
+        return exitActions;
+    }
+
+    /**
+     * Copies the entry and exit actions of another state, including those for specific triggers
+     */
+    void copyActionsFrom(StateRepresentation<S, T> other) {
+        checkNotFrozen();
+        entryActions.addAll(other.entryActions);
+        for (Map.Entry<T, List<Action2<Transition<S, T>, Object[]>>> entry : other.entryActionsByTrigger.entrySet()) {
+            entryActionsByTrigger.put(entry.getKey(), new ArrayList<>(entry.getValue()));
         }
+        exitActions.addAll(other.exitActions);
+        for (Map.Entry<T, List<Action1<Transition<S, T>>>> entry : other.exitActionsByTrigger.entrySet()) {
+            exitActionsByTrigger.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+    }
 
-        return actual.isEmpty() ? null : actual.get(0);
+    boolean hasTriggerSpecificActions() {
+        return !entryActionsByTrigger.isEmpty() || !exitActionsByTrigger.isEmpty();
+    }
+
+    Map<T, FirstMatchGuards<S, T>> getFirstMatchGuards() {
+        return firstMatchGuards;
+    }
+
+    boolean hasMutuallyExclusiveGuards(T trigger) {
+        return firstMatchGuards.containsKey(trigger);
+    }
+
+    /**
+     * Declares the guards of all behaviours for the trigger as mutually exclusive. Handler lookup stops at the
+     * first behaviour whose guard is met instead of evaluating every guard to detect conflicts.
+     *
+     * @param trigger          The trigger
+     * @param adaptiveOrdering True to periodically reorder the guards by how often they are met
+     */
+    public void setGuardsMutuallyExclusive(T trigger, boolean adaptiveOrdering) {
+        checkNotFrozen();
+        FirstMatchGuards<S, T> guards = new FirstMatchGuards<>(adaptiveOrdering);
+        List<TriggerBehaviour<S, T>> existing = triggerBehaviours.get(trigger);
+        if (existing != null) {
+            for (TriggerBehaviour<S, T> triggerBehaviour : existing) {
+                guards.add(triggerBehaviour);
+            }
+        }
+        firstMatchGuards.put(trigger, guards);
     }
 
     public void addEntryAction(final T trigger, final Action2<Transition<S, T>, Object[]> action) {
+        checkNotFrozen();
         assert action != null : "action is null";
 
-        entryActions.add(new Action2<Transition<S, T>, Object[]>() {
-            @Override
-            public void doIt(Transition<S, T> t, Object[] args) {
-                T trans_trigger = t.getTrigger();
-                if (trans_trigger != null && trans_trigger.equals(trigger)) {
-                    action.doIt(t, args);
-                }
-            }
-        });
+        List<Action2<Transition<S, T>, Object[]>> actions = entryActionsByTrigger.get(trigger);
+        if (actions == null) {
+            actions = new ArrayList<>(entryActions);
+            entryActionsByTrigger.put(trigger, actions);
+        }
+        actions.add(action);
     }
 
     public void addEntryAction(Action2<Transition<S, T>, Object[]> action) {
+        checkNotFrozen();
         assert action != null : "action is null";
         entryActions.add(action);
+        for (List<Action2<Transition<S, T>, Object[]>> actions : entryActionsByTrigger.values()) {
+            actions.add(action);
+        }
     }
 
     public void insertEntryAction(Action2<Transition<S, T>, Object[]> action) {
+        checkNotFrozen();
         assert action != null : "action is null";
         entryActions.add(0, action);
+        for (List<Action2<Transition<S, T>, Object[]>> actions : entryActionsByTrigger.values()) {
+            actions.add(0, action);
+        }
+    }
+
+    public void addExitAction(final T trigger, final Action1<Transition<S, T>> action) {
+        checkNotFrozen();
+        assert action != null : "action is null";
+
+        List<Action1<Transition<S, T>>> actions = exitActionsByTrigger.get(trigger);
+        if (actions == null) {
+            actions = new ArrayList<>(exitActions);
+            exitActionsByTrigger.put(trigger, actions);
+        }
+        actions.add(action);
     }
 
     public void addExitAction(Action1<Transition<S, T>> action) {
+        checkNotFrozen();
         assert action != null : "action is null";
         exitActions.add(action);
+        for (List<Action1<Transition<S, T>>> actions : exitActionsByTrigger.values()) {
+            actions.add(action);
+        }
     }
 
     public void enter(Transition<S, T> transition, Object... entryArgs) {
@@ -120,19 +249,44 @@ public class StateRepresentation<S, T> {
     void executeEntryActions(Transition<S, T> transition, Object[] entryArgs) {
         assert transition != null : "transition is null";
         assert entryArgs != null : "entryArgs is null";
-        for (Action2<Transition<S, T>, Object[]> action : entryActions) {
-            action.doIt(transition, entryArgs);
+        List<Action2<Transition<S, T>, Object[]>> actions = entryActions;
+        if (!entryActionsByTrigger.isEmpty() && transition.getTrigger() != null) {
+            List<Action2<Transition<S, T>, Object[]>> specific = entryActionsByTrigger.get(transition.getTrigger());
+            if (specific != null) {
+                actions = specific;
+            }
         }
+        if (actions.isEmpty()) {
+            return;
+        }
+        EntryActionEvent event = FlightRecorderEvents.beginEntryAction();
+        for (int i = 0; i < actions.size(); i++) {
+            actions.get(i).doIt(transition, entryArgs);
+        }
+        FlightRecorderEvents.commitEntryAction(event, state, transition.getTrigger(), actions.size());
     }
 
     void executeExitActions(Transition<S, T> transition) {
         assert transition != null : "transition is null";
-        for (Action1<Transition<S, T>> action : exitActions) {
-            action.doIt(transition);
+        List<Action1<Transition<S, T>>> actions = exitActions;
+        if (!exitActionsByTrigger.isEmpty() && transition.getTrigger() != null) {
+            List<Action1<Transition<S, T>>> specific = exitActionsByTrigger.get(transition.getTrigger());
+            if (specific != null) {
+                actions = specific;
+            }
+        }
+        if (actions.isEmpty()) {
+            return;
+        }
+        ExitActionEvent event = FlightRecorderEvents.beginExitAction();
+        for (int i = 0; i < actions.size(); i++) {
+            actions.get(i).doIt(transition);
         }
+        FlightRecorderEvents.commitExitAction(event, state, transition.getTrigger(), actions.size());
     }
 
     public void addTriggerBehaviour(TriggerBehaviour<S, T> triggerBehaviour) {
+        checkNotFrozen();
         List<TriggerBehaviour<S, T>> allowed;
         if (!triggerBehaviours.containsKey(triggerBehaviour.getTrigger())) {
             allowed = new ArrayList<>();
@@ -140,6 +294,12 @@ public class StateRepresentation<S, T> {
         }
         allowed = triggerBehaviours.get(triggerBehaviour.getTrigger());
         allowed.add(triggerBehaviour);
+
+        FirstMatchGuards<S, T> guards = firstMatchGuards.get(triggerBehaviour.getTrigger());
+        if (guards != null) {
+            guards.add(triggerBehaviour);
+        }
+        invalidatePermittedTriggers();
     }
 
     public StateRepresentation<S, T> getSuperstate() {
@@ -147,21 +307,46 @@ public class StateRepresentation<S, T> {
     }
 
     public void setSuperstate(StateRepresentation<S, T> value) {
+        checkNotFrozen();
         superstate = value;
+        invalidatePermittedTriggers();
+    }
+
+    /**
+     * Rejects further changes to the behaviours, actions and hierarchy of this state
+     */
+    void freeze() {
+        frozen = true;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("The configuration of state '" + state + "' is frozen.");
+        }
     }
 
     public S getUnderlyingState() {
         return state;
     }
 
+    /**
+     * The states directly configured as substates of this state
+     *
+     * @return The substates, must not be modified
+     */
+    public List<StateRepresentation<S, T>> getSubstates() {
+        return Collections.unmodifiableList(substates);
+    }
+
     public void addSubstate(StateRepresentation<S, T> substate) {
+        checkNotFrozen();
         assert substate != null : "substate is null";
         substates.add(substate);
     }
 
     public boolean includes(S stateToCheck) {
-        for (StateRepresentation<S, T> s : substates) {
-            if (s.includes(stateToCheck)) {
+        for (int i = 0; i < substates.size(); i++) {
+            if (substates.get(i).includes(stateToCheck)) {
                 return true;
             }
         }
@@ -172,23 +357,105 @@ public class StateRepresentation<S, T> {
         return this.state.equals(stateToCheck) || (superstate != null && superstate.isIncludedIn(stateToCheck));
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * The triggers permitted in this state, taking superstates into account.
+     * <p>
+     * Only guard conditions of triggers that depend on them are evaluated, the other triggers are computed once.
+     * Use {@link #forEachPermittedTrigger(Action1)} to avoid allocating the returned list.
+     *
+     * @return A new list of the permitted triggers
+     */
     public List<T> getPermittedTriggers() {
-        Set<T> result = new HashSet<>();
+        PermittedTriggers<T> permitted = getOrComputePermittedTriggers();
+        List<T> result = new ArrayList<>(permitted.unguarded);
+        for (int i = 0; i < permitted.guarded.size(); i++) {
+            T trigger = permitted.guarded.get(i);
+            if (isAnyGuardConditionMet(trigger)) {
+                result.add(trigger);
+            }
+        }
+        return result;
+    }
 
-        for (T t : triggerBehaviours.keySet()) {
-            for (TriggerBehaviour<S, T> v : triggerBehaviours.get(t)) {
-                if (v.isGuardConditionMet()) {
-                    result.add(t);
-                    break;
+    /**
+     * Passes each trigger permitted in this state to the action, taking superstates into account.
+     * <p>
+     * Nothing is allocated, and guard conditions are only evaluated for triggers that depend on them.
+     *
+     * @param action Action receiving the permitted triggers
+     */
+    public void forEachPermittedTrigger(Action1<T> action) {
+        PermittedTriggers<T> permitted = getOrComputePermittedTriggers();
+        for (int i = 0; i < permitted.unguarded.size(); i++) {
+            action.doIt(permitted.unguarded.get(i));
+        }
+        for (int i = 0; i < permitted.guarded.size(); i++) {
+            T trigger = permitted.guarded.get(i);
+            if (isAnyGuardConditionMet(trigger)) {
+                action.doIt(trigger);
+            }
+        }
+    }
+
+    private boolean isAnyGuardConditionMet(T trigger) {
+        for (StateRepresentation<S, T> current = this; current != null; current = current.superstate) {
+            List<TriggerBehaviour<S, T>> behaviours = current.triggerBehaviours.get(trigger);
+            if (behaviours != null) {
+                for (int i = 0; i < behaviours.size(); i++) {
+                    if (behaviours.get(i).isGuardConditionMet()) {
+                        return true;
+                    }
                 }
             }
         }
+        return false;
+    }
 
-        if (getSuperstate() != null) {
-            result.addAll(getSuperstate().getPermittedTriggers());
+    private PermittedTriggers<T> getOrComputePermittedTriggers() {
+        PermittedTriggers<T> permitted = permittedTriggers;
+        if (permitted == null) {
+            Set<T> unguarded = new LinkedHashSet<>();
+            Set<T> guarded = new LinkedHashSet<>();
+            for (StateRepresentation<S, T> current = this; current != null; current = current.superstate) {
+                for (Map.Entry<T, List<TriggerBehaviour<S, T>>> entry : current.triggerBehaviours.entrySet()) {
+                    if (hasUnguardedBehaviour(entry.getValue())) {
+                        unguarded.add(entry.getKey());
+                    } else {
+                        guarded.add(entry.getKey());
+                    }
+                }
+            }
+            guarded.removeAll(unguarded);
+            permitted = new PermittedTriggers<>(unguarded, guarded);
+            permittedTriggers = permitted;
         }
+        return permitted;
+    }
 
-        return new ArrayList<>(result);
+    private static <S, T> boolean hasUnguardedBehaviour(List<TriggerBehaviour<S, T>> behaviours) {
+        for (TriggerBehaviour<S, T> behaviour : behaviours) {
+            if (!behaviour.isGuarded()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invalidatePermittedTriggers() {
+        permittedTriggers = null;
+        for (StateRepresentation<S, T> substate : substates) {
+            substate.invalidatePermittedTriggers();
+        }
+    }
+
+    private static final class PermittedTriggers<T> {
+
+        private final List<T> unguarded;
+        private final List<T> guarded;
+
+        PermittedTriggers(Collection<T> unguarded, Collection<T> guarded) {
+            this.unguarded = Collections.unmodifiableList(new ArrayList<>(unguarded));
+            this.guarded = Collections.unmodifiableList(new ArrayList<>(guarded));
+        }
     }
 }
@@ -0,0 +1,467 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Func2;
+import com.github.oxo42.stateless4j.transitions.TransitioningTriggerBehaviour;
+import com.github.oxo42.stateless4j.triggers.TriggerBehaviour;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Builds a frozen configuration from a table of transitions, one row per transition:
+ * <pre>
+ * state, trigger, destination, superstate
+ * </pre>
+ * Trigger and destination may both be left empty to only declare a state or its superstate, and the superstate
+ * may be left empty or omitted. Rows are read as {@link Format#CSV} or as whitespace separated
+ * {@link Format#LINES}, streaming through fixed size buffers, and added to the state representations
+ * directly, so loading large tables needs no per row {@link StateConfiguration}. Blank lines and lines starting
+ * with {@code #} are skipped.
+ * <p>
+ * Rows that cannot be used are skipped and reported as {@link Problem}s: malformed rows, unknown names,
+ * duplicates of an earlier row, and rows conflicting with an earlier row, i.e. a second destination for the
+ * same state and trigger, a second superstate, or a superstate that creates a cycle.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers
+ */
+public class TableLoader<S, T> {
+
+    /**
+     * Layout of the rows of a table
+     */
+    public enum Format {
+        /**
+         * Comma separated fields. Fields may be quoted with {@code "}, quotes within quoted fields are doubled.
+         */
+        CSV,
+        /**
+         * Fields separated by spaces or tabs. A single {@code -} is an empty field.
+         */
+        LINES
+    }
+
+    private static final int STATE = 0;
+    private static final int TRIGGER = 1;
+    private static final int DESTINATION = 2;
+    private static final int SUPERSTATE = 3;
+
+    private final Func2<String, S> stateParser;
+    private final Func2<String, T> triggerParser;
+    private Format format = Format.CSV;
+    private Charset charset = StandardCharsets.UTF_8;
+    private boolean header;
+    private int maxRowLength = 4096;
+    private int maxReportedProblems = 100;
+
+    /**
+     * Creates a loader
+     *
+     * @param stateParser   Converts a name to a state, returning null or throwing
+     *                      {@link IllegalArgumentException} for unknown names
+     * @param triggerParser Converts a name to a trigger, returning null or throwing
+     *                      {@link IllegalArgumentException} for unknown names
+     */
+    public TableLoader(final Func2<String, S> stateParser, final Func2<String, T> triggerParser) {
+        this.stateParser = requireNonNull(stateParser, "stateParser is null");
+        this.triggerParser = requireNonNull(triggerParser, "triggerParser is null");
+    }
+
+    /**
+     * Creates a loader for enum states and triggers, named by their constants
+     *
+     * @param stateType   The type used to represent the states
+     * @param triggerType The type used to represent the triggers
+     * @param <S>         The type used to represent the states
+     * @param <T>         The type used to represent the triggers
+     * @return The loader
+     */
+    public static <S extends Enum<S>, T extends Enum<T>> TableLoader<S, T> forEnums(
+            final Class<S> stateType, final Class<T> triggerType) {
+        return new TableLoader<>(constants(stateType)::get, constants(triggerType)::get);
+    }
+
+    private static <E extends Enum<E>> Map<String, E> constants(Class<E> type) {
+        Map<String, E> constants = new HashMap<>();
+        for (E constant : requireNonNull(type, "type is null").getEnumConstants()) {
+            constants.put(constant.name(), constant);
+        }
+        return constants;
+    }
+
+    /**
+     * Sets the layout of the rows, {@link Format#CSV} by default
+     *
+     * @param format The layout
+     */
+    public void setFormat(final Format format) {
+        this.format = requireNonNull(format, "format is null");
+    }
+
+    /**
+     * Sets the encoding of the table, UTF-8 by default
+     *
+     * @param charset The encoding
+     */
+    public void setCharset(final Charset charset) {
+        this.charset = requireNonNull(charset, "charset is null");
+    }
+
+    /**
+     * Sets whether the first row is a header to skip, false by default
+     *
+     * @param header True if the first row is a header
+     */
+    public void setHeader(final boolean header) {
+        this.header = header;
+    }
+
+    /**
+     * Sets the maximum length of a row in characters, 4096 by default. Longer rows fail the load.
+     *
+     * @param maxRowLength The maximum length
+     */
+    public void setMaxRowLength(final int maxRowLength) {
+        if (maxRowLength <= 0) {
+            throw new IllegalArgumentException("maxRowLength must be positive");
+        }
+        this.maxRowLength = maxRowLength;
+    }
+
+    /**
+     * Sets how many problems are kept for {@link Result#getProblems()}, 100 by default. All problems are counted.
+     *
+     * @param maxReportedProblems The number of problems to keep
+     */
+    public void setMaxReportedProblems(final int maxReportedProblems) {
+        if (maxReportedProblems < 0) {
+            throw new IllegalArgumentException("maxReportedProblems must not be negative");
+        }
+        this.maxReportedProblems = maxReportedProblems;
+    }
+
+    /**
+     * Loads a table from a file
+     *
+     * @param file The file
+     * @return The frozen configuration and the problems found
+     * @throws IOException If the file cannot be read or decoded, or a row is too long
+     */
+    public Result<S, T> load(final Path file) throws IOException {
+        requireNonNull(file, "file is null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return load(channel);
+        }
+    }
+
+    /**
+     * Loads a table from a channel, which is read to its end but not closed
+     *
+     * @param channel The channel
+     * @return The frozen configuration and the problems found
+     * @throws IOException If the channel cannot be read or decoded, or a row is too long
+     */
+    public Result<S, T> load(final ReadableByteChannel channel) throws IOException {
+        requireNonNull(channel, "channel is null");
+        Loading loading = new Loading();
+        TableReader reader = new TableReader(channel, charset, format == Format.CSV, maxRowLength);
+        String[] fields = new String[SUPERSTATE + 1];
+        boolean skip = header;
+        int count;
+        while ((count = reader.readRow(fields)) != -1) {
+            if (skip) {
+                skip = false;
+                continue;
+            }
+            loading.rows++;
+            loading.line = reader.getLine();
+            loading.add(fields, count);
+        }
+        loading.config.freeze();
+        return new Result<>(loading.config, loading.rows, loading.transitions, loading.problemCount, loading.problems);
+    }
+
+    /**
+     * State of one load
+     */
+    private final class Loading {
+
+        final StateMachineConfig<S, T> config = new StateMachineConfig<>();
+        final Map<String, S> states = new HashMap<>();
+        final Map<String, T> triggers = new HashMap<>();
+        final List<Problem> problems = new ArrayList<>();
+        int rows;
+        int transitions;
+        int problemCount;
+        int line;
+
+        void add(String[] fields, int count) {
+            if (count > fields.length) {
+                report(Problem.Kind.MALFORMED, "Expected at most " + fields.length + " fields, found " + count);
+                return;
+            }
+            String trigger = count > TRIGGER ? fields[TRIGGER] : "";
+            String destination = count > DESTINATION ? fields[DESTINATION] : "";
+            String superstate = count > SUPERSTATE ? fields[SUPERSTATE] : "";
+            if (fields[STATE].isEmpty()) {
+                report(Problem.Kind.MALFORMED, "State is missing");
+                return;
+            }
+            if (trigger.isEmpty() != destination.isEmpty()) {
+                report(Problem.Kind.MALFORMED, "Trigger and destination must both be given or both be empty");
+                return;
+            }
+
+            S state = state(fields[STATE]);
+            if (state == null) {
+                return;
+            }
+            S superState = null;
+            if (!superstate.isEmpty() && (superState = state(superstate)) == null) {
+                return;
+            }
+            T triggerValue = null;
+            S destinationState = null;
+            if (!trigger.isEmpty()
+                    && ((triggerValue = trigger(trigger)) == null || (destinationState = state(destination)) == null)) {
+                return;
+            }
+
+            // the row is checked as a whole before anything is applied, so a skipped row changes nothing
+            StateRepresentation<S, T> representation = config.getRepresentation(state);
+            if (superState != null && !canSetSuperstate(representation, state, superState)) {
+                return;
+            }
+            if (triggerValue != null && !canAddTransition(representation, state, triggerValue, destinationState)) {
+                return;
+            }
+
+            representation = config.getOrCreateRepresentation(state);
+            if (superState != null && representation.getSuperstate() == null) {
+                StateRepresentation<S, T> superstateRepresentation = config.getOrCreateRepresentation(superState);
+                representation.setSuperstate(superstateRepresentation);
+                superstateRepresentation.addSubstate(representation);
+            }
+            if (triggerValue != null) {
+                config.getOrCreateRepresentation(destinationState);
+                representation.addTriggerBehaviour(new TransitioningTriggerBehaviour<>(
+                        triggerValue, destinationState, TriggerBehaviour.NO_GUARD, StateConfiguration.NO_ACTION));
+                transitions++;
+            }
+        }
+
+        private boolean canSetSuperstate(StateRepresentation<S, T> representation, S state, S superstate) {
+            StateRepresentation<S, T> existing = representation == null ? null : representation.getSuperstate();
+            if (existing != null) {
+                if (existing.getUnderlyingState().equals(superstate)) {
+                    return true;
+                }
+                report(Problem.Kind.CONFLICT, "State '" + state + "' already has superstate '"
+                        + existing.getUnderlyingState() + "', not '" + superstate + "'");
+                return false;
+            }
+            StateRepresentation<S, T> superstateRepresentation = config.getRepresentation(superstate);
+            if (superstate.equals(state)
+                    || (superstateRepresentation != null && superstateRepresentation.isIncludedIn(state))) {
+                report(Problem.Kind.CONFLICT, "Superstate '" + superstate + "' of state '"
+                        + state + "' creates a cycle in the state hierarchy");
+                return false;
+            }
+            return true;
+        }
+
+        private boolean canAddTransition(StateRepresentation<S, T> representation, S state, T trigger, S destination) {
+            List<TriggerBehaviour<S, T>> existing = representation == null
+                    ? null
+                    : representation.getTriggerBehaviours().get(trigger);
+            if (existing == null) {
+                return true;
+            }
+            // rows only add unguarded transitions, so there is at most one
+            S other = ((TransitioningTriggerBehaviour<S, T>) existing.get(0)).getDestination();
+            String transition = "'" + state + "' --" + trigger + "--> '";
+            if (other.equals(destination)) {
+                report(Problem.Kind.DUPLICATE, "Transition " + transition + destination + "' is repeated");
+            } else {
+                report(Problem.Kind.CONFLICT, "Transition " + transition + destination
+                        + "' conflicts with " + transition + other + "'");
+            }
+            return false;
+        }
+
+        private S state(String name) {
+            S state = states.get(name);
+            if (state == null) {
+                state = parse(stateParser, name, "state");
+                if (state != null) {
+                    states.put(name, state);
+                }
+            }
+            return state;
+        }
+
+        private T trigger(String name) {
+            T trigger = triggers.get(name);
+            if (trigger == null) {
+                trigger = parse(triggerParser, name, "trigger");
+                if (trigger != null) {
+                    triggers.put(name, trigger);
+                }
+            }
+            return trigger;
+        }
+
+        private <V> V parse(Func2<String, V> parser, String name, String kind) {
+            V value;
+            try {
+                value = parser.call(name);
+            } catch (IllegalArgumentException e) {
+                value = null;
+            }
+            if (value == null) {
+                report(Problem.Kind.UNKNOWN_NAME, "Unknown " + kind + " '" + name + "'");
+            }
+            return value;
+        }
+
+        private void report(Problem.Kind kind, String message) {
+            problemCount++;
+            if (problems.size() < maxReportedProblems) {
+                problems.add(new Problem(line, kind, message));
+            }
+        }
+    }
+
+    /**
+     * A row of a table that was skipped
+     */
+    public static final class Problem {
+
+        /**
+         * Why a row was skipped
+         */
+        public enum Kind {
+            /**
+             * The row has too many fields or misses a state, trigger or destination
+             */
+            MALFORMED,
+            /**
+             * The row names a state or trigger the parser does not know
+             */
+            UNKNOWN_NAME,
+            /**
+             * The row repeats the transition of an earlier row
+             */
+            DUPLICATE,
+            /**
+             * The row contradicts an earlier row
+             */
+            CONFLICT
+        }
+
+        private final int line;
+        private final Kind kind;
+        private final String message;
+
+        Problem(int line, Kind kind, String message) {
+            this.line = line;
+            this.kind = kind;
+            this.message = message;
+        }
+
+        /**
+         * @return The line the row starts on, counting from 1
+         */
+        public int getLine() {
+            return line;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+
+    /**
+     * The configuration loaded from a table, with the problems found
+     *
+     * @param <S> The type used to represent the states
+     * @param <T> The type used to represent the triggers
+     */
+    public static final class Result<S, T> {
+
+        private final StateMachineConfig<S, T> config;
+        private final int rowCount;
+        private final int transitionCount;
+        private final int problemCount;
+        private final List<Problem> problems;
+
+        Result(StateMachineConfig<S, T> config, int rowCount, int transitionCount, int problemCount,
+               List<Problem> problems) {
+            this.config = config;
+            this.rowCount = rowCount;
+            this.transitionCount = transitionCount;
+            this.problemCount = problemCount;
+            this.problems = Collections.unmodifiableList(problems);
+        }
+
+        /**
+         * @return The frozen configuration built from the rows without problems
+         */
+        public StateMachineConfig<S, T> getConfig() {
+            return config;
+        }
+
+        /**
+         * @return The number of rows read, excluding header, blank and comment lines
+         */
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * @return The number of transitions added to the configuration
+         */
+        public int getTransitionCount() {
+            return transitionCount;
+        }
+
+        /**
+         * @return The number of skipped rows
+         */
+        public int getProblemCount() {
+            return problemCount;
+        }
+
+        /**
+         * @return The first skipped rows, up to the configured maximum
+         */
+        public List<Problem> getProblems() {
+            return problems;
+        }
+
+        public boolean hasProblems() {
+            return problemCount > 0;
+        }
+    }
+}
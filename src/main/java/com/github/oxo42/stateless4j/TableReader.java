@@ -0,0 +1,194 @@
+package com.github.oxo42.stateless4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reads the rows of a table from a channel through fixed size buffers, so memory use does not depend on the
+ * size of the table. Blank lines and lines starting with {@code #} are skipped.
+ */
+final class TableReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final CharsetDecoder decoder;
+    private final boolean csv;
+    private final int maxRowLength;
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder row = new StringBuilder();
+    private final StringBuilder field = new StringBuilder();
+    private boolean endOfInput;
+    private boolean flushed;
+    private int unread = -1; // a character read ahead, or -1
+    private int nextLine = 1;
+    private int rowLine;
+
+    TableReader(ReadableByteChannel channel, Charset charset, boolean csv, int maxRowLength) {
+        this.channel = channel;
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        this.csv = csv;
+        this.maxRowLength = maxRowLength;
+        chars.flip();
+    }
+
+    /**
+     * The line the last row read starts on, counting from 1
+     */
+    int getLine() {
+        return rowLine;
+    }
+
+    /**
+     * Reads the next row
+     *
+     * @param fields Receives the fields of the row; fields beyond its length are counted but not stored
+     * @return The number of fields in the row, or -1 at the end of the input
+     * @throws IOException If the input cannot be read or decoded, or a row is longer than the limit
+     */
+    int readRow(String[] fields) throws IOException {
+        while (readLine()) {
+            if (!isBlankOrComment()) {
+                return csv ? splitCsv(fields) : splitWhitespace(fields);
+            }
+        }
+        return -1;
+    }
+
+    private boolean readLine() throws IOException {
+        row.setLength(0);
+        rowLine = nextLine;
+        boolean quoted = false;
+        boolean any = false;
+        int c;
+        while ((c = read()) != -1) {
+            any = true;
+            if (c == '\n') {
+                nextLine++;
+                if (!quoted) {
+                    return true;
+                }
+            } else if (c == '\r' && !quoted) {
+                // a line break, unless the carriage return stands alone
+                int next = read();
+                if (next == '\n') {
+                    nextLine++;
+                    return true;
+                }
+                unread = next;
+            } else if (c == '"' && csv) {
+                quoted = !quoted;
+            }
+            if (row.length() == maxRowLength) {
+                throw new IOException("Row at line " + rowLine + " is longer than " + maxRowLength + " characters");
+            }
+            row.append((char) c);
+        }
+        return any;
+    }
+
+    private int read() throws IOException {
+        if (unread != -1) {
+            int c = unread;
+            unread = -1;
+            return c;
+        }
+        while (!chars.hasRemaining()) {
+            if (flushed) {
+                return -1;
+            }
+            chars.clear();
+            if (!endOfInput && channel.read(bytes) == -1) {
+                endOfInput = true;
+            }
+            bytes.flip();
+            check(decoder.decode(bytes, chars, endOfInput));
+            if (endOfInput) {
+                check(decoder.flush(chars));
+                flushed = !bytes.hasRemaining();
+                if (!flushed) {
+                    throw new IOException("Incomplete character at the end of the input");
+                }
+            }
+            bytes.compact();
+            chars.flip();
+        }
+        return chars.get();
+    }
+
+    private static void check(CoderResult result) throws IOException {
+        if (result.isError()) {
+            result.throwException();
+        }
+    }
+
+    private boolean isBlankOrComment() {
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '#';
+            }
+        }
+        return true;
+    }
+
+    private int splitCsv(String[] fields) {
+        int count = 0;
+        boolean inQuotes = false;
+        boolean quoted = false;
+        field.setLength(0);
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (c == '"') {
+                if (inQuotes && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    inQuotes = !inQuotes;
+                    quoted = true;
+                }
+            } else if (c == ',' && !inQuotes) {
+                count = store(fields, count, quoted);
+                quoted = false;
+            } else {
+                field.append(c);
+            }
+        }
+        return store(fields, count, quoted);
+    }
+
+    private int splitWhitespace(String[] fields) {
+        int count = 0;
+        field.setLength(0);
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                field.append(c);
+            } else if (field.length() > 0) {
+                count = store(fields, count, false);
+            }
+        }
+        if (field.length() > 0) {
+            count = store(fields, count, false);
+        }
+        return count;
+    }
+
+    private int store(String[] fields, int count, boolean quoted) {
+        if (count < fields.length) {
+            String value = quoted ? field.toString() : field.toString().trim();
+            fields[count] = csv || !value.equals("-") ? value : "";
+        }
+        field.setLength(0);
+        return count + 1;
+    }
+}
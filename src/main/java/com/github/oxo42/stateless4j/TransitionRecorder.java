@@ -0,0 +1,174 @@
+package com.github.oxo42.stateless4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fixed-size ring buffer holding the most recent fires of a state machine.
+ * <p>
+ * All slots are allocated up front, so recording a fire does not allocate. The recorder is written by the
+ * thread firing the machine and may be read from any thread with {@link #snapshot()} or {@link #dump()};
+ * entries overwritten while a snapshot is taken are left out of it.
+ * <p>
+ * A recorder is attached with {@link StateMachine#setTransitionRecorder(TransitionRecorder)}. It can be
+ * {@link #clear() cleared} and reused when a pooled machine slot is reassigned.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class TransitionRecorder<S, T> {
+
+    static final int MAX_ARGUMENTS = 3;
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private final int capacity;
+    private final int slots; // one more than the capacity, for the fire being written while a snapshot is taken
+    private final boolean recordArguments;
+    private final long[] timestamps;
+    private final Object[] sources;
+    private final Object[] triggers;
+    private final Object[] destinations;
+    private final FireResult.Status[] outcomes;
+    private final int[] argumentCounts;
+    private final Object[] arguments;
+    private volatile long written;
+    private volatile boolean dumpOnUnhandled;
+
+    /**
+     * Create a recorder keeping the last {@code capacity} fires, including their arguments
+     *
+     * @param capacity Number of fires to keep
+     */
+    public TransitionRecorder(int capacity) {
+        this(capacity, true);
+    }
+
+    /**
+     * Create a recorder keeping the last {@code capacity} fires
+     *
+     * @param capacity        Number of fires to keep
+     * @param recordArguments Whether trigger arguments are kept. Kept arguments stay reachable until their
+     *                        slot is overwritten.
+     */
+    public TransitionRecorder(int capacity, boolean recordArguments) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive, but is " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = capacity + 1;
+        this.recordArguments = recordArguments;
+        timestamps = new long[slots];
+        sources = new Object[slots];
+        triggers = new Object[slots];
+        destinations = new Object[slots];
+        outcomes = new FireResult.Status[slots];
+        argumentCounts = new int[slots];
+        arguments = recordArguments ? new Object[slots * MAX_ARGUMENTS] : NO_ARGUMENTS;
+    }
+
+    void record(S source, T trigger, S destination, FireResult.Status outcome, Object[] args) {
+        long index = written;
+        int slot = (int) (index % slots);
+        timestamps[slot] = System.currentTimeMillis();
+        sources[slot] = source;
+        triggers[slot] = trigger;
+        destinations[slot] = destination;
+        outcomes[slot] = outcome;
+        argumentCounts[slot] = args.length;
+        if (recordArguments) {
+            int offset = slot * MAX_ARGUMENTS;
+            for (int i = 0; i < MAX_ARGUMENTS; i++) {
+                arguments[offset + i] = i < args.length ? args[i] : null;
+            }
+        }
+        written = index + 1;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of fires recorded since creation or the last {@link #clear()}, including overwritten ones
+     *
+     * @return The number of recorded fires
+     */
+    public long getRecordedCount() {
+        return written;
+    }
+
+    /**
+     * Whether the state machine logs {@link #dump()} when an unhandled trigger is fired
+     *
+     * @return True if the recorder is dumped on unhandled triggers
+     */
+    public boolean isDumpOnUnhandled() {
+        return dumpOnUnhandled;
+    }
+
+    public void setDumpOnUnhandled(boolean dumpOnUnhandled) {
+        this.dumpOnUnhandled = dumpOnUnhandled;
+    }
+
+    /**
+     * Copies the recorded fires
+     *
+     * @return The recorded fires, oldest first
+     */
+    @SuppressWarnings("unchecked")
+    public List<RecordedTransition<S, T>> snapshot() {
+        long end = written;
+        long start = Math.max(0, end - capacity);
+        List<RecordedTransition<S, T>> result = new ArrayList<>((int) (end - start));
+        for (long index = start; index < end; index++) {
+            int slot = (int) (index % slots);
+            Object[] args = NO_ARGUMENTS;
+            if (recordArguments) {
+                args = new Object[Math.min(argumentCounts[slot], MAX_ARGUMENTS)];
+                System.arraycopy(arguments, slot * MAX_ARGUMENTS, args, 0, args.length);
+            }
+            result.add(new RecordedTransition<>(timestamps[slot], (S) sources[slot], (T) triggers[slot],
+                    (S) destinations[slot], outcomes[slot], argumentCounts[slot], args));
+        }
+
+        // drop entries the firing thread may have overwritten while they were copied. The fire at index
+        // written may be half written, and it reuses the slot of index written - slots.
+        long overwritten = written + 1 - slots - start;
+        if (overwritten > 0) {
+            return overwritten >= result.size()
+                    ? Collections.<RecordedTransition<S, T>>emptyList()
+                    : result.subList((int) overwritten, result.size());
+        }
+        return result;
+    }
+
+    /**
+     * Formats the recorded fires, one per line
+     *
+     * @return The recorded fires, oldest first
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (RecordedTransition<S, T> transition : snapshot()) {
+            builder.append(transition).append(System.lineSeparator());
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Forgets all recorded fires
+     */
+    public void clear() {
+        for (int i = 0; i < slots; i++) {
+            sources[i] = null;
+            triggers[i] = null;
+            destinations[i] = null;
+            outcomes[i] = null;
+        }
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = null;
+        }
+        written = 0;
+    }
+}
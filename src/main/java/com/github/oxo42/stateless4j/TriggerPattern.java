@@ -0,0 +1,512 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Func2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A pattern over sequences of triggers, compiled into a minimal deterministic state machine.
+ * <p>
+ * Patterns are written like regular expressions over trigger names, e.g. {@code LOGIN VIEW* (PURCHASE | LOGOUT)}:
+ * <ul>
+ * <li>a name matches that trigger and {@code .} matches any trigger of the alphabet</li>
+ * <li>patterns separated by whitespace match in sequence and {@code |} separates alternatives</li>
+ * <li>{@code *}, {@code +} and {@code ?} repeat the preceding pattern any number of times, at least once or at
+ * most once</li>
+ * <li>parentheses group patterns</li>
+ * </ul>
+ * The pattern is compiled into a Thompson NFA, turned into a DFA by subset construction and minimised by
+ * partition refinement. Its states are numbered from 0, the initial state, and {@link #toConfig()} turns them
+ * into an {@code Integer} state configuration, which freezes into a dense dispatch table if the triggers are
+ * enums. A sequence matches if a machine started in the initial state ends in an
+ * {@link #isAccepting(int) accepting} state after firing it; to find the pattern anywhere in a stream,
+ * start it with {@code .*}.
+ * <p>
+ * The alphabet consists of all constants of an enum trigger type, or otherwise of the triggers named in the
+ * pattern. Once no continuation can match any more, the machine moves to a dead state ignoring all triggers of
+ * the alphabet. Compiled patterns are immutable and can be shared between threads.
+ *
+ * @param <T> The type used to represent the triggers
+ */
+public final class TriggerPattern<T> {
+
+    private final String pattern;
+    private final List<T> alphabet;
+    private final Map<T, Integer> symbols;
+    private final int[][] transitions;
+    private final boolean[] accepting;
+    private final int deadState;
+
+    private TriggerPattern(String pattern, List<T> alphabet, int[][] transitions, boolean[] accepting, int deadState) {
+        this.pattern = pattern;
+        this.alphabet = Collections.unmodifiableList(alphabet);
+        this.symbols = new HashMap<>();
+        for (int i = 0; i < alphabet.size(); i++) {
+            symbols.put(alphabet.get(i), i);
+        }
+        this.transitions = transitions;
+        this.accepting = accepting;
+        this.deadState = deadState;
+    }
+
+    /**
+     * Compiles a pattern over the constants of an enum
+     *
+     * @param pattern     The pattern
+     * @param triggerType The type used to represent the triggers
+     * @param <T>         The type used to represent the triggers
+     * @return The compiled pattern
+     * @throws IllegalArgumentException If the pattern is invalid or names an unknown trigger
+     */
+    public static <T extends Enum<T>> TriggerPattern<T> compile(final String pattern, final Class<T> triggerType) {
+        requireNonNull(triggerType, "triggerType is null");
+        List<T> alphabet = new ArrayList<>();
+        Collections.addAll(alphabet, triggerType.getEnumConstants());
+        return compile(pattern, name -> Enum.valueOf(triggerType, name), alphabet);
+    }
+
+    /**
+     * Compiles a pattern whose alphabet consists of the triggers it names
+     *
+     * @param pattern       The pattern
+     * @param triggerParser Converts a name to a trigger, returning null or throwing
+     *                      {@link IllegalArgumentException} for unknown names
+     * @param <T>           The type used to represent the triggers
+     * @return The compiled pattern
+     * @throws IllegalArgumentException If the pattern is invalid or names an unknown trigger
+     */
+    public static <T> TriggerPattern<T> compile(final String pattern, final Func2<String, T> triggerParser) {
+        return compile(pattern, triggerParser, new ArrayList<T>());
+    }
+
+    private static <T> TriggerPattern<T> compile(String pattern, Func2<String, T> triggerParser, List<T> alphabet) {
+        requireNonNull(pattern, "pattern is null");
+        requireNonNull(triggerParser, "triggerParser is null");
+        List<Token> tokens = tokenize(pattern);
+        Map<String, Integer> names = new HashMap<>();
+        Set<T> known = new LinkedHashSet<>(alphabet);
+        for (Token token : tokens) {
+            if (token.name != null && !names.containsKey(token.name)) {
+                T trigger;
+                try {
+                    trigger = triggerParser.call(token.name);
+                } catch (IllegalArgumentException e) {
+                    trigger = null;
+                }
+                if (trigger == null) {
+                    throw new IllegalArgumentException("Unknown trigger '" + token.name + "' at position "
+                            + token.position + " of pattern '" + pattern + "'");
+                }
+                if (known.add(trigger)) {
+                    alphabet.add(trigger);
+                }
+                names.put(token.name, alphabet.indexOf(trigger));
+            }
+        }
+
+        Nfa nfa = new Nfa(alphabet.size());
+        Parser parser = new Parser(pattern, tokens, names, nfa);
+        int[] fragment = parser.parse();
+        int[][] dfa = nfa.determinise(fragment[0], fragment[1]);
+        return minimise(pattern, alphabet, dfa, nfa.accepting);
+    }
+
+    /**
+     * Merges equivalent states of the subset construction and adds the dead state if a transition is missing
+     */
+    private static <T> TriggerPattern<T> minimise(String pattern, List<T> alphabet, int[][] dfa, BitSet acceptingDfa) {
+        int[] labels = new int[dfa.length];
+        for (int s = 0; s < dfa.length; s++) {
+            labels[s] = acceptingDfa.get(s) ? 1 : 0;
+        }
+        int[] blocks = PartitionRefinement.refine(dfa, alphabet.size(), labels);
+        int count = 0;
+        for (int block : blocks) {
+            count = Math.max(count, block + 1);
+        }
+        boolean missing = false;
+        int[][] transitions = new int[count][];
+        boolean[] accepting = new boolean[count + 1];
+        for (int s = 0; s < dfa.length; s++) {
+            int block = blocks[s];
+            if (transitions[block] == null) {
+                transitions[block] = new int[alphabet.size()];
+                for (int a = 0; a < alphabet.size(); a++) {
+                    int destination = dfa[s][a];
+                    transitions[block][a] = destination < 0 ? -1 : blocks[destination];
+                    missing |= destination < 0;
+                }
+                accepting[block] = acceptingDfa.get(s);
+            }
+        }
+        int deadState = -1;
+        if (missing) {
+            deadState = count;
+            int[][] complete = new int[count + 1][];
+            for (int s = 0; s < count; s++) {
+                complete[s] = transitions[s];
+                for (int a = 0; a < alphabet.size(); a++) {
+                    if (complete[s][a] < 0) {
+                        complete[s][a] = deadState;
+                    }
+                }
+            }
+            complete[deadState] = new int[alphabet.size()];
+            Arrays.fill(complete[deadState], deadState);
+            transitions = complete;
+        } else {
+            accepting = Arrays.copyOf(accepting, count);
+        }
+        return new TriggerPattern<>(pattern, alphabet, transitions, accepting, deadState);
+    }
+
+    /**
+     * @return The number of states, including the dead state
+     */
+    public int getStateCount() {
+        return transitions.length;
+    }
+
+    /**
+     * @return The state a match starts in
+     */
+    public int getInitialState() {
+        return 0;
+    }
+
+    /**
+     * Whether the triggers fired so far match the pattern
+     *
+     * @param state A state of the pattern
+     * @return True if the state is accepting
+     */
+    public boolean isAccepting(final int state) {
+        return accepting[state];
+    }
+
+    /**
+     * @return The state no match can leave, or -1 if every state can still reach an accepting state
+     */
+    public int getDeadState() {
+        return deadState;
+    }
+
+    /**
+     * @return The triggers the pattern is defined over
+     */
+    public List<T> getAlphabet() {
+        return alphabet;
+    }
+
+    /**
+     * The state following a state when a trigger is fired
+     *
+     * @param state   A state of the pattern
+     * @param trigger The trigger
+     * @return The next state
+     * @throws IllegalArgumentException If the trigger is not in the alphabet
+     */
+    public int next(final int state, final T trigger) {
+        Integer symbol = symbols.get(trigger);
+        if (symbol == null) {
+            throw new IllegalArgumentException("Trigger '" + trigger + "' is not in the alphabet of '" + pattern + "'");
+        }
+        return transitions[state][symbol];
+    }
+
+    /**
+     * Whether a complete sequence of triggers matches the pattern
+     *
+     * @param triggers The triggers
+     * @return True if the sequence matches
+     * @throws IllegalArgumentException If a trigger is not in the alphabet
+     */
+    public boolean matches(final Iterable<T> triggers) {
+        int state = getInitialState();
+        for (T trigger : triggers) {
+            state = next(state, trigger);
+            if (state == deadState) {
+                return false;
+            }
+        }
+        return accepting[state];
+    }
+
+    /**
+     * Builds a configuration with a state per state of the pattern, permitting a transition for every trigger of
+     * the alphabet. Self loops are reentries and the dead state ignores all triggers. The configuration is not
+     * frozen, so actions can be added before freezing it.
+     *
+     * @return The configuration
+     */
+    public StateMachineConfig<Integer, T> toConfig() {
+        StateMachineConfig<Integer, T> config = new StateMachineConfig<>();
+        for (int s = 0; s < transitions.length; s++) {
+            StateConfiguration<Integer, T> state = config.configure(s);
+            for (int a = 0; a < alphabet.size(); a++) {
+                int destination = transitions[s][a];
+                if (s == deadState) {
+                    state.ignore(alphabet.get(a));
+                } else if (destination == s) {
+                    state.permitReentry(alphabet.get(a));
+                } else {
+                    state.permit(alphabet.get(a), destination);
+                }
+            }
+        }
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        return pattern;
+    }
+
+    private static final class Token {
+        final char symbol; // 0 for names
+        final String name;
+        final int position;
+
+        Token(char symbol, String name, int position) {
+            this.symbol = symbol;
+            this.name = name;
+            this.position = position;
+        }
+    }
+
+    private static List<Token> tokenize(String pattern) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < pattern.length()) {
+            char c = pattern.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if ("()|*+?.".indexOf(c) >= 0) {
+                tokens.add(new Token(c, null, i++));
+            } else if (Character.isJavaIdentifierPart(c)) {
+                int start = i;
+                while (i < pattern.length() && Character.isJavaIdentifierPart(pattern.charAt(i))) {
+                    i++;
+                }
+                tokens.add(new Token((char) 0, pattern.substring(start, i), start));
+            } else {
+                throw new IllegalArgumentException("Unexpected '" + c + "' at position " + i + " of pattern '"
+                        + pattern + "'");
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Recursive descent parser building Thompson fragments, each a pair of start and end state
+     */
+    private static final class Parser {
+
+        private final String pattern;
+        private final List<Token> tokens;
+        private final Map<String, Integer> names;
+        private final Nfa nfa;
+        private int position;
+
+        Parser(String pattern, List<Token> tokens, Map<String, Integer> names, Nfa nfa) {
+            this.pattern = pattern;
+            this.tokens = tokens;
+            this.names = names;
+            this.nfa = nfa;
+        }
+
+        int[] parse() {
+            int[] fragment = alternation();
+            if (position < tokens.size()) {
+                throw error("Unexpected '" + tokens.get(position).symbol + "'");
+            }
+            return fragment;
+        }
+
+        private int[] alternation() {
+            int[] fragment = sequence();
+            while (peek() == '|') {
+                position++;
+                int[] other = sequence();
+                int start = nfa.newState();
+                int end = nfa.newState();
+                nfa.epsilon(start, fragment[0]);
+                nfa.epsilon(start, other[0]);
+                nfa.epsilon(fragment[1], end);
+                nfa.epsilon(other[1], end);
+                fragment = new int[]{start, end};
+            }
+            return fragment;
+        }
+
+        private int[] sequence() {
+            int start = nfa.newState();
+            int end = start;
+            while (position < tokens.size() && (peek() == 0 || peek() == '.' || peek() == '(')) {
+                int[] next = repetition();
+                nfa.epsilon(end, next[0]);
+                end = next[1];
+            }
+            return new int[]{start, end};
+        }
+
+        private int[] repetition() {
+            int[] fragment = atom();
+            while (peek() == '*' || peek() == '+' || peek() == '?') {
+                char operator = tokens.get(position++).symbol;
+                int start = nfa.newState();
+                int end = nfa.newState();
+                nfa.epsilon(start, fragment[0]);
+                nfa.epsilon(fragment[1], end);
+                if (operator != '+') {
+                    nfa.epsilon(start, end);
+                }
+                if (operator != '?') {
+                    nfa.epsilon(fragment[1], fragment[0]);
+                }
+                fragment = new int[]{start, end};
+            }
+            return fragment;
+        }
+
+        private int[] atom() {
+            Token token = tokens.get(position++);
+            if (token.symbol == '(') {
+                int[] fragment = alternation();
+                if (peek() != ')') {
+                    throw error("Missing ')'");
+                }
+                position++;
+                return fragment;
+            }
+            int start = nfa.newState();
+            int end = nfa.newState();
+            if (token.symbol == '.') {
+                for (int a = 0; a < nfa.symbolCount; a++) {
+                    nfa.symbol(start, a, end);
+                }
+            } else {
+                nfa.symbol(start, names.get(token.name), end);
+            }
+            return new int[]{start, end};
+        }
+
+        /**
+         * @return The symbol of the next token, 0 for a name or -1 at the end
+         */
+        private int peek() {
+            return position < tokens.size() ? tokens.get(position).symbol : -1;
+        }
+
+        private IllegalArgumentException error(String message) {
+            int at = position < tokens.size() ? tokens.get(position).position : pattern.length();
+            return new IllegalArgumentException(message + " at position " + at + " of pattern '" + pattern + "'");
+        }
+    }
+
+    /**
+     * Nondeterministic automaton with epsilon transitions, built by the parser
+     */
+    private static final class Nfa {
+
+        final int symbolCount;
+        final List<List<Integer>> epsilons = new ArrayList<>();
+        final List<List<int[]>> moves = new ArrayList<>();
+        final BitSet accepting = new BitSet();
+
+        Nfa(int symbolCount) {
+            this.symbolCount = symbolCount;
+        }
+
+        int newState() {
+            epsilons.add(new ArrayList<Integer>());
+            moves.add(new ArrayList<int[]>());
+            return epsilons.size() - 1;
+        }
+
+        void epsilon(int from, int to) {
+            epsilons.get(from).add(to);
+        }
+
+        void symbol(int from, int symbol, int to) {
+            moves.get(from).add(new int[]{symbol, to});
+        }
+
+        /**
+         * Subset construction. DFA states are numbered in the order they are found, starting with the closure of
+         * the start state; {@link #accepting} is replaced by the accepting DFA states.
+         *
+         * @return The DFA transitions, -1 where no NFA state moves
+         */
+        int[][] determinise(int start, int end) {
+            Map<BitSet, Integer> ids = new HashMap<>();
+            List<BitSet> sets = new ArrayList<>();
+            List<int[]> transitions = new ArrayList<>();
+            BitSet initial = new BitSet();
+            initial.set(start);
+            closure(initial);
+            ids.put(initial, 0);
+            sets.add(initial);
+            BitSet acceptingDfa = new BitSet();
+            for (int current = 0; current < sets.size(); current++) {
+                BitSet set = sets.get(current);
+                if (set.get(end)) {
+                    acceptingDfa.set(current);
+                }
+                int[] row = new int[symbolCount];
+                for (int a = 0; a < symbolCount; a++) {
+                    BitSet next = new BitSet();
+                    for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                        for (int[] move : moves.get(s)) {
+                            if (move[0] == a) {
+                                next.set(move[1]);
+                            }
+                        }
+                    }
+                    if (next.isEmpty()) {
+                        row[a] = -1;
+                        continue;
+                    }
+                    closure(next);
+                    Integer id = ids.get(next);
+                    if (id == null) {
+                        id = sets.size();
+                        ids.put(next, id);
+                        sets.add(next);
+                    }
+                    row[a] = id;
+                }
+                transitions.add(row);
+            }
+            accepting.clear();
+            accepting.or(acceptingDfa);
+            return transitions.toArray(new int[transitions.size()][]);
+        }
+
+        private void closure(BitSet set) {
+            List<Integer> stack = new ArrayList<>();
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                stack.add(s);
+            }
+            while (!stack.isEmpty()) {
+                int s = stack.remove(stack.size() - 1);
+                for (int next : epsilons.get(s)) {
+                    if (!set.get(next)) {
+                        set.set(next);
+                        stack.add(next);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.oxo42.stateless4j.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event spanning the exit actions of one state
+ */
+@Name(FlightRecorderEvents.PREFIX + "ExitAction")
+@Label("Exit Action")
+@Description("Exit actions executed when leaving a state")
+@Category(FlightRecorderEvents.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+@Threshold("1 ms")
+public final class ExitActionEvent extends Event {
+
+    @Label("State")
+    String state;
+
+    @Label("Trigger")
+    String trigger;
+
+    @Label("Actions")
+    @Description("Number of exit actions executed")
+    int actions;
+}
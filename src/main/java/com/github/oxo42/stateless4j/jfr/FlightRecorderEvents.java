@@ -0,0 +1,153 @@
+package com.github.oxo42.stateless4j.jfr;
+
+/**
+ * Entry point used by the state machine to emit flight recorder events.
+ * <p>
+ * All events are disabled by default; enable them in a recording, e.g. with
+ * {@code jdk.jfr.Recording.enable("com.github.oxo42.stateless4j.StateMachineFire")} or in a {@code .jfc}
+ * settings file. While an event is disabled, the {@code begin} methods return null after a single
+ * {@code isEnabled} check on a shared probe instance, without allocating, and the {@code commit} methods do
+ * nothing. On runtimes without the {@code jdk.jfr} module no event class is ever loaded.
+ * <p>
+ * State and trigger names are only converted to strings for events exceeding their threshold.
+ */
+public final class FlightRecorderEvents {
+
+    static final String PREFIX = "com.github.oxo42.stateless4j.";
+    static final String CATEGORY = "stateless4j";
+
+    private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+    private FlightRecorderEvents() {
+    }
+
+    /**
+     * Event instances only used to ask whether their type is enabled, loaded on first use
+     */
+    private static final class Probes {
+        static final StateMachineFireEvent FIRE = new StateMachineFireEvent();
+        static final GuardEvaluationEvent GUARD_EVALUATION = new GuardEvaluationEvent();
+        static final EntryActionEvent ENTRY_ACTION = new EntryActionEvent();
+        static final ExitActionEvent EXIT_ACTION = new ExitActionEvent();
+    }
+
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, FlightRecorderEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts timing a fire
+     *
+     * @return The started event, or null if the event is disabled
+     */
+    public static StateMachineFireEvent beginFire() {
+        if (!AVAILABLE || !Probes.FIRE.isEnabled()) {
+            return null;
+        }
+        StateMachineFireEvent event = new StateMachineFireEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitFire(StateMachineFireEvent event, Object source, Object trigger, Object destination,
+                                  Object outcome) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = String.valueOf(source);
+            event.trigger = String.valueOf(trigger);
+            event.destination = String.valueOf(destination);
+            event.outcome = String.valueOf(outcome);
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing a handler lookup
+     *
+     * @return The started event, or null if the event is disabled
+     */
+    public static GuardEvaluationEvent beginGuardEvaluation() {
+        if (!AVAILABLE || !Probes.GUARD_EVALUATION.isEnabled()) {
+            return null;
+        }
+        GuardEvaluationEvent event = new GuardEvaluationEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitGuardEvaluation(GuardEvaluationEvent event, Object state, Object trigger,
+                                             boolean handled) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.state = String.valueOf(state);
+            event.trigger = String.valueOf(trigger);
+            event.handled = handled;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing the entry actions of a state
+     *
+     * @return The started event, or null if the event is disabled
+     */
+    public static EntryActionEvent beginEntryAction() {
+        if (!AVAILABLE || !Probes.ENTRY_ACTION.isEnabled()) {
+            return null;
+        }
+        EntryActionEvent event = new EntryActionEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitEntryAction(EntryActionEvent event, Object state, Object trigger, int actions) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.state = String.valueOf(state);
+            event.trigger = String.valueOf(trigger);
+            event.actions = actions;
+            event.commit();
+        }
+    }
+
+    /**
+     * Starts timing the exit actions of a state
+     *
+     * @return The started event, or null if the event is disabled
+     */
+    public static ExitActionEvent beginExitAction() {
+        if (!AVAILABLE || !Probes.EXIT_ACTION.isEnabled()) {
+            return null;
+        }
+        ExitActionEvent event = new ExitActionEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void commitExitAction(ExitActionEvent event, Object state, Object trigger, int actions) {
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.state = String.valueOf(state);
+            event.trigger = String.valueOf(trigger);
+            event.actions = actions;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.github.oxo42.stateless4j.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event spanning the lookup of the handler of a trigger, including its guard conditions
+ */
+@Name(FlightRecorderEvents.PREFIX + "GuardEvaluation")
+@Label("Guard Evaluation")
+@Description("Guard conditions evaluated to find the handler of a trigger")
+@Category(FlightRecorderEvents.CATEGORY)
+@Enabled(false)
+@StackTrace(false)
+@Threshold("100 us")
+public final class GuardEvaluationEvent extends Event {
+
+    @Label("State")
+    String state;
+
+    @Label("Trigger")
+    String trigger;
+
+    @Label("Handled")
+    @Description("Whether a permitted handler was found")
+    boolean handled;
+}
@@ -0,0 +1,34 @@
+package com.github.oxo42.stateless4j.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event spanning a complete fire, from the handler lookup up to the last entry action
+ */
+@Name(FlightRecorderEvents.PREFIX + "StateMachineFire")
+@Label("State Machine Fire")
+@Description("A trigger fired on a state machine")
+@Category(FlightRecorderEvents.CATEGORY)
+@Enabled(false)
+@Threshold("1 ms")
+public final class StateMachineFireEvent extends Event {
+
+    @Label("Source")
+    String source;
+
+    @Label("Trigger")
+    String trigger;
+
+    @Label("Destination")
+    String destination;
+
+    @Label("Outcome")
+    @Description("TRANSITIONED, INTERNAL, IGNORED, UNHANDLED or GUARD_REJECTED")
+    String outcome;
+}
@@ -0,0 +1,69 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count and latency of one action profiled by an {@link ActionProfiler}
+ */
+public class ActionProfile {
+
+    private final ActionProfiler profiler;
+    private final String label;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder slowCalls = new LongAdder();
+
+    ActionProfile(ActionProfiler profiler, String label) {
+        this.profiler = profiler;
+        this.label = label;
+    }
+
+    /**
+     * Records one call of the action, reporting it to the slow action handler if it exceeded the threshold
+     *
+     * @param nanos Duration of the call in nanoseconds
+     */
+    public void record(long nanos) {
+        latency.record(nanos);
+        long threshold = profiler.getSlowActionThresholdNanos();
+        if (threshold > 0 && nanos > threshold) {
+            slowCalls.increment();
+            profiler.reportSlowCall(this, nanos);
+        }
+    }
+
+    /**
+     * The configured label, or state, kind and index of the action, e.g. {@code Ringing/entry#0}
+     *
+     * @return The label of the action
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public long getCallCount() {
+        return latency.getCount();
+    }
+
+    /**
+     * Number of calls that took longer than the slow action threshold
+     *
+     * @return The number of slow calls
+     */
+    public long getSlowCallCount() {
+        return slowCalls.sum();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    void reset() {
+        latency.reset();
+        slowCalls.reset();
+    }
+
+    @Override
+    public String toString() {
+        return label + ": " + latency + " slow=" + getSlowCallCount();
+    }
+}
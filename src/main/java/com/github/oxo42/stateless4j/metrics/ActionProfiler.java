@@ -0,0 +1,146 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Times every entry, exit and transition action of a configuration, to attribute latency to single actions.
+ * <p>
+ * Install with {@link com.github.oxo42.stateless4j.StateMachineConfig#setActionProfiler(ActionProfiler)}
+ * before configuring the states: actions are wrapped when they are registered. Each action is identified by
+ * the label given with {@link com.github.oxo42.stateless4j.StateConfiguration#label(String)}, or else by
+ * its state, kind and index within the state, e.g. {@code Ringing/exit#1}.
+ * <p>
+ * Calls taking longer than the {@link #setSlowActionThreshold(long, TimeUnit) slow action threshold} are
+ * passed to the slow action handler once they return. By default they are logged as warnings.
+ */
+public class ActionProfiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActionProfiler.class);
+
+    private final ConcurrentHashMap<String, ActionProfile> profiles = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> nextIndex = new ConcurrentHashMap<>();
+    private volatile long slowActionThresholdNanos;
+    private volatile Action2<ActionProfile, Long> slowActionHandler = (profile, nanos) ->
+            logger.warn("Action '{}' took {} us, exceeding the threshold of {} us",
+                    profile.getLabel(), nanos / 1000, slowActionThresholdNanos / 1000);
+
+    /**
+     * Registers an action, called by the state configuration when an action is added
+     *
+     * @param state The state the action is registered on
+     * @param kind  Kind of the action, e.g. {@code entry}
+     * @param label The configured label, or null to derive one from state, kind and index
+     * @return The profile to record the calls of the action in. Actions with the same label share a profile.
+     */
+    public ActionProfile register(Object state, String kind, String label) {
+        String key = state + "/" + kind;
+        int index = nextIndex.computeIfAbsent(key, k -> new AtomicInteger()).getAndIncrement();
+        String name = label != null ? label : key + "#" + index;
+        return profiles.computeIfAbsent(name, n -> new ActionProfile(this, n));
+    }
+
+    /**
+     * Returns the profile of an action
+     *
+     * @param label The label of the action
+     * @return The profile, or null if no action has the label
+     */
+    public ActionProfile getProfile(String label) {
+        return profiles.get(label);
+    }
+
+    /**
+     * All registered actions
+     *
+     * @return The profiles, ordered by label
+     */
+    public List<ActionProfile> getProfiles() {
+        List<ActionProfile> result = new ArrayList<>(profiles.values());
+        result.sort(Comparator.comparing(ActionProfile::getLabel));
+        return result;
+    }
+
+    /**
+     * The slowest actions, ranked by their 99th percentile and then by their mean latency
+     *
+     * @param count Maximum number of actions to return
+     * @return The slowest called actions, slowest first
+     */
+    public List<ActionProfile> getSlowest(int count) {
+        List<ActionProfile> result = new ArrayList<>();
+        for (ActionProfile profile : profiles.values()) {
+            if (profile.getCallCount() != 0) {
+                result.add(profile);
+            }
+        }
+        result.sort(Comparator
+                .comparingLong((ActionProfile p) -> p.getLatency().getPercentileNanos(99))
+                .thenComparingDouble(p -> p.getLatency().getMeanNanos())
+                .reversed());
+        return result.size() <= count ? result : new ArrayList<>(result.subList(0, count));
+    }
+
+    /**
+     * Formats the slowest actions, one per line
+     *
+     * @param count Maximum number of actions to report
+     * @return The report
+     */
+    public String report(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (ActionProfile profile : getSlowest(count)) {
+            builder.append(profile).append(System.lineSeparator());
+        }
+        return builder.toString();
+    }
+
+    public long getSlowActionThresholdNanos() {
+        return slowActionThresholdNanos;
+    }
+
+    /**
+     * Sets the duration above which a single call is reported as slow
+     *
+     * @param threshold The threshold, 0 to disable slow call reporting
+     * @param unit      Unit of the threshold
+     */
+    public void setSlowActionThreshold(long threshold, TimeUnit unit) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold must not be negative, but is " + threshold);
+        }
+        slowActionThresholdNanos = unit.toNanos(threshold);
+    }
+
+    /**
+     * Replaces the default logging of slow calls
+     *
+     * @param slowActionHandler Handler receiving the profile of the action and the duration of the call in nanoseconds
+     */
+    public void setSlowActionHandler(Action2<ActionProfile, Long> slowActionHandler) {
+        this.slowActionHandler = requireNonNull(slowActionHandler, "slowActionHandler is null");
+    }
+
+    void reportSlowCall(ActionProfile profile, long nanos) {
+        slowActionHandler.doIt(profile, nanos);
+    }
+
+    /**
+     * Clears the recorded calls of all actions, keeping the registered actions
+     */
+    public void reset() {
+        for (ActionProfile profile : profiles.values()) {
+            profile.reset();
+        }
+    }
+}
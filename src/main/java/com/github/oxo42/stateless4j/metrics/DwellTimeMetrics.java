@@ -0,0 +1,120 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.delegates.Action2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * How long state machines stay in each state.
+ * <p>
+ * Install with {@link com.github.oxo42.stateless4j.StateMachineConfig#setDwellTimeMetrics(DwellTimeMetrics)}
+ * before creating the state machines. Each machine then stamps the {@code System.nanoTime()} at which it entered
+ * its current state, and records the time spent in the state when it transitions out of it, including reentry
+ * transitions. Internal and ignored transitions do not end the stay.
+ * <p>
+ * Tracked machines are held weakly, so they can be queried for stuck instances with
+ * {@link #getOldest(Object, int)} without keeping them alive.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class DwellTimeMetrics<S, T> {
+
+    private final ConcurrentHashMap<S, LatencyHistogram> dwellTimes = new ConcurrentHashMap<>();
+    private final Set<StateMachine<S, T>> machines = Collections.newSetFromMap(new WeakHashMap<>());
+
+    /**
+     * Tracks a state machine for {@link #getOldest(Object, int)}, called when it is created
+     *
+     * @param stateMachine The state machine
+     */
+    public void register(StateMachine<S, T> stateMachine) {
+        synchronized (machines) {
+            machines.add(stateMachine);
+        }
+    }
+
+    /**
+     * Records a completed stay in a state
+     *
+     * @param state The state that was left
+     * @param nanos Time spent in the state, in nanoseconds
+     */
+    public void recordDwellTime(S state, long nanos) {
+        LatencyHistogram histogram = dwellTimes.get(state);
+        if (histogram == null) {
+            histogram = dwellTimes.computeIfAbsent(state, s -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    /**
+     * The time spent in a state by the machines that left it
+     *
+     * @param state The state
+     * @return The dwell times, or null if no machine left the state yet
+     */
+    public LatencyHistogram getDwellTime(S state) {
+        return dwellTimes.get(state);
+    }
+
+    /**
+     * Passes the dwell times of every state left so far to the action
+     *
+     * @param action Action receiving state and dwell times
+     */
+    public void forEach(Action2<S, LatencyHistogram> action) {
+        for (Map.Entry<S, LatencyHistogram> entry : dwellTimes.entrySet()) {
+            action.doIt(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * The machines that have been in a state for the longest time. The states of the machines are read without
+     * synchronization, so machines transitioning concurrently may be reported inaccurately.
+     *
+     * @param state The state
+     * @param count Maximum number of machines to return
+     * @return The machines currently in the state, longest stay first
+     */
+    public List<StateMachine<S, T>> getOldest(S state, int count) {
+        List<StateMachine<S, T>> result = new ArrayList<>();
+        synchronized (machines) {
+            for (StateMachine<S, T> machine : machines) {
+                if (state.equals(machine.getState())) {
+                    result.add(machine);
+                }
+            }
+        }
+        // compare the difference, nanoTime values may overflow
+        result.sort((a, b) -> Long.signum(a.getStateEnteredNanos() - b.getStateEnteredNanos()));
+        return result.size() <= count ? result : new ArrayList<>(result.subList(0, count));
+    }
+
+    /**
+     * Number of live machines tracked
+     *
+     * @return The number of tracked machines that were not garbage collected
+     */
+    public int getMachineCount() {
+        synchronized (machines) {
+            return machines.size();
+        }
+    }
+
+    /**
+     * Clears the recorded dwell times, the machines stay tracked
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : dwellTimes.values()) {
+            histogram.reset();
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fire counts and phase latencies of all state machines using a configuration, collected per state and trigger.
+ * <p>
+ * Counters are always updated. The guard, exit, action and entry phases are only timed for one in
+ * {@link #getSampleInterval()} fires, so the {@code System.nanoTime()} overhead can be limited on hot machines.
+ * Install with {@link com.github.oxo42.stateless4j.StateMachineConfig#setMetrics(StateMachineMetrics)}.
+ * <p>
+ * At most {@link #getMaxEntries()} state and trigger pairs are kept apart, so open state or trigger types cannot
+ * grow the metrics without bound. Pairs first fired after the limit is reached are counted together in
+ * {@link #getOverflowMetrics()}, reported under the key {@value #OVERFLOW_KEY}.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class StateMachineMetrics<S, T> implements StateMachineMetricsMXBean {
+
+    public static final String OVERFLOW_KEY = "overflow";
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+    private static final String DOMAIN = "com.github.oxo42.stateless4j";
+
+    private final ConcurrentHashMap<S, ConcurrentHashMap<T, TriggerMetrics<S>>> metrics = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final AtomicInteger entryCount = new AtomicInteger();
+    private final TriggerMetrics<S> overflow = new TriggerMetrics<>(this);
+    private volatile int sampleInterval;
+    private ObjectName registeredName;
+
+    /**
+     * Create metrics timing every fire
+     */
+    public StateMachineMetrics() {
+        this(1);
+    }
+
+    /**
+     * Create metrics timing one in {@code sampleInterval} fires
+     *
+     * @param sampleInterval Only one in this many fires is timed
+     */
+    public StateMachineMetrics(int sampleInterval) {
+        this(sampleInterval, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Create metrics timing one in {@code sampleInterval} fires and keeping at most {@code maxEntries} state and
+     * trigger pairs apart
+     *
+     * @param sampleInterval Only one in this many fires is timed
+     * @param maxEntries     The number of state and trigger pairs after which new pairs are counted together
+     */
+    public StateMachineMetrics(int sampleInterval, int maxEntries) {
+        setSampleInterval(sampleInterval);
+        if (maxEntries < 0) {
+            throw new IllegalArgumentException("maxEntries must not be negative, but is " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Returns the metrics of a trigger fired in a state, creating them on first use
+     *
+     * @param state   The state the trigger is fired in
+     * @param trigger The fired trigger
+     * @return The metrics of the trigger in the state, or the overflow metrics if the limit is reached
+     */
+    public TriggerMetrics<S> forTrigger(S state, T trigger) {
+        ConcurrentHashMap<T, TriggerMetrics<S>> byTrigger = metrics.get(state);
+        if (byTrigger == null) {
+            if (entryCount.get() >= maxEntries) {
+                return overflow;
+            }
+            byTrigger = metrics.computeIfAbsent(state, s -> new ConcurrentHashMap<>());
+        }
+        TriggerMetrics<S> result = byTrigger.get(trigger);
+        if (result == null) {
+            // threads racing for the last entries may exceed the limit by a few
+            if (entryCount.get() >= maxEntries) {
+                return overflow;
+            }
+            result = byTrigger.computeIfAbsent(trigger, t -> {
+                entryCount.incrementAndGet();
+                return new TriggerMetrics<>(this);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Returns the metrics of a trigger fired in a state
+     *
+     * @param state   The state the trigger is fired in
+     * @param trigger The fired trigger
+     * @return The metrics, or null if the trigger was never fired in the state or was counted as overflow
+     */
+    public TriggerMetrics<S> getTriggerMetrics(S state, T trigger) {
+        ConcurrentHashMap<T, TriggerMetrics<S>> byTrigger = metrics.get(state);
+        return byTrigger == null ? null : byTrigger.get(trigger);
+    }
+
+    /**
+     * The metrics of all state and trigger pairs first fired after {@link #getMaxEntries()} pairs were kept
+     *
+     * @return The overflow metrics
+     */
+    public TriggerMetrics<S> getOverflowMetrics() {
+        return overflow;
+    }
+
+    @Override
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Passes the metrics of every state and trigger fired so far to the action, leaving out the overflow metrics
+     *
+     * @param action Action receiving state, trigger and metrics
+     */
+    public void forEach(Action3<S, T, TriggerMetrics<S>> action) {
+        for (Map.Entry<S, ConcurrentHashMap<T, TriggerMetrics<S>>> byState : metrics.entrySet()) {
+            for (Map.Entry<T, TriggerMetrics<S>> byTrigger : byState.getValue().entrySet()) {
+                action.doIt(byState.getKey(), byTrigger.getKey(), byTrigger.getValue());
+            }
+        }
+    }
+
+    /**
+     * Passes the metrics of every state and trigger, and the overflow metrics if used, by their JMX key
+     */
+    private void forEachKey(Action2<String, TriggerMetrics<S>> action) {
+        forEach((state, trigger, m) -> action.doIt(state + "/" + trigger, m));
+        if (overflow.getFireCount() != 0 || overflow.getUnhandledCount() != 0) {
+            action.doIt(OVERFLOW_KEY, overflow);
+        }
+    }
+
+    boolean isSampled() {
+        int interval = sampleInterval;
+        return interval == 1 || ThreadLocalRandom.current().nextInt(interval) == 0;
+    }
+
+    @Override
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    @Override
+    public void setSampleInterval(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval must be positive, but is " + sampleInterval);
+        }
+        this.sampleInterval = sampleInterval;
+    }
+
+    @Override
+    public long getTotalFireCount() {
+        long[] total = new long[1];
+        forEachKey((key, m) -> total[0] += m.getFireCount());
+        return total[0];
+    }
+
+    @Override
+    public long getTotalUnhandledCount() {
+        long[] total = new long[1];
+        forEachKey((key, m) -> total[0] += m.getUnhandledCount());
+        return total[0];
+    }
+
+    @Override
+    public Map<String, Long> getFireCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        forEachKey((key, m) -> result.put(key, m.getFireCount()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getUnhandledCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        forEachKey((key, m) -> {
+            if (m.getUnhandledCount() != 0) {
+                result.put(key, m.getUnhandledCount());
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public Map<String, String> getLatencySummaries() {
+        Map<String, String> result = new TreeMap<>();
+        forEachPhase((key, histogram) -> result.put(key, histogram.toString()));
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyNanos() {
+        Map<String, Long> result = new TreeMap<>();
+        forEachPhase((key, histogram) -> result.put(key, histogram.getPercentileNanos(99)));
+        return result;
+    }
+
+    private void forEachPhase(Action2<String, LatencyHistogram> visitor) {
+        forEachKey((key, m) -> {
+            String prefix = key + "/";
+            visitPhase(visitor, prefix + "guard", m.getGuardLatency());
+            visitPhase(visitor, prefix + "exit", m.getExitLatency());
+            visitPhase(visitor, prefix + "action", m.getActionLatency());
+            visitPhase(visitor, prefix + "entry", m.getEntryLatency());
+        });
+    }
+
+    private static void visitPhase(Action2<String, LatencyHistogram> visitor, String key, LatencyHistogram histogram) {
+        if (histogram.getCount() != 0) {
+            visitor.doIt(key, histogram);
+        }
+    }
+
+    @Override
+    public void reset() {
+        forEach((state, trigger, m) -> m.reset());
+        overflow.reset();
+    }
+
+    /**
+     * Registers these metrics with the platform MBean server
+     *
+     * @param name Value of the {@code name} key of the object name, identifying the configuration
+     * @return The object name the metrics were registered under
+     * @throws JMException If the registration fails
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (registeredName != null) {
+            throw new IllegalStateException("Metrics are already registered as " + registeredName);
+        }
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=StateMachineMetrics,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(this, objectName);
+        registeredName = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes these metrics from the platform MBean server, if registered
+     *
+     * @throws JMException If the unregistration fails
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (registeredName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+}
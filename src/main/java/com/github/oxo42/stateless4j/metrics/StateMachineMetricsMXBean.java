@@ -0,0 +1,51 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link StateMachineMetrics}. Keys of the returned maps have the form {@code state/trigger}
+ * or {@code state/trigger/phase}, with {@code overflow} in place of {@code state/trigger} for the pairs beyond
+ * {@link #getMaxEntries()}.
+ */
+public interface StateMachineMetricsMXBean {
+
+    /**
+     * Only one in this many fires has its phases timed
+     *
+     * @return The sample interval, 1 if every fire is timed
+     */
+    int getSampleInterval();
+
+    void setSampleInterval(int sampleInterval);
+
+    /**
+     * The number of state and trigger pairs kept apart
+     *
+     * @return The maximum number of pairs, later pairs are counted together under {@code overflow}
+     */
+    int getMaxEntries();
+
+    long getTotalFireCount();
+
+    long getTotalUnhandledCount();
+
+    Map<String, Long> getFireCounts();
+
+    Map<String, Long> getUnhandledCounts();
+
+    /**
+     * Latency summary of the guard, exit, action and entry phases
+     *
+     * @return Human-readable latency summaries keyed by {@code state/trigger/phase}
+     */
+    Map<String, String> getLatencySummaries();
+
+    /**
+     * 99th percentile latency of the guard, exit, action and entry phases
+     *
+     * @return Percentile upper bounds in nanoseconds keyed by {@code state/trigger/phase}
+     */
+    Map<String, Long> getP99LatencyNanos();
+
+    void reset();
+}
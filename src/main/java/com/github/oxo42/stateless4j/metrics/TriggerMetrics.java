@@ -0,0 +1,138 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of one trigger fired in one state
+ *
+ * @param <S> The type used to represent the states
+ */
+public class TriggerMetrics<S> {
+
+    private final StateMachineMetrics<S, ?> owner;
+    private final LongAdder handled = new LongAdder();
+    private final LongAdder unhandled = new LongAdder();
+    private final ConcurrentHashMap<S, LongAdder> destinations = new ConcurrentHashMap<>();
+    private final LatencyHistogram guardLatency = new LatencyHistogram();
+    private final LatencyHistogram exitLatency = new LatencyHistogram();
+    private final LatencyHistogram actionLatency = new LatencyHistogram();
+    private final LatencyHistogram entryLatency = new LatencyHistogram();
+
+    TriggerMetrics(StateMachineMetrics<S, ?> owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Decides whether the current fire is timed, according to the sample interval of the owning metrics
+     *
+     * @return True if the phases of the current fire should be timed
+     */
+    public boolean isSampled() {
+        return owner.isSampled();
+    }
+
+    /**
+     * Records a fire that was handled without leaving the state (ignored or internal transition)
+     */
+    public void recordHandled() {
+        handled.increment();
+    }
+
+    /**
+     * Records a fire that resulted in a transition
+     *
+     * @param destination The state transitioned to
+     */
+    public void recordTransition(S destination) {
+        handled.increment();
+        LongAdder counter = destinations.get(destination);
+        if (counter == null) {
+            counter = destinations.computeIfAbsent(destination, d -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Records a fire for which no transition was permitted
+     */
+    public void recordUnhandled() {
+        unhandled.increment();
+    }
+
+    public void recordGuardLatency(long nanos) {
+        guardLatency.record(nanos);
+    }
+
+    public void recordExitLatency(long nanos) {
+        exitLatency.record(nanos);
+    }
+
+    public void recordActionLatency(long nanos) {
+        actionLatency.record(nanos);
+    }
+
+    public void recordEntryLatency(long nanos) {
+        entryLatency.record(nanos);
+    }
+
+    /**
+     * Number of fires that were handled, including ignored and internal transitions
+     *
+     * @return Number of handled fires
+     */
+    public long getFireCount() {
+        return handled.sum();
+    }
+
+    public long getUnhandledCount() {
+        return unhandled.sum();
+    }
+
+    /**
+     * Number of transitions per observed destination state
+     *
+     * @return Snapshot of the transition counts by destination
+     */
+    public Map<S, Long> getDestinationCounts() {
+        Map<S, Long> result = new HashMap<>();
+        for (Map.Entry<S, LongAdder> entry : destinations.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Time spent looking up the handler, i.e. evaluating guards
+     *
+     * @return Histogram of sampled guard evaluation latencies
+     */
+    public LatencyHistogram getGuardLatency() {
+        return guardLatency;
+    }
+
+    public LatencyHistogram getExitLatency() {
+        return exitLatency;
+    }
+
+    public LatencyHistogram getActionLatency() {
+        return actionLatency;
+    }
+
+    public LatencyHistogram getEntryLatency() {
+        return entryLatency;
+    }
+
+    void reset() {
+        handled.reset();
+        unhandled.reset();
+        destinations.clear();
+        guardLatency.reset();
+        exitLatency.reset();
+        actionLatency.reset();
+        entryLatency.reset();
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.oxo42.stateless4j.metrics;
+
+/**
+ * An unhandled trigger sampled by {@link UnhandledTriggerAnalytics}
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public final class UnhandledTrigger<S, T> {
+
+    private final Object instance;
+    private final S state;
+    private final T trigger;
+    private final long timestamp;
+
+    UnhandledTrigger(Object instance, S state, T trigger, long timestamp) {
+        this.instance = instance;
+        this.state = state;
+        this.trigger = trigger;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Identifies the state machine the trigger was fired on
+     *
+     * @return The id passed to {@link UnhandledTriggerAnalytics#forInstance(Object)}, or null
+     */
+    public Object getInstance() {
+        return instance;
+    }
+
+    public S getState() {
+        return state;
+    }
+
+    public T getTrigger() {
+        return trigger;
+    }
+
+    /**
+     * Wall clock time of the fire
+     *
+     * @return Milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "UnhandledTrigger{instance=" + instance + ", state=" + state + ", trigger=" + trigger
+                + ", timestamp=" + timestamp + "}";
+    }
+}
@@ -0,0 +1,221 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.delegates.Action2;
+import com.github.oxo42.stateless4j.delegates.Action3;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Unhandled trigger action that counts unhandled triggers instead of throwing.
+ * <p>
+ * Misses are counted per state and trigger. One in {@code sampleInterval} misses is kept in a fixed-size
+ * reservoir of recent offenders, together with the id of the machine given to {@link #forInstance(Object)}.
+ * Optionally a warning is logged at most once per log interval, reporting how many misses were not logged.
+ * <pre>
+ * UnhandledTriggerAnalytics&lt;State, Trigger&gt; analytics = new UnhandledTriggerAnalytics&lt;&gt;(64, 100);
+ * stateMachine.onUnhandledTrigger(analytics.forInstance(orderId));
+ * </pre>
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public class UnhandledTriggerAnalytics<S, T> implements Action2<S, T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnhandledTriggerAnalytics.class);
+
+    private final ConcurrentHashMap<S, ConcurrentHashMap<T, LongAdder>> counts = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<UnhandledTrigger<S, T>> reservoir;
+    private final AtomicLong sampled = new AtomicLong();
+    private final int sampleInterval;
+    private final AtomicLong nextLogNanos = new AtomicLong(System.nanoTime());
+    private final LongAdder unlogged = new LongAdder();
+    private volatile long logIntervalNanos = -1;
+
+    /**
+     * Create analytics keeping every miss in a reservoir of 64 recent offenders
+     */
+    public UnhandledTriggerAnalytics() {
+        this(64, 1);
+    }
+
+    /**
+     * Create analytics
+     *
+     * @param reservoirSize  Number of recent offenders to keep
+     * @param sampleInterval Only one in this many misses is kept in the reservoir
+     */
+    public UnhandledTriggerAnalytics(int reservoirSize, int sampleInterval) {
+        if (reservoirSize < 1) {
+            throw new IllegalArgumentException("reservoirSize must be positive, but is " + reservoirSize);
+        }
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval must be positive, but is " + sampleInterval);
+        }
+        this.reservoir = new AtomicReferenceArray<>(reservoirSize);
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * Records a miss of a state machine without an id
+     *
+     * @param state   The state the trigger was fired in
+     * @param trigger The unhandled trigger
+     */
+    @Override
+    public void doIt(S state, T trigger) {
+        record(null, state, trigger);
+    }
+
+    /**
+     * Returns an unhandled trigger action recording misses under the given id
+     *
+     * @param instance Identifies the state machine in the reservoir, e.g. the id of the entity it belongs to
+     * @return The action to pass to {@link com.github.oxo42.stateless4j.StateMachine#onUnhandledTrigger(Action2)}
+     */
+    public Action2<S, T> forInstance(final Object instance) {
+        return (state, trigger) -> record(instance, state, trigger);
+    }
+
+    private void record(Object instance, S state, T trigger) {
+        ConcurrentHashMap<T, LongAdder> byTrigger = counts.get(state);
+        if (byTrigger == null) {
+            byTrigger = counts.computeIfAbsent(state, s -> new ConcurrentHashMap<>());
+        }
+        LongAdder counter = byTrigger.get(trigger);
+        if (counter == null) {
+            counter = byTrigger.computeIfAbsent(trigger, t -> new LongAdder());
+        }
+        counter.increment();
+
+        if (sampleInterval == 1 || ThreadLocalRandom.current().nextInt(sampleInterval) == 0) {
+            long index = sampled.getAndIncrement();
+            reservoir.set((int) (index % reservoir.length()),
+                    new UnhandledTrigger<>(instance, state, trigger, System.currentTimeMillis()));
+        }
+
+        long interval = logIntervalNanos;
+        if (interval >= 0) {
+            log(interval, instance, state, trigger);
+        }
+    }
+
+    private void log(long interval, Object instance, S state, T trigger) {
+        long now = System.nanoTime();
+        long next = nextLogNanos.get();
+        if (now - next >= 0 && nextLogNanos.compareAndSet(next, now + interval)) {
+            long skipped = unlogged.sumThenReset();
+            logger.warn("No valid leaving transitions are permitted from state '{}' for trigger '{}' (instance {}), "
+                    + "{} further unhandled triggers since the last message", state, trigger, instance, skipped);
+        } else {
+            unlogged.increment();
+        }
+    }
+
+    /**
+     * Log a warning for unhandled triggers, at most once per interval
+     *
+     * @param interval Minimum time between two messages, 0 to log every miss
+     * @param unit     Unit of the interval
+     */
+    public void setLogInterval(long interval, TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("interval must not be negative, but is " + interval);
+        }
+        logIntervalNanos = unit.toNanos(interval);
+    }
+
+    /**
+     * Stop logging unhandled triggers, the default
+     */
+    public void disableLogging() {
+        logIntervalNanos = -1;
+    }
+
+    /**
+     * Number of misses of a trigger in a state
+     *
+     * @param state   The state
+     * @param trigger The trigger
+     * @return The number of times the trigger was unhandled in the state
+     */
+    public long getCount(S state, T trigger) {
+        ConcurrentHashMap<T, LongAdder> byTrigger = counts.get(state);
+        LongAdder counter = byTrigger == null ? null : byTrigger.get(trigger);
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (ConcurrentHashMap<T, LongAdder> byTrigger : counts.values()) {
+            for (LongAdder counter : byTrigger.values()) {
+                total += counter.sum();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Passes the number of misses of every state and trigger to the action
+     *
+     * @param action Action receiving state, trigger and count
+     */
+    public void forEach(Action3<S, T, Long> action) {
+        for (Map.Entry<S, ConcurrentHashMap<T, LongAdder>> byState : counts.entrySet()) {
+            for (Map.Entry<T, LongAdder> byTrigger : byState.getValue().entrySet()) {
+                action.doIt(byState.getKey(), byTrigger.getKey(), byTrigger.getValue().sum());
+            }
+        }
+    }
+
+    /**
+     * Number of misses per state and trigger
+     *
+     * @return Counts keyed by {@code state/trigger}
+     */
+    public Map<String, Long> getCounts() {
+        Map<String, Long> result = new TreeMap<>();
+        forEach((state, trigger, count) -> result.put(state + "/" + trigger, count));
+        return result;
+    }
+
+    /**
+     * The sampled misses still held in the reservoir
+     *
+     * @return Recent offenders, oldest first
+     */
+    public List<UnhandledTrigger<S, T>> getRecentOffenders() {
+        int size = reservoir.length();
+        long end = sampled.get();
+        List<UnhandledTrigger<S, T>> result = new ArrayList<>(size);
+        for (long index = Math.max(0, end - size); index < end; index++) {
+            UnhandledTrigger<S, T> offender = reservoir.get((int) (index % size));
+            if (offender != null) {
+                result.add(offender);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Clears counts and reservoir
+     */
+    public void reset() {
+        counts.clear();
+        for (int i = 0; i < reservoir.length(); i++) {
+            reservoir.set(i, null);
+        }
+        sampled.set(0);
+        unlogged.reset();
+    }
+}
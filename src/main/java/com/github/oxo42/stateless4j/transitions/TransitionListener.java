@@ -0,0 +1,50 @@
+package com.github.oxo42.stateless4j.transitions;
+
+/**
+ * Observes how the state machines sharing a configuration handle fired triggers.
+ * <p>
+ * Listeners are called synchronously on the firing thread, after the corresponding actions have run.
+ * All methods do nothing by default, so implementations only override what they are interested in.
+ *
+ * @param <S> The type used to represent the states
+ * @param <T> The type used to represent the triggers that cause state transitions
+ */
+public interface TransitionListener<S, T> {
+
+    /**
+     * Called after a transition has completed, including reentry transitions
+     *
+     * @param transition The completed transition
+     * @param args       The trigger arguments
+     */
+    default void onTransitioned(Transition<S, T> transition, Object[] args) {
+    }
+
+    /**
+     * Called after the action of an internal transition has run
+     *
+     * @param state   The state the machine stays in
+     * @param trigger The fired trigger
+     * @param args    The trigger arguments
+     */
+    default void onInternalTransition(S state, T trigger, Object[] args) {
+    }
+
+    /**
+     * Called when a trigger is ignored
+     *
+     * @param state   The state the machine stays in
+     * @param trigger The ignored trigger
+     */
+    default void onIgnored(S state, T trigger) {
+    }
+
+    /**
+     * Called when no transition is permitted for a trigger, before the unhandled trigger action runs
+     *
+     * @param state   The state the trigger was fired in
+     * @param trigger The unhandled trigger
+     */
+    default void onUnhandled(S state, T trigger) {
+    }
+}
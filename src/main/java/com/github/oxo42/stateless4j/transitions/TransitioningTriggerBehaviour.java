@@ -16,6 +16,14 @@ public class TransitioningTriggerBehaviour<S, T> extends TriggerBehaviour<S, T>
         this.action = action;
     }
     
+    public S getDestination() {
+        return destination;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
     @Override
     public void performAction(Object[] args) {
         action.doIt();
@@ -0,0 +1,205 @@
+package com.github.oxo42.stateless4j.triggers;
+
+import com.github.oxo42.stateless4j.delegates.Func2;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of destination states computed by a dynamic transition, keyed by the trigger arguments.
+ * <p>
+ * The cache is split into independently locked segments, each of them evicting its least recently used
+ * entry once full, so the total number of entries never exceeds the configured maximum. It is safe to use
+ * a cache from several state machines sharing a configuration concurrently.
+ * <p>
+ * Only use a cache for selectors that are pure functions of the trigger arguments, and do not share one
+ * cache between several transitions.
+ *
+ * @param <S> The type used to represent the states
+ */
+public class DestinationCache<S> {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_SIZE = 16;
+
+    private final int maximumSize;
+    private final Segment<S>[] segments;
+    private final int segmentMask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a cache
+     *
+     * @param maximumSize Maximum number of destinations held by the cache
+     */
+    public DestinationCache(final int maximumSize) {
+        if (maximumSize < 1) {
+            throw new IllegalArgumentException("maximumSize must be positive, but is " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= maximumSize) {
+            segmentCount *= 2;
+        }
+        segments = newSegments(segmentCount);
+        segmentMask = segmentCount - 1;
+        int base = maximumSize / segmentCount;
+        int remainder = maximumSize % segmentCount;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(i < remainder ? base + 1 : base, evictions);
+        }
+    }
+
+    /**
+     * Returns the cached destination for the arguments, calling the selector on a miss.
+     * <p>
+     * The selector is called without holding a lock, so concurrent misses for the same arguments may
+     * call it more than once. A null destination is not cached.
+     *
+     * @param args     The trigger arguments
+     * @param selector Function to calculate the destination
+     * @return The destination state
+     */
+    public S get(final Object[] args, final Func2<Object[], S> selector) {
+        // fires without arguments share one key, so they look up without allocating
+        ArgumentsKey key = args.length == 0 ? ArgumentsKey.NONE : new ArgumentsKey(args);
+        Segment<S> segment = segments[spread(key.hash) & segmentMask];
+
+        S destination = segment.get(key);
+        if (destination != null) {
+            hits.increment();
+            return destination;
+        }
+
+        misses.increment();
+        destination = selector.call(args);
+        if (destination != null) {
+            segment.put(key == ArgumentsKey.NONE ? key : new ArgumentsKey(args.clone()), destination);
+        }
+        return destination;
+    }
+
+    /**
+     * Removes all cached destinations. Statistics are kept.
+     */
+    public void clear() {
+        for (Segment<S> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Current number of cached destinations
+     *
+     * @return Current number of cached destinations
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<S> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "DestinationCache { Size = " + size() + ", MaximumSize = " + maximumSize
+                + ", Hits = " + getHitCount() + ", Misses = " + getMissCount()
+                + ", Evictions = " + getEvictionCount() + " }";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <S> Segment<S>[] newSegments(int count) {
+        return (Segment<S>[]) new Segment<?>[count];
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class ArgumentsKey {
+
+        static final ArgumentsKey NONE = new ArgumentsKey(new Object[0]);
+
+        private final Object[] args;
+        private final int hash;
+
+        ArgumentsKey(Object[] args) {
+            this.args = args;
+            this.hash = Arrays.hashCode(args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ArgumentsKey)) {
+                return false;
+            }
+            ArgumentsKey other = (ArgumentsKey) obj;
+            return hash == other.hash && Arrays.equals(args, other.args);
+        }
+    }
+
+    private static final class Segment<S> {
+
+        private final LinkedHashMap<ArgumentsKey, S> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final int capacity;
+        private final LongAdder evictions;
+
+        Segment(int capacity, LongAdder evictions) {
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        synchronized S get(ArgumentsKey key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(ArgumentsKey key, S destination) {
+            entries.put(key, destination);
+            if (entries.size() > capacity) {
+                // in access order the first entry is the least recently used one
+                Iterator<ArgumentsKey> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+    }
+}
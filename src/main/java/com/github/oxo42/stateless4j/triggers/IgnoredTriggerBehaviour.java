@@ -11,7 +11,7 @@ public class IgnoredTriggerBehaviour<TState, TTrigger> extends TriggerBehaviour<
     
     @Override
     public void performAction(Object[] args) {
-        // no need to do anything. This is never called (no transition => no action)
+        // no need to do anything. An ignored trigger has no action attached
     }
 
     @Override
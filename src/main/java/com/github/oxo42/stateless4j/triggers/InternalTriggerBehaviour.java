@@ -0,0 +1,34 @@
+package com.github.oxo42.stateless4j.triggers;
+
+import com.github.oxo42.stateless4j.OutVar;
+import com.github.oxo42.stateless4j.delegates.Action1;
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+
+/**
+ * An internal transition: the trigger is handled by running an action while the
+ * machine stays in its current state. Neither exit nor entry actions are executed.
+ */
+public class InternalTriggerBehaviour<S, T> extends TriggerBehaviour<S, T> {
+
+    private final Action1<Object[]> action;
+
+    public InternalTriggerBehaviour(T trigger, FuncBoolean guard, Action1<Object[]> action) {
+        super(trigger, guard);
+        assert action != null : "action is null";
+        this.action = action;
+    }
+
+    public Action1<Object[]> getAction() {
+        return action;
+    }
+
+    @Override
+    public void performAction(Object[] args) {
+        action.doIt(args);
+    }
+
+    @Override
+    public boolean resultsInTransitionFrom(S source, Object[] args, OutVar<S> dest) {
+        return false;
+    }
+}
@@ -5,6 +5,11 @@ import com.github.oxo42.stateless4j.OutVar;
 
 public abstract class TriggerBehaviour<S, T> {
 
+    /**
+     * Guard of behaviours that are accepted unconditionally
+     */
+    public static final FuncBoolean NO_GUARD = () -> true;
+
     private final T trigger;
     private final FuncBoolean guard;
 
@@ -19,9 +24,27 @@ public abstract class TriggerBehaviour<S, T> {
 
     public abstract void performAction(Object[] args);
 
+    /**
+     * The guard condition, {@link #NO_GUARD} if the behaviour is unguarded
+     *
+     * @return The guard condition
+     */
+    public FuncBoolean getGuard() {
+        return guard;
+    }
+
     public boolean isGuardConditionMet() {
         return guard.call();
     }
 
+    /**
+     * True if the behaviour has a guard condition, false if it was configured with {@link #NO_GUARD}
+     *
+     * @return True if the guard condition has to be evaluated
+     */
+    public boolean isGuarded() {
+        return guard != NO_GUARD;
+    }
+
     public abstract boolean resultsInTransitionFrom(S source, Object[] args, OutVar<S> dest);
 }
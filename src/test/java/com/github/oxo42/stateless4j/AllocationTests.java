@@ -0,0 +1,142 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Guards the fire path against new garbage. Each operation is warmed up until it is compiled, then the bytes
+ * allocated by the current thread are divided by the number of operations and compared to a budget.
+ * A transition may allocate its {@link com.github.oxo42.stateless4j.transitions.Transition}, which is passed to
+ * the entry and exit actions; a parameterised fire may allocate its argument array.
+ */
+public class AllocationTests {
+
+    private static final int WARMUP = 50000;
+    private static final int OPERATIONS = 100000;
+    private static final long TRANSITION_BUDGET = 32;
+    private static final long ARGUMENTS_BUDGET = 32;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private long bytesPerOperation(Runnable operation) {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < OPERATIONS; i++) {
+            operation.run();
+        }
+        long after = threads.getThreadAllocatedBytes(threadId);
+        return (after - before) / OPERATIONS;
+    }
+
+    private static void assertBudget(String operation, long budget, long bytes) {
+        assertTrue(operation + " allocates " + bytes + " bytes per call, the budget is " + budget, bytes <= budget);
+    }
+
+    private static StateMachine<State, Trigger> flatMachine() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .ignore(Trigger.Y);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .internalTransition(Trigger.Y, () -> {
+                });
+        return new StateMachine<>(State.A, config);
+    }
+
+    private static StateMachine<State, Trigger> hierarchicalMachine() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.Y, State.C)
+                .onEntry(() -> {
+                })
+                .onExit(() -> {
+                });
+        config.configure(State.B)
+                .substateOf(State.A)
+                .permit(Trigger.X, State.A)
+                .onEntry(() -> {
+                });
+        config.configure(State.C)
+                .permit(Trigger.X, State.B)
+                .onExit(() -> {
+                });
+        return new StateMachine<>(State.B, config);
+    }
+
+    @Test
+    public void QueriesDoNotAllocate() {
+        StateMachine<State, Trigger> sm = hierarchicalMachine();
+
+        assertBudget("getState", 0, bytesPerOperation(sm::getState));
+        assertBudget("isInState", 0, bytesPerOperation(() -> sm.isInState(State.A)));
+        assertBudget("canFire", 0, bytesPerOperation(() -> sm.canFire(Trigger.Y)));
+        assertBudget("canFire unhandled", 0, bytesPerOperation(() -> sm.canFire(Trigger.Z)));
+    }
+
+    @Test
+    public void IgnoredAndInternalFiresDoNotAllocate() {
+        StateMachine<State, Trigger> sm = flatMachine();
+
+        assertBudget("fire ignored", 0, bytesPerOperation(() -> sm.fire(Trigger.Y)));
+        sm.fire(Trigger.X);
+        assertBudget("fire internal", 0, bytesPerOperation(() -> sm.fire(Trigger.Y)));
+    }
+
+    @Test
+    public void TransitionsStayWithinBudget() {
+        StateMachine<State, Trigger> sm = flatMachine();
+        assertBudget("fire", TRANSITION_BUDGET, bytesPerOperation(() -> sm.fire(Trigger.X)));
+    }
+
+    @Test
+    public void HierarchicalTransitionsStayWithinBudget() {
+        StateMachine<State, Trigger> sm = hierarchicalMachine();
+        // B -X-> A, A -Y-> C, C -X-> B: every step crosses the superstate boundary or re-enters
+        assertBudget("fire hierarchical", TRANSITION_BUDGET, bytesPerOperation(() -> {
+            sm.fire(Trigger.X);
+            sm.fire(Trigger.Y);
+            sm.fire(Trigger.X);
+        }) / 3);
+    }
+
+    @Test
+    public void ParameterisedTransitionsStayWithinBudget() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<String, State, Trigger> trigger = config.setTriggerParameters(Trigger.X, String.class);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .onEntryFrom(trigger, name -> {
+                }, String.class)
+                .permit(Trigger.X, State.A);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+
+        assertBudget("fire with parameter", TRANSITION_BUDGET + ARGUMENTS_BUDGET,
+                bytesPerOperation(() -> sm.fire(trigger, "name")));
+    }
+
+    @Test
+    public void TryFireOfUnhandledTriggerStaysWithinBudget() {
+        StateMachine<State, Trigger> sm = flatMachine();
+        assertBudget("tryFire unhandled", 0, bytesPerOperation(() -> sm.tryFire(Trigger.Z)));
+    }
+}
@@ -0,0 +1,235 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.metrics.StateMachineMetrics;
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.transitions.TransitionListener;
+import com.github.oxo42.stateless4j.triggers.DestinationCache;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Hammers state machines from many threads with random trigger streams and checks every recorded history against
+ * a sequential replay on the same configuration.
+ * <p>
+ * A {@link StateMachine} is not thread-safe, so the machines fired concurrently are owned by single threads and
+ * share one configuration. The configuration is the part that is read concurrently: guard ordering, permitted
+ * trigger caches, destination cache, listeners and metrics. A machine handed from thread to thread under a lock
+ * is checked as well, for state that is only safely published by that lock.
+ * <p>
+ * Throughput is measured separately by {@link ConcurrencyThroughputBenchmark}.
+ */
+public class ConcurrencyStressTests {
+
+    private static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final int FIRES_PER_THREAD = 20000;
+
+    /**
+     * Guard input of the firing thread, chosen by the trigger stream before each fire
+     */
+    private static final ThreadLocal<int[]> INPUT = ThreadLocal.withInitial(() -> new int[1]);
+
+    private final StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+    private final TriggerWithParameters1<Integer, State, Trigger> z = config.setTriggerParameters(Trigger.Z, Integer.class);
+    private final StateMachineMetrics<State, Trigger> metrics = new StateMachineMetrics<>(16);
+    private final LongAdder transitions = new LongAdder();
+    private final LongAdder unhandled = new LongAdder();
+
+    public ConcurrencyStressTests() {
+        config.setMetrics(metrics);
+        config.addTransitionListener(new TransitionListener<State, Trigger>() {
+            @Override
+            public void onTransitioned(Transition<State, Trigger> transition, Object[] args) {
+                transitions.increment();
+            }
+        });
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitReentry(Trigger.Y)
+                .ignore(Trigger.Z);
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permitIf(Trigger.X, State.A, () -> INPUT.get()[0] % 3 == 0)
+                .permitIf(Trigger.X, State.C, () -> INPUT.get()[0] % 3 == 1)
+                .permitReentryIf(Trigger.X, () -> INPUT.get()[0] % 3 == 2)
+                .mutuallyExclusiveGuards(Trigger.X, true)
+                .internalTransition(Trigger.Y, () -> {
+                });
+        config.configure(State.C)
+                .permit(Trigger.Y, State.A)
+                .permitDynamicCached(z, i -> i % 2 == 0 ? State.A : State.B, new DestinationCache<State>(8));
+    }
+
+    StateMachine<State, Trigger> newMachine() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger((state, trigger) -> unhandled.increment());
+        return sm;
+    }
+
+    /**
+     * One fire of a trigger stream and the states observed around it
+     */
+    static final class Step {
+        final Trigger trigger;
+        final int input;
+        long ticket;
+        State source;
+        State destination;
+
+        Step(Trigger trigger, int input) {
+            this.trigger = trigger;
+            this.input = input;
+        }
+    }
+
+    static List<Step> randomStream(long seed, int length) {
+        Random random = new Random(seed);
+        Trigger[] triggers = Trigger.values();
+        List<Step> steps = new ArrayList<>(length);
+        for (int i = 0; i < length; i++) {
+            steps.add(new Step(triggers[random.nextInt(triggers.length)], random.nextInt(1000)));
+        }
+        return steps;
+    }
+
+    void fire(StateMachine<State, Trigger> sm, Step step) {
+        INPUT.get()[0] = step.input;
+        if (step.trigger == Trigger.Z) {
+            sm.fire(z, step.input);
+        } else {
+            sm.fire(step.trigger);
+        }
+    }
+
+    /**
+     * Replays the steps on a fresh machine in the calling thread
+     */
+    private void assertSequentiallyConsistent(List<Step> history) {
+        StateMachine<State, Trigger> model = newMachine();
+        for (int i = 0; i < history.size(); i++) {
+            Step step = history.get(i);
+            assertEquals("source of step " + i, model.getState(), step.source);
+            fire(model, step);
+            assertEquals("destination of step " + i, model.getState(), step.destination);
+        }
+    }
+
+    static void runThreads(int threads, ThreadBody body) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    body.run(index);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            }, "stress-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError("Worker failed", failures.get(0));
+        }
+    }
+
+    interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+
+    @Test
+    public void MachineHandedBetweenThreadsMatchesTheSequentialModel() throws InterruptedException {
+        StateMachine<State, Trigger> sm = newMachine();
+        AtomicLong tickets = new AtomicLong();
+        List<List<Step>> histories = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            histories.add(randomStream(t, FIRES_PER_THREAD));
+        }
+
+        runThreads(THREADS, thread -> {
+            for (Step step : histories.get(thread)) {
+                synchronized (sm) {
+                    step.ticket = tickets.getAndIncrement();
+                    step.source = sm.getState();
+                    fire(sm, step);
+                    step.destination = sm.getState();
+                }
+            }
+        });
+
+        List<Step> merged = new ArrayList<>();
+        for (List<Step> history : histories) {
+            merged.addAll(history);
+        }
+        merged.sort((a, b) -> Long.compare(a.ticket, b.ticket));
+        for (int i = 1; i < merged.size(); i++) {
+            assertEquals("history breaks before ticket " + i, merged.get(i - 1).destination, merged.get(i).source);
+        }
+        assertCountersMatch(merged);
+        assertSequentiallyConsistent(merged);
+    }
+
+    @Test
+    public void MachinesSharingAConfigurationMatchTheSequentialModel() throws InterruptedException {
+        List<List<Step>> histories = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            histories.add(randomStream(1000 + t, FIRES_PER_THREAD));
+        }
+
+        runThreads(THREADS, thread -> {
+            StateMachine<State, Trigger> sm = newMachine();
+            for (Step step : histories.get(thread)) {
+                step.source = sm.getState();
+                fire(sm, step);
+                step.destination = sm.getState();
+            }
+        });
+
+        List<Step> all = new ArrayList<>();
+        for (List<Step> history : histories) {
+            all.addAll(history);
+        }
+        assertCountersMatch(all);
+        for (List<Step> history : histories) {
+            assertSequentiallyConsistent(history);
+        }
+    }
+
+    private void assertCountersMatch(List<Step> history) {
+        long expectedTransitions = 0;
+        for (Step step : history) {
+            if (step.source != step.destination || isReentry(step)) {
+                expectedTransitions++;
+            }
+        }
+        // the sequential replays below add to the counters, so compare before replaying
+        assertEquals("transitions seen by the listener", expectedTransitions, transitions.sum());
+        assertEquals("fires counted by the metrics", history.size(),
+                metrics.getTotalFireCount() + metrics.getTotalUnhandledCount());
+        assertEquals("unhandled fires", unhandled.sum(), metrics.getTotalUnhandledCount());
+    }
+
+    private static boolean isReentry(Step step) {
+        return step.source == State.A && step.trigger == Trigger.Y
+                || step.source == State.B && step.trigger == Trigger.X && step.input % 3 == 2
+                || step.source == State.B && step.trigger == Trigger.Z && step.input % 2 == 1;
+    }
+}
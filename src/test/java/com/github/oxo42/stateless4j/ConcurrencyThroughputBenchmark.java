@@ -0,0 +1,41 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures fires per second of machines sharing one configuration for 1 to N threads. Only run with
+ * {@code mvn test -Pbenchmarks}, as timings on a busy build machine are not reliable enough for every build.
+ */
+public class ConcurrencyThroughputBenchmark {
+
+    private static final int FIRES = 200000;
+
+    private final ConcurrencyStressTests fixture = new ConcurrencyStressTests();
+    private final List<ConcurrencyStressTests.Step> stream = ConcurrencyStressTests.randomStream(42, 4096);
+
+    private double firesPerSecond(int threads) throws InterruptedException {
+        long start = System.nanoTime();
+        ConcurrencyStressTests.runThreads(threads, thread -> {
+            StateMachine<State, Trigger> sm = fixture.newMachine();
+            for (int i = 0; i < FIRES; i++) {
+                fixture.fire(sm, stream.get(i & 4095));
+            }
+        });
+        return (double) threads * FIRES / ((System.nanoTime() - start) / 1e9);
+    }
+
+    @Test
+    public void ThroughputDoesNotDropWithMoreThreads() throws InterruptedException {
+        firesPerSecond(1); // warm up
+        double single = firesPerSecond(1);
+        for (int threads = 2; threads <= Runtime.getRuntime().availableProcessors(); threads *= 2) {
+            double perSecond = firesPerSecond(threads);
+            assertTrue(String.format("%d threads fire %.0f/s, 1 thread %.0f/s", threads, perSecond, single),
+                    perSecond >= single);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Action;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigMinimiserTests {
+
+    private final List<String> log = new ArrayList<>();
+
+    private final Action enter = () -> log.add("enter");
+    private final Action leave = () -> log.add("leave");
+
+    @Test
+    public void EquivalentStatesAreMerged() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("start")
+                .permit("left", "a1")
+                .permit("right", "a2");
+        config.configure("a1")
+                .onEntry(enter)
+                .permit("next", "b1", leave)
+                .ignore("poke");
+        config.configure("a2")
+                .onEntry(enter)
+                .permit("next", "b2", leave)
+                .ignore("poke");
+        config.configure("b1")
+                .permit("done", "end");
+        config.configure("b2")
+                .permit("done", "end");
+        ConfigMinimiser.Result<String, String> result = ConfigMinimiser.minimise(config);
+
+        assertEquals(4, result.getStateCount());
+        assertEquals(2, result.getMergedCount());
+        assertEquals("a1", result.getState("a2"));
+        assertEquals("b1", result.getState("b2"));
+        assertEquals("start", result.getState("start"));
+        assertNull(result.getConfig().getRepresentation("a2"));
+
+        StateMachine<String, String> machine = new StateMachine<>("start", result.getConfig());
+        machine.fire("right");
+        assertEquals("a1", machine.getState());
+        machine.fire("poke");
+        machine.fire("next");
+        assertEquals("b1", machine.getState());
+        machine.fire("done");
+        assertEquals("end", machine.getState());
+        assertEquals(Arrays.asList("enter", "leave"), log);
+    }
+
+    @Test
+    public void DifferentActionsKeepStatesApart() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("start")
+                .permit("left", "a1")
+                .permit("right", "a2");
+        config.configure("a1")
+                .onEntry(enter)
+                .permit("next", "b1", leave)
+                .ignore("poke");
+        config.configure("a2")
+                .onEntry(enter)
+                .onExit(() -> log.add("other"))
+                .permit("next", "b2", leave)
+                .ignore("poke");
+        config.configure("b1")
+                .permit("done", "end");
+        config.configure("b2")
+                .permit("done", "end");
+        ConfigMinimiser.Result<String, String> result = ConfigMinimiser.minimise(config);
+
+        assertEquals("a2", result.getState("a2"));
+        assertEquals("b1", result.getState("b2"));
+        StateMachine<String, String> machine = new StateMachine<>("start", result.getConfig());
+        machine.fire("right");
+        machine.fire("next");
+        assertEquals("b1", machine.getState());
+        assertEquals(Arrays.asList("enter", "other", "leave"), log);
+    }
+
+    @Test
+    public void StatesThatOnlyBehaveAlikeAreMerged() {
+        StateMachineConfig<Integer, String> config = new StateMachineConfig<>();
+        for (int s = 0; s < 12; s++) {
+            config.configure(s)
+                    .onEntry(s % 2 == 0 ? enter : leave)
+                    .permit("tick", (s + 1) % 12)
+                    .permit("jump", (s + 2) % 12);
+        }
+        ConfigMinimiser.Result<Integer, String> result = ConfigMinimiser.minimise(config);
+
+        assertEquals(2, result.getStateCount());
+        for (int s = 0; s < 12; s++) {
+            assertEquals(s % 2, (int) result.getState(s));
+        }
+        StateMachine<Integer, String> machine = new StateMachine<>(0, result.getConfig());
+        machine.fire("jump");
+        machine.fire("tick");
+        assertEquals(1, (int) machine.getState());
+        assertEquals(Arrays.asList("enter", "leave"), log);
+    }
+
+    @Test
+    public void GuardedAndDynamicTransitionsAreMapped() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("start")
+                .permit("left", "a1")
+                .permit("right", "a2")
+                .permitIf("choose", "a2", () -> true)
+                .permitDynamic("jump", () -> "b2");
+        config.configure("a1")
+                .onEntry(enter)
+                .permit("next", "b1", leave)
+                .ignore("poke");
+        config.configure("a2")
+                .onEntry(enter)
+                .permit("next", "b2", leave)
+                .ignore("poke");
+        config.configure("b1")
+                .permit("done", "end");
+        config.configure("b2")
+                .permit("done", "end");
+        ConfigMinimiser.Result<String, String> result = ConfigMinimiser.minimise(config);
+
+        StateMachine<String, String> machine = new StateMachine<>("start", result.getConfig());
+        machine.fire("choose");
+        assertEquals("a1", machine.getState());
+        machine = new StateMachine<>("start", result.getConfig());
+        machine.fire("jump");
+        assertEquals("b1", machine.getState());
+    }
+
+    @Test
+    public void StatesMergeOnlyWithinTheSameSuperstate() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("p").permit("reset", "idle");
+        config.configure("q").permit("reset", "idle");
+        config.configure("idle").permit("go", "x1");
+        config.configure("x1").substateOf("p").permit("next", "x2");
+        config.configure("x2").substateOf("p").permit("next", "x1");
+        config.configure("y1").substateOf("q").permit("next", "x1");
+        ConfigMinimiser.Result<String, String> result = ConfigMinimiser.minimise(config);
+
+        assertEquals("x1", result.getState("x2"));
+        assertEquals("y1", result.getState("y1"));
+        StateMachine<String, String> machine = new StateMachine<>("idle", result.getConfig());
+        machine.fire("go");
+        machine.fire("next");
+        assertEquals("x1", machine.getState());
+        assertTrue(machine.isInState("p"));
+        machine.fire("reset");
+        assertEquals("idle", machine.getState());
+    }
+
+    @Test
+    public void FrozenConfigStaysFrozen() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permit(Trigger.Y, State.C);
+        config.configure(State.B).permit(Trigger.Z, State.A);
+        config.configure(State.C).permit(Trigger.Z, State.A);
+        config.freeze();
+        ConfigMinimiser.Result<State, Trigger> result = ConfigMinimiser.minimise(config);
+
+        assertTrue(result.getConfig().isFrozen());
+        assertNotNull(result.getConfig().getDispatchTable());
+        assertEquals(State.B, result.getState(State.C));
+        StateMachine<State, Trigger> machine = new StateMachine<>(result.getState(State.C), result.getConfig());
+        machine.fire(Trigger.Z);
+        machine.fire(Trigger.Y);
+        assertEquals(State.B, machine.getState());
+    }
+}
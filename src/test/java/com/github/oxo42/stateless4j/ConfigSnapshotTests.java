@@ -0,0 +1,288 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConfigSnapshotTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> calls = new ArrayList<>();
+    private int input;
+
+    private List<String> run(StateMachineConfig<State, Trigger> config) {
+        calls.clear();
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        Trigger[] triggers = Trigger.values();
+        for (input = 0; input < 200; input++) {
+            Trigger trigger = triggers[(input * 7 + input / 3) % triggers.length];
+            if (sm.canFire(trigger)) {
+                sm.fire(trigger);
+            }
+            calls.add(sm.getState().name());
+        }
+        return new ArrayList<>(calls);
+    }
+
+    @Test
+    public void LoadedSnapshotBehavesLikeTheOriginal() throws IOException {
+        BindingRegistry bindings = new BindingRegistry();
+        FuncBoolean even = bindings.guard("even", () -> input % 2 == 0);
+        FuncBoolean odd = bindings.guard("odd", () -> input % 2 != 0);
+        FuncBoolean third = bindings.guard("third", () -> input % 3 == 0);
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.enableEntryActionOfInitialState();
+        config.configure(State.A)
+                .onEntry(bindings.action("enterA", () -> calls.add("enterA")))
+                .permit(Trigger.X, State.B)
+                .permitReentryIf(Trigger.Y, third)
+                .ignore(Trigger.Z);
+        config.configure(State.B)
+                .substateOf(State.C)
+                .onExit(bindings.action("exitB", () -> calls.add("exitB")))
+                .permitIf(Trigger.X, State.A, even)
+                .permitIf(Trigger.X, State.C, odd, bindings.action("toC", () -> calls.add("toC")))
+                .mutuallyExclusiveGuards(Trigger.X, true)
+                .internalTransition(Trigger.Y, bindings.action("count", () -> calls.add("count")));
+        config.configure(State.C)
+                .onEntry(bindings.action("enterC", () -> calls.add("enterC")))
+                .permit(Trigger.Z, State.A);
+        config.freeze();
+        Path file = folder.newFile().toPath();
+        ConfigSnapshot.write(config, State.class, Trigger.class, bindings, file);
+
+        StateMachineConfig<State, Trigger> loaded = ConfigSnapshot.load(file, State.class, Trigger.class, bindings);
+
+        assertTrue(loaded.isFrozen());
+        assertTrue(loaded.isEntryActionOfInitialStateEnabled());
+        assertEquals(run(config), run(loaded));
+    }
+
+    @Test
+    public void SnapshotRebindsGuardsAndActionsById() throws IOException {
+        BindingRegistry bindings = new BindingRegistry();
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.enableEntryActionOfInitialState();
+        config.configure(State.A)
+                .onEntry(bindings.action("enterA", () -> calls.add("enterA")))
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .substateOf(State.C)
+                .onExit(bindings.action("exitB", () -> calls.add("exitB")))
+                .permitIf(Trigger.X, State.A, bindings.guard("even", () -> input % 2 == 0))
+                .permitIf(Trigger.X, State.C, bindings.guard("odd", () -> input % 2 != 0))
+                .internalTransition(Trigger.Y, bindings.action("count", () -> calls.add("count")));
+        config.configure(State.C)
+                .onEntry(bindings.action("enterC", () -> calls.add("enterC")));
+        config.freeze();
+        Path file = folder.newFile().toPath();
+        ConfigSnapshot.write(config, State.class, Trigger.class, bindings, file);
+
+        List<String> other = new ArrayList<>();
+        BindingRegistry rebound = new BindingRegistry();
+        rebound.guard("even", () -> true);
+        rebound.guard("odd", () -> false);
+        rebound.action("enterA", () -> other.add("A"));
+        rebound.action("exitB", () -> other.add("exitB"));
+        rebound.action("enterC", () -> other.add("C"));
+        rebound.action("count", () -> other.add("count"));
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A,
+                ConfigSnapshot.load(file, State.class, Trigger.class, rebound));
+
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.A, sm.getState());
+        assertEquals("[A, C, count, exitB, A]", other.toString());
+        assertTrue(calls.isEmpty());
+    }
+
+    @Test
+    public void UnregisteredGuardCannotBeWritten() throws IOException {
+        BindingRegistry bindings = new BindingRegistry();
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, bindings.guard("even", () -> input % 2 == 0));
+        config.configure(State.B)
+                .permitIf(Trigger.X, State.A, () -> input % 2 != 0);
+        config.freeze();
+        try {
+            ConfigSnapshot.write(config, State.class, Trigger.class, bindings, folder.newFile().toPath());
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("'B' --X-->"));
+        }
+    }
+
+    @Test
+    public void UnfrozenConfigurationCannotBeWritten() throws IOException {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        try {
+            ConfigSnapshot.write(config, State.class, Trigger.class, new BindingRegistry(), folder.newFile().toPath());
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void DynamicTransitionCannotBeWritten() throws IOException {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A).permitDynamic(Trigger.X, () -> State.B);
+        config.freeze();
+        try {
+            ConfigSnapshot.write(config, State.class, Trigger.class, new BindingRegistry(), folder.newFile().toPath());
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("only static"));
+        }
+    }
+
+    @Test
+    public void MissingBindingFailsLoad() throws IOException {
+        BindingRegistry bindings = new BindingRegistry();
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .onEntry(bindings.action("enterA", () -> calls.add("enterA")))
+                .permitIf(Trigger.X, State.B, bindings.guard("even", () -> input % 2 == 0));
+        config.freeze();
+        Path file = folder.newFile().toPath();
+        ConfigSnapshot.write(config, State.class, Trigger.class, bindings, file);
+
+        BindingRegistry incomplete = new BindingRegistry();
+        incomplete.action("enterA", () -> {
+        });
+        try {
+            ConfigSnapshot.load(file, State.class, Trigger.class, incomplete);
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("is registered as 'even'"));
+        }
+    }
+
+    @Test
+    public void DuplicateBindingIdIsRejected() {
+        BindingRegistry bindings = new BindingRegistry();
+        bindings.action("count", () -> calls.add("count"));
+        try {
+            bindings.action("count", () -> {
+            });
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void FileThatIsNotASnapshotFailsLoad() throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        try {
+            ConfigSnapshot.load(file, State.class, Trigger.class, new BindingRegistry());
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void TruncatedSnapshotFailsLoad() throws IOException {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A);
+        config.freeze();
+        Path file = folder.newFile().toPath();
+        ConfigSnapshot.write(config, State.class, Trigger.class, new BindingRegistry(), file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, java.util.Arrays.copyOf(bytes, bytes.length - 5));
+        try {
+            ConfigSnapshot.load(file, State.class, Trigger.class, new BindingRegistry());
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void CorruptLengthsFailLoadBeforeAllocating() throws IOException {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.freeze();
+        Path file = folder.newFile().toPath();
+        ConfigSnapshot.write(config, State.class, Trigger.class, new BindingRegistry(), file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        for (int length : new int[]{-5, Integer.MAX_VALUE - 8}) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.clone());
+            buffer.putInt(7, length); // the length of the state type name, after magic, version and flags
+            try {
+                ConfigSnapshot.load(buffer, State.class, Trigger.class, new BindingRegistry());
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(Integer.toString(length)));
+            }
+        }
+    }
+
+    @Test
+    public void RemovedConstantFailsLoad() throws IOException {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.freeze();
+        Path file = folder.newFile().toPath();
+        ConfigSnapshot.write(config, State.class, Trigger.class, new BindingRegistry(), file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        // rename the state constant C, written as its length followed by its name
+        byte[] name = {0, 0, 0, 1, 'C'};
+        for (int i = 0; i + name.length <= bytes.length; i++) {
+            if (java.util.Arrays.equals(java.util.Arrays.copyOfRange(bytes, i, i + name.length), name)) {
+                bytes[i + name.length - 1] = 'Q';
+                break;
+            }
+        }
+        try {
+            ConfigSnapshot.load(ByteBuffer.wrap(bytes), State.class, Trigger.class, new BindingRegistry());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("'Q'"));
+        }
+    }
+
+    @Test
+    public void SnapshotOfOtherTypesFailsLoad() throws IOException {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B);
+        config.freeze();
+        Path file = folder.newFile().toPath();
+        ConfigSnapshot.write(config, State.class, Trigger.class, new BindingRegistry(), file);
+        try {
+            ConfigSnapshot.load(file, Trigger.class, Trigger.class, new BindingRegistry());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(State.class.getName()));
+        }
+    }
+}
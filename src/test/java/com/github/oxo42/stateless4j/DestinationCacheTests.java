@@ -0,0 +1,126 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.Func2;
+import com.github.oxo42.stateless4j.triggers.DestinationCache;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters2;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DestinationCacheTests {
+
+    private final AtomicInteger selectorCalls = new AtomicInteger();
+
+    @Test
+    public void SelectorIsCalledOncePerArgument() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<Integer, State, Trigger> x = config.setTriggerParameters(Trigger.X, Integer.class);
+        DestinationCache<State> cache = new DestinationCache<>(10);
+
+        config.configure(State.A)
+                .permitDynamicCached(x, i -> {
+                    selectorCalls.incrementAndGet();
+                    return i % 2 == 0 ? State.B : State.C;
+                }, cache);
+        config.configure(State.B).permit(Trigger.Y, State.A);
+        config.configure(State.C).permit(Trigger.Y, State.A);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        for (int i = 0; i < 5; i++) {
+            sm.fire(x, 2);
+            assertEquals(State.B, sm.getState());
+            sm.fire(Trigger.Y);
+            sm.fire(x, 3);
+            assertEquals(State.C, sm.getState());
+            sm.fire(Trigger.Y);
+        }
+
+        assertEquals(2, selectorCalls.get());
+        assertEquals(8, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void KeyCoversAllArguments() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters2<String, Integer, State, Trigger> x =
+                config.setTriggerParameters(Trigger.X, String.class, Integer.class);
+        DestinationCache<State> cache = new DestinationCache<>(10);
+
+        config.configure(State.A)
+                .permitDynamicCached(x, (s, i) -> i > 0 ? State.B : State.C, cache);
+
+        StateMachine<State, Trigger> first = new StateMachine<>(State.A, config);
+        first.fire(x, "a", 1);
+        StateMachine<State, Trigger> second = new StateMachine<>(State.A, config);
+        second.fire(x, "a", -1);
+
+        assertEquals(State.B, first.getState());
+        assertEquals(State.C, second.getState());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void LeastRecentlyUsedEntryIsEvicted() {
+        DestinationCache<State> cache = new DestinationCache<>(2);
+        Func2<Object[], State> selector = args -> {
+            selectorCalls.incrementAndGet();
+            return State.A;
+        };
+
+        cache.get(new Object[]{1}, selector);
+        cache.get(new Object[]{2}, selector);
+        cache.get(new Object[]{1}, selector);
+        cache.get(new Object[]{3}, selector);
+        cache.get(new Object[]{1}, selector);
+        cache.get(new Object[]{2}, selector);
+
+        assertEquals(4, selectorCalls.get());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void SizeIsBounded() {
+        DestinationCache<State> cache = new DestinationCache<>(100);
+        for (int i = 0; i < 10000; i++) {
+            cache.get(new Object[]{i}, args -> State.B);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertEquals(10000, cache.getMissCount());
+    }
+
+    @Test
+    public void DestinationWithoutArgumentsIsCached() {
+        DestinationCache<State> cache = new DestinationCache<>(10);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(State.B, cache.get(new Object[0], args -> {
+                selectorCalls.incrementAndGet();
+                return State.B;
+            }));
+        }
+
+        assertEquals(1, selectorCalls.get());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void NullDestinationIsNotCached() {
+        DestinationCache<State> cache = new DestinationCache<>(10);
+        cache.get(new Object[]{1}, args -> null);
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void MaximumSizeMustBePositive() {
+        new DestinationCache<State>(0);
+    }
+}
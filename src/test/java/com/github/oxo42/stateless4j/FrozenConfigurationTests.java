@@ -0,0 +1,139 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FrozenConfigurationTests {
+
+    private int input;
+
+    private StateMachineConfig<State, Trigger> createConfig() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<Integer, State, Trigger> z = config.setTriggerParameters(Trigger.Z, Integer.class);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitReentry(Trigger.Y)
+                .ignore(Trigger.Z);
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permitIf(Trigger.X, State.A, () -> input % 3 == 0)
+                .permitIf(Trigger.X, State.C, () -> input % 3 == 1)
+                .mutuallyExclusiveGuards(Trigger.X)
+                .internalTransitionIf(Trigger.Y, () -> input % 2 == 0, () -> {
+                });
+        config.configure(State.C)
+                .permit(Trigger.X, State.A)
+                .permit(Trigger.Y, State.A)
+                .permitDynamic(z, i -> i % 2 == 0 ? State.A : State.B);
+        return config;
+    }
+
+    @Test
+    public void FrozenConfigurationRejectsChanges() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        StateConfiguration<State, Trigger> a = config.configure(State.A);
+        config.freeze();
+
+        assertTrue(config.isFrozen());
+        try {
+            config.configure(State.B);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            config.setTriggerParameters(Trigger.Z, Integer.class);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            a.permit(Trigger.X, State.B);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void EnumConfigurationGetsADispatchTable() {
+        StateMachineConfig<State, Trigger> config = createConfig();
+        assertNull(config.getDispatchTable());
+        config.freeze();
+        assertNotNull(config.getDispatchTable());
+    }
+
+    @Test
+    public void NonEnumConfigurationFreezesWithoutDispatchTable() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("open").permit("close", "closed");
+        config.freeze();
+        assertNull(config.getDispatchTable());
+
+        StateMachine<String, String> sm = new StateMachine<>("open", config);
+        sm.fire("close");
+        assertEquals("closed", sm.getState());
+    }
+
+    @Test
+    public void SuperstateHandlesTriggerWhenSubstateGuardsFail() {
+        StateMachineConfig<State, Trigger> config = createConfig();
+        config.freeze();
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config);
+
+        input = 2;
+        assertTrue(sm.canFire(Trigger.X));
+        sm.fire(Trigger.X);
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void UnconfiguredStateIsUnhandled() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A).permit(Trigger.X, State.B);
+        config.freeze();
+        assertNotNull(config.getDispatchTable());
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+        assertEquals(State.B, sm.getState());
+        assertFalse(sm.canFire(Trigger.X));
+        assertEquals(FireResult.Status.UNHANDLED, sm.tryFire(Trigger.X).getStatus());
+    }
+
+    @Test
+    public void FrozenMachineBehavesLikeUnfrozenMachine() {
+        StateMachineConfig<State, Trigger> frozenConfig = createConfig();
+        frozenConfig.freeze();
+        StateMachineConfig<State, Trigger> config = createConfig();
+        TriggerWithParameters1<Integer, State, Trigger> frozenZ = parametersOfZ(frozenConfig);
+        TriggerWithParameters1<Integer, State, Trigger> z = parametersOfZ(config);
+
+        StateMachine<State, Trigger> frozen = new StateMachine<>(State.A, frozenConfig);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            Trigger trigger = Trigger.values()[random.nextInt(Trigger.values().length)];
+            input = random.nextInt(100);
+            assertEquals(sm.canFire(trigger), frozen.canFire(trigger));
+            FireResult<State> expected = trigger == Trigger.Z ? sm.tryFire(z, input) : sm.tryFire(trigger);
+            FireResult<State> actual = trigger == Trigger.Z ? frozen.tryFire(frozenZ, input) : frozen.tryFire(trigger);
+            assertEquals(expected.getStatus(), actual.getStatus());
+            assertEquals(sm.getState(), frozen.getState());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TriggerWithParameters1<Integer, State, Trigger> parametersOfZ(StateMachineConfig<State, Trigger> config) {
+        return (TriggerWithParameters1<Integer, State, Trigger>) config.getTriggerConfiguration(Trigger.Z);
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters2;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InternalTransitionTests {
+
+    private final List<String> calls = new ArrayList<>();
+
+    @Test
+    public void InternalTransitionRunsOnlyTheAction() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.B)
+                .substateOf(State.C)
+                .onEntry(() -> calls.add("entryB"))
+                .onExit(() -> calls.add("exitB"))
+                .internalTransition(Trigger.X, () -> calls.add("action"));
+
+        config.configure(State.C)
+                .onEntry(() -> calls.add("entryC"))
+                .onExit(() -> calls.add("exitC"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+        assertEquals(1, calls.size());
+        assertEquals("action", calls.get(0));
+    }
+
+    @Test
+    public void InternalTransitionDoesNotWriteState() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .internalTransition(Trigger.X, () -> calls.add("action"));
+
+        final State[] storage = {State.A};
+        StateMachine<State, Trigger> sm = new StateMachine<>(
+                State.A,
+                () -> storage[0],
+                s -> {
+                    calls.add("write");
+                    storage[0] = s;
+                },
+                config);
+        calls.clear();
+
+        sm.fire(Trigger.X);
+
+        assertEquals(1, calls.size());
+        assertEquals("action", calls.get(0));
+    }
+
+    @Test
+    public void InternalTransitionInSuperstateIsInherited() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.B)
+                .substateOf(State.C)
+                .onExit(() -> calls.add("exitB"));
+        config.configure(State.C)
+                .internalTransition(Trigger.X, () -> calls.add("action"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+        assertEquals(1, calls.size());
+        assertEquals("action", calls.get(0));
+    }
+
+    @Test
+    public void GuardedInternalTransitionSelectsPassingGuard() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .internalTransitionIf(Trigger.X, IgnoredTriggerBehaviourTests.returnFalse, () -> calls.add("wrong"))
+                .internalTransitionIf(Trigger.X, IgnoredTriggerBehaviourTests.returnTrue, () -> calls.add("right"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(1, calls.size());
+        assertEquals("right", calls.get(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void InternalTransitionWithFailingGuardIsUnhandled() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .internalTransitionIf(Trigger.X, IgnoredTriggerBehaviourTests.returnFalse, () -> calls.add("action"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+    }
+
+    @Test
+    public void InternalTransitionIsPermittedTrigger() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .internalTransition(Trigger.X, () -> calls.add("action"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+
+        assertTrue(sm.canFire(Trigger.X));
+        assertFalse(sm.canFire(Trigger.Y));
+        assertTrue(sm.getPermittedTriggers().contains(Trigger.X));
+    }
+
+    @Test
+    public void ParametersArePassedToInternalAction() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters2<String, Integer, State, Trigger> x =
+                config.setTriggerParameters(Trigger.X, String.class, Integer.class);
+
+        config.configure(State.A)
+                .internalTransition(x, (s, i) -> calls.add(s + i));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(x, "arg", 42);
+
+        assertEquals(State.A, sm.getState());
+        assertEquals(1, calls.size());
+        assertEquals("arg42", calls.get(0));
+    }
+}
@@ -0,0 +1,244 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ModelCheckerTests {
+
+    private int amount;
+
+    private final FuncBoolean positive = () -> amount > 0;
+    private final FuncBoolean negative = () -> amount < 0;
+    private final FuncBoolean large = () -> amount > 1000;
+    private final FuncBoolean zero = () -> amount == 0;
+
+    private static <S, T> List<ModelChecker.Violation<S, T>> violations(ModelChecker.Result<S, T> result,
+                                                                        ModelChecker.Violation.Kind kind) {
+        List<ModelChecker.Violation<S, T>> found = new ArrayList<>();
+        for (ModelChecker.Violation<S, T> violation : result.getViolations()) {
+            if (violation.getKind() == kind) {
+                found.add(violation);
+            }
+        }
+        return found;
+    }
+
+    @Test
+    public void ExclusiveGuardsAndFinalStatesPass() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("open")
+                .permitIf("pay", "paid", positive)
+                .permitIf("pay", "refunded", negative)
+                .ignoreIf("pay", zero)
+                .permit("cancel", "cancelled");
+        config.configure("paid")
+                .permit("ship", "shipped");
+        config.configure("shipped")
+                .permit("deliver", "closed");
+        config.configure("refunded")
+                .permit("close", "closed");
+        config.configure("cancelled")
+                .permit("close", "closed");
+        ModelChecker<String, String> checker = new ModelChecker<>(config);
+        checker.assumeExclusive(positive, negative, zero);
+        checker.addFinalState("closed");
+        ModelChecker.Result<String, String> result = checker.check("open");
+
+        assertTrue(result.getViolations().toString(), result.isValid());
+        assertEquals(6, result.getReachableStates().size());
+    }
+
+    @Test
+    public void GuardsAreIndependentWithoutAssumptions() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("open")
+                .permitIf("pay", "paid", positive)
+                .permitIf("pay", "refunded", negative);
+        config.configure("paid")
+                .permit("close", "closed");
+        config.configure("refunded")
+                .permit("close", "closed");
+        ModelChecker<String, String> checker = new ModelChecker<>(config);
+        ModelChecker.Result<String, String> result = checker.check("open");
+
+        assertEquals(1, violations(result, ModelChecker.Violation.Kind.AMBIGUOUS_GUARDS).size());
+        List<ModelChecker.Violation<String, String>> deadEnds = violations(result, ModelChecker.Violation.Kind.DEAD_END);
+        assertEquals(1, deadEnds.size());
+        assertEquals("closed", deadEnds.get(0).getState());
+    }
+
+    @Test
+    public void OverlappingGuardsAreReportedWithPath() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("start").permit("go", "open");
+        config.configure("open")
+                .permitIf("pay", "paid", positive)
+                .permitIf("pay", "review", large);
+        config.configure("paid").permit("close", "start");
+        config.configure("review").permit("close", "start");
+        ModelChecker<String, String> checker = new ModelChecker<>(config);
+        ModelChecker.Result<String, String> result = checker.check("start");
+
+        assertEquals(result.getViolations().toString(), 1, result.getViolations().size());
+        ModelChecker.Violation<String, String> violation = result.getViolations().get(0);
+        assertEquals(ModelChecker.Violation.Kind.AMBIGUOUS_GUARDS, violation.getKind());
+        assertEquals("open", violation.getState());
+        assertEquals("pay", violation.getTrigger());
+        assertEquals(Collections.singletonList("go"), violation.getPath());
+        assertEquals(new HashSet<>(Arrays.asList("start", "open", "paid", "review")), result.getReachableStates());
+    }
+
+    @Test
+    public void DeclaredMutuallyExclusiveGuardsAreExploredInsteadOfReported() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("open")
+                .permitIf("pay", "paid", positive)
+                .permitIf("pay", "review", large)
+                .mutuallyExclusiveGuards("pay");
+        config.configure("paid").permit("close", "open");
+        config.configure("review").permit("close", "open");
+        ModelChecker.Result<String, String> result = new ModelChecker<>(config).check("open");
+
+        assertTrue(result.getViolations().toString(), result.isValid());
+        // 4 valuations of the two pay guards, and one each for close
+        assertEquals(6, result.getCombinationCount());
+    }
+
+    @Test
+    public void DeadEndsAndUnreachableStatesAreReported() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("idle").permit("start", "running");
+        config.configure("running")
+                .substateOf("active")
+                .permit("fail", "broken");
+        config.configure("active").permit("stop", "idle");
+        config.configure("broken").ignore("stop").internalTransition("poke", () -> {
+        });
+        config.configure("orphan").permit("start", "idle");
+        ModelChecker.Result<String, String> result = new ModelChecker<>(config).check("idle");
+
+        List<ModelChecker.Violation<String, String>> deadEnds = violations(result, ModelChecker.Violation.Kind.DEAD_END);
+        assertEquals(1, deadEnds.size());
+        assertEquals("broken", deadEnds.get(0).getState());
+        assertEquals(Arrays.asList("start", "fail"), deadEnds.get(0).getPath());
+
+        List<ModelChecker.Violation<String, String>> unreachable =
+                violations(result, ModelChecker.Violation.Kind.UNREACHABLE_STATE);
+        assertEquals(1, unreachable.size());
+        assertEquals("orphan", unreachable.get(0).getState());
+        assertTrue(result.getReachableStates().contains("active"));
+    }
+
+    @Test
+    public void GuardedSubstateFallsBackToSuperstate() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("child")
+                .substateOf("parent")
+                .permitIf("next", "left", positive);
+        config.configure("parent").permit("next", "right");
+        config.configure("left").permit("back", "child");
+        config.configure("right").permit("back", "child");
+        ModelChecker.Result<String, String> result = new ModelChecker<>(config).check("child");
+
+        assertTrue(result.getViolations().toString(), result.isValid());
+        assertTrue(result.getReachableStates().containsAll(Arrays.asList("left", "right")));
+    }
+
+    private static void permitIf(StateConfiguration<Integer, String> state, int source, String trigger,
+                                 int destination, FuncBoolean guard) {
+        if (source == destination) {
+            state.permitReentryIf(trigger, guard);
+        } else {
+            state.permitIf(trigger, destination, guard);
+        }
+    }
+
+    @Test
+    public void ParallelSearchMatchesSequentialSearch() {
+        int states = 5000;
+        StateMachineConfig<Integer, String> config = new StateMachineConfig<>();
+        FuncBoolean[] guards = new FuncBoolean[8];
+        for (int i = 0; i < guards.length; i++) {
+            guards[i] = () -> amount > 0;
+        }
+        for (int s = 0; s < states; s++) {
+            StateConfiguration<Integer, String> state = config.configure(s);
+            for (int t = 0; t < 4; t++) {
+                permitIf(state, s, "t" + t, (s * 7 + t + 1) % states, guards[(s + t) % guards.length]);
+                permitIf(state, s, "t" + t, (s * 13 + t + 2) % states, guards[(s + t + 1) % guards.length]);
+            }
+            state.permit("t4", (s + 1) % states);
+        }
+        ModelChecker<Integer, String> checker = new ModelChecker<>(config);
+        checker.assumeExclusive(guards);
+        ModelChecker.Result<Integer, String> parallel = checker.check(0);
+        ForkJoinPool single = new ForkJoinPool(1);
+        ModelChecker.Result<Integer, String> sequential;
+        try {
+            checker.setPool(single);
+            sequential = checker.check(0);
+        } finally {
+            single.shutdown();
+        }
+
+        assertTrue(parallel.isValid());
+        assertEquals(sequential.getReachableStates(), parallel.getReachableStates());
+        assertEquals(sequential.getCombinationCount(), parallel.getCombinationCount());
+        assertEquals(states * (4L * 3 + 1), parallel.getCombinationCount());
+    }
+
+    @Test
+    public void LongChainsDoNotOverflowTheStack() {
+        int states = 100000;
+        StateMachineConfig<Integer, String> config = new StateMachineConfig<>();
+        for (int s = 0; s < states - 1; s++) {
+            config.configure(s).permit("next", s + 1);
+        }
+        ModelChecker<Integer, String> checker = new ModelChecker<>(config);
+        ForkJoinPool single = new ForkJoinPool(1);
+        try {
+            for (ForkJoinPool pool : new ForkJoinPool[]{single, ForkJoinPool.commonPool()}) {
+                checker.setPool(pool);
+                ModelChecker.Result<Integer, String> result = checker.check(0);
+
+                assertEquals(states, result.getReachableStates().size());
+                assertEquals(1, result.getViolations().size());
+                ModelChecker.Violation<Integer, String> deadEnd = result.getViolations().get(0);
+                assertEquals(ModelChecker.Violation.Kind.DEAD_END, deadEnd.getKind());
+                assertEquals(states - 1, (int) deadEnd.getState());
+                assertEquals(states - 1, deadEnd.getPath().size());
+            }
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void TooManyGuardsAreRejected() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        StateConfiguration<String, String> open = config.configure("open");
+        for (int i = 0; i < 4; i++) {
+            open.permitIf("pay", "paid" + i, () -> amount > 0);
+        }
+        ModelChecker<String, String> checker = new ModelChecker<>(config);
+        checker.setMaxGuardsPerTrigger(3);
+        try {
+            checker.check("open");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("More than 3 guards"));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.delegates.FuncBoolean;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MutuallyExclusiveGuardsTests {
+
+    private int evaluations = 0;
+    private int value = 0;
+
+    private FuncBoolean countingGuard(final int expected) {
+        return () -> {
+            evaluations++;
+            return value == expected;
+        };
+    }
+
+    private StateMachineConfig<State, Trigger> createConfig(boolean exclusive, boolean adaptive) {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        StateConfiguration<State, Trigger> a = config.configure(State.A);
+        if (exclusive) {
+            a.mutuallyExclusiveGuards(Trigger.X, adaptive);
+        }
+        a.permitIf(Trigger.X, State.B, countingGuard(0))
+                .permitIf(Trigger.X, State.C, countingGuard(1))
+                .permitReentryIf(Trigger.X, countingGuard(2));
+        return config;
+    }
+
+    @Test
+    public void ByDefaultAllGuardsAreEvaluated() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig(false, false));
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+        assertEquals(3, evaluations);
+    }
+
+    @Test
+    public void EvaluationStopsAtFirstPassingGuard() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig(true, false));
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+        assertEquals(1, evaluations);
+    }
+
+    @Test
+    public void DeclarationAfterPermitCoversExistingBehaviours() {
+        StateMachineConfig<State, Trigger> config = createConfig(false, false);
+        config.configure(State.A).mutuallyExclusiveGuards(Trigger.X);
+        value = 1;
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.C, sm.getState());
+        assertEquals(2, evaluations);
+    }
+
+    @Test
+    public void OverlappingGuardsTakeFirstMatch() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .mutuallyExclusiveGuards(Trigger.X)
+                .permitIf(Trigger.X, State.B, IgnoredTriggerBehaviourTests.returnTrue)
+                .permitIf(Trigger.X, State.C, IgnoredTriggerBehaviourTests.returnTrue);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void NoPassingGuardIsUnhandled() {
+        value = 5;
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig(true, false));
+        sm.fire(Trigger.X);
+    }
+
+    @Test
+    public void AdaptiveOrderingEvaluatesFrequentGuardFirst() {
+        value = 2;
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, createConfig(true, true));
+        for (int i = 0; i < FirstMatchGuards.REORDER_INTERVAL; i++) {
+            sm.fire(Trigger.X);
+        }
+        assertEquals(3 * FirstMatchGuards.REORDER_INTERVAL, evaluations);
+
+        evaluations = 0;
+        sm.fire(Trigger.X);
+
+        assertEquals(State.A, sm.getState());
+        assertEquals(1, evaluations);
+    }
+}
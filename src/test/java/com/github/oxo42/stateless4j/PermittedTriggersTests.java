@@ -0,0 +1,127 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+public class PermittedTriggersTests {
+
+    private int guardCalls = 0;
+    private boolean guardResult = true;
+
+    private boolean countingGuard() {
+        guardCalls++;
+        return guardResult;
+    }
+
+    @Test
+    public void ReturnedTriggersAreNotShared() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .ignore(Trigger.Y);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        List<Trigger> first = sm.getPermittedTriggers();
+        assertEquals(new HashSet<>(Arrays.asList(Trigger.X, Trigger.Y)), new HashSet<>(first));
+
+        first.clear();
+        assertNotSame(first, sm.getPermittedTriggers());
+        assertEquals(new HashSet<>(Arrays.asList(Trigger.X, Trigger.Y)), new HashSet<>(sm.getPermittedTriggers()));
+    }
+
+    @Test
+    public void OnlyGuardedTriggersEvaluateGuards() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitIf(Trigger.Y, State.C, this::countingGuard);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+
+        assertEquals(2, sm.getPermittedTriggers().size());
+        assertEquals(1, guardCalls);
+
+        guardResult = false;
+        assertEquals(1, sm.getPermittedTriggers().size());
+        assertEquals(2, guardCalls);
+    }
+
+    @Test
+    public void SuperstateTriggersAreIncludedOnce() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permitIf(Trigger.X, State.A, this::countingGuard);
+        config.configure(State.C)
+                .permit(Trigger.X, State.A)
+                .permitIf(Trigger.Y, State.A, this::countingGuard);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config);
+        guardResult = false;
+
+        List<Trigger> permitted = new ArrayList<>();
+        sm.forEachPermittedTrigger(permitted::add);
+
+        assertEquals(1, permitted.size());
+        assertEquals(Trigger.X, permitted.get(0));
+        assertEquals(1, guardCalls);
+    }
+
+    @Test
+    public void GuardedTriggerInSubstateAndSuperstateIsReportedOnce() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.B)
+                .substateOf(State.C)
+                .permitIf(Trigger.Y, State.A, this::countingGuard);
+        config.configure(State.C)
+                .permitIf(Trigger.Y, State.A, this::countingGuard);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config);
+
+        assertEquals(1, sm.getPermittedTriggers().size());
+    }
+
+    @Test
+    public void LaterConfigurationIsVisible() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.B)
+                .permit(Trigger.X, State.A);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config);
+        assertEquals(1, sm.getPermittedTriggers().size());
+
+        config.configure(State.C)
+                .permit(Trigger.Y, State.A);
+        config.configure(State.B)
+                .substateOf(State.C);
+        assertEquals(2, sm.getPermittedTriggers().size());
+
+        config.configure(State.C)
+                .permit(Trigger.Z, State.A);
+        assertEquals(3, sm.getPermittedTriggers().size());
+    }
+
+    @Test
+    public void ForEachSeesSameTriggersAsList() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitIf(Trigger.Y, State.C, this::countingGuard)
+                .internalTransition(Trigger.Z, IgnoredTriggerBehaviourTests.nopAction);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        List<Trigger> permitted = new ArrayList<>();
+        sm.forEachPermittedTrigger(permitted::add);
+
+        assertEquals(new HashSet<>(sm.getPermittedTriggers()), new HashSet<>(permitted));
+        assertTrue(permitted.contains(Trigger.Z));
+    }
+}
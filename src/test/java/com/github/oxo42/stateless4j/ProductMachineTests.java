@@ -0,0 +1,267 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProductMachineTests {
+
+    private final List<String> log = new ArrayList<>();
+    private boolean flag;
+
+    @Test
+    public void ComponentsAdvanceTogetherInOrder() {
+        StateMachineConfig<State, Trigger> first = new StateMachineConfig<>();
+        first.configure(State.A)
+                .onExit(() -> log.add("exit A"))
+                .permit(Trigger.X, State.B, () -> log.add("A to B"));
+        first.configure(State.B)
+                .onEntry(() -> log.add("enter B"))
+                .permit(Trigger.Y, State.A)
+                .ignore(Trigger.X);
+        first.freeze();
+        StateMachineConfig<String, Trigger> second = new StateMachineConfig<>();
+        second.configure("off")
+                .permit(Trigger.X, "on");
+        second.configure("on")
+                .onEntry(() -> log.add("enter on"))
+                .permitIf(Trigger.X, "off", () -> !flag)
+                .permitIf(Trigger.X, "blinking", () -> flag);
+        second.configure("blinking")
+                .permit(Trigger.X, "off");
+        second.freeze();
+        ProductMachine<Trigger> machine = new ProductMachine<>(new ProductConfig<>(first, second), State.A, "off");
+
+        machine.fire(Trigger.X);
+        assertEquals(State.B, machine.getState(first));
+        assertEquals("on", machine.getState(second));
+        assertEquals(Arrays.<Object>asList(State.B, "on"), machine.getStates());
+        assertEquals(Arrays.asList("exit A", "A to B", "enter B", "enter on"), log);
+        assertTrue(machine.isInState(second, "on"));
+    }
+
+    @Test
+    public void GuardsAreEvaluatedOnEveryFire() {
+        StateMachineConfig<State, Trigger> first = new StateMachineConfig<>();
+        first.configure(State.A)
+                .onExit(() -> log.add("exit A"))
+                .permit(Trigger.X, State.B, () -> log.add("A to B"));
+        first.configure(State.B)
+                .onEntry(() -> log.add("enter B"))
+                .permit(Trigger.Y, State.A)
+                .ignore(Trigger.X);
+        first.freeze();
+        StateMachineConfig<String, Trigger> second = new StateMachineConfig<>();
+        second.configure("off")
+                .permit(Trigger.X, "on");
+        second.configure("on")
+                .onEntry(() -> log.add("enter on"))
+                .permitIf(Trigger.X, "off", () -> !flag)
+                .permitIf(Trigger.X, "blinking", () -> flag);
+        second.configure("blinking")
+                .permit(Trigger.X, "off");
+        second.freeze();
+        ProductConfig<Trigger> product = new ProductConfig<>(first, second);
+
+        ProductMachine<Trigger> machine = new ProductMachine<>(product, State.A, "off");
+        machine.fire(Trigger.X);
+        machine.fire(Trigger.X);
+        assertEquals(Arrays.<Object>asList(State.B, "off"), machine.getStates());
+
+        flag = true;
+        machine = new ProductMachine<>(product, State.A, "off");
+        machine.fire(Trigger.X);
+        machine.fire(Trigger.X);
+        assertEquals(Arrays.<Object>asList(State.B, "blinking"), machine.getStates());
+        machine.fire(Trigger.X);
+        assertEquals(Arrays.<Object>asList(State.B, "off"), machine.getStates());
+    }
+
+    @Test
+    public void OnlyReachedTuplesAreMaterialised() {
+        List<StateMachineConfig<Integer, Trigger>> cycles = new ArrayList<>();
+        for (int length : new int[]{4, 2, 1}) {
+            StateMachineConfig<Integer, Trigger> config = new StateMachineConfig<>();
+            for (int s = 0; s < length; s++) {
+                if (length == 1) {
+                    config.configure(s).permitReentry(Trigger.X);
+                } else {
+                    config.configure(s).permit(Trigger.X, (s + 1) % length);
+                }
+                config.configure(s).ignore(Trigger.Y).ignore(Trigger.Z);
+            }
+            config.freeze();
+            cycles.add(config);
+        }
+        ProductConfig<Trigger> product = new ProductConfig<>(cycles);
+        ProductMachine<Trigger> machine = new ProductMachine<>(product, 0, 0, 0);
+        for (int i = 0; i < 10; i++) {
+            machine.fire(Trigger.X);
+        }
+
+        assertEquals(Arrays.<Object>asList(2, 0, 0), machine.getStates());
+        // 4 of the 8 tuples are reachable
+        assertEquals(4, product.getMaterialisedStateCount());
+    }
+
+    @Test
+    public void UnhandledTriggersKeepTheTupleConsistent() {
+        StateMachineConfig<State, Trigger> first = new StateMachineConfig<>();
+        first.configure(State.A)
+                .onExit(() -> log.add("exit A"))
+                .permit(Trigger.X, State.B, () -> log.add("A to B"));
+        first.configure(State.B)
+                .onEntry(() -> log.add("enter B"))
+                .permit(Trigger.Y, State.A)
+                .ignore(Trigger.X);
+        first.freeze();
+        StateMachineConfig<String, Trigger> second = new StateMachineConfig<>();
+        second.configure("off")
+                .permit(Trigger.X, "on");
+        second.configure("on")
+                .onEntry(() -> log.add("enter on"))
+                .permitIf(Trigger.X, "off", () -> !flag)
+                .permitIf(Trigger.X, "blinking", () -> flag);
+        second.configure("blinking")
+                .permit(Trigger.X, "off");
+        second.freeze();
+        ProductMachine<Trigger> machine = new ProductMachine<>(new ProductConfig<>(first, second), State.A, "off");
+        machine.fire(Trigger.X);
+
+        try {
+            machine.fire(Trigger.Y);
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals(Arrays.<Object>asList(State.A, "on"), machine.getStates());
+        }
+        machine.fire(Trigger.X);
+        assertEquals(Arrays.<Object>asList(State.B, "off"), machine.getStates());
+
+        List<Object> unhandled = new ArrayList<>();
+        machine.onUnhandledTrigger((state, trigger) -> unhandled.add(state));
+        machine.fire(Trigger.Y);
+        assertEquals(Arrays.<Object>asList("off"), unhandled);
+        assertEquals(Arrays.<Object>asList(State.A, "off"), machine.getStates());
+    }
+
+    @Test
+    public void MachinesBeyondTheLimitFireEachComponent() {
+        List<StateMachineConfig<Integer, Trigger>> cycles = new ArrayList<>();
+        for (int length : new int[]{5, 3}) {
+            StateMachineConfig<Integer, Trigger> config = new StateMachineConfig<>();
+            for (int s = 0; s < length; s++) {
+                config.configure(s).permit(Trigger.X, (s + 1) % length);
+                config.configure(s).ignore(Trigger.Y).ignore(Trigger.Z);
+            }
+            config.freeze();
+            cycles.add(config);
+        }
+        ProductConfig<Trigger> product = new ProductConfig<>(cycles);
+        product.setMaxStates(2);
+        ProductMachine<Trigger> machine = new ProductMachine<>(product, 0, 0);
+        for (int i = 0; i < 17; i++) {
+            machine.fire(Trigger.X);
+        }
+
+        assertEquals(Arrays.<Object>asList(2, 2), machine.getStates());
+        assertEquals(2, product.getMaterialisedStateCount());
+    }
+
+    @Test
+    public void StepsBeyondTheLimitAreResolvedOnEveryFire() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("idle")
+                .permit("start", "running")
+                .ignore("poke")
+                .ignore("prod");
+        config.configure("running")
+                .permit("stop", "idle");
+        config.freeze();
+        ProductConfig<String> product = new ProductConfig<>(config);
+        product.setMaxSteps(2);
+        ProductMachine<String> machine = new ProductMachine<>(product, "idle");
+        for (int i = 0; i < 3; i++) {
+            machine.fire("poke");
+            machine.fire("prod");
+            machine.fire("start");
+            machine.fire("stop");
+        }
+
+        assertEquals(Arrays.<Object>asList("idle"), machine.getStates());
+        assertEquals(2, product.getCachedStepCount());
+    }
+
+    @Test
+    public void SharedProductMatchesSeparateMachines() throws Exception {
+        List<StateMachineConfig<Integer, Trigger>> cycles = new ArrayList<>();
+        for (int length : new int[]{3, 5, 7}) {
+            StateMachineConfig<Integer, Trigger> config = new StateMachineConfig<>();
+            for (int s = 0; s < length; s++) {
+                config.configure(s).permit(Trigger.X, (s + 1) % length);
+                config.configure(s).ignore(Trigger.Y).ignore(Trigger.Z);
+            }
+            config.freeze();
+            cycles.add(config);
+        }
+        final ProductConfig<Trigger> product = new ProductConfig<>(cycles);
+        final Trigger[] triggers = Trigger.values();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                final int seed = t;
+                results.add(executor.submit(() -> {
+                    ProductMachine<Trigger> machine = new ProductMachine<>(product, 0, 0, 0);
+                    List<StateMachine<Integer, Trigger>> separate = new ArrayList<>();
+                    for (StateMachineConfig<?, Trigger> component : product.getComponents()) {
+                        @SuppressWarnings("unchecked")
+                        StateMachineConfig<Integer, Trigger> config = (StateMachineConfig<Integer, Trigger>) component;
+                        separate.add(new StateMachine<>(0, config));
+                    }
+                    for (int i = 0; i < 1000; i++) {
+                        Trigger trigger = triggers[(i * 7 + seed + i / 5) % triggers.length];
+                        machine.fire(trigger);
+                        List<Object> expected = new ArrayList<>();
+                        for (StateMachine<Integer, Trigger> component : separate) {
+                            component.fire(trigger);
+                            expected.add(component.getState());
+                        }
+                        if (!expected.equals(machine.getStates())) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(105, product.getMaterialisedStateCount());
+    }
+
+    @Test
+    public void ComponentsMustBeFrozen() {
+        StateMachineConfig<Integer, Trigger> cycle = new StateMachineConfig<>();
+        cycle.configure(0).permit(Trigger.X, 1);
+        cycle.configure(1).permit(Trigger.X, 0);
+        cycle.freeze();
+        try {
+            new ProductConfig<>(cycle, new StateMachineConfig<Integer, Trigger>());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("component 1"));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StateGraphTests {
+
+    private static Set<String> set(String... states) {
+        return new HashSet<>(Arrays.asList(states));
+    }
+
+    @Test
+    public void ReachabilityFollowsInheritedTransitions() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("idle")
+                .permit("start", "running");
+        config.configure("active")
+                .permit("fail", "error");
+        config.configure("running")
+                .substateOf("active");
+        config.configure("error")
+                .permitReentry("retry");
+        StateGraph<String, String> graph = config.getGraph();
+
+        assertEquals(set("idle", "running", "error"), graph.getReachableFrom("idle"));
+        assertEquals(set("error"), graph.getReachableFrom("error"));
+        assertTrue(graph.isReachable("running", "error"));
+        assertFalse(graph.isReachable("error", "idle"));
+        assertTrue(graph.getReachableFrom("unknown").isEmpty());
+    }
+
+    @Test
+    public void UnguardedSubstateTransitionHidesSuperstateTransition() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("active")
+                .permit("fail", "error")
+                .permit("stop", "idle");
+        config.configure("running")
+                .substateOf("active")
+                .permit("stop", "stopping");
+        config.configure("paused")
+                .substateOf("active")
+                .permitIf("resume", "running", () -> true)
+                .ignore("fail");
+        config.configure("stopping")
+                .permit("done", "idle");
+        StateGraph<String, String> graph = config.getGraph();
+
+        // running handles stop itself, paused inherits stop -> idle but ignores fail
+        assertEquals(Collections.singletonList("stop"), graph.getShortestPath("paused", "idle"));
+        assertEquals(Arrays.asList("stop", "done"), graph.getShortestPath("running", "idle"));
+        assertEquals(Arrays.asList("resume", "fail"), graph.getShortestPath("paused", "error"));
+    }
+
+    @Test
+    public void StatesReachingATerminal() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("idle")
+                .permit("start", "running");
+        config.configure("running")
+                .permit("stop", "stopping")
+                .permit("fail", "error");
+        config.configure("stopping")
+                .permit("done", "idle");
+        config.configure("error")
+                .permitReentry("retry");
+        StateGraph<String, String> graph = config.getGraph();
+
+        assertEquals(set("error"), graph.getTerminalStates());
+        assertEquals(set("idle", "running", "stopping", "error"), graph.getStatesReaching("error"));
+        assertEquals(set("idle", "running", "stopping"), graph.getStatesReaching("stopping"));
+    }
+
+    @Test
+    public void ShortestPathToUnreachableStateIsNull() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("idle")
+                .permit("fail", "error");
+        StateGraph<String, String> graph = config.getGraph();
+
+        assertNull(graph.getShortestPath("error", "idle"));
+        assertEquals(Collections.emptyList(), graph.getShortestPath("idle", "idle"));
+    }
+
+    @Test
+    public void ComponentsAreInReverseTopologicalOrder() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("idle")
+                .permit("start", "running");
+        config.configure("active")
+                .permit("fail", "error")
+                .permit("stop", "idle");
+        config.configure("running")
+                .substateOf("active")
+                .permit("pause", "paused");
+        config.configure("paused")
+                .substateOf("active")
+                .permit("resume", "running");
+        config.configure("error")
+                .permitReentry("retry");
+        StateGraph<String, String> graph = config.getGraph();
+        List<Set<String>> components = graph.getStronglyConnectedComponents();
+
+        // nothing enters the superstate itself, so it is a component of its own
+        assertEquals(Arrays.asList(set("error"), set("idle", "running", "paused"), set("active")), components);
+        assertTrue(graph.isSameComponent("paused", "idle"));
+        assertFalse(graph.isSameComponent("paused", "error"));
+    }
+
+    @Test
+    public void FrozenConfigurationSharesItsGraph() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("idle")
+                .permit("start", "running");
+        assertNotSame(config.getGraph(), config.getGraph());
+        config.freeze();
+        assertSame(config.getGraph(), config.getGraph());
+    }
+
+    @Test
+    public void DynamicTransitionsAreFlagged() {
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.configure("error")
+                .permitReentry("retry");
+        assertFalse(config.getGraph().hasDynamicTransitions());
+        config.configure("error").permitDynamic("reset", () -> "idle");
+        assertTrue(config.getGraph().hasDynamicTransitions());
+    }
+
+    @Test
+    public void LongChainsDoNotOverflowTheStack() {
+        int states = 100000;
+        StateMachineConfig<Integer, String> config = new StateMachineConfig<>();
+        for (int s = 0; s < states; s++) {
+            StateConfiguration<Integer, String> state = config.configure(s).permit("next", (s + 1) % states);
+            if (s > 0) {
+                state.permit("reset", 0);
+            }
+        }
+        config.freeze();
+        StateGraph<Integer, String> graph = config.getGraph();
+
+        assertEquals(1, graph.getStronglyConnectedComponents().size());
+        assertEquals(states, graph.getReachableFrom(states / 2).size());
+        assertEquals(Arrays.asList("reset", "next", "next"), graph.getShortestPath(states / 2, 2));
+        assertTrue(graph.isReachable(12345, 54321));
+    }
+}
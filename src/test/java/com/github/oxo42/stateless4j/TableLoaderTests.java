@@ -0,0 +1,197 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TableLoaderTests {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static <S, T> TableLoader.Result<S, T> load(TableLoader<S, T> loader, String table) throws IOException {
+        return loader.load(Channels.newChannel(new ByteArrayInputStream(table.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static TableLoader<String, String> strings() {
+        return new TableLoader<>(s -> s, t -> t);
+    }
+
+    @Test
+    public void CsvTableBuildsFrozenConfiguration() throws IOException {
+        TableLoader<State, Trigger> loader = TableLoader.forEnums(State.class, Trigger.class);
+        loader.setHeader(true);
+        TableLoader.Result<State, Trigger> result = load(loader, ""
+                + "state,trigger,destination,superstate\n"
+                + "A,X,B\n"
+                + "\n"
+                + "# comment\n"
+                + "B,Y,A,C\n"
+                + "C,Z,A\n");
+
+        assertFalse(result.getProblems().toString(), result.hasProblems());
+        assertEquals(3, result.getRowCount());
+        assertEquals(3, result.getTransitionCount());
+        assertTrue(result.getConfig().isFrozen());
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, result.getConfig());
+        sm.fire(Trigger.X);
+        assertTrue(sm.isInState(State.C));
+        sm.fire(Trigger.Z);
+        assertEquals(State.A, sm.getState());
+    }
+
+    @Test
+    public void LineFormatUsesWhitespaceAndDashes() throws IOException {
+        TableLoader<String, String> loader = strings();
+        loader.setFormat(TableLoader.Format.LINES);
+        TableLoader.Result<String, String> result = load(loader, ""
+                + "idle\tstart   running\n"
+                + "running - - active\r\n"
+                + "active stop idle\n");
+
+        assertFalse(result.getProblems().toString(), result.hasProblems());
+        StateMachine<String, String> sm = new StateMachine<>("idle", result.getConfig());
+        sm.fire("start");
+        assertTrue(sm.isInState("active"));
+        sm.fire("stop");
+        assertEquals("idle", sm.getState());
+    }
+
+    @Test
+    public void QuotedCsvFieldsMayContainSeparatorsAndQuotes() throws IOException {
+        TableLoader.Result<String, String> result = load(strings(),
+                "\"on, ready\",\"say \"\"hi\"\"\",\" off \"\n");
+
+        assertFalse(result.getProblems().toString(), result.hasProblems());
+        StateMachine<String, String> sm = new StateMachine<>("on, ready", result.getConfig());
+        sm.fire("say \"hi\"");
+        assertEquals(" off ", sm.getState());
+    }
+
+    @Test
+    public void CarriageReturnsAreKeptInsideQuotes() throws IOException {
+        TableLoader.Result<String, String> result = load(strings(),
+                "on,\"two\r\nlines\",off\r\noff,\"cr\rin\",on\r\n");
+
+        assertFalse(result.getProblems().toString(), result.hasProblems());
+        assertEquals(2, result.getRowCount());
+        StateMachine<String, String> sm = new StateMachine<>("on", result.getConfig());
+        sm.fire("two\r\nlines");
+        assertEquals("off", sm.getState());
+        sm.fire("cr\rin");
+        assertEquals("on", sm.getState());
+    }
+
+    @Test
+    public void DuplicatesAndConflictsAreReportedAndSkipped() throws IOException {
+        TableLoader.Result<State, Trigger> result = load(TableLoader.forEnums(State.class, Trigger.class), ""
+                + "A,X,B,C\n"
+                + "A,X,B\n"
+                + "A,X,C\n"
+                + "A,,,B\n"
+                + "C,,,A\n"
+                + "A,Q,B\n"
+                + "A,Y\n"
+                + "A,Y,B,C,D\n");
+
+        assertEquals(8, result.getRowCount());
+        assertEquals(1, result.getTransitionCount());
+        assertEquals(7, result.getProblemCount());
+        TableLoader.Problem.Kind[] kinds = {
+                TableLoader.Problem.Kind.DUPLICATE,
+                TableLoader.Problem.Kind.CONFLICT,
+                TableLoader.Problem.Kind.CONFLICT,
+                TableLoader.Problem.Kind.CONFLICT,
+                TableLoader.Problem.Kind.UNKNOWN_NAME,
+                TableLoader.Problem.Kind.MALFORMED,
+                TableLoader.Problem.Kind.MALFORMED};
+        for (int i = 0; i < kinds.length; i++) {
+            TableLoader.Problem problem = result.getProblems().get(i);
+            assertEquals(problem.toString(), kinds[i], problem.getKind());
+            assertEquals(i + 2, problem.getLine());
+        }
+        assertTrue(result.getProblems().get(4).getMessage().contains("'Q'"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, result.getConfig());
+        sm.fire(Trigger.X);
+        assertEquals(State.B, sm.getState());
+        assertTrue(sm.isInState(State.B));
+    }
+
+    @Test
+    public void SkippedRowsLeaveTheHierarchyUnchanged() throws IOException {
+        TableLoader.Result<State, Trigger> result = load(TableLoader.forEnums(State.class, Trigger.class), ""
+                + "A,X,B\n"
+                + "A,X,C,C\n");
+
+        assertEquals(1, result.getProblemCount());
+        assertNull(result.getConfig().getRepresentation(State.A).getSuperstate());
+        assertNull(result.getConfig().getRepresentation(State.C));
+    }
+
+    @Test
+    public void ReportedProblemsAreBounded() throws IOException {
+        TableLoader<String, String> loader = strings();
+        loader.setMaxReportedProblems(2);
+        TableLoader.Result<String, String> result = load(loader, "a,x,b\na,x,c\na,x,d\na,x,e\n");
+
+        assertEquals(3, result.getProblemCount());
+        assertEquals(2, result.getProblems().size());
+    }
+
+    @Test
+    public void OverlongRowFailsTheLoad() throws IOException {
+        TableLoader<String, String> loader = strings();
+        loader.setMaxRowLength(10);
+        try {
+            load(loader, "a,x,b\nabcdef,ghijk,lmnop\n");
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+        }
+    }
+
+    @Test
+    public void LargeTableStreamsFromFile() throws IOException {
+        int states = 10000;
+        int triggers = 20;
+        Path file = folder.newFile().toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int s = 0; s < states; s++) {
+                for (int t = 0; t < triggers; t++) {
+                    writer.write("s" + s + ",t" + t + ",s" + ((s * 31 + t * 17 + 1) % states)
+                            + (t == 0 && s > 0 ? ",s" + (s - 1) / 2 : "") + "\n");
+                }
+            }
+        }
+
+        TableLoader.Result<String, String> result = strings().load(file);
+
+        assertFalse(result.getProblems().toString(), result.hasProblems());
+        assertEquals(states * triggers, result.getTransitionCount());
+        StateMachine<String, String> sm = new StateMachine<>("s0", result.getConfig());
+        int expected = 0;
+        for (int i = 0; i < 1000; i++) {
+            int t = i % triggers;
+            sm.fire("t" + t);
+            expected = (expected * 31 + t * 17 + 1) % states;
+            assertEquals("s" + expected, sm.getState());
+        }
+        assertTrue(sm.isInState("s0"));
+    }
+}
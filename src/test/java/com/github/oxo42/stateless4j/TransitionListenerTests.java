@@ -0,0 +1,115 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.transitions.Transition;
+import com.github.oxo42.stateless4j.transitions.TransitionListener;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionListenerTests {
+
+    private final List<String> events = new ArrayList<>();
+
+    private final TransitionListener<State, Trigger> recorder = new TransitionListener<State, Trigger>() {
+
+        @Override
+        public void onTransitioned(Transition<State, Trigger> transition, Object[] args) {
+            events.add("transitioned " + transition.getSource() + "->" + transition.getDestination()
+                    + " by " + transition.getTrigger());
+        }
+
+        @Override
+        public void onInternalTransition(State state, Trigger trigger, Object[] args) {
+            events.add("internal " + state + " by " + trigger);
+        }
+
+        @Override
+        public void onIgnored(State state, Trigger trigger) {
+            events.add("ignored " + state + " by " + trigger);
+        }
+
+        @Override
+        public void onUnhandled(State state, Trigger trigger) {
+            events.add("unhandled " + state + " by " + trigger);
+        }
+    };
+
+    private StateMachine<State, Trigger> createMachine(StateMachineConfig<State, Trigger> config) {
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .ignore(Trigger.Y);
+        config.configure(State.B)
+                .internalTransition(Trigger.Y, IgnoredTriggerBehaviourTests.nopAction);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger((state, trigger) -> events.add("unhandled action"));
+        return sm;
+    }
+
+    @Test
+    public void ListenerObservesAllOutcomes() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.addTransitionListener(recorder);
+        StateMachine<State, Trigger> sm = createMachine(config);
+
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.Z);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.Y);
+        sm.tryFire(Trigger.Z);
+
+        assertEquals(Arrays.asList(
+                "ignored A by Y",
+                "unhandled A by Z",
+                "unhandled action",
+                "transitioned A->B by X",
+                "internal B by Y",
+                "unhandled B by Z"), events);
+    }
+
+    @Test
+    public void ListenerIsCalledAfterEntryActions() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.addTransitionListener(recorder);
+        StateMachine<State, Trigger> sm = createMachine(config);
+        config.configure(State.B).onEntry(() -> events.add("entry"));
+
+        sm.fire(Trigger.X);
+
+        assertEquals(Arrays.asList("entry", "transitioned A->B by X"), events);
+    }
+
+    @Test
+    public void DefaultMethodsDoNothing() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.addTransitionListener(new TransitionListener<State, Trigger>() { });
+        StateMachine<State, Trigger> sm = createMachine(config);
+
+        sm.fire(Trigger.X);
+
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void RemovedListenerIsNotCalled() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TransitionListener<State, Trigger> other = new TransitionListener<State, Trigger>() { };
+        config.addTransitionListener(other);
+        config.addTransitionListener(recorder);
+        StateMachine<State, Trigger> sm = createMachine(config);
+
+        assertTrue(config.removeTransitionListener(recorder));
+        assertFalse(config.removeTransitionListener(recorder));
+        sm.fire(Trigger.X);
+
+        assertTrue(events.isEmpty());
+        assertTrue(config.removeTransitionListener(other));
+        assertEquals(0, config.getTransitionListeners().length);
+    }
+}
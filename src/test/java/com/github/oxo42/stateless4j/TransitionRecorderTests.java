@@ -0,0 +1,148 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TransitionRecorderTests {
+
+    private final StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+    private final TriggerWithParameters1<String, State, Trigger> named = config.setTriggerParameters(Trigger.Z, String.class);
+
+    private StateMachine<State, Trigger> createMachine(TransitionRecorder<State, Trigger> recorder) {
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .ignore(Trigger.Y);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .permitIf(Trigger.Y, State.C, () -> false)
+                .permit(Trigger.Z, State.C);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger((state, trigger) -> {
+        });
+        sm.setTransitionRecorder(recorder);
+        return sm;
+    }
+
+    @Test
+    public void RecordsOutcomesInOrder() {
+        TransitionRecorder<State, Trigger> recorder = new TransitionRecorder<>(10);
+        StateMachine<State, Trigger> sm = createMachine(recorder);
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.Y);
+        sm.tryFire(named, "hello");
+        sm.fire(Trigger.X);
+
+        List<RecordedTransition<State, Trigger>> fires = recorder.snapshot();
+        assertEquals(5, fires.size());
+        assertEquals(FireResult.Status.IGNORED, fires.get(0).getOutcome());
+        assertEquals(State.A, fires.get(1).getSource());
+        assertEquals(State.B, fires.get(1).getDestination());
+        assertEquals(FireResult.Status.TRANSITIONED, fires.get(1).getOutcome());
+        assertEquals(FireResult.Status.GUARD_REJECTED, fires.get(2).getOutcome());
+        assertEquals(State.B, fires.get(2).getDestination());
+        assertArrayEquals(new Object[]{"hello"}, fires.get(3).getArguments());
+        assertEquals(State.C, fires.get(3).getDestination());
+        assertEquals(FireResult.Status.UNHANDLED, fires.get(4).getOutcome());
+    }
+
+    @Test
+    public void KeepsOnlyTheMostRecentFires() {
+        TransitionRecorder<State, Trigger> recorder = new TransitionRecorder<>(3);
+        StateMachine<State, Trigger> sm = createMachine(recorder);
+        for (int i = 0; i < 7; i++) {
+            sm.fire(Trigger.X);
+        }
+
+        List<RecordedTransition<State, Trigger>> fires = recorder.snapshot();
+        assertEquals(7, recorder.getRecordedCount());
+        assertEquals(3, fires.size());
+        assertEquals(State.A, fires.get(0).getSource());
+        assertEquals(State.B, fires.get(1).getSource());
+        assertEquals(State.A, fires.get(2).getSource());
+        assertTrue(fires.get(0).getTimestamp() <= fires.get(2).getTimestamp());
+    }
+
+    @Test
+    public void SnapshotsTakenWhileRecordingAreConsistent() throws InterruptedException {
+        final TransitionRecorder<Long, Long> recorder = new TransitionRecorder<>(4, false);
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            Object[] noArguments = new Object[0];
+            for (long i = 0; !stop.get(); i++) {
+                recorder.record(i, i, i, FireResult.Status.TRANSITIONED, noArguments);
+            }
+        });
+        writer.start();
+        try {
+            for (int n = 0; n < 100000; n++) {
+                List<RecordedTransition<Long, Long>> fires = recorder.snapshot();
+                assertTrue(fires.size() <= 4);
+                for (int i = 0; i < fires.size(); i++) {
+                    RecordedTransition<Long, Long> fire = fires.get(i);
+                    assertEquals(fire.getSource(), fire.getTrigger());
+                    assertEquals(fire.getSource(), fire.getDestination());
+                    if (i > 0) {
+                        assertEquals(fires.get(i - 1).getSource() + 1, (long) fire.getSource());
+                    }
+                }
+            }
+        } finally {
+            stop.set(true);
+            writer.join();
+        }
+    }
+
+    @Test
+    public void ArgumentsCanBeLeftOut() {
+        TransitionRecorder<State, Trigger> recorder = new TransitionRecorder<>(3, false);
+        StateMachine<State, Trigger> sm = createMachine(recorder);
+        sm.fire(Trigger.X);
+        sm.fire(named, "secret");
+
+        RecordedTransition<State, Trigger> fire = recorder.snapshot().get(1);
+        assertEquals(1, fire.getArgumentCount());
+        assertEquals(0, fire.getArguments().length);
+        assertTrue(fire.toString().contains("--Z(?)--> C"));
+    }
+
+    @Test
+    public void DumpListsFiresOnePerLine() {
+        TransitionRecorder<State, Trigger> recorder = new TransitionRecorder<>(3);
+        StateMachine<State, Trigger> sm = createMachine(recorder);
+        recorder.setDumpOnUnhandled(true);
+        sm.fire(Trigger.X);
+        sm.fire(named, "hello");
+        sm.fire(Trigger.X);
+
+        String[] lines = recorder.dump().split(System.lineSeparator());
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].endsWith("A --X--> B TRANSITIONED"));
+        assertTrue(lines[1].endsWith("B --Z(hello)--> C TRANSITIONED"));
+        assertTrue(lines[2].endsWith("C --X--> C UNHANDLED"));
+    }
+
+    @Test
+    public void ClearForgetsFires() {
+        TransitionRecorder<State, Trigger> recorder = new TransitionRecorder<>(3);
+        StateMachine<State, Trigger> sm = createMachine(recorder);
+        sm.fire(Trigger.X);
+        recorder.clear();
+
+        assertEquals(0, recorder.getRecordedCount());
+        assertTrue(recorder.snapshot().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void CapacityMustBePositive() {
+        new TransitionRecorder<State, Trigger>(0);
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TriggerPatternTests {
+
+    private enum Event {
+        LOGIN, VIEW, PURCHASE, LOGOUT
+    }
+
+    private static List<Event> events(Event... events) {
+        return Arrays.asList(events);
+    }
+
+    @Test
+    public void SequenceWithRepetitionMatches() {
+        TriggerPattern<Event> pattern = TriggerPattern.compile("LOGIN VIEW* PURCHASE", Event.class);
+
+        assertTrue(pattern.matches(events(Event.LOGIN, Event.PURCHASE)));
+        assertTrue(pattern.matches(events(Event.LOGIN, Event.VIEW, Event.VIEW, Event.PURCHASE)));
+        assertFalse(pattern.matches(events(Event.LOGIN, Event.VIEW)));
+        assertFalse(pattern.matches(events(Event.VIEW, Event.PURCHASE)));
+        assertFalse(pattern.matches(events(Event.LOGIN, Event.PURCHASE, Event.PURCHASE)));
+        // start, after login, accepting and dead
+        assertEquals(4, pattern.getStateCount());
+        assertEquals(3, pattern.getDeadState());
+    }
+
+    @Test
+    public void AlternationAndOptionalMatch() {
+        TriggerPattern<Event> pattern = TriggerPattern.compile("LOGIN (VIEW | PURCHASE)+ LOGOUT?", Event.class);
+
+        assertTrue(pattern.matches(events(Event.LOGIN, Event.VIEW)));
+        assertTrue(pattern.matches(events(Event.LOGIN, Event.PURCHASE, Event.VIEW, Event.LOGOUT)));
+        assertFalse(pattern.matches(events(Event.LOGIN)));
+        assertFalse(pattern.matches(events(Event.LOGIN, Event.LOGOUT)));
+        assertFalse(pattern.matches(events(Event.LOGIN, Event.VIEW, Event.LOGOUT, Event.LOGOUT)));
+    }
+
+    @Test
+    public void WildcardFindsPatternAnywhere() {
+        TriggerPattern<Event> pattern = TriggerPattern.compile(".* PURCHASE PURCHASE .*", Event.class);
+
+        assertTrue(pattern.matches(events(Event.LOGIN, Event.PURCHASE, Event.PURCHASE, Event.LOGOUT)));
+        assertFalse(pattern.matches(events(Event.PURCHASE, Event.VIEW, Event.PURCHASE)));
+        assertEquals(3, pattern.getStateCount());
+        assertEquals(-1, pattern.getDeadState());
+    }
+
+    @Test
+    public void EquivalentStatesAreMerged() {
+        TriggerPattern<Event> pattern = TriggerPattern.compile("(LOGIN | VIEW | PURCHASE | LOGOUT)*", Event.class);
+
+        assertEquals(1, pattern.getStateCount());
+        assertTrue(pattern.isAccepting(pattern.getInitialState()));
+        assertTrue(pattern.matches(events()));
+
+        TriggerPattern<Event> empty = TriggerPattern.compile("", Event.class);
+        assertEquals(2, empty.getStateCount());
+        assertTrue(empty.matches(events()));
+        assertFalse(empty.matches(events(Event.VIEW)));
+    }
+
+    @Test
+    public void AlphabetIsNamedTriggersWithoutEnum() {
+        TriggerPattern<String> pattern = TriggerPattern.compile("a (b | c)*", name -> name);
+
+        assertEquals(Arrays.asList("a", "b", "c"), pattern.getAlphabet());
+        assertTrue(pattern.matches(Arrays.asList("a", "c", "b")));
+        try {
+            pattern.matches(Arrays.asList("a", "d"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("'d'"));
+        }
+    }
+
+    @Test
+    public void FrozenConfigUsesDispatchTable() {
+        TriggerPattern<Event> pattern = TriggerPattern.compile("LOGIN VIEW* PURCHASE", Event.class);
+        StateMachineConfig<Integer, Event> config = pattern.toConfig();
+        config.freeze();
+
+        assertNotNull(config.getDispatchTable());
+        StateMachine<Integer, Event> machine = new StateMachine<>(pattern.getInitialState(), config);
+        for (Event event : events(Event.LOGIN, Event.VIEW, Event.VIEW, Event.PURCHASE)) {
+            machine.fire(event);
+        }
+        assertTrue(pattern.isAccepting(machine.getState()));
+        machine.fire(Event.LOGOUT);
+        assertEquals(pattern.getDeadState(), (int) machine.getState());
+        machine.fire(Event.LOGIN);
+        assertEquals(pattern.getDeadState(), (int) machine.getState());
+    }
+
+    @Test
+    public void FrozenConfigIsSharedBetweenMachines() throws Exception {
+        final TriggerPattern<Event> pattern = TriggerPattern.compile(".* LOGIN (VIEW | PURCHASE)* LOGOUT", Event.class);
+        final StateMachineConfig<Integer, Event> config = pattern.toConfig();
+        config.freeze();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                final int seed = i;
+                results.add(executor.submit(() -> {
+                    StateMachine<Integer, Event> machine = new StateMachine<>(pattern.getInitialState(), config);
+                    List<Event> stream = new ArrayList<>();
+                    for (int n = 0; n < 1000; n++) {
+                        stream.add(Event.values()[(n * 31 + seed * 7 + n / 3) % Event.values().length]);
+                    }
+                    for (Event event : stream) {
+                        machine.fire(event);
+                    }
+                    return pattern.isAccepting(machine.getState()) == pattern.matches(stream);
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void InvalidPatternsAreRejected() {
+        for (String invalid : Arrays.asList("LOGIN (VIEW", "LOGIN VIEW)", "* LOGIN", "LOGIN & VIEW", "LOGIN BUY")) {
+            try {
+                TriggerPattern.compile(invalid, Event.class);
+                fail(invalid);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("position"));
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.oxo42.stateless4j;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class TriggerSpecificActionTests {
+
+    private final List<String> calls = new ArrayList<>();
+
+    @Test
+    public void EntryActionsRunInRegistrationOrder() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permit(Trigger.Y, State.B);
+        config.configure(State.B)
+                .onEntry(() -> calls.add("any1"))
+                .onEntryFrom(Trigger.X, () -> calls.add("x1"))
+                .onEntryFrom(Trigger.Y, () -> calls.add("y1"))
+                .onEntry(() -> calls.add("any2"))
+                .onEntryFrom(Trigger.X, () -> calls.add("x2"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(Arrays.asList("any1", "x1", "any2", "x2"), calls);
+    }
+
+    @Test
+    public void EntryActionsOfOtherTriggersAreSkipped() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permit(Trigger.Z, State.B);
+        config.configure(State.B)
+                .onEntryFrom(Trigger.X, () -> calls.add("x"))
+                .onEntryFrom(Trigger.Y, () -> calls.add("y"))
+                .onEntry(() -> calls.add("any"));
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.Z);
+
+        assertEquals(Arrays.asList("any"), calls);
+    }
+
+    @Test
+    public void InitialEntryRunsOnlyUnconditionalActions() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.enableEntryActionOfInitialState();
+        config.configure(State.A)
+                .onEntryFrom(Trigger.X, () -> calls.add("x"))
+                .onEntry(() -> calls.add("any"));
+
+        new StateMachine<>(State.A, config);
+
+        assertEquals(Arrays.asList("any"), calls);
+    }
+
+    @Test
+    public void ExitActionRunsOnlyForItsTrigger() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .onExit(() -> calls.add("any"))
+                .onExitWith(Trigger.X, () -> calls.add("x"))
+                .onExitWith(Trigger.Y, t -> calls.add("y->" + t.getDestination()))
+                .permit(Trigger.X, State.B)
+                .permit(Trigger.Y, State.C);
+        config.configure(State.C)
+                .permit(Trigger.X, State.A);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.X);
+
+        assertEquals(Arrays.asList("any", "y->C", "any", "x"), calls);
+    }
+
+    @Test
+    public void ExitActionWithTriggerRunsOnReentry() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .onExitWith(Trigger.X, () -> calls.add("exit"))
+                .onEntryFrom(Trigger.X, () -> calls.add("entry"))
+                .permitReentry(Trigger.X);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.X);
+
+        assertEquals(Arrays.asList("exit", "entry"), calls);
+    }
+}
@@ -0,0 +1,127 @@
+package com.github.oxo42.stateless4j;
+
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TryFireTests {
+
+    private boolean unhandledCalled = false;
+
+    private StateMachine<State, Trigger> createMachine() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitIf(Trigger.Y, State.C, IgnoredTriggerBehaviourTests.returnFalse)
+                .ignore(Trigger.Z);
+
+        config.configure(State.B)
+                .internalTransition(Trigger.X, IgnoredTriggerBehaviourTests.nopAction);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger((state, trigger) -> unhandledCalled = true);
+        return sm;
+    }
+
+    @Test
+    public void TransitionReportsSourceAndDestination() {
+        StateMachine<State, Trigger> sm = createMachine();
+
+        FireResult<State> result = sm.tryFire(Trigger.X);
+
+        assertEquals(FireResult.Status.TRANSITIONED, result.getStatus());
+        assertEquals(State.A, result.getSource());
+        assertEquals(State.B, result.getDestination());
+        assertTrue(result.isHandled());
+        assertEquals(State.B, sm.getState());
+    }
+
+    @Test
+    public void IgnoredTriggerIsReported() {
+        StateMachine<State, Trigger> sm = createMachine();
+
+        FireResult<State> result = sm.tryFire(Trigger.Z);
+
+        assertEquals(FireResult.Status.IGNORED, result.getStatus());
+        assertEquals(State.A, result.getDestination());
+        assertTrue(result.isHandled());
+    }
+
+    @Test
+    public void InternalTransitionIsReported() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+
+        FireResult<State> result = sm.tryFire(Trigger.X);
+
+        assertEquals(FireResult.Status.INTERNAL, result.getStatus());
+        assertEquals(State.B, result.getSource());
+        assertEquals(State.B, result.getDestination());
+    }
+
+    @Test
+    public void FailingGuardIsReportedAsGuardRejected() {
+        StateMachine<State, Trigger> sm = createMachine();
+
+        FireResult<State> result = sm.tryFire(Trigger.Y);
+
+        assertEquals(FireResult.Status.GUARD_REJECTED, result.getStatus());
+        assertFalse(result.isHandled());
+        assertEquals(State.A, sm.getState());
+        assertFalse(unhandledCalled);
+    }
+
+    @Test
+    public void UnknownTriggerIsReportedAsUnhandled() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+
+        FireResult<State> result = sm.tryFire(Trigger.Y);
+
+        assertEquals(FireResult.Status.UNHANDLED, result.getStatus());
+        assertEquals(State.B, result.getSource());
+        assertFalse(result.isHandled());
+        assertFalse(unhandledCalled);
+    }
+
+    @Test
+    public void UnconfiguredStateIsReportedAsUnhandled() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.C, new StateMachineConfig<State, Trigger>());
+
+        FireResult<State> result = sm.tryFire(Trigger.X);
+
+        assertEquals(FireResult.Status.UNHANDLED, result.getStatus());
+        assertEquals(State.C, result.getSource());
+    }
+
+    @Test
+    public void GuardOfSuperstateIsConsidered() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.B)
+                .substateOf(State.C);
+        config.configure(State.C)
+                .permitIf(Trigger.X, State.A, IgnoredTriggerBehaviourTests.returnFalse);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.B, config);
+
+        assertEquals(FireResult.Status.GUARD_REJECTED, sm.tryFire(Trigger.X).getStatus());
+    }
+
+    @Test
+    public void ParameterisedTriggerIsFired() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        TriggerWithParameters1<State, State, Trigger> x = config.setTriggerParameters(Trigger.X, State.class);
+        config.configure(State.A)
+                .permitDynamic(x, s -> s);
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        FireResult<State> result = sm.tryFire(x, State.C);
+
+        assertEquals(FireResult.Status.TRANSITIONED, result.getStatus());
+        assertEquals(State.C, result.getDestination());
+    }
+}
@@ -0,0 +1,109 @@
+package com.github.oxo42.stateless4j.graphviz;
+
+import com.github.oxo42.stateless4j.State;
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.Trigger;
+import com.github.oxo42.stateless4j.metrics.StateMachineMetrics;
+import com.github.oxo42.stateless4j.triggers.TriggerWithParameters1;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HeatMapTests {
+
+    private final StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+    private final StateMachineMetrics<State, Trigger> metrics = new StateMachineMetrics<>();
+    private final TriggerWithParameters1<Boolean, State, Trigger> choose = config.setTriggerParameters(Trigger.Z, Boolean.class);
+
+    private StateMachine<State, Trigger> createMachine() {
+        config.setMetrics(metrics);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitDynamic(choose, toC -> toC ? State.C : State.A);
+        config.configure(State.B)
+                .substateOf(State.A)
+                .permit(Trigger.Y, State.C);
+        config.configure(State.C)
+                .permit(Trigger.X, State.A);
+        return new StateMachine<>(State.A, config);
+    }
+
+    private String heatMap(StateMachineMetrics<State, Trigger> metrics) throws IOException {
+        StringWriter writer = new StringWriter();
+        config.generateHeatMapInto(writer, metrics);
+        return writer.toString();
+    }
+
+    @Test
+    public void UnobservedTransitionsAreGrey() throws IOException {
+        createMachine();
+        String dot = heatMap(metrics);
+
+        assertTrue(dot.startsWith("digraph G {"));
+        assertTrue(dot.contains("\"A\" -> \"B\" [label=\"X\", color=gray];"));
+        assertTrue(dot.contains("\"B\" -> \"C\" [label=\"Y\", color=gray];"));
+        assertFalse(dot.contains("dashed"));
+    }
+
+    @Test
+    public void ObservedTransitionsCarryCountsAndHeat() throws IOException {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.X);
+
+        String dot = heatMap(metrics);
+        assertTrue(dot.contains("\"A\" -> \"B\" [label=\"X (2, "));
+        assertTrue(dot.contains("penwidth=8.00, weight=2, color="));
+        assertTrue(dot.contains("\"C\" -> \"A\" [label=\"X (1, "));
+        assertTrue(dot.contains("penwidth=4.50, weight=1"));
+    }
+
+    @Test
+    public void DynamicTransitionsAreDashedEdgesToObservedDestinations() throws IOException {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(choose, true);
+        sm.fire(Trigger.X);
+        sm.fire(choose, false);
+
+        String dot = heatMap(metrics);
+        assertTrue(dot.contains("\"A\" -> \"C\" [label=\"Z (1, "));
+        assertTrue(dot.contains("\"A\" -> \"A\" [label=\"Z (1, "));
+        assertTrue(dot.contains("style=dashed];"));
+    }
+
+    @Test
+    public void InheritedTransitionsAreDrawnFromTheSubstate() throws IOException {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+        sm.fire(choose, true);
+
+        String dot = heatMap(metrics);
+        assertTrue(dot.contains("\"B\" -> \"C\" [label=\"Z (1, "));
+    }
+
+    @Test
+    public void SuperstatesBecomeClusters() throws IOException {
+        createMachine();
+        String dot = heatMap(null);
+
+        assertTrue(dot.contains("subgraph \"cluster_A\" {\n\t\tlabel=\"A\";\n\t\t\"A\";\n\t\t\"B\";\n\t}"));
+    }
+
+    @Test
+    public void StreamsUtf8() throws IOException {
+        createMachine();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        config.generateHeatMapInto(out, metrics);
+
+        assertTrue(new String(out.toByteArray(), StandardCharsets.UTF_8).endsWith("}\n"));
+    }
+}
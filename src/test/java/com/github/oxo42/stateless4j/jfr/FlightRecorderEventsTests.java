@@ -0,0 +1,155 @@
+package com.github.oxo42.stateless4j.jfr;
+
+import com.github.oxo42.stateless4j.State;
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.Trigger;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FlightRecorderEventsTests {
+
+    private static final String FIRE = FlightRecorderEvents.PREFIX + "StateMachineFire";
+    private static final String GUARD = FlightRecorderEvents.PREFIX + "GuardEvaluation";
+    private static final String ENTRY = FlightRecorderEvents.PREFIX + "EntryAction";
+    private static final String EXIT = FlightRecorderEvents.PREFIX + "ExitAction";
+
+    private StateMachine<State, Trigger> createMachine() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .onExit(() -> {
+                });
+        config.configure(State.B)
+                .onEntry(() -> {
+                });
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger((state, trigger) -> {
+        });
+        return sm;
+    }
+
+    @Test
+    public void EventsAreDisabledByDefault() {
+        assertNull(FlightRecorderEvents.beginFire());
+        assertNull(FlightRecorderEvents.beginGuardEvaluation());
+        assertNull(FlightRecorderEvents.beginEntryAction());
+        assertNull(FlightRecorderEvents.beginExitAction());
+    }
+
+    @Test
+    public void RecordsFireGuardEntryAndExitEvents() throws IOException {
+        StateMachine<State, Trigger> sm = createMachine();
+
+        List<RecordedEvent> events = record(() -> {
+            sm.fire(Trigger.X);
+            sm.fire(Trigger.Y);
+        });
+
+        RecordedEvent transitioned = find(events, FIRE, "TRANSITIONED");
+        assertEquals("A", transitioned.getString("source"));
+        assertEquals("X", transitioned.getString("trigger"));
+        assertEquals("B", transitioned.getString("destination"));
+
+        RecordedEvent unhandled = find(events, FIRE, "UNHANDLED");
+        assertEquals("B", unhandled.getString("source"));
+        assertEquals("Y", unhandled.getString("trigger"));
+
+        List<RecordedEvent> guards = named(events, GUARD);
+        assertEquals(2, guards.size());
+        assertTrue(guards.get(0).getBoolean("handled"));
+        assertFalse(guards.get(1).getBoolean("handled"));
+
+        assertEquals("A", named(events, EXIT).get(0).getString("state"));
+        assertEquals("B", named(events, ENTRY).get(0).getString("state"));
+        assertEquals(1, named(events, ENTRY).get(0).getInt("actions"));
+    }
+
+    @Test
+    public void RejectedGuardIsRecordedAsSuch() throws IOException {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A)
+                .permitIf(Trigger.X, State.B, () -> false);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger((state, trigger) -> {
+        });
+
+        List<RecordedEvent> events = record(() -> sm.fire(Trigger.X));
+
+        RecordedEvent rejected = find(events, FIRE, "GUARD_REJECTED");
+        assertEquals("A", rejected.getString("source"));
+        assertEquals("A", rejected.getString("destination"));
+    }
+
+    @Test
+    public void ThresholdSuppressesFastFires() throws IOException {
+        StateMachine<State, Trigger> sm = createMachine();
+
+        List<RecordedEvent> events;
+        try (Recording recording = new Recording()) {
+            recording.enable(FIRE).withThreshold(Duration.ofSeconds(10));
+            recording.start();
+            sm.fire(Trigger.X);
+            recording.stop();
+            events = read(recording);
+        }
+
+        assertTrue(named(events, FIRE).isEmpty());
+    }
+
+    private static List<RecordedEvent> record(Runnable runnable) throws IOException {
+        try (Recording recording = new Recording()) {
+            for (String name : new String[]{FIRE, GUARD, ENTRY, EXIT}) {
+                recording.enable(name).withThreshold(Duration.ZERO);
+            }
+            recording.start();
+            runnable.run();
+            recording.stop();
+            return read(recording);
+        }
+    }
+
+    private static List<RecordedEvent> read(Recording recording) throws IOException {
+        Path file = Files.createTempFile("stateless4j", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> result = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                result.add(event);
+            }
+        }
+        result.sort((a, b) -> a.getStartTime().compareTo(b.getStartTime()));
+        return result;
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name, String outcome) {
+        for (RecordedEvent event : named(events, name)) {
+            if (outcome.equals(event.getString("outcome"))) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + name + " event with outcome " + outcome);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.State;
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.Trigger;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ActionProfilerTests {
+
+    private final ActionProfiler profiler = new ActionProfiler();
+
+    private StateMachine<State, Trigger> createMachine() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.setActionProfiler(profiler);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B, () -> {
+                })
+                .onExit(() -> {
+                })
+                .label("slowExit")
+                .onExit(() -> busyWait(5));
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .onEntry(() -> {
+                })
+                .internalTransition(Trigger.Y, () -> {
+                });
+        return new StateMachine<>(State.A, config);
+    }
+
+    /**
+     * Waits on the clock the profiler reads, unlike Thread.sleep, which may wake up early
+     */
+    private static void busyWait(long millis) {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (System.nanoTime() < end) {
+            Thread.yield();
+        }
+    }
+
+    @Test
+    public void LabelsActionsByStateKindAndIndex() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.Y);
+
+        assertEquals(1, profiler.getProfile("A/transition#0").getCallCount());
+        assertEquals(1, profiler.getProfile("A/exit#0").getCallCount());
+        assertEquals(1, profiler.getProfile("slowExit").getCallCount());
+        assertEquals(1, profiler.getProfile("B/entry#0").getCallCount());
+        assertEquals(2, profiler.getProfile("B/internal#0").getCallCount());
+        assertNull(profiler.getProfile("B/transition#0"));
+        assertNull(profiler.getProfile("A/exit#1"));
+    }
+
+    @Test
+    public void ReportsSlowestActionsFirst() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+
+        List<ActionProfile> slowest = profiler.getSlowest(2);
+        assertEquals(2, slowest.size());
+        assertEquals("slowExit", slowest.get(0).getLabel());
+        assertTrue(slowest.get(0).getLatency().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertTrue(profiler.report(1).startsWith("slowExit: count=1"));
+    }
+
+    @Test
+    public void WatchdogFlagsCallsAboveThreshold() {
+        List<String> flagged = new ArrayList<>();
+        profiler.setSlowActionThreshold(1, TimeUnit.MILLISECONDS);
+        profiler.setSlowActionHandler((profile, nanos) -> flagged.add(profile.getLabel()));
+
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.X);
+
+        assertEquals(2, flagged.size());
+        assertEquals("slowExit", flagged.get(0));
+        assertEquals(2, profiler.getProfile("slowExit").getSlowCallCount());
+        assertEquals(0, profiler.getProfile("A/exit#0").getSlowCallCount());
+    }
+
+    @Test
+    public void ResetKeepsRegisteredActions() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+        profiler.reset();
+
+        assertNotNull(profiler.getProfile("slowExit"));
+        assertEquals(0, profiler.getProfile("slowExit").getCallCount());
+        assertTrue(profiler.getSlowest(10).isEmpty());
+    }
+
+    @Test
+    public void ActionsRegisteredBeforeTheProfilerAreNotTimed() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.configure(State.A).onExit(() -> {
+        }).permit(Trigger.X, State.B);
+        config.setActionProfiler(profiler);
+        config.configure(State.A).onExit(() -> {
+        });
+
+        new StateMachine<>(State.A, config).fire(Trigger.X);
+
+        assertEquals(1, profiler.getProfiles().size());
+        assertEquals(1, profiler.getProfile("A/exit#0").getCallCount());
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.State;
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.Trigger;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class DwellTimeMetricsTests {
+
+    private final StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+    private final DwellTimeMetrics<State, Trigger> dwellTimes = new DwellTimeMetrics<>();
+
+    public DwellTimeMetricsTests() {
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .permitReentry(Trigger.Z)
+                .internalTransition(Trigger.Y, () -> {
+                });
+        config.configure(State.B)
+                .permit(Trigger.X, State.A);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void RecordsTimeSpentInStateOnTransition() {
+        config.setDwellTimeMetrics(dwellTimes);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sleep(5);
+        sm.fire(Trigger.X);
+
+        LatencyHistogram a = dwellTimes.getDwellTime(State.A);
+        assertEquals(1, a.getCount());
+        assertTrue(a.getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(4));
+        assertNull(dwellTimes.getDwellTime(State.B));
+    }
+
+    @Test
+    public void ReentryEndsTheStayButInternalTransitionsDoNot() {
+        config.setDwellTimeMetrics(dwellTimes);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.fire(Trigger.Y);
+        assertNull(dwellTimes.getDwellTime(State.A));
+
+        sm.fire(Trigger.Z);
+        assertEquals(1, dwellTimes.getDwellTime(State.A).getCount());
+    }
+
+    @Test
+    public void TimeInStateRestartsOnTransition() {
+        config.setDwellTimeMetrics(dwellTimes);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sleep(10);
+        long beforeTransition = sm.getTimeInState(TimeUnit.NANOSECONDS);
+        assertTrue(beforeTransition >= TimeUnit.MILLISECONDS.toNanos(9));
+
+        long fired = System.nanoTime();
+        sm.fire(Trigger.X);
+        assertTrue(sm.getTimeInState(TimeUnit.NANOSECONDS) <= System.nanoTime() - fired);
+    }
+
+    @Test
+    public void FindsOldestMachinesInState() {
+        config.setDwellTimeMetrics(dwellTimes);
+        StateMachine<State, Trigger> first = new StateMachine<>(State.A, config);
+        sleep(1);
+        StateMachine<State, Trigger> second = new StateMachine<>(State.A, config);
+        sleep(1);
+        StateMachine<State, Trigger> third = new StateMachine<>(State.A, config);
+        StateMachine<State, Trigger> elsewhere = new StateMachine<>(State.B, config);
+        first.fire(Trigger.X);
+        first.fire(Trigger.X);
+
+        List<StateMachine<State, Trigger>> oldest = dwellTimes.getOldest(State.A, 2);
+        assertEquals(2, oldest.size());
+        assertSame(second, oldest.get(0));
+        assertSame(third, oldest.get(1));
+        assertEquals(3, dwellTimes.getOldest(State.A, 10).size());
+        assertSame(elsewhere, dwellTimes.getOldest(State.B, 10).get(0));
+        assertEquals(4, dwellTimes.getMachineCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void TimeInStateRequiresTracking() {
+        new StateMachine<>(State.A, config).getTimeInState(TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void MachinesCreatedBeforeEnablingAreNotTracked() {
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        config.setDwellTimeMetrics(dwellTimes);
+        sm.fire(Trigger.X);
+
+        assertNull(dwellTimes.getDwellTime(State.A));
+        assertEquals(0, dwellTimes.getMachineCount());
+    }
+}
@@ -0,0 +1,186 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.State;
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.Trigger;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StateMachineMetricsTests {
+
+    private final StateMachineMetrics<State, Trigger> metrics = new StateMachineMetrics<>();
+
+    private StateMachine<State, Trigger> createMachine() {
+        StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+        config.setMetrics(metrics);
+        config.configure(State.A)
+                .permit(Trigger.X, State.B)
+                .ignore(Trigger.Y);
+        config.configure(State.B)
+                .permit(Trigger.X, State.A)
+                .internalTransition(Trigger.Y, () -> {
+                });
+
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger((state, trigger) -> {
+        });
+        return sm;
+    }
+
+    @Test
+    public void CountsTransitionsPerStateAndTrigger() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.X);
+
+        TriggerMetrics<State> fromA = metrics.getTriggerMetrics(State.A, Trigger.X);
+        assertEquals(2, fromA.getFireCount());
+        assertEquals(Long.valueOf(2), fromA.getDestinationCounts().get(State.B));
+        assertEquals(1, metrics.getTriggerMetrics(State.B, Trigger.X).getFireCount());
+        assertEquals(3, metrics.getTotalFireCount());
+    }
+
+    @Test
+    public void CountsIgnoredAndInternalTransitionsWithoutDestinations() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.Y);
+
+        assertEquals(1, metrics.getTriggerMetrics(State.A, Trigger.Y).getFireCount());
+        assertTrue(metrics.getTriggerMetrics(State.A, Trigger.Y).getDestinationCounts().isEmpty());
+        assertEquals(1, metrics.getTriggerMetrics(State.B, Trigger.Y).getFireCount());
+        assertEquals(1, metrics.getTriggerMetrics(State.B, Trigger.Y).getActionLatency().getCount());
+    }
+
+    @Test
+    public void CountsUnhandledTriggers() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.Z);
+        sm.tryFire(Trigger.Z);
+
+        assertEquals(2, metrics.getTriggerMetrics(State.A, Trigger.Z).getUnhandledCount());
+        assertEquals(0, metrics.getTriggerMetrics(State.A, Trigger.Z).getFireCount());
+        assertEquals(2, metrics.getTotalUnhandledCount());
+        assertEquals(Long.valueOf(2), metrics.getUnhandledCounts().get("A/Z"));
+    }
+
+    @Test
+    public void PairsBeyondTheLimitAreCountedAsOverflow() {
+        StateMachineMetrics<String, String> bounded = new StateMachineMetrics<>(1, 3);
+        StateMachineConfig<String, String> config = new StateMachineConfig<>();
+        config.setMetrics(bounded);
+        config.configure("idle").permitReentry("poke");
+        StateMachine<String, String> sm = new StateMachine<>("idle", config);
+        sm.onUnhandledTrigger((state, trigger) -> {
+        });
+
+        sm.fire("poke");
+        for (int i = 0; i < 100; i++) {
+            sm.fire("request-" + i);
+        }
+
+        int[] entries = new int[1];
+        bounded.forEach((state, trigger, m) -> entries[0]++);
+        assertEquals(3, entries[0]);
+        assertEquals(1, bounded.getTriggerMetrics("idle", "poke").getFireCount());
+        assertNull(bounded.getTriggerMetrics("idle", "request-99"));
+        assertEquals(98, bounded.getOverflowMetrics().getUnhandledCount());
+        assertEquals(100, bounded.getTotalUnhandledCount());
+        assertEquals(Long.valueOf(98), bounded.getUnhandledCounts().get(StateMachineMetrics.OVERFLOW_KEY));
+    }
+
+    @Test
+    public void TimesAllPhasesOfATransition() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+
+        TriggerMetrics<State> m = metrics.getTriggerMetrics(State.A, Trigger.X);
+        assertEquals(1, m.getGuardLatency().getCount());
+        assertEquals(1, m.getExitLatency().getCount());
+        assertEquals(1, m.getActionLatency().getCount());
+        assertEquals(1, m.getEntryLatency().getCount());
+
+        Map<String, String> summaries = metrics.getLatencySummaries();
+        assertTrue(summaries.containsKey("A/X/guard"));
+        assertTrue(summaries.containsKey("A/X/entry"));
+    }
+
+    @Test
+    public void SamplingStillCountsEveryFire() {
+        metrics.setSampleInterval(1000000);
+        StateMachine<State, Trigger> sm = createMachine();
+        for (int i = 0; i < 100; i++) {
+            sm.fire(Trigger.X);
+        }
+
+        TriggerMetrics<State> m = metrics.getTriggerMetrics(State.A, Trigger.X);
+        assertEquals(50, m.getFireCount());
+        assertTrue(m.getGuardLatency().getCount() < 50);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void SampleIntervalMustBePositive() {
+        metrics.setSampleInterval(0);
+    }
+
+    @Test
+    public void ResetClearsCounters() {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+        metrics.reset();
+
+        assertEquals(0, metrics.getTotalFireCount());
+        assertTrue(metrics.getLatencySummaries().isEmpty());
+    }
+
+    @Test
+    public void MetricsAreCreatedOnFirstFire() {
+        StateMachine<State, Trigger> sm = createMachine();
+        assertNull(metrics.getTriggerMetrics(State.B, Trigger.Y));
+        sm.fire(Trigger.X);
+        assertNull(metrics.getTriggerMetrics(State.B, Trigger.Y));
+    }
+
+    @Test
+    public void HistogramPercentilesUseBucketUpperBounds() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(100);
+        }
+        histogram.record(100000);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(127, histogram.getPercentileNanos(50));
+        assertEquals(127, histogram.getPercentileNanos(99));
+        assertEquals(100000, histogram.getPercentileNanos(100));
+        assertEquals(100000, histogram.getMaxNanos());
+    }
+
+    @Test
+    public void RegistersAsPlatformMXBean() throws Exception {
+        StateMachine<State, Trigger> sm = createMachine();
+        sm.fire(Trigger.X);
+
+        ObjectName name = metrics.registerMBean("tests");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, server.getAttribute(name, "TotalFireCount"));
+        } finally {
+            metrics.unregisterMBean();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
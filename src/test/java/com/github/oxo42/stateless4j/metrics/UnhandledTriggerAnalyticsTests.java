@@ -0,0 +1,101 @@
+package com.github.oxo42.stateless4j.metrics;
+
+import com.github.oxo42.stateless4j.State;
+import com.github.oxo42.stateless4j.StateMachine;
+import com.github.oxo42.stateless4j.StateMachineConfig;
+import com.github.oxo42.stateless4j.Trigger;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UnhandledTriggerAnalyticsTests {
+
+    private final StateMachineConfig<State, Trigger> config = new StateMachineConfig<>();
+
+    public UnhandledTriggerAnalyticsTests() {
+        config.configure(State.A).permit(Trigger.X, State.B);
+        config.configure(State.B).permit(Trigger.X, State.A);
+    }
+
+    @Test
+    public void CountsMissesPerStateAndTriggerWithoutThrowing() {
+        UnhandledTriggerAnalytics<State, Trigger> analytics = new UnhandledTriggerAnalytics<>();
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger(analytics);
+
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.Y);
+        sm.fire(Trigger.X);
+        sm.fire(Trigger.Z);
+
+        assertEquals(2, analytics.getCount(State.A, Trigger.Y));
+        assertEquals(1, analytics.getCount(State.B, Trigger.Z));
+        assertEquals(0, analytics.getCount(State.B, Trigger.Y));
+        assertEquals(3, analytics.getTotalCount());
+        assertEquals(Long.valueOf(2), analytics.getCounts().get("A/Y"));
+    }
+
+    @Test
+    public void ReservoirKeepsRecentOffendersWithTheirInstance() {
+        UnhandledTriggerAnalytics<State, Trigger> analytics = new UnhandledTriggerAnalytics<>(2, 1);
+        StateMachine<State, Trigger> first = new StateMachine<>(State.A, config);
+        first.onUnhandledTrigger(analytics.forInstance("order-1"));
+        StateMachine<State, Trigger> second = new StateMachine<>(State.B, config);
+        second.onUnhandledTrigger(analytics.forInstance("order-2"));
+
+        first.fire(Trigger.Y);
+        second.fire(Trigger.Z);
+        first.fire(Trigger.Z);
+
+        List<UnhandledTrigger<State, Trigger>> offenders = analytics.getRecentOffenders();
+        assertEquals(2, offenders.size());
+        assertEquals("order-2", offenders.get(0).getInstance());
+        assertEquals(State.B, offenders.get(0).getState());
+        assertEquals("order-1", offenders.get(1).getInstance());
+        assertEquals(Trigger.Z, offenders.get(1).getTrigger());
+    }
+
+    @Test
+    public void SamplingStillCountsEveryMiss() {
+        UnhandledTriggerAnalytics<State, Trigger> analytics = new UnhandledTriggerAnalytics<>(1000, 1000000);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger(analytics);
+        for (int i = 0; i < 100; i++) {
+            sm.fire(Trigger.Y);
+        }
+
+        assertEquals(100, analytics.getCount(State.A, Trigger.Y));
+        assertTrue(analytics.getRecentOffenders().size() < 100);
+    }
+
+    @Test
+    public void RateLimitedLoggingDoesNotAffectCounts() {
+        UnhandledTriggerAnalytics<State, Trigger> analytics = new UnhandledTriggerAnalytics<>();
+        analytics.setLogInterval(1, TimeUnit.HOURS);
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger(analytics);
+        for (int i = 0; i < 10; i++) {
+            sm.fire(Trigger.Y);
+        }
+
+        assertEquals(10, analytics.getCount(State.A, Trigger.Y));
+    }
+
+    @Test
+    public void ResetClearsCountsAndReservoir() {
+        UnhandledTriggerAnalytics<State, Trigger> analytics = new UnhandledTriggerAnalytics<>();
+        StateMachine<State, Trigger> sm = new StateMachine<>(State.A, config);
+        sm.onUnhandledTrigger(analytics);
+        sm.fire(Trigger.Y);
+        analytics.reset();
+
+        assertEquals(0, analytics.getTotalCount());
+        assertTrue(analytics.getRecentOffenders().isEmpty());
+        assertNull(analytics.getCounts().get("A/Y"));
+    }
+}